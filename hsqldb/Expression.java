@@ -101,6 +101,8 @@ public class Expression implements Cloneable {
         aggregateFunctionSet.add(OpTypes.USER_AGGREGATE);
         aggregateFunctionSet.add(OpTypes.GROUP_CONCAT);
         aggregateFunctionSet.add(OpTypes.MEDIAN);
+        aggregateFunctionSet.add(OpTypes.PERCENTILE_CONT);
+        aggregateFunctionSet.add(OpTypes.PERCENTILE_DISC);
     }
 
     static final OrderedIntHashSet columnExpressionSet =
@@ -33,10 +33,13 @@ package org.hsqldb;
 
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
+import org.hsqldb.index.Index;
 import org.hsqldb.lib.ArrayListIdentity;
 import org.hsqldb.lib.ArrayUtil;
 import org.hsqldb.lib.HsqlArrayList;
 import org.hsqldb.lib.HsqlList;
+import org.hsqldb.navigator.RowIterator;
+import org.hsqldb.persist.PersistentStore;
 import org.hsqldb.types.ArrayType;
 import org.hsqldb.types.RowType;
 import org.hsqldb.types.Type;
@@ -55,6 +58,7 @@ public class ExpressionArrayAggregate extends Expression {
     ArrayType    arrayDataType;
     Type         exprType;
     Expression   condition = Expression.EXPR_TRUE;
+    boolean      isDescending;
 
     ExpressionArrayAggregate(int type, boolean distinct, Expression e,
                              SortAndSlice sort, String separator) {
@@ -74,6 +78,19 @@ public class ExpressionArrayAggregate extends Expression {
             return;
         }
 
+        if (type == OpTypes.PERCENTILE_CONT
+                || type == OpTypes.PERCENTILE_DISC) {
+            ExpressionOrderBy o = (ExpressionOrderBy) sort.exprList.get(0);
+
+            nodes = new Expression[] {
+                o.getLeftNode(), e
+            };
+            isDescending = o.isDescending();
+            this.sort    = null;
+
+            return;
+        }
+
         if (sort == null) {
             nodes = new Expression[]{ e };
         } else {
@@ -116,6 +133,24 @@ public class ExpressionArrayAggregate extends Expression {
                 sb.append(left).append(')');
                 break;
 
+            case OpTypes.PERCENTILE_CONT :
+            case OpTypes.PERCENTILE_DISC :
+                sb.append(' ').append(opType == OpTypes.PERCENTILE_CONT
+                                      ? Tokens.T_PERCENTILE_CONT
+                                      : Tokens.T_PERCENTILE_DISC);
+                sb.append('(').append(getContextSQL(nodes[RIGHT]));
+                sb.append(") ").append(Tokens.T_WITHIN).append(' ');
+                sb.append(Tokens.T_GROUP).append(" (");
+                sb.append(Tokens.T_ORDER).append(' ').append(Tokens.T_BY);
+                sb.append(' ').append(left);
+
+                if (isDescending) {
+                    sb.append(' ').append(Tokens.T_DESC);
+                }
+
+                sb.append(')');
+                break;
+
             default :
                 throw Error.runtimeError(ErrorCode.U_S0500,
                                          "ExpressionAggregate");
@@ -148,6 +183,14 @@ public class ExpressionArrayAggregate extends Expression {
                 sb.append(Tokens.T_MEDIAN).append(' ');
                 break;
 
+            case OpTypes.PERCENTILE_CONT :
+                sb.append(Tokens.T_PERCENTILE_CONT).append(' ');
+                break;
+
+            case OpTypes.PERCENTILE_DISC :
+                sb.append(Tokens.T_PERCENTILE_DISC).append(' ');
+                break;
+
             default :
         }
 
@@ -194,7 +237,11 @@ public class ExpressionArrayAggregate extends Expression {
                 nodes[i].resolveTypes(session, this);
 
                 if (nodes[i].isUnresolvedParam()) {
-                    throw Error.error(ErrorCode.X_42567);
+                    if (i == RIGHT && isPercentile()) {
+                        nodes[i].dataType = Type.SQL_DOUBLE;
+                    } else {
+                        throw Error.error(ErrorCode.X_42567);
+                    }
                 }
 
                 if (nodes[i].dataType == null) {
@@ -205,7 +252,20 @@ public class ExpressionArrayAggregate extends Expression {
             }
         }
 
-        exprType = nodes[nodes.length - 1].dataType;
+        // the fraction is evaluated once, after aggregation
+        if (isPercentile()) {
+            if (nodes[RIGHT].collectAllExpressions(
+                    null, Expression.columnExpressionSet,
+                    Expression.emptyExpressionSet) != null || nodes[RIGHT]
+                        .collectAllExpressions(
+                            null, Expression.aggregateFunctionSet,
+                            Expression.emptyExpressionSet) != null) {
+                throw Error.error(ErrorCode.X_42000);
+            }
+        }
+
+        exprType = isPercentile() ? nodes[LEFT].dataType
+                                  : nodes[nodes.length - 1].dataType;
 
         if (exprType.isLobType()) {
             throw Error.error(ErrorCode.X_42534);
@@ -245,6 +305,25 @@ public class ExpressionArrayAggregate extends Expression {
                     throw Error.error(ErrorCode.X_42563);
                 }
                 break;
+
+            case OpTypes.PERCENTILE_CONT :
+            case OpTypes.PERCENTILE_DISC :
+                if (!nodeDataTypes[RIGHT].isNumberType()) {
+                    throw Error.error(ErrorCode.X_42563);
+                }
+
+                arrayDataType =
+                    new ArrayType(nodeDataTypes[LEFT],
+                                  ArrayType.defaultArrayCardinality);
+
+                if (opType == OpTypes.PERCENTILE_DISC) {
+                    dataType = exprType;
+                } else if (exprType.isNumberType()) {
+                    dataType = Type.SQL_DOUBLE;
+                } else {
+                    throw Error.error(ErrorCode.X_42563);
+                }
+                break;
         }
 
         condition.resolveTypes(session, null);
@@ -258,6 +337,7 @@ public class ExpressionArrayAggregate extends Expression {
             return super.equals(other) && opType == other.opType
                    && exprSubType == other.exprSubType
                    && isDistinctAggregate == o.isDistinctAggregate
+                   && isDescending == o.isDescending
                    && separator.equals(o.separator)
                    && condition.equals(o.condition);
         }
@@ -292,6 +372,8 @@ public class ExpressionArrayAggregate extends Expression {
                 break;
 
             case OpTypes.MEDIAN :
+            case OpTypes.PERCENTILE_CONT :
+            case OpTypes.PERCENTILE_DISC :
                 currentVal = nodes[0].getValue(session);
 
                 if (currentVal == null) {
@@ -367,29 +449,157 @@ public class ExpressionArrayAggregate extends Expression {
 
                 return sb.toString();
             }
-            case OpTypes.MEDIAN : {
+            case OpTypes.MEDIAN :
+            case OpTypes.PERCENTILE_CONT :
+            case OpTypes.PERCENTILE_DISC : {
                 SortAndSlice exprSort = new SortAndSlice();
 
                 exprSort.prepareSingleColumn(1);
                 arrayDataType.sort(session, array, exprSort);
 
-                boolean even = array.length % 2 == 0;
+                return getPercentileValue(session, array, null, null, 0,
+                                          array.length);
+            }
+        }
 
-                if (even) {
-                    Object val1 = array[(array.length / 2) - 1];
-                    Object val2 = array[array.length / 2];
-                    Object val3 = dataType.add(session, val1, val2, dataType);
+        return null;
+    }
 
-                    return dataType.divide(session, val3, Integer.valueOf(2));
-                } else {
-                    return dataType.convertToType(session,
-                                                  array[array.length / 2],
-                                                  exprType);
-                }
+    boolean isPercentile() {
+        return opType == OpTypes.PERCENTILE_CONT
+               || opType == OpTypes.PERCENTILE_DISC;
+    }
+
+    /**
+     * Returns the value of MEDIAN, PERCENTILE_CONT or PERCENTILE_DISC for the
+     * rows of an index on the argument column, using the positions of the
+     * rows in the index. All the rows in the index must be visible to the
+     * session.
+     */
+    public Object getAggregatedValue(Session session, Index index,
+                                     PersistentStore store) {
+
+        Object[] bound = new Object[1];
+        long nullCount = index.countRange(session, store, bound, bound, 1,
+                                          OpTypes.IS_NULL, OpTypes.IS_NULL);
+        long count = index.countRange(session, store, bound, bound, 1,
+                                      OpTypes.NOT, OpTypes.MAX);
+
+        if (count == 0) {
+            return null;
+        }
+
+        return getPercentileValue(session, null, index, store, nullCount,
+                                  count);
+    }
+
+    /**
+     * Values are taken from the sorted array or, if the array is null, from
+     * the index rows starting at the offset position.
+     */
+    private Object getPercentileValue(Session session, Object[] array,
+                                      Index index, PersistentStore store,
+                                      long offset, long count) {
+
+        if (opType == OpTypes.MEDIAN) {
+            if (count % 2 == 0) {
+                Object val1 = getValueAt(session, array, index, store,
+                                         offset + (count / 2) - 1);
+                Object val2 = getValueAt(session, array, index, store,
+                                         offset + count / 2);
+                Object val3 = dataType.add(session, val1, val2, dataType);
+
+                return dataType.divide(session, val3, Integer.valueOf(2));
+            } else {
+                return dataType.convertToType(session,
+                                              getValueAt(session, array,
+                                                  index, store,
+                                                  offset + count / 2),
+                                              exprType);
             }
         }
 
-        return null;
+        Object value = nodes[RIGHT].getValue(session);
+
+        if (value == null) {
+            return null;
+        }
+
+        double fraction = ((Number) Type.SQL_DOUBLE.convertToType(session,
+            value, nodeDataTypes[RIGHT])).doubleValue();
+
+        if (fraction < 0 || fraction > 1) {
+            throw Error.error(ErrorCode.X_22003);
+        }
+
+        if (isDescending) {
+            fraction = 1 - fraction;
+        }
+
+        if (opType == OpTypes.PERCENTILE_DISC) {
+
+            // first value with cumulative distribution not less than fraction
+            long position = isDescending
+                            ? (long) Math.floor(fraction * count)
+                            : (long) Math.ceil(fraction * count) - 1;
+
+            if (position < 0) {
+                position = 0;
+            } else if (position >= count) {
+                position = count - 1;
+            }
+
+            return getValueAt(session, array, index, store, offset + position);
+        }
+
+        double rowNumber = fraction * (count - 1);
+        long   lower     = (long) Math.floor(rowNumber);
+        long   upper     = (long) Math.ceil(rowNumber);
+        double lowerValue = getDoubleValueAt(session, array, index, store,
+                                             offset + lower);
+
+        if (lower == upper) {
+            return Double.valueOf(lowerValue);
+        }
+
+        double upperValue = getDoubleValueAt(session, array, index, store,
+                                             offset + upper);
+
+        return Double.valueOf(lowerValue
+                              + (rowNumber - lower)
+                                * (upperValue - lowerValue));
+    }
+
+    private double getDoubleValueAt(Session session, Object[] array,
+                                    Index index, PersistentStore store,
+                                    long position) {
+
+        Object value = getValueAt(session, array, index, store, position);
+
+        value = Type.SQL_DOUBLE.convertToType(session, value, exprType);
+
+        return ((Number) value).doubleValue();
+    }
+
+    private Object getValueAt(Session session, Object[] array, Index index,
+                              PersistentStore store, long position) {
+
+        if (array != null) {
+            return array[(int) position];
+        }
+
+        RowIterator it = index.selectRow(session, store, position, false);
+
+        if (!it.next()) {
+            throw Error.runtimeError(ErrorCode.U_S0500,
+                                     "ExpressionArrayAggregate");
+        }
+
+        Object value = it.getCurrent()[index.getColumns()[0]];
+
+        it.release();
+
+        return value;
     }
 
     public Expression getCondition() {
@@ -133,5 +133,7 @@ public interface OpTypes {
         USER_AGGREGATE             = 94,
         ARRAY_ACCESS               = 95,
         ARRAY_SUBQUERY             = 96,
-        GROUPING                   = 98;
+        GROUPING                   = 98,
+        PERCENTILE_CONT            = 99,
+        PERCENTILE_DISC            = 100;
 }
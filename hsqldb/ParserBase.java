@@ -799,6 +799,8 @@ public class ParserBase {
         expressionTypeMap.put(Tokens.ARRAY_AGG, OpTypes.ARRAY_AGG);
         expressionTypeMap.put(Tokens.GROUP_CONCAT, OpTypes.GROUP_CONCAT);
         expressionTypeMap.put(Tokens.MEDIAN, OpTypes.MEDIAN);
+        expressionTypeMap.put(Tokens.PERCENTILE_CONT, OpTypes.PERCENTILE_CONT);
+        expressionTypeMap.put(Tokens.PERCENTILE_DISC, OpTypes.PERCENTILE_DISC);
     }
 
     HsqlException unexpectedToken(String tokenS) {
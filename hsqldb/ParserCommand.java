@@ -42,6 +42,7 @@ import org.hsqldb.persist.HsqlDatabaseProperties;
 import org.hsqldb.result.Result;
 import org.hsqldb.result.ResultProperties;
 import org.hsqldb.rights.User;
+import org.hsqldb.types.BinaryData;
 import org.hsqldb.types.Charset;
 import org.hsqldb.types.Type;
 import org.hsqldb.types.Types;
@@ -1007,6 +1008,32 @@ public class ParserCommand extends ParserDDL {
                                             args, null,
                                             new HsqlName[]{ table.getName() });
             }
+            case Tokens.COMPRESSED : {
+                read();
+
+                Boolean compressed = processTrueOrFalseObject();
+                byte[]  dictionary = null;
+
+                if (readIfThis(Tokens.DICTIONARY)) {
+                    checkIsValue();
+
+                    if (!token.dataType.isBinaryType()) {
+                        throw Error.error(ErrorCode.X_42563);
+                    }
+
+                    dictionary = ((BinaryData) token.tokenValue).getBytes();
+
+                    read();
+                }
+
+                args = new Object[] {
+                    table.getName(), compressed, dictionary
+                };
+
+                return new StatementCommand(
+                    StatementTypes.SET_TABLE_COMPRESSED, args, null,
+                    new HsqlName[]{ table.getName() });
+            }
             case Tokens.NEW : {
                 read();
                 readThis(Tokens.SPACE);
@@ -2329,7 +2356,23 @@ public class ParserCommand extends ParserDDL {
 
                 HsqlName tableName = null;
 
+                if (readIfThis(Tokens.ALL)) {
+                    readThis(Tokens.TABLE);
+                    readThis(Tokens.INDEX);
+
+                    return compileCheckIndex(null);
+                }
+
                 readThis(Tokens.TABLE);
+
+                if (token.tokenType != Tokens.SPACE) {
+                    Table table = readTableName();
+
+                    readThis(Tokens.INDEX);
+
+                    return compileCheckIndex(table);
+                }
+
                 readThis(Tokens.SPACE);
 
                 if (readIfThis(Tokens.AND)) {
@@ -2352,9 +2395,34 @@ public class ParserCommand extends ParserDDL {
         }
     }
 
+    /**
+     * Checks the order, sizes and depth of the indexes of one table or of
+     * all tables when the table is null.
+     */
+    private Statement compileCheckIndex(Table table) {
+
+        HsqlName[] names;
+        HsqlName   tableName = null;
+
+        if (table == null) {
+            names = database.schemaManager.getCatalogAndBaseTableNames();
+        } else {
+            tableName = table.getName();
+            names     = new HsqlName[]{ tableName };
+        }
+
+        Object[] args = new Object[] {
+            tableName, Integer.valueOf(3), Integer.valueOf(-1)
+        };
+
+        return new StatementCommand(StatementTypes.CHECK_INDEX, args, null,
+                                    names);
+    }
+
     private Statement compileCheckpoint() {
 
         boolean defrag = false;
+        Integer millis = null;
 
         read();
 
@@ -2362,6 +2430,16 @@ public class ParserCommand extends ParserDDL {
             defrag = true;
 
             read();
+
+            if (token.tokenType == Tokens.X_VALUE) {
+                millis = readIntegerObject();
+
+                readThis(Tokens.MILLIS);
+
+                if (millis.intValue() < 1) {
+                    throw Error.error(ErrorCode.X_22003);
+                }
+            }
         } else if (token.tokenType == Tokens.SEMICOLON) {
             read();
 
@@ -2374,7 +2452,9 @@ public class ParserCommand extends ParserDDL {
 
         HsqlName[] names =
             database.schemaManager.getCatalogAndBaseTableNames();
-        Object[] args = new Object[]{ Boolean.valueOf(defrag) };
+        Object[] args = new Object[] {
+            Boolean.valueOf(defrag), millis
+        };
         Statement cs = new StatementCommand(StatementTypes.DATABASE_CHECKPOINT,
                                             args, null, names);
 
@@ -2385,7 +2465,9 @@ public class ParserCommand extends ParserDDL {
 
         HsqlName[] names =
             database.schemaManager.getCatalogAndBaseTableNames();
-        Object[] args = new Object[]{ Boolean.FALSE };
+        Object[] args = new Object[] {
+            Boolean.FALSE, null
+        };
         Statement cs = new StatementCommand(StatementTypes.DATABASE_CHECKPOINT,
                                             args, null, names);
 
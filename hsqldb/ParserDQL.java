@@ -2232,6 +2232,38 @@ public class ParserDQL extends ParserBase {
                 return new ExpressionArrayAggregate(type, distinct, e, sort,
                                                     separator);
             }
+            case OpTypes.PERCENTILE_CONT :
+            case OpTypes.PERCENTILE_DISC : {
+                if (all || distinct) {
+                    throw unexpectedToken(all ? Tokens.T_ALL
+                                              : Tokens.T_DISTINCT);
+                }
+
+                readThis(Tokens.CLOSEBRACKET);
+                readThis(Tokens.WITHIN);
+                readThis(Tokens.GROUP);
+                readThis(Tokens.OPENBRACKET);
+                readThis(Tokens.ORDER);
+                readThis(Tokens.BY);
+
+                ExpressionOrderBy o =
+                    new ExpressionOrderBy(XreadValueExpression());
+
+                if (token.tokenType == Tokens.DESC) {
+                    o.setDescending();
+                    read();
+                } else if (token.tokenType == Tokens.ASC) {
+                    read();
+                }
+
+                sort = new SortAndSlice();
+
+                sort.addOrderExpression(o);
+
+                // the closing bracket of WITHIN GROUP is read by the caller
+                return new ExpressionArrayAggregate(type, false, e, sort,
+                                                    separator);
+            }
             default :
                 if (e.getType() == OpTypes.MULTICOLUMN
                         || e.getType() == OpTypes.ASTERISK) {
@@ -2758,6 +2790,8 @@ public class ParserDQL extends ParserBase {
             case Tokens.GROUP_CONCAT :
             case Tokens.ARRAY_AGG :
             case Tokens.MEDIAN :
+            case Tokens.PERCENTILE_CONT :
+            case Tokens.PERCENTILE_DISC :
                 e = readAggregateFunctionOrNull();    // general set function
 
                 if (e != null) {
@@ -34,6 +34,7 @@ package org.hsqldb;
 import org.hsqldb.HsqlNameManager.HsqlName;
 import org.hsqldb.HsqlNameManager.SimpleName;
 import org.hsqldb.ParserDQL.CompileContext;
+import org.hsqldb.RangeVariable.RangeIteratorMain;
 import org.hsqldb.RangeVariable.RangeIteratorRight;
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
@@ -97,6 +98,8 @@ public class QuerySpecification extends QueryExpression {
     public int            indexLimitData;
     private boolean       hasRowID;
     private boolean       isSimpleCount;
+    private boolean       isIndexRangeCount;
+    private Index         aggregateIndex;
     private boolean       isSingleMemoryTable;
 
     //
@@ -1152,7 +1155,9 @@ public class QuerySpecification extends QueryExpression {
                 }
                 case OpTypes.COUNT : {
                     if (!e.hasCondition() && rangeVariables.length == 1
-                            && queryCondition == null) {
+                            && (queryCondition == null
+                                || rangeVariables[0]
+                                    .hasIndexConditionOnly())) {
                         if (expr.getType() == OpTypes.ASTERISK) {
                             isSimpleCount = true;
 
@@ -1180,9 +1185,44 @@ public class QuerySpecification extends QueryExpression {
                             }
                         }
                     }
+
+                    break;
+                }
+                case OpTypes.MEDIAN :
+                case OpTypes.PERCENTILE_CONT :
+                case OpTypes.PERCENTILE_DISC : {
+                    if (!(e instanceof ExpressionArrayAggregate)
+                            || e.hasCondition() || e.isDistinctAggregate
+                            || rangeVariables.length != 1
+                            || queryCondition != null
+                            || expr.getType() != OpTypes.COLUMN) {
+                        break;
+                    }
+
+                    Table table    = rangeVariables[0].getTable();
+                    int   colIndex = expr.getColumnIndex();
+
+                    if (expr.getRangeVariable() != rangeVariables[0]
+                            || !table.isIndexed(colIndex)) {
+                        break;
+                    }
+
+                    Index index = table.getIndexForColumn(session, colIndex);
+
+                    if (!index.getColumnDesc()[0]) {
+                        aggregateIndex = index;
+                    }
+
+                    break;
                 }
                 default :
             }
+
+            // rows in the index range are counted instead of the whole table
+            if (isSimpleCount && queryCondition != null) {
+                isSimpleCount     = false;
+                isIndexRangeCount = true;
+            }
         }
     }
 
@@ -1498,16 +1538,56 @@ public class QuerySpecification extends QueryExpression {
             limitCount = limits[1];
         }
 
-        if (this.isSimpleCount) {
-            Object[] data  = new Object[indexLimitData];
-            Table    table = rangeVariables[0].getTable();
+        boolean hasValue = false;
+        Object  value    = null;
+
+        if (this.isSimpleCount || this.isIndexRangeCount
+                || this.aggregateIndex != null) {
+            Table table = rangeVariables[0].getTable();
 
             table.materialise(session);
 
             PersistentStore store = table.getRowStore(session);
-            long            count = store.elementCount(session);
 
-            data[indexStartAggregates] = ValuePool.getLong(count);
+            if (isSimpleCount) {
+                value    = ValuePool.getLong(store.elementCount(session));
+                hasValue = true;
+            } else {
+                TransactionManager txManager = session.database.txManager;
+
+                txManager.lockRowActions(store);
+
+                try {
+                    if (txManager.hasRowActions(session, store)) {
+
+                        // rows are aggregated as usual
+                    } else if (isIndexRangeCount) {
+                        long count =
+                            rangeVariables[0].getIndexRangeCount(session,
+                                store);
+
+                        if (count >= 0) {
+                            value    = ValuePool.getLong(count);
+                            hasValue = true;
+                        }
+                    } else {
+                        ExpressionArrayAggregate e =
+                            (ExpressionArrayAggregate) exprColumns[indexStartAggregates];
+
+                        value = e.getAggregatedValue(session, aggregateIndex,
+                                                     store);
+                        hasValue = true;
+                    }
+                } finally {
+                    txManager.unlockRowActions(store);
+                }
+            }
+        }
+
+        if (hasValue) {
+            Object[] data = new Object[indexLimitData];
+
+            data[indexStartAggregates] = value;
 
             navigator.add(data);
             navigator.reset();
@@ -1536,6 +1616,14 @@ public class QuerySpecification extends QueryExpression {
 
         session.sessionContext.rownum = 1;
 
+        if (skipCount > 0 && sortAndSlice.skipByPosition
+                && rangeIterators[0] instanceof RangeIteratorMain) {
+            ((RangeIteratorMain) rangeIterators[0]).setRowOffset(skipCount);
+
+            session.sessionContext.rownum += skipCount;
+            skipCount                     = 0;
+        }
+
         for (int currentIndex = 0; ; ) {
             if (currentIndex < fullJoinIndex) {
 
@@ -36,6 +36,7 @@ import org.hsqldb.ParserDQL.CompileContext;
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
 import org.hsqldb.index.Index;
+import org.hsqldb.index.IndexSBT;
 import org.hsqldb.lib.ArrayUtil;
 import org.hsqldb.lib.HashMap;
 import org.hsqldb.lib.HashMappedList;
@@ -295,6 +296,131 @@ public class RangeVariable {
                && joinConditions[0].indexedColumnCount > 0;
     }
 
+    /**
+     * Used for skipping rows by position in the index. True when each row
+     * of the index is a row of the range.
+     */
+    public boolean hasNoConditions() {
+
+        if (joinConditions.length != 1 || whereConditions.length != 1) {
+            return false;
+        }
+
+        if (isLeftJoin || isRightJoin || indexDistinctCount != 0) {
+            return false;
+        }
+
+        return joinConditions[0].hasNoConditions()
+               && whereConditions[0].hasNoConditions();
+    }
+
+    /**
+     * Used for counting the rows of the range with the index. True when the
+     * index conditions are the only conditions of the range.
+     */
+    public boolean hasIndexConditionOnly() {
+
+        if (joinConditions.length != 1 || whereConditions.length != 1) {
+            return false;
+        }
+
+        if (isLeftJoin || isRightJoin || indexDistinctCount != 0) {
+            return false;
+        }
+
+        RangeVariableConditions conditions = joinConditions[0];
+        RangeVariableConditions other      = whereConditions[0];
+
+        if (!conditions.hasIndexCondition()) {
+            conditions = whereConditions[0];
+            other      = joinConditions[0];
+        }
+
+        return conditions.hasIndexConditionOnly() && other.hasNoConditions();
+    }
+
+    /**
+     * Returns the count of rows of the range found with the index
+     * conditions, or -1 if a condition value cannot be used for the search.
+     */
+    public long getIndexRangeCount(Session session, PersistentStore store) {
+
+        RangeVariableConditions conditions = joinConditions[0];
+
+        if (!conditions.hasIndexCondition()) {
+            conditions = whereConditions[0];
+        }
+
+        int      count = conditions.indexedColumnCount;
+        Object[] lo    = new Object[count];
+        Object[] hi    = new Object[count];
+
+        for (int i = 0; i < count; i++) {
+            switch (conditions.opTypes[i]) {
+
+                case OpTypes.EQUAL :
+                case OpTypes.GREATER :
+                case OpTypes.GREATER_EQUAL :
+                    if (!setIndexValue(session, conditions.indexCond[i], lo,
+                                       i)) {
+                        return -1;
+                    }
+                    break;
+
+                default :
+            }
+
+            switch (conditions.opTypesEnd[i]) {
+
+                case OpTypes.EQUAL :
+                case OpTypes.SMALLER :
+                case OpTypes.SMALLER_EQUAL :
+                    if (!setIndexValue(session, conditions.indexEndCond[i],
+                                       hi, i)) {
+                        return -1;
+                    }
+                    break;
+
+                default :
+            }
+        }
+
+        return conditions.rangeIndex.countRange(session, store, lo, hi,
+                count, conditions.opType, conditions.opTypeEnd);
+    }
+
+    /**
+     * Sets the value of the right node of the condition, converted to the
+     * type of the column. Returns false if the value is null or outside the
+     * range of the column type.
+     */
+    static boolean setIndexValue(Session session, Expression e,
+                                         Object[] data, int i) {
+
+        Type   valueType  = e.getRightNode().getDataType();
+        Type   targetType = e.getLeftNode().getDataType();
+        Object value      = e.getRightNode().getValue(session);
+
+        if (value == null) {
+            return false;
+        }
+
+        if (targetType != valueType) {
+            if (targetType.compareToTypeRange(value) != 0) {
+                return false;
+            }
+
+            if (targetType.typeComparisonGroup
+                    != valueType.typeComparisonGroup) {
+                value = targetType.convertToType(session, value, valueType);
+            }
+        }
+
+        data[i] = value;
+
+        return true;
+    }
+
     public boolean setDistinctColumnsOnIndex(int[] colMap) {
 
         if (joinConditions.length != 1) {
@@ -1205,6 +1331,12 @@ public class RangeVariable {
         //
         Object[] currentJoinData = null;
 
+        // node of the last lookup for each condition
+        IndexSBT.Finger[] fingers;
+
+        //
+        long rowOffset;
+
         RangeIteratorMain() {
             super();
         }
@@ -1283,6 +1415,16 @@ public class RangeVariable {
             return rangeVar.rangePosition;
         }
 
+        /**
+         * Used only when the range has no conditions. The first row returned
+         * is at the given position in the index order. The row is found with
+         * the subtree sizes of the index when all the rows are visible to
+         * the session, otherwise the rows before it are skipped one by one.
+         */
+        public void setRowOffset(long offset) {
+            rowOffset = offset;
+        }
+
         /**
          */
         protected void initialiseIterator() {
@@ -1300,7 +1442,9 @@ public class RangeVariable {
             rangeVar.rangeTable.materialiseCorrelated(session);
 
             if (conditions[condIndex].indexCond == null) {
-                if (conditions[condIndex].reversed) {
+                if (rowOffset > 0) {
+                    initialiseIteratorAtOffset();
+                } else if (conditions[condIndex].reversed) {
                     it = conditions[condIndex].rangeIndex.lastRow(session,
                             store, rangeVar.indexDistinctCount, null);
                 } else {
@@ -1316,6 +1460,37 @@ public class RangeVariable {
             }
         }
 
+        private void initialiseIteratorAtOffset() {
+
+            TransactionManager txManager = session.database.txManager;
+            Index              index     = conditions[condIndex].rangeIndex;
+            boolean            reversed  = conditions[condIndex].reversed;
+
+            it = null;
+
+            txManager.lockRowActions(store);
+
+            try {
+                if (!txManager.hasRowActions(session, store)) {
+                    it = index.selectRow(session, store, rowOffset, reversed);
+                }
+            } finally {
+                txManager.unlockRowActions(store);
+            }
+
+            if (it == null) {
+                int distinctCount = rangeVar.indexDistinctCount;
+
+                it = reversed
+                     ? index.lastRow(session, store, distinctCount, null)
+                     : index.firstRow(session, store, distinctCount, null);
+
+                for (; rowOffset > 0 && it.next(); rowOffset--) {}
+            }
+
+            rowOffset = 0;
+        }
+
         private void getFirstRow() {
 
             if (currentJoinData == null
@@ -1414,10 +1589,21 @@ public class RangeVariable {
                 currentJoinData[i] = value;
             }
 
-            it = conditions[condIndex].rangeIndex.findFirstRow(session, store,
-                    currentJoinData, conditions[condIndex].indexedColumnCount,
-                    rangeVar.indexDistinctCount, opType,
-                    conditions[condIndex].reversed, null);
+            if (fingers == null || fingers.length < conditions.length) {
+                fingers = new IndexSBT.Finger[conditions.length];
+            }
+
+            if (fingers[condIndex] == null) {
+                fingers[condIndex] = new IndexSBT.Finger();
+            }
+
+            IndexSBT index = (IndexSBT) conditions[condIndex].rangeIndex;
+
+            it = index.findFirstRow(session, store, currentJoinData,
+                                    conditions[condIndex].indexedColumnCount,
+                                    rangeVar.indexDistinctCount, opType,
+                                    conditions[condIndex].reversed, null,
+                                    fingers[condIndex]);
         }
 
         /**
@@ -1837,6 +2023,55 @@ public class RangeVariable {
             return hasIndex;
         }
 
+        boolean hasNoConditions() {
+            return indexedColumnCount == 0 && indexEndCondition == null
+                   && nonIndexCondition == null && terminalCondition == null
+                   && excludeConditions == null && !isFalse;
+        }
+
+        /**
+         * True when the rows found with the index conditions are all the
+         * rows of the range.
+         */
+        boolean hasIndexConditionOnly() {
+
+            if (indexedColumnCount == 0 || nonIndexCondition != null
+                    || terminalCondition != null || excludeConditions != null
+                    || isFalse || reversed) {
+                return false;
+            }
+
+            for (int i = 0; i < indexedColumnCount; i++) {
+                switch (opTypes[i]) {
+
+                    case OpTypes.EQUAL :
+                    case OpTypes.IS_NULL :
+                    case OpTypes.NOT :
+                    case OpTypes.GREATER :
+                    case OpTypes.GREATER_EQUAL :
+                        break;
+
+                    default :
+                        return false;
+                }
+
+                switch (opTypesEnd[i]) {
+
+                    case OpTypes.EQUAL :
+                    case OpTypes.IS_NULL :
+                    case OpTypes.MAX :
+                    case OpTypes.SMALLER :
+                    case OpTypes.SMALLER_EQUAL :
+                        break;
+
+                    default :
+                        return false;
+                }
+            }
+
+            return true;
+        }
+
         void addCondition(Expression e) {
 
             if (e == null) {
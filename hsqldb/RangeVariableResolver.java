@@ -46,7 +46,6 @@ import org.hsqldb.lib.Iterator;
 import org.hsqldb.lib.MultiValueHashMap;
 import org.hsqldb.lib.OrderedHashSet;
 import org.hsqldb.lib.OrderedIntHashSet;
-import org.hsqldb.persist.PersistentStore;
 
 /**
  * Determines how JOIN and WHERE expressions are used in query
@@ -654,9 +653,9 @@ public class RangeVariableResolver {
             for (int j = 0; j < indexes.length; j++) {
                 index = indexes[j].index;
 
-                double currentCost = searchCost(session, table, index,
-                                                indexes[j].columnCount,
-                                                OpTypes.EQUAL);
+                double currentCost = searchCost(session, table,
+                                                rangeVariables[i], indexes[j],
+                                                starts);
 
                 if (currentCost < cost) {
                     cost     = currentCost;
@@ -1305,12 +1304,9 @@ public class RangeVariableResolver {
 
             if (indexes.length > 1) {
                 for (int i = 0; i < indexes.length; i++) {
-                    PersistentStore store =
-                        conditions.rangeVar.rangeTable.getRowStore(session);
                     double currentCost =
-                        store.searchCost(session, indexes[i].index,
-                                         indexes[i].columnCount,
-                                         OpTypes.EQUAL);
+                        searchCost(session, conditions.rangeVar.rangeTable,
+                                   conditions.rangeVar, indexes[i], exprList);
 
                     if (currentCost < cost) {
                         cost  = currentCost;
@@ -1554,6 +1550,65 @@ public class RangeVariableResolver {
         }
     }
 
+    /**
+     * Returns the count of rows found with the index when there are
+     * equality conditions with constant values for all the index columns
+     * in use. Otherwise returns the estimated count for the index.
+     */
+    private double searchCost(Session session, Table table,
+                              RangeVariable range, IndexUse indexUse,
+                              HsqlList exprList) {
+
+        if (table instanceof TableDerived) {
+            return 1000;
+        }
+
+        Index    index = indexUse.index;
+        int      count = indexUse.columnCount;
+        int[]    cols  = index.getColumns();
+        Object[] data  = new Object[count];
+
+        for (int i = 0; i < count; i++) {
+            boolean found = false;
+
+            for (int j = 0; j < exprList.size(); j++) {
+                Expression e = (Expression) exprList.get(j);
+
+                if (e == null) {
+                    continue;
+                }
+
+                if (e.getType() != OpTypes.EQUAL
+                        && e.getType() != OpTypes.IS_NULL) {
+                    continue;
+                }
+
+                if (e.getLeftNode().getRangeVariable() != range
+                        || e.getLeftNode().getColumnIndex() != cols[i]) {
+                    continue;
+                }
+
+                if (e.getType() == OpTypes.IS_NULL) {
+                    found = true;
+                } else if (e.getRightNode().getType() == OpTypes.VALUE) {
+                    found = RangeVariable.setIndexValue(session, e, data, i);
+                }
+
+                if (found) {
+                    break;
+                }
+            }
+
+            if (!found) {
+                return searchCost(session, table, index, count,
+                                  OpTypes.EQUAL);
+            }
+        }
+
+        return index.countRange(session, table.getRowStore(session), data,
+                                data, count, OpTypes.EQUAL, OpTypes.EQUAL);
+    }
+
     private double searchCost(Session session, Table table, Index index,
                               int count, int opType) {
 
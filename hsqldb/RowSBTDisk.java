@@ -78,7 +78,10 @@ import org.hsqldb.index.NodeSBT;
 import org.hsqldb.index.NodeSBTDisk;
 import org.hsqldb.lib.LongLookup;
 import org.hsqldb.persist.PersistentStore;
+import org.hsqldb.rowio.RowCompressor;
+import org.hsqldb.rowio.RowInputBinary;
 import org.hsqldb.rowio.RowInputInterface;
+import org.hsqldb.rowio.RowOutputBinary;
 import org.hsqldb.rowio.RowOutputInterface;
 
 // fredt@users 20020221 - patch 513005 by sqlbob@users (RMP)
@@ -119,6 +122,11 @@ public class RowSBTDisk extends RowSBT {
      */
     private boolean hasNodesChanged;
 
+    /**
+     *  Compressor for the row data, or null if the data is not compressed.
+     */
+    RowCompressor compressor;
+
     /**
      *  Constructor for new Rows.  Variable hasDataChanged is set to true in
      *  order to indicate the data needs saving.
@@ -132,6 +140,10 @@ public class RowSBTDisk extends RowSBT {
 
         setNewNodes(store);
 
+        if (t.isCompressed()) {
+            compressor = t.getRowCompressor();
+        }
+
         hasDataChanged = hasNodesChanged = isNew = true;
     }
 
@@ -161,13 +173,26 @@ public class RowSBTDisk extends RowSBT {
             n       = n.nNext;
         }
 
-        rowData = in.readData(table.getColumnTypes());
+        readData(in);
     }
 
     RowSBTDisk(TableBase t) {
         super(t, (Object[]) null);
     }
 
+    void readData(RowInputInterface in) {
+
+        if (in instanceof RowInputBinary) {
+            RowInputBinary bin = (RowInputBinary) in;
+
+            rowData = bin.readData(table.getColumnTypes(),
+                                   table.getRowCompressor());
+            compressor = bin.getDataCompressor();
+        } else {
+            rowData = in.readData(table.getColumnTypes());
+        }
+    }
+
     public NodeSBT insertNode(int index) {
         return null;
     }
@@ -302,7 +327,20 @@ public class RowSBTDisk extends RowSBT {
     }
 
     public int getRealSize(RowOutputInterface out) {
-        return out.getSize(this);
+        return getRealSize(out, compressor);
+    }
+
+    /**
+     * Returns the size of the row when the data is written with the given
+     * compressor, which can be different from the one in use for the row.
+     */
+    public int getRealSize(RowOutputInterface out, RowCompressor compressor) {
+
+        if (compressor == null) {
+            return out.getSize(this);
+        }
+
+        return ((RowOutputBinary) out).getSize(this, compressor);
     }
 
     /**
@@ -317,14 +355,24 @@ public class RowSBTDisk extends RowSBT {
         writeNodes(out);
 
         if (hasDataChanged) {
-            out.writeData(this, table.colTypes);
+            writeData(out, compressor);
             out.writeEnd();
         }
     }
 
     public void write(RowOutputInterface out, LongLookup lookup) {
+        write(out, lookup, storageSize, compressor);
+    }
 
-        out.writeSize(storageSize);
+    /**
+     * Used by defrag to write the row to a new file with a storage size and
+     * compressor that can be different from those in use for the row. The
+     * size must be the one calculated with the compressor.
+     */
+    public void write(RowOutputInterface out, LongLookup lookup, int size,
+                      RowCompressor compressor) {
+
+        out.writeSize(size);
 
         NodeSBT rownode = nPrimaryNode;
 
@@ -334,10 +382,20 @@ public class RowSBTDisk extends RowSBT {
             rownode = rownode.nNext;
         }
 
-        out.writeData(this, table.colTypes);
+        writeData(out, compressor);
         out.writeEnd();
     }
 
+    private void writeData(RowOutputInterface out, RowCompressor compressor) {
+
+        if (compressor == null) {
+            out.writeData(this, table.colTypes);
+        } else {
+            ((RowOutputBinary) out).writeData(this, table.colTypes,
+                                              compressor);
+        }
+    }
+
     /**
      *  Writes the Nodes, immediately after the row size.
      *
@@ -83,7 +83,7 @@ public class RowSBTDiskLarge extends RowSBTDisk {
             n       = n.nNext;
         }
 
-        rowData = in.readData(table.getColumnTypes());
+        readData(in);
     }
 
     public void setNewNodes(PersistentStore store) {
@@ -2656,6 +2656,14 @@ public class SchemaManager {
                     if (ddl != null) {
                         list.add(ddl);
                     }
+
+                    // before the index roots, as compressed rows cannot be
+                    // read without the dictionary
+                    ddl = t.getSQLForCompressed();
+
+                    if (ddl != null) {
+                        list.add(ddl);
+                    }
                 }
             }
 
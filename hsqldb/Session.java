@@ -138,6 +138,9 @@ public class Session implements SessionInterface {
     public HsqlName currentSchema;
     public HsqlName loggedSchema;
 
+    // the commit record to sync to file after commit
+    public long logCommitNumber;
+
     // query processing
     ParserCommand         parser;
     boolean               isProcessingScript;
@@ -476,6 +479,21 @@ public class Session implements SessionInterface {
         }
     }
 
+    void addInsertActions(Table table, PersistentStore store, Row[] rows,
+                          int count) {
+
+        database.txManager.addInsertActions(this, table, store, rows, count);
+
+        // abort only after adding so that the new rows get removed from indexes
+        if (abortTransaction) {
+            throw Error.error(ErrorCode.X_40001);
+        }
+
+        if (abortAction) {
+            throw Error.error(ErrorCode.X_40502);
+        }
+    }
+
     public HsqlArrayList getRowActionList() {
         return rowActionList;
     }
@@ -588,6 +606,8 @@ public class Session implements SessionInterface {
 
                 throw Error.error(ErrorCode.X_40001);
             }
+
+            database.logger.syncCommit(this);
         }
 
         endTransaction(true, chain);
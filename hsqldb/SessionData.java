@@ -41,6 +41,7 @@ import java.io.Reader;
 import org.hsqldb.HsqlNameManager.HsqlName;
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
+import org.hsqldb.index.IndexSBT;
 import org.hsqldb.lib.CharArrayWriter;
 import org.hsqldb.lib.CountdownInputStream;
 import org.hsqldb.lib.HashMap;
@@ -85,6 +86,10 @@ public class SessionData {
     HashMap sequenceMap;
     HashMap sequenceUpdateMap;
 
+    // INDEX
+    public final IndexSBT.InsertPath indexInsertPath =
+        new IndexSBT.InsertPath();
+
     public SessionData(Database database, Session session) {
 
         this.database = database;
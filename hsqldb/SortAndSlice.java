@@ -69,6 +69,7 @@ public final class SortAndSlice {
     boolean            allDescending;
     public boolean     skipSort       = false;    // true when result can be used as is
     public boolean     skipFullResult = false;    // true when result can be sliced as is
+    public boolean     skipByPosition = false;    // true when offset rows can be skipped in the index
     public Index   index;
     public Table   primaryTable;
     public Index   primaryTableIndex;
@@ -320,6 +321,32 @@ public final class SortAndSlice {
                 skipFullResult = true;
             }
         }
+
+        if (skipFullResult && hasLimit()) {
+            setSkipByPosition(select);
+        }
+    }
+
+    /**
+     * When all the rows of the index are in the result, the rows before the
+     * offset are skipped with a single descent of the index.
+     */
+    private void setSkipByPosition(QuerySpecification select) {
+
+        if (select.rangeVariables.length != 1) {
+            return;
+        }
+
+        if (select.isDistinctSelect || select.isGrouped
+                || select.isAggregated) {
+            return;
+        }
+
+        if (select.queryCondition != null) {
+            return;
+        }
+
+        skipByPosition = select.rangeVariables[0].hasNoConditions();
     }
 
     public boolean prepareSpecial(Session session, QuerySpecification select) {
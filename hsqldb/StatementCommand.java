@@ -36,6 +36,7 @@ import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
 import org.hsqldb.index.Index;
 import org.hsqldb.lib.HashMappedList;
+import org.hsqldb.lib.HsqlArrayList;
 import org.hsqldb.lib.Iterator;
 import org.hsqldb.lib.OrderedHashSet;
 import org.hsqldb.lib.java.JavaSystem;
@@ -181,6 +182,7 @@ public class StatementCommand extends Statement {
                 break;
 
             case StatementTypes.SET_TABLE_SOURCE_HEADER :
+            case StatementTypes.SET_TABLE_COMPRESSED :
                 group    = StatementTypes.X_HSQLDB_SCHEMA_MANIPULATION;
                 isLogged = false;
                 break;
@@ -305,11 +307,20 @@ public class StatementCommand extends Statement {
             }
             case StatementTypes.DATABASE_CHECKPOINT : {
                 boolean defrag = ((Boolean) arguments[0]).booleanValue();
+                Integer millis = (Integer) arguments[1];
 
                 try {
                     session.checkAdmin();
                     session.checkDDLWrite();
-                    session.database.logger.checkpoint(session, defrag, true);
+
+                    if (millis == null) {
+                        session.database.logger.checkpoint(session, defrag,
+                                                           true);
+                    } else {
+                        session.database.logger.checkpoint(session, defrag,
+                                                           millis.intValue(),
+                                                           true);
+                    }
 
                     return Result.updateZeroResult;
                 } catch (HsqlException e) {
@@ -936,6 +947,12 @@ public class StatementCommand extends Statement {
                     Result result = Result.newDoubleColumnResult("TABLE_NAME",
                         "INFO");
 
+                    if (type == 3) {
+                        session.checkAdmin();
+                        checkIndexes(session, (HsqlName) arguments[0],
+                                     result);
+                    }
+
                     return result;
                 } catch (HsqlException e) {
                     return Result.newErrorResult(e, sql);
@@ -1069,6 +1086,39 @@ public class StatementCommand extends Statement {
                     return Result.newErrorResult(e, sql);
                 }
             }
+            case StatementTypes.SET_TABLE_COMPRESSED : {
+                try {
+                    HsqlName name       = (HsqlName) arguments[0];
+                    Boolean  compressed = (Boolean) arguments[1];
+                    byte[]   dictionary = (byte[]) arguments[2];
+                    Table table =
+                        session.database.schemaManager.getUserTable(name.name,
+                            name.schema.name);
+
+                    StatementSchema.checkSchemaUpdateAuthorisation(session,
+                            table.getSchemaName());
+
+                    if (!table.isCached()) {
+                        throw Error.error(ErrorCode.ACCESS_IS_DENIED);
+                    }
+
+                    table.setCompression(session, compressed.booleanValue(),
+                                         dictionary);
+
+                    // logged with the dictionary, which may have been created
+                    // from the rows of the table
+                    String ddl = table.getSQLForCompressed();
+
+                    if (ddl != null) {
+                        session.database.logger.writeOtherStatement(session,
+                                ddl);
+                    }
+
+                    return Result.updateZeroResult;
+                } catch (HsqlException e) {
+                    return Result.newErrorResult(e, sql);
+                }
+            }
             case StatementTypes.SET_TABLE_INDEX : {
                 try {
                     HsqlName name  = (HsqlName) arguments[0];
@@ -1325,6 +1375,51 @@ public class StatementCommand extends Statement {
         }
     }
 
+    /**
+     * Adds one row for each index of the table, or of all tables when the
+     * name is null, with the row count, depth and count of errors found by
+     * Index.checkIndex.
+     */
+    void checkIndexes(Session session, HsqlName name, Result result) {
+
+        HsqlArrayList tables;
+
+        if (name == null) {
+            tables = session.database.schemaManager.getAllTables(false);
+        } else {
+            tables = new HsqlArrayList();
+
+            tables.add(session.database.schemaManager.getUserTable(name.name,
+                    name.schema.name));
+        }
+
+        for (int i = 0; i < tables.size(); i++) {
+            Table table = (Table) tables.get(i);
+
+            if (table.isView() || table.isTemp()) {
+                continue;
+            }
+
+            PersistentStore store   = table.getRowStore(session);
+            Index[]         indexes = table.getIndexList();
+
+            for (int j = 0; j < indexes.length; j++) {
+                int[] depth  = new int[1];
+                int   errors = indexes[j].checkIndex(session, store, depth);
+                StringBuilder sb = new StringBuilder();
+
+                sb.append(indexes[j].getName().name).append(" rows ");
+                sb.append(indexes[j].size(session, store)).append(" depth ");
+                sb.append(depth[0]).append(" errors ");
+                sb.append(errors);
+                result.navigator.add(new Object[] {
+                    table.getName().getSchemaQualifiedStatementName(),
+                    sb.toString()
+                });
+            }
+        }
+    }
+
     Result getTruncateResult(Session session) {
 
         try {
@@ -61,6 +61,9 @@ import org.hsqldb.types.Types;
 // support for MERGE statement originally contributed by Justin Spadea (jzs9783@users dot sourceforge.net)
 public class StatementDML extends StatementDMQL {
 
+    /** number of new rows of a MEMORY table indexed together */
+    static final int insertBlockSize = 1024;
+
     Expression[] targets;
     boolean      isTruncate;
     boolean      isMergeDeleteFirst;
@@ -902,12 +905,34 @@ public class StatementDML extends StatementDMQL {
             newData.beforeFirst();
         }
 
+        Row[] rowBlock = null;
+        int   rowCount = 0;
+
+        // rows of MEMORY tables are indexed in blocks
+        if (baseTable.getTableType() == TableBase.MEMORY_TABLE
+                && newData.getSize() > 1) {
+            rowBlock = new Row[Math.min(newData.getSize(), insertBlockSize)];
+        }
+
         while (newData.next()) {
             Object[] data = newData.getCurrent();
 
             // for identity using global sequence
             session.sessionData.startRowProcessing();
-            baseTable.insertSingleRow(session, store, data, null);
+
+            if (rowBlock == null) {
+                baseTable.insertSingleRow(session, store, data, null);
+            } else {
+                rowBlock[rowCount++] = baseTable.newInsertRow(session, store,
+                        data);
+
+                if (rowCount == rowBlock.length) {
+                    session.addInsertActions(baseTable, store, rowBlock,
+                                             rowCount);
+
+                    rowCount = 0;
+                }
+            }
 
             if (updatableTableCheck != null) {
                 checkIterator.setCurrent(data);
@@ -926,6 +951,10 @@ public class StatementDML extends StatementDMQL {
             }
         }
 
+        if (rowCount > 0) {
+            session.addInsertActions(baseTable, store, rowBlock, rowCount);
+        }
+
         newData.beforeFirst();
 
         while (newData.next()) {
@@ -273,6 +273,7 @@ public interface StatementTypes {
     int SET_TABLE_NEW_TABLESPACE = 1159;
     int SET_TABLE_SET_TABLESPACE = 1160;
     int LOG_SCHEMA_STATEMENT     = 1161;
+    int SET_TABLE_COMPRESSED     = 1162;
 
     // hsqldb sql implementation
     int CONDITION = 1211;                         // element of IF
@@ -31,6 +31,8 @@
 
 package org.hsqldb;
 
+import java.util.Arrays;
+
 import org.hsqldb.HsqlNameManager.HsqlName;
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
@@ -42,6 +44,7 @@ import org.hsqldb.lib.HsqlArrayList;
 import org.hsqldb.lib.OrderedHashSet;
 import org.hsqldb.lib.OrderedIntHashSet;
 import org.hsqldb.lib.Set;
+import org.hsqldb.lib.StringConverter;
 import org.hsqldb.lib.StringUtil;
 import org.hsqldb.map.ValuePool;
 import org.hsqldb.navigator.RangeIterator;
@@ -53,6 +56,7 @@ import org.hsqldb.persist.DataSpaceManager;
 import org.hsqldb.persist.PersistentStore;
 import org.hsqldb.result.Result;
 import org.hsqldb.rights.Grantee;
+import org.hsqldb.rowio.RowCompressor;
 import org.hsqldb.types.BinaryData;
 import org.hsqldb.types.CharacterType;
 import org.hsqldb.types.Collation;
@@ -598,6 +602,92 @@ public class Table extends TableBase implements SchemaObject {
         return sb.toString();
     }
 
+    public String getSQLForCompressed() {
+
+        if (!isCached() || rowCompressor == null) {
+            return null;
+        }
+
+        StringBuffer sb = new StringBuffer(64);
+
+        sb.append(Tokens.T_SET).append(' ').append(Tokens.T_TABLE).append(' ');
+        sb.append(getName().getSchemaQualifiedStatementName());
+        sb.append(' ').append(Tokens.T_COMPRESSED).append(' ');
+        sb.append(isCompressed ? Tokens.T_TRUE
+                               : Tokens.T_FALSE);
+
+        if (rowCompressor.hasDictionary()) {
+            sb.append(' ').append(Tokens.T_DICTIONARY).append(' ');
+            sb.append(StringConverter.byteArrayToSQLHexString(
+                rowCompressor.getDictionary()));
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Turns compression of new rows on or off. The dictionary, if not null,
+     * is used only if the table has no dictionary yet. Otherwise, when
+     * compression is turned on for the first time, a dictionary is created
+     * from a sample of the rows. The dictionary is kept when compression is
+     * turned off, as existing rows may still be compressed with it.
+     */
+    public void setCompression(Session session, boolean compressed,
+                               byte[] dictionary) {
+
+        if (dictionary != null) {
+            if (dictionary.length > RowCompressor.DICTIONARY_MAX_SIZE) {
+                throw Error.error(ErrorCode.X_22023);
+            }
+
+            if (rowCompressor != null && rowCompressor.hasDictionary()) {
+                if (!Arrays.equals(rowCompressor.getDictionary(),
+                                        dictionary)) {
+                    throw Error.error(ErrorCode.X_22023);
+                }
+            } else {
+                rowCompressor = new RowCompressor(dictionary);
+            }
+        } else if (compressed && rowCompressor == null) {
+            rowCompressor = new RowCompressor(createDictionary(session));
+        }
+
+        isCompressed = compressed;
+    }
+
+    /**
+     * Creates a dictionary from up to 1000 rows evenly spaced in the
+     * primary index.
+     */
+    private byte[] createDictionary(Session session) {
+
+        PersistentStore store   = getRowStore(session);
+        Index           index   = getPrimaryIndex();
+        long            count   = store.elementCount();
+        int             samples = count < 1000 ? (int) count
+                                               : 1000;
+        HsqlArrayList   rows    = new HsqlArrayList();
+
+        for (int i = 0; i < samples; i++) {
+            RowIterator it = index.selectRow(session, store,
+                                             i * count / samples, false);
+
+            if (it.next()) {
+                Row row = it.getCurrentRow();
+
+                if (database.txManager.canRead(
+                        session, store, row, TransactionManager.ACTION_READ,
+                        null)) {
+                    rows.add(row.getData());
+                }
+            }
+
+            it.release();
+        }
+
+        return RowCompressor.createDictionary(rows, colTypes);
+    }
+
     public String[] getTriggerSQL() {
 
         HsqlArrayList list = new HsqlArrayList();
@@ -1246,7 +1336,9 @@ public class Table extends TableBase implements SchemaObject {
             tn.persistenceScope = persistenceScope;
         }
 
-        tn.tableSpace = tableSpace;
+        tn.tableSpace    = tableSpace;
+        tn.rowCompressor = rowCompressor;
+        tn.isCompressed  = isCompressed;
 
         for (int i = 0; i < columnCount; i++) {
             ColumnSchema col = (ColumnSchema) columnList.get(i);
@@ -2746,6 +2838,18 @@ public class Table extends TableBase implements SchemaObject {
         return row;
     }
 
+    /**
+     * Performs the checks of insertSingleRow and returns the new row, which
+     * is not indexed yet. Used for blocks of rows that are indexed together
+     * with Session.addInsertActions().
+     */
+    Row newInsertRow(Session session, PersistentStore store, Object[] data) {
+
+        generateAndCheckData(session, data);
+
+        return (Row) store.getNewCachedObject(session, data, true);
+    }
+
     /**
      * Multi-row insert method. Used for CREATE TABLE AS ... queries.
      */
@@ -40,6 +40,7 @@ import org.hsqldb.map.ValuePool;
 import org.hsqldb.navigator.RowIterator;
 import org.hsqldb.persist.DataSpaceManager;
 import org.hsqldb.persist.PersistentStore;
+import org.hsqldb.rowio.RowCompressor;
 import org.hsqldb.types.Type;
 
 /**
@@ -107,6 +108,10 @@ public class TableBase implements Cloneable {
     private boolean   isTransactional = true;
     boolean           hasLobColumn;
 
+    //
+    RowCompressor rowCompressor;
+    boolean       isCompressed;
+
     //
     TableBase() {}
 
@@ -150,6 +155,22 @@ public class TableBase implements Cloneable {
         return persistenceId;
     }
 
+    /**
+     * Returns the compressor with the dictionary of the table, or null. The
+     * compressor is kept when compression is turned off, as existing rows
+     * may still be compressed with it.
+     */
+    public RowCompressor getRowCompressor() {
+        return rowCompressor;
+    }
+
+    /**
+     * Returns true if new rows of the table are written compressed.
+     */
+    public boolean isCompressed() {
+        return isCompressed;
+    }
+
     public int getSpaceID() {
         return tableSpace;
     }
@@ -688,6 +688,7 @@ public class Tokens {
     public static final String T_DEADLOCK             = "DEADLOCK";
     public static final String T_DEFRAG               = "DEFRAG";
     public static final String T_DELAY                = "DELAY";
+    public static final String T_DICTIONARY           = "DICTIONARY";
     public static final String T_DIGEST               = "DIGEST";
     static final String        T_DUAL                 = "DUAL";
     static final String        T_DUPLICATE            = "DUPLICATE";
@@ -1632,6 +1633,7 @@ public class Tokens {
     static final int USE            = 668;
     static final int VARCHAR2       = 669;
     static final int WRITE_DELAY    = 670;
+    static final int DICTIONARY     = 671;
 
     //
     static final int        ACOS                       = 701;
@@ -2287,6 +2289,7 @@ public class Tokens {
         commandSet.put(T_DELAY, DELAY);
         commandSet.put(T_DESC, DESC);
         commandSet.put(T_DIAGNOSTICS, DIAGNOSTICS);
+        commandSet.put(T_DICTIONARY, DICTIONARY);
         commandSet.put(T_DIGEST, DIGEST);
         commandSet.put(T_DOMAIN, DOMAIN);
         commandSet.put(T_ENUM, ENUM);
@@ -73,6 +73,9 @@ public interface TransactionManager {
     void addInsertAction(Session session, Table table, PersistentStore store,
                          Row row, int[] changedColumns);
 
+    void addInsertActions(Session session, Table table,
+                          PersistentStore store, Row[] rows, int count);
+
     /**
      * add session to the end of queue when a transaction starts
      * (depending on isolation mode)
@@ -97,6 +100,25 @@ public interface TransactionManager {
 
     boolean isMVRows();
 
+    /**
+     * Returns true if there are row actions on the store that have not been
+     * merged. When false, all the rows indexed in the store are visible to
+     * all sessions and the order statistics of the indexes can be used.
+     * Must be called between lockRowActions and unlockRowActions, which
+     * must also enclose the use of the order statistics. The check uses the
+     * count of row actions kept by the store.
+     */
+    boolean hasRowActions(Session session, PersistentStore store);
+
+    /**
+     * Prevents rows from being indexed or removed from the store until
+     * unlockRowActions is called. Actions are counted before their rows are
+     * indexed and uncounted after their rows are finalised.
+     */
+    void lockRowActions(PersistentStore store);
+
+    void unlockRowActions(PersistentStore store);
+
     boolean isMVCC();
 
     boolean is2PL();
@@ -66,6 +66,10 @@ implements TransactionManager {
         return false;
     }
 
+    public boolean hasRowActions(Session session, PersistentStore store) {
+        return false;
+    }
+
     public boolean isMVCC() {
         return false;
     }
@@ -118,6 +122,8 @@ implements TransactionManager {
 
             adjustLobUsage(session);
             persistCommit(session);
+            uncountRowActions(session.rowActionList.getArray(), 0,
+                              session.rowActionList.size());
 
             session.isTransaction = false;
 
@@ -211,7 +217,7 @@ implements TransactionManager {
             action.store.rollbackRow(session, row, type, txModel);
         }
 
-        session.rowActionList.setSize(start);
+        removeRowActions(session, start);
     }
 
     public RowAction addDeleteAction(Session session, Table table,
@@ -224,7 +230,7 @@ implements TransactionManager {
             action = RowAction.addDeleteAction(session, table, row, colMap);
         }
 
-        session.rowActionList.add(action);
+        addRowAction(session, action);
         store.delete(session, row);
 
         row.rowAction = null;
@@ -255,7 +261,7 @@ implements TransactionManager {
             return;
         }
 
-        session.rowActionList.add(action);
+        addRowAction(session, action);
 
         row.rowAction = null;
     }
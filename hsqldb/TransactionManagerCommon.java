@@ -45,6 +45,7 @@ import org.hsqldb.lib.LongDeque;
 import org.hsqldb.lib.LongKeyHashMap;
 import org.hsqldb.lib.MultiValueHashMap;
 import org.hsqldb.lib.OrderedHashSet;
+import org.hsqldb.persist.PersistentStore;
 
 /**
  * Shared code for TransactionManager classes
@@ -295,6 +296,7 @@ class TransactionManagerCommon {
             RowAction action = (RowAction) list[i];
 
             action.store.postCommitAction(session, action);
+            action.store.addRowActionCount(-1);
         }
     }
 
@@ -1000,5 +1002,98 @@ class TransactionManagerCommon {
         waitedSessions.clear();
     }
 
+    public void lockRowActions(PersistentStore store) {
+        store.readLock();
+    }
+
+    public void unlockRowActions(PersistentStore store) {
+        store.readUnlock();
+    }
+
+    /**
+     * Adds the action to the transaction of the session. The action is
+     * counted in its store until it is rolled back, or finalised after the
+     * commit. An insert action is added before its row is indexed.
+     */
+    void addRowAction(Session session, RowAction action) {
+
+        action.store.addRowActionCount(1);
+        session.rowActionList.add(action);
+    }
+
+    /**
+     * Removes the actions from start in the transaction of the session,
+     * after they are rolled back, or when their rows were not indexed.
+     */
+    void removeRowActions(Session session, int start) {
+
+        int      limit = session.rowActionList.size();
+        Object[] list  = session.rowActionList.getArray();
+
+        uncountRowActions(list, start, limit);
+        session.rowActionList.setSize(start);
+    }
+
+    void uncountRowActions(Object[] list, int start, int limit) {
+
+        for (int i = start; i < limit; i++) {
+            RowAction action = (RowAction) list[i];
+
+            if (action != null) {
+                action.store.addRowActionCount(-1);
+            }
+        }
+    }
+
     public void abortAction(Session session) {}
+
+    /**
+     * Indexes a block of new rows together and adds their insert actions.
+     * If the store does not index blocks of rows, or one of the rows cannot
+     * be indexed, the rows are added one by one so that the failing row
+     * raises the same exception, or waits for the same session, as with a
+     * single row insert.
+     */
+    public void addInsertActions(Session session, Table table,
+                                 PersistentStore store, Row[] rows,
+                                 int count) {
+
+        boolean indexed;
+        boolean isListed = table.persistenceScope != Table.SCOPE_ROUTINE;
+        int     start    = session.rowActionList.size();
+
+        // actions are listed before the rows are indexed, for hasRowActions
+        if (isListed) {
+            for (int i = 0; i < count; i++) {
+                addRowAction(session, rows[i].rowAction);
+            }
+        }
+
+        try {
+            indexed = store.indexRows(session, rows, count);
+        } catch (HsqlException e) {
+            session.actionSet.clear();
+
+            indexed = false;
+        }
+
+        if (!indexed) {
+            removeRowActions(session, start);
+
+            for (int i = 0; i < count; i++) {
+                database.txManager.addInsertAction(session, table, store,
+                                                   rows[i], null);
+            }
+
+            return;
+        }
+
+        if (isListed && txModel != TransactionManager.LOCKS) {
+            return;
+        }
+
+        for (int i = 0; i < count; i++) {
+            rows[i].rowAction = null;
+        }
+    }
 }
@@ -75,6 +75,10 @@ implements TransactionManager {
         return true;
     }
 
+    public boolean hasRowActions(Session session, PersistentStore store) {
+        return store.hasRowActions();
+    }
+
     public boolean isMVCC() {
         return false;
     }
@@ -273,7 +277,7 @@ implements TransactionManager {
             }
         }
 
-        session.rowActionList.setSize(start);
+        removeRowActions(session, start);
     }
 
     public RowAction addDeleteAction(Session session, Table table,
@@ -308,7 +312,7 @@ implements TransactionManager {
             }
         }
 
-        session.rowActionList.add(action);
+        addRowAction(session, action);
 
         return action;
     }
@@ -328,15 +332,24 @@ implements TransactionManager {
                                      "null insert action ");
         }
 
-        store.indexRow(session, row);
-
         if (table.persistenceScope == Table.SCOPE_ROUTINE) {
+            store.indexRow(session, row);
+
             row.rowAction = null;
 
             return;
         }
 
-        session.rowActionList.add(action);
+        // the action is listed before the row is indexed, for hasRowActions
+        addRowAction(session, action);
+
+        try {
+            store.indexRow(session, row);
+        } catch (HsqlException e) {
+            removeRowActions(session, session.rowActionList.size() - 1);
+
+            throw e;
+        }
     }
 
 // functional unit - accessibility of rows
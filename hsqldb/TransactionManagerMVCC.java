@@ -89,6 +89,10 @@ implements TransactionManager {
         return true;
     }
 
+    public boolean hasRowActions(Session session, PersistentStore store) {
+        return store.hasRowActions();
+    }
+
     public boolean isMVCC() {
         return true;
     }
@@ -329,7 +333,7 @@ implements TransactionManager {
             }
         }
 
-        session.rowActionList.setSize(start);
+        removeRowActions(session, start);
     }
 
     public RowAction addDeleteAction(Session session, Table table,
@@ -403,7 +407,7 @@ implements TransactionManager {
             }
         }
 
-        session.rowActionList.add(action);
+        addRowAction(session, action);
 
         return action;
     }
@@ -423,9 +427,20 @@ implements TransactionManager {
                                      "TXManager - null insert action ");
         }
 
+        boolean isListed = table.persistenceScope != Table.SCOPE_ROUTINE;
+
+        // the action is listed before the row is indexed, for hasRowActions
+        if (isListed) {
+            addRowAction(session, action);
+        }
+
         try {
             store.indexRow(session, row);
         } catch (HsqlException e) {
+            if (isListed) {
+                removeRowActions(session, session.rowActionList.size() - 1);
+            }
+
             if (session.actionSet.isEmpty()) {
                 throw e;
             }
@@ -435,14 +450,10 @@ implements TransactionManager {
         }
 
         if (!redoAction) {
-            if (table.persistenceScope == Table.SCOPE_ROUTINE) {
+            if (!isListed) {
                 row.rowAction = null;
-
-                return;
             }
 
-            session.rowActionList.add(action);
-
             return;
         }
 
@@ -545,7 +556,7 @@ implements TransactionManager {
                 }
 
                 if (result) {
-                    session.rowActionList.add(row.rowAction);
+                    addRowAction(session, row.rowAction);
                 } else {
                     if (!session.actionSet.isEmpty()) {
                         Session current = ((RowActionBase) session.actionSet.get(0)).session;
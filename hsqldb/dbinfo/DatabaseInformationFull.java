@@ -178,6 +178,9 @@ extends org.hsqldb.dbinfo.DatabaseInformationMain {
             case SYSTEM_CACHEINFO :
                 return SYSTEM_CACHEINFO(session, store);
 
+            case SYSTEM_CHECKPOINTINFO :
+                return SYSTEM_CHECKPOINTINFO(session, store);
+
             case SYSTEM_COLUMN_SEQUENCE_USAGE :
                 return SYSTEM_COLUMN_SEQUENCE_USAGE(session, store);
 
@@ -438,6 +441,11 @@ extends org.hsqldb.dbinfo.DatabaseInformationMain {
      * FREE_BYTES          BIGINT   total bytes in available file allocation units
      * FREE_COUNT          BIGINT   total # of allocation units available
      * FREE_POS            BIGINT   largest file position allocated + 1
+     * FLUSH_BACKLOG       BIGINT   changed rows found by the last background flush
+     * FLUSH_ROW_COUNT     BIGINT   rows written by the background flush
+     * READ_AHEAD_ROW_COUNT BIGINT  rows read by index scan read-ahead
+     * OFF_HEAP_SIZE       BIGINT   bytes allocated for the off-heap tier
+     * OFF_HEAP_HIT_COUNT  BIGINT   rows read from the off-heap tier
      * </pre> <p>
      *
      * <b>Notes:</b> <p>
@@ -472,6 +480,11 @@ extends org.hsqldb.dbinfo.DatabaseInformationMain {
             addColumn(t, "CACHE_BYTES", CARDINAL_NUMBER);        // not null
             addColumn(t, "FILE_LOST_BYTES", CARDINAL_NUMBER);    // not null
             addColumn(t, "FILE_FREE_POS", CARDINAL_NUMBER);      // not null
+            addColumn(t, "FLUSH_BACKLOG", CARDINAL_NUMBER);      // not null
+            addColumn(t, "FLUSH_ROW_COUNT", CARDINAL_NUMBER);    // not null
+            addColumn(t, "READ_AHEAD_ROW_COUNT", CARDINAL_NUMBER);    // not null
+            addColumn(t, "OFF_HEAP_SIZE", CARDINAL_NUMBER);      // not null
+            addColumn(t, "OFF_HEAP_HIT_COUNT", CARDINAL_NUMBER);    // not null
 
             HsqlName name = HsqlNameManager.newInfoSchemaObjectName(
                 sysTableHsqlNames[SYSTEM_CACHEINFO].name, false,
@@ -490,6 +503,11 @@ extends org.hsqldb.dbinfo.DatabaseInformationMain {
         final int icache_length    = 4;
         final int ilost_bytes      = 5;
         final int ifree_pos        = 6;
+        final int iflush_backlog   = 7;
+        final int iflush_row_count = 8;
+        final int iread_ahead_count = 9;
+        final int ioff_heap_size    = 10;
+        final int ioff_heap_hits    = 11;
 
         //
         DataFileCache cache = null;
@@ -551,6 +569,14 @@ extends org.hsqldb.dbinfo.DatabaseInformationMain {
                 ValuePool.getLong(cache.getTotalCachedBlockSize());
             row[ilost_bytes] = ValuePool.getLong(cache.getLostBlockSize());
             row[ifree_pos]   = ValuePool.getLong(cache.getFileFreePos());
+            row[iflush_backlog] = ValuePool.getLong(cache.getFlushBacklog());
+            row[iflush_row_count] =
+                ValuePool.getLong(cache.getFlushRowCount());
+            row[iread_ahead_count] =
+                ValuePool.getLong(cache.getReadAheadRowCount());
+            row[ioff_heap_size] = ValuePool.getLong(cache.getOffHeapSize());
+            row[ioff_heap_hits] =
+                ValuePool.getLong(cache.getOffHeapHitCount());
 
             t.insertSys(session, store, row);
         }
@@ -558,6 +584,78 @@ extends org.hsqldb.dbinfo.DatabaseInformationMain {
         return t;
     }
 
+    /**
+     * Retrieves a <code>Table</code> object with one row describing the
+     * checkpoints of the database. <p>
+     *
+     * <pre class="SqlCodeExample">
+     * CHECKPOINT_COUNT    BIGINT   checkpoints completed since the database was opened
+     * CHECKPOINT_MILLIS   BIGINT   duration of the last completed checkpoint
+     * BLOCKING_MILLIS     BIGINT   time the last checkpoint blocked the other sessions
+     * IN_PROGRESS         YES_OR_NO  a fuzzy checkpoint is writing the .script file
+     * ROW_COUNT           BIGINT   rows written by the current or last fuzzy checkpoint
+     * ROW_TOTAL           BIGINT   rows of MEMORY tables at the start of that checkpoint
+     * </pre> <p>
+     *
+     * @return a description of the checkpoints of the database
+     */
+    Table SYSTEM_CHECKPOINTINFO(Session session, PersistentStore store) {
+
+        Table t = sysTables[SYSTEM_CHECKPOINTINFO];
+
+        if (t == null) {
+            t = createBlankTable(sysTableHsqlNames[SYSTEM_CHECKPOINTINFO]);
+
+            addColumn(t, "CHECKPOINT_COUNT", CARDINAL_NUMBER);     // not null
+            addColumn(t, "CHECKPOINT_MILLIS", CARDINAL_NUMBER);    // not null
+            addColumn(t, "BLOCKING_MILLIS", CARDINAL_NUMBER);      // not null
+            addColumn(t, "IN_PROGRESS", YES_OR_NO);                // not null
+            addColumn(t, "ROW_COUNT", CARDINAL_NUMBER);            // not null
+            addColumn(t, "ROW_TOTAL", CARDINAL_NUMBER);            // not null
+
+            HsqlName name = HsqlNameManager.newInfoSchemaObjectName(
+                sysTableHsqlNames[SYSTEM_CHECKPOINTINFO].name, false,
+                SchemaObject.INDEX);
+
+            t.createPrimaryKeyConstraint(name, new int[]{ 0 }, true);
+
+            return t;
+        }
+
+        // column number mappings
+        final int icheckpoint_count  = 0;
+        final int icheckpoint_millis = 1;
+        final int iblocking_millis   = 2;
+        final int iin_progress       = 3;
+        final int irow_count         = 4;
+        final int irow_total         = 5;
+
+        //
+        Object[] row;
+
+        if (!session.isAdmin()) {
+            return t;
+        }
+
+        row = t.getEmptyRowData();
+        row[icheckpoint_count] =
+            ValuePool.getLong(database.logger.getCheckpointCount());
+        row[icheckpoint_millis] =
+            ValuePool.getLong(database.logger.getCheckpointMillis());
+        row[iblocking_millis] =
+            ValuePool.getLong(database.logger.getCheckpointBlockingMillis());
+        row[iin_progress] = database.logger.isCheckpointFuzzy() ? Tokens.T_YES
+                                                                : Tokens.T_NO;
+        row[irow_count] =
+            ValuePool.getLong(database.logger.getCheckpointRowCount());
+        row[irow_total] =
+            ValuePool.getLong(database.logger.getCheckpointRowTotal());
+
+        t.insertSys(session, store, row);
+
+        return t;
+    }
+
     Table SYSTEM_COLUMN_SEQUENCE_USAGE(Session session,
                                        PersistentStore store) {
 
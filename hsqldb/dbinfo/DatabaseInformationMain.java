@@ -185,6 +185,7 @@ class DatabaseInformationMain extends DatabaseInformation {
 
             // build the set of non-cached tables
             nonCachedTablesSet.add("SYSTEM_CACHEINFO");
+            nonCachedTablesSet.add("SYSTEM_CHECKPOINTINFO");
             nonCachedTablesSet.add("SYSTEM_SESSIONINFO");
             nonCachedTablesSet.add("SYSTEM_SESSIONS");
             nonCachedTablesSet.add("SYSTEM_PROPERTIES");
@@ -54,7 +54,7 @@ public interface Index extends SchemaObject {
     //
     double minimumSelectivity = 16;
     double cachedFactor       = 8;
-    int    probeDepth         = 4;
+    int    probeSamples       = 64;
 
     //
     Index[]    emptyArray    = new Index[]{};
@@ -148,15 +148,32 @@ public interface Index extends SchemaObject {
 
     boolean isEmpty(PersistentStore store);
 
-    int checkIndex(Session session, PersistentStore store);
+    /**
+     * Returns the count of errors found in the index structure and, in
+     * depth[0], the count of nodes on the longest path from the root.
+     */
+    int checkIndex(Session session, PersistentStore store, int[] depth);
 
     /**
      * Insert a node into the index
      */
     void insert(Session session, PersistentStore store, Row row);
 
+    /**
+     * Inserts a block of new rows together. Either all or none of the rows
+     * are in the index on return.
+     */
+    void insert(Session session, PersistentStore store, Row[] rows,
+                int count);
+
     void delete(Session session, PersistentStore store, Row row);
 
+    /**
+     * Builds an empty index from all the rows of the table at once. The
+     * caller holds the write lock on the store.
+     */
+    void build(Session session, PersistentStore store, Row[] rows);
+
     boolean existsParent(Session session, PersistentStore store,
                          Object[] rowdata, int[] rowColMap);
 
@@ -223,6 +240,33 @@ public interface Index extends SchemaObject {
     RowIterator lastRow(Session session, PersistentStore store,
                         int distinctCount, boolean[] map);
 
+    /**
+     * Returns the row at the given position in the index order, counting
+     * from the first or the last row. Only valid when all the rows in the
+     * index are visible to the session.
+     *
+     * @param position zero based position
+     * @param reversed count from the last row
+     * @return iterator positioned at the row
+     */
+    RowIterator selectRow(Session session, PersistentStore store,
+                          long position, boolean reversed);
+
+    /**
+     * Returns the count of rows from the first row found with the lower
+     * bound to the last row found with the upper bound. Only valid when all
+     * the rows in the index are visible to the session.
+     *
+     * @param lo lower bound with the same column mapping as this index
+     * @param hi upper bound with the same column mapping as this index
+     * @param fieldCount count of columns in the bounds
+     * @param opType comparison type for the lower bound
+     * @param opTypeEnd comparison type for the upper bound
+     * @return count of rows
+     */
+    long countRange(Session session, PersistentStore store, Object[] lo,
+                    Object[] hi, int fieldCount, int opType, int opTypeEnd);
+
     /**
      * Compares two table rows based on the columns of this index. The rowColMap
      * parameter specifies which columns of the other table are to be compared
@@ -70,7 +70,11 @@
 
 package org.hsqldb.index;
 
+import java.util.Arrays;
+import java.util.Comparator;
+
 import org.hsqldb.Constraint;
+import org.hsqldb.HsqlException;
 import org.hsqldb.HsqlNameManager.HsqlName;
 import org.hsqldb.OpTypes;
 import org.hsqldb.Row;
@@ -83,9 +87,12 @@ import org.hsqldb.Tokens;
 import org.hsqldb.TransactionManager;
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
+import org.hsqldb.lib.ArraySort;
 import org.hsqldb.lib.ArrayUtil;
+import org.hsqldb.lib.LongDeque;
 import org.hsqldb.lib.OrderedHashSet;
 import org.hsqldb.navigator.RowIterator;
+import org.hsqldb.persist.DataFileCache;
 import org.hsqldb.persist.PersistentStore;
 import org.hsqldb.rights.Grantee;
 import org.hsqldb.types.Type;
@@ -380,125 +387,52 @@ public class IndexSBT implements Index {
     	return store.elementCountUnique(this);
     }
 
+    /**
+     * Returns the average count of rows for each distinct value of the
+     * leading columns of the index, for 1 to the count of index columns.
+     * Pairs of adjacent rows are sampled at evenly spaced positions over the
+     * whole index using the subtree sizes, and the count of distinct values
+     * is estimated from the fraction of pairs that differ.
+     */
     public double[] searchCost(Session session, PersistentStore store) {
 
-        boolean probeDeeper = false;
-        int counter = 1;
         double[] changes = new double[colIndex.length];
-        int depth = 0;
-        int[] depths = new int[1];
 
         store.readLock();
 
         try {
-            NodeSBT node = getAccessor(store);
-            NodeSBT temp = node;
+            NodeSBT root = getAccessor(store);
 
-            if (node == null) {
+            if (root == null) {
                 return changes;
             }
 
-            while (true) {
-                node = temp;
-                temp = node.getLeft(store);
-
-                if (temp == null) {
-                    break;
-                }
-
-                if (depth == Index.probeDepth) {
-                    probeDeeper = true;
-
-                    break;
-                }
-
-                depth++;
-            }
-
-            while (true) {
-                temp = next(store, node, depth, probeDepth, depths);
-                depth = depths[0];
+            long rowCount = root.getBalance(store);
+            long samples  = Math.min(rowCount - 1, Index.probeSamples);
 
-                if (temp == null) {
-                    break;
-                }
+            for (long i = 0; i < samples; i++) {
+                NodeSBT node = select(store, i * (rowCount - 1) / samples);
+                NodeSBT temp = next(store, node);
 
                 compareRowForChange(session, node.getData(store),
                         temp.getData(store), changes);
-
-                node = temp;
-
-                counter++;
-            }
-
-            if (probeDeeper) {
-                double[] factors = new double[colIndex.length];
-                int extras = probeFactor(session, store, factors, true)
-                        + probeFactor(session, store, factors, false);
-
-                for (int i = 0; i < colIndex.length; i++) {
-                    factors[i] /= 2.0;
-
-                    for (int j = 0; j < factors[i]; j++) {
-                        changes[i] *= 2;
-                    }
-                }
             }
 
-            long rowCount = store.elementCount();
-
             for (int i = 0; i < colIndex.length; i++) {
-                if (changes[i] == 0) {
-                    changes[i] = 1;
-                }
-
-                changes[i] = rowCount / changes[i];
+                changes[i] = changes[i] == 0 ? rowCount
+                        : samples / changes[i];
 
                 if (changes[i] < 2) {
                     changes[i] = 2;
                 }
             }
 
-/*
-            StringBuffer s = new StringBuffer();
-
-            s.append("count " + rowCount + " columns " + colIndex.length
-                     + " selectivity " + changes[0]);
-            System.out.println(s);
-*/
             return changes;
         } finally {
         	store.readUnlock();
         }
     }
 
-    int probeFactor(Session session, PersistentStore store, double[] changes,
-                    boolean left) {
-
-        int depth = 0;
-        NodeSBT x = getAccessor(store);
-        NodeSBT n = x;
-
-        if (x == null) {
-            return 0;
-        }
-
-        while (n != null) {
-            x = n;
-            n = left ? x.getLeft(store)
-                    : x.getRight(store);
-
-            depth++;
-
-            if (depth > probeDepth && n != null) {
-                compareRowForChange(session, x.getData(store),
-                        n.getData(store), changes);
-            }
-        }
-
-        return depth - probeDepth;
-    }
-
     public long getNodeCount(Session session, PersistentStore store) {
 
         long count = 0;
@@ -582,11 +516,12 @@ public class IndexSBT implements Index {
         return x;
     }
 
-    public int checkIndex(Session session, PersistentStore store) {
+    public int checkIndex(Session session, PersistentStore store,
+                          int[] depth) {
 
-    	int errors = 0;
-    	
-    	store.readLock();
+        int errors = 0;
+
+        store.readLock();
 
         try {
             NodeSBT p = getAccessor(store);
@@ -594,71 +529,176 @@ public class IndexSBT implements Index {
 
             while (p != null) {
                 f = p;
-
-                checkNodes(store, p);
-
                 p = p.getLeft(store);
             }
 
-            p = f;
-
             while (f != null) {
-            	errors += checkNodes(store, f);
-            	
-            	NodeSBT fnext = next(store, f);
-            	
-            	if (fnext != null) {
-            		int c = compareRowForInsertOrDelete(session,
-            				fnext.getRow(store),
-            				f.getRow(store), true,
-            				0);
-            		if (c <= 0) {
-            			if (errors < 10) {
-            				System.out.println("broken index order " + getName().name);
-            			}
-            			errors++;
-            		}
-            	}
+                errors = checkNodes(store, f, errors);
+
+                NodeSBT fnext = next(store, f);
+
+                if (fnext != null) {
+                    int c = compareRowForInsertOrDelete(session,
+                                                        fnext.getRow(store),
+                                                        f.getRow(store), true,
+                                                        0);
 
-            	f = fnext;
+                    if (c <= 0) {
+                        errors = reportError("order", errors);
+                    }
+                }
+
+                f = fnext;
             }
+
+            errors = checkSizes(store, depth, errors);
         } finally {
-        	store.readUnlock();
+            store.readUnlock();
         }
-        
+
         if (errors > 0) {
-        	System.out.println("total errors " + getName().name);
+            table.database.logger.logWarningEvent("broken index - total "
+                                                  + errors + " errors "
+                                                  + getName().name, null);
         }
-        
+
         return errors;
     }
 
-    int checkNodes(PersistentStore store, NodeSBT p) {
-    	
-    	NodeSBT l      = p.nLeft;
-    	NodeSBT r      = p.nRight;
-    	int     errors = 0;
+    /**
+     * Logs the first few errors found by checkIndex and returns the
+     * incremented count of errors.
+     */
+    private int reportError(String message, int errors) {
+
+        if (errors < 10) {
+            table.database.logger.logWarningEvent("broken index - "
+                                                  + message + " "
+                                                  + getName().name, null);
+        }
+
+        return errors + 1;
+    }
+
+    /**
+     * Checks that the size of each subtree is the sum of the sizes of its
+     * children plus one, that no child subtree is smaller than a subtree of
+     * its sibling and that the depth of the tree is within the bound for
+     * its size. The depth is returned in depth[0]. Returns the count of
+     * errors added to the count of earlier errors.
+     */
+    int checkSizes(PersistentStore store, int[] depth, int errors) {
+
+        NodeSBT root = getAccessor(store);
+
+        depth[0] = 0;
+
+        if (root == null) {
+            return errors;
+        }
+
+        // the tree is walked with a stack to survive a broken height
+        NodeSBT[] nodes  = new NodeSBT[64];
+        int[]     depths = new int[64];
+        int       count  = 0;
+
+        nodes[count]    = root;
+        depths[count++] = 1;
+
+        while (count > 0) {
+            NodeSBT x = nodes[--count];
+            int     d = depths[count];
+
+            nodes[count] = null;
+
+            if (d > depth[0]) {
+                depth[0] = d;
+            }
+
+            NodeSBT l     = x.getLeft(store);
+            NodeSBT r     = x.getRight(store);
+            int     lSize = getSize(store, l);
+            int     rSize = getSize(store, r);
+
+            if (x.getBalance(store) != lSize + rSize + 1) {
+                errors = reportError("size", errors);
+            }
+
+            if (r != null && (lSize < getSize(store, r.getLeft(store))
+                              || lSize < getSize(store, r.getRight(store)))) {
+                errors = reportError("balance", errors);
+            }
+
+            if (l != null && (rSize < getSize(store, l.getLeft(store))
+                              || rSize < getSize(store, l.getRight(store)))) {
+                errors = reportError("balance", errors);
+            }
+
+            if (count + 2 > nodes.length) {
+                nodes  = (NodeSBT[]) ArrayUtil.resizeArray(nodes, count * 2);
+                depths = (int[]) ArrayUtil.resizeArray(depths, count * 2);
+            }
+
+            if (l != null) {
+                nodes[count]    = l;
+                depths[count++] = d + 1;
+            }
+
+            if (r != null) {
+                nodes[count]    = r;
+                depths[count++] = d + 1;
+            }
+        }
+
+        // the smallest size balanced tree of depth d + 1 has as many nodes
+        // as the smallest trees of depth d and d - 1 plus one
+        long size     = root.getBalance(store);
+        long minSize  = 1;
+        long lastSize = 0;
+        int  maxDepth = 0;
+
+        while (minSize <= size) {
+            long next = minSize + lastSize + 1;
+
+            lastSize = minSize;
+            minSize  = next;
+
+            maxDepth++;
+        }
+
+        if (depth[0] > maxDepth) {
+            errors = reportError("depth " + depth[0], errors);
+        }
+
+        return errors;
+    }
+
+    private static int getSize(PersistentStore store, NodeSBT x) {
+        return x == null ? 0
+                         : x.getBalance(store);
+    }
+
+    int checkNodes(PersistentStore store, NodeSBT p, int errors) {
+
+        NodeSBT l = p.nLeft;
+        NodeSBT r = p.nRight;
 
         if (l != null && l.getBalance(store) == -2) {
-            System.out.print("broken index - deleted");
-            errors++;
+            errors = reportError("deleted", errors);
         }
 
         if (r != null && r.getBalance(store) == -2) {
-            System.out.print("broken index -deleted");
-            errors++;
+            errors = reportError("deleted", errors);
         }
 
         if (l != null && !p.equals(l.getParent(store))) {
-            System.out.print("broken index - no parent");
-            errors++;
+            errors = reportError("no parent", errors);
         }
 
         if (r != null && !p.equals(r.getParent(store))) {
-            System.out.print("broken index - no parent");
-            errors++;
+            errors = reportError("no parent", errors);
         }
-        
+
         return errors;
     }
 
@@ -851,7 +891,9 @@ public class IndexSBT implements Index {
     }
 
     /**
-     * Insert a node into the index
+     * Insert a node into the index. The nodes on the search path are
+     * recorded in the session's InsertPath, then the sizes are updated and
+     * the tree is balanced from the new node up to the root.
      */
     public void insert(Session session, PersistentStore store, Row row) {
 
@@ -862,82 +904,213 @@ public class IndexSBT implements Index {
         boolean compareRowId = !isUnique || hasNulls(session, row.getData());
 
         n = getAccessor(store);
-        x = n;
 
+        if (n == null) {
+            n = ((RowSBT) row).getNode(position);
+            store.setAccessor(this, n);
+            n.setBalance(store, 1);
+            return;
+        }
+
+        InsertPath path = session == null ? new InsertPath()
+                : session.sessionData.indexInsertPath;
+        int depth = 0;
+
+        while (true) {
+            Row currentRow = n.getRow(store);
+
+            compare = compareRowForInsertOrDelete(session, row, currentRow,
+                    compareRowId, 0);
+
+            // after the first match and check, all compares are with row id
+            if (compare == 0 && session != null && !compareRowId
+                    && session.database.txManager.isMVRows()) {
+                if (!isEqualReadable(session, store, n)) {
+                    compareRowId = true;
+                    compare = compareRowForInsertOrDelete(session, row,
+                            currentRow, compareRowId, colIndex.length);
+                }
+            }
+
+            if (compare == 0) {
+                path.clear(depth);
+
+                throw getUniqueException(row);
+            }
+
+            isleft = compare < 0;
+
+            path.add(depth++, n, isleft);
+
+            x = n;
+            n = isleft ? x.getLeft(store)
+                    : x.getRight(store);
 
             if (n == null) {
-                n = ((RowSBT) row).getNode(position);
-                store.setAccessor(this, n);
-                n.setBalance(store, 1);
-                return;
+                break;
             }
+        }
 
-            insert_(session, store, row, n, compareRowId);
+        n = ((RowSBT) row).getNode(position);
+        n.setBalance(store, 1);
+        x.set(store, isleft, n);
 
-    }
+        NodeSBT[] nodes = path.nodes;
 
-    void insert_(Session session, PersistentStore store, Row row, NodeSBT n, boolean compareRowId) {
-        if (n == null) {
-            return;
+        // sizes are updated only after the new node has been linked
+        for (int i = depth - 1; i >= 0; i--) {
+            nodes[i] = nodes[i].setBalance(store,
+                    nodes[i].getBalance(store) + 1);
+        }
+
+        for (int i = depth - 1; i >= 0; i--) {
+            maintain(store, nodes[i], !path.isLeft[i]);
         }
 
-        Row currentRow = n.getRow(store);
+        path.clear(depth);
+    }
+
+    /**
+     * Inserts a block of new rows in index order. The order of the rows in
+     * the array is changed. If one row cannot be inserted, the rows that
+     * were inserted before it are deleted and none of the rows is in the
+     * index on return.
+     */
+    public void insert(Session session, PersistentStore store, Row[] rows,
+                       int count) {
+
+        sortRows(session, rows, count);
 
-        int compare = compareRowForInsertOrDelete(session, row,
-                currentRow,
-                compareRowId, 0);
+        int i = 0;
 
-        if (compare == 0 && session != null && !compareRowId
-                && session.database.txManager.isMVRows()) {
-            if (!isEqualReadable(session, store, n)) {
-                compareRowId = true;
-                compare = compareRowForInsertOrDelete(session, row,
-                        currentRow,
-                        compareRowId,
-                        colIndex.length);
+        try {
+            for (; i < count; i++) {
+                insert(session, store, rows[i]);
             }
+        } catch (HsqlException e) {
+            while (i-- > 0) {
+                delete(session, store, rows[i]);
+            }
+
+            throw e;
         }
+    }
 
-        if (compare == 0) {
-            Constraint c = null;
+    /**
+     * Sorts the first count rows of the array in index order, using the
+     * row id for rows with equal keys.
+     */
+    void sortRows(final Session session, Row[] rows, int count) {
 
-            if (isConstraint) {
-                c = ((Table) table).getUniqueConstraintForIndex(this);
-            }
+        ArraySort.sort(rows, 0, count, new Comparator<Row>() {
 
-            if (c == null) {
-                throw Error.error(ErrorCode.X_23505,
-                        name.statementName);
-            } else {
-                throw c.getException(row.getData());
+            public int compare(Row a, Row b) {
+                return compareRowForInsertOrDelete(session, a, b, true, 0);
             }
+        });
+    }
+
+    HsqlException getUniqueException(Row row) {
+
+        Constraint c = null;
+
+        if (isConstraint) {
+            c = ((Table) table).getUniqueConstraintForIndex(this);
+        }
+
+        if (c == null) {
+            return Error.error(ErrorCode.X_23505, name.statementName);
+        } else {
+            return c.getException(row.getData());
         }
+    }
 
-        n.setBalance(store, n.getBalance(store) + 1);
+    /**
+     * Builds the tree of an empty index from all the rows of the table. The
+     * rows are sorted once, then the middle row of each range becomes the
+     * root of the subtree for the range, which gives sibling subtrees that
+     * differ in size by at most one. The caller holds the write lock on the
+     * store, and the indexes of a store can be built by separate threads.
+     */
+    public void build(Session session, PersistentStore store, Row[] rows) {
 
-        if (compare < 0) {
-            NodeSBT l = n.getLeft(store);
-            if (l == null) {
-                l = ((RowSBT) row).getNode(position);
-                l.setBalance(store, 1);
-                n.setLeft(store, l);
-                l.setParent(store, n);
-            } else {
-                insert_(session, store, row, l, compareRowId);
+        if (getAccessor(store) != null) {
+            throw Error.runtimeError(ErrorCode.U_S0500, "IndexSBT");
+        }
+
+        sortRows(session, rows, rows.length);
+
+        if (isUnique) {
+            for (int i = 1; i < rows.length; i++) {
+                if (!hasNulls(session, rows[i].getData())
+                        && compareRowForInsertOrDelete(session, rows[i],
+                            rows[i - 1], false, 0) == 0) {
+                    throw getUniqueException(rows[i]);
+                }
             }
-        } else {
-            NodeSBT r = n.getRight(store);
-            if (r == null) {
-                r = ((RowSBT) row).getNode(position);
-                r.setBalance(store, 1);
-                n.setRight(store, r);
-                r.setParent(store, n);
-            } else {
-                insert_(session, store, row, r, compareRowId);
+        }
+
+        NodeSBT root = build(store, rows, 0, rows.length);
+
+        store.setAccessor(this, root);
+    }
+
+    /**
+     * Links the nodes for the rows from position from (inclusive) to
+     * position to (exclusive) and returns the root node of the subtree.
+     */
+    private NodeSBT build(PersistentStore store, Row[] rows, int from,
+                          int to) {
+
+        if (from == to) {
+            return null;
+        }
+
+        int     mid = (from + to) >>> 1;
+        NodeSBT l   = build(store, rows, from, mid);
+        NodeSBT r   = build(store, rows, mid + 1, to);
+        NodeSBT n   = ((RowSBT) rows[mid]).getNode(position);
+
+        n = n.setBalance(store, to - from);
+
+        if (l != null) {
+            n = n.setLeft(store, l);
+
+            l.setParent(store, n);
+        }
+
+        if (r != null) {
+            n = n.setRight(store, r);
+
+            r.setParent(store, n);
+        }
+
+        return n;
+    }
+
+    /**
+     * Reusable record of the nodes on the search path of an insert and the
+     * side taken at each node.
+     */
+    public static final class InsertPath {
+
+        NodeSBT[] nodes  = new NodeSBT[64];
+        boolean[] isLeft = new boolean[64];
+
+        void add(int depth, NodeSBT node, boolean left) {
+
+            if (depth == nodes.length) {
+                nodes  = (NodeSBT[]) ArrayUtil.resizeArray(nodes, depth * 2);
+                isLeft = (boolean[]) ArrayUtil.resizeArray(isLeft, depth * 2);
             }
+
+            nodes[depth]  = node;
+            isLeft[depth] = left;
         }
 
-        maintain(store, n, compare >= 0);
+        void clear(int depth) {
+            ArrayUtil.clearArray(ArrayUtil.CLASS_CODE_OBJECT, nodes, 0, depth);
+        }
     }
 
     public void delete(Session session, PersistentStore store, Row row) {
@@ -1048,16 +1221,21 @@ public class IndexSBT implements Index {
 
             x.delete();
 
+            // the subtree sizes of all ancestors are used for selection
+            for (x = n; x != null; x = x.getParent(store)) {
+                x = x.setBalance(store, x.getBalance(store) - 1);
+            }
+
+            // the sibling subtree of the deleted node may now be too large
             while (n != null) {
-                NodeSBT l = x.getLeft(store);
-                NodeSBT r = x.getRight(store);
+                NodeSBT p        = n.getParent(store);
+                boolean fromLeft = n.isFromLeft(store);
 
-                int lSize = (l == null) ? 0 : l.getBalance(store);
-                int rSize = (r == null) ? 0 : r.getBalance(store);
-                x.setBalance(store, lSize + rSize + 1);
-                n = x.getParent(store);
+                maintain(store, n, isleft);
+
+                isleft = fromLeft;
+                n      = p;
             }
-       
     }
 
     public boolean existsParent(Session session, PersistentStore store,
@@ -1100,6 +1278,32 @@ public class IndexSBT implements Index {
                 false, reversed);
     }
 
+    /**
+     * As above, but the search starts from the node held in the finger when
+     * the finger was set by an earlier search of this index. The finger is
+     * updated for the next search.
+     *
+     * @param finger finger object of the iterator
+     * @return iterator
+     */
+    public RowIterator findFirstRow(Session session, PersistentStore store,
+                                    Object[] rowdata, int matchCount,
+                                    int distinctCount, int compareType,
+                                    boolean reversed, boolean[] map,
+                                    Finger finger) {
+
+        NodeSBT node = findNode(session, store, rowdata, defaultColMap,
+                matchCount, compareType,
+                TransactionManager.ACTION_READ, reversed, finger);
+
+        if (node == null) {
+            return emptyIterator;
+        }
+
+        return new IndexRowIterator(session, store, this, node, distinctCount,
+                false, reversed);
+    }
+
     /**
      * Return the first node equal to the rowdata object.
      * The rowdata has the same column mapping as this table.
@@ -1277,53 +1481,166 @@ public class IndexSBT implements Index {
     }
 
     /**
-     * Returns the node after the given one
+     * Returns the row at the given position in the index order, counting
+     * from the first row, or from the last row when reversed. The position
+     * is found with one descent using the subtree sizes of the nodes. All
+     * rows in the index are counted, therefore the caller must check there
+     * are no rows that are not visible to the session.
+     *
+     * @param session  session object
+     * @param store    store object
+     * @param position zero based position
+     * @param reversed count from the last row
+     * @return iterator positioned at the row
      */
-    NodeSBT next(Session session, PersistentStore store, NodeSBT x,
-                 int distinctCount) {
-
-        if (x == null) {
-            return null;
-        }
+    public RowIterator selectRow(Session session, PersistentStore store,
+                                 long position, boolean reversed) {
 
-        if (distinctCount != 0) {
-            return findDistinctNode(session, store, x, distinctCount, false);
-        }
+        store.readLock();
 
-        while (true) {
-            x = next(store, x);
+        try {
+            NodeSBT x = getAccessor(store);
 
-            if (x == null) {
-                return x;
+            if (x == null || position < 0) {
+                return emptyIterator;
             }
 
-            if (session == null) {
-                return x;
+            if (reversed) {
+                position = x.getBalance(store) - 1 - position;
             }
 
-            Row row = x.getRow(store);
+            x = select(store, position);
 
-            if (session.database.txManager.canRead(
-                    session, store, row, TransactionManager.ACTION_READ,
-                    null)) {
-                return x;
+            if (x == null) {
+                return emptyIterator;
             }
+
+            return new IndexRowIterator(session, store, this, x, 0, false,
+                                        reversed);
+        } finally {
+            store.readUnlock();
         }
     }
 
-    NodeSBT last(Session session, PersistentStore store, NodeSBT x,
-                 int distinctCount) {
+    /**
+     * Returns the count of rows between the first row found with the lower
+     * bound and the last row found with the upper bound. The bounds have
+     * the same column mapping as this index and are searched in the same
+     * way as in findFirstRow. The positions of the two rows are found with
+     * the subtree sizes, therefore the caller must check there are no rows
+     * that are not visible to the session.
+     *
+     * @param session    session object
+     * @param store      store object
+     * @param lo         lower bound data
+     * @param hi         upper bound data
+     * @param fieldCount count of columns in the bounds
+     * @param opType     comparison type for the lower bound
+     * @param opTypeEnd  comparison type for the upper bound
+     * @return count of rows
+     */
+    public long countRange(Session session, PersistentStore store,
+                           Object[] lo, Object[] hi, int fieldCount,
+                           int opType, int opTypeEnd) {
+
+        store.readLock();
+
+        try {
+            NodeSBT first = findNode(session, store, lo, defaultColMap,
+                                     fieldCount, opType,
+                                     TransactionManager.ACTION_READ, false);
+
+            if (first == null) {
+                return 0;
+            }
+
+            NodeSBT last = findNode(session, store, hi, defaultColMap,
+                                    fieldCount, opTypeEnd,
+                                    TransactionManager.ACTION_READ, true);
+
+            if (last == null) {
+                return 0;
+            }
+
+            long count = rank(store, last) - rank(store, first) + 1;
+
+            return count < 0 ? 0
+                             : count;
+        } finally {
+            store.readUnlock();
+        }
+    }
+
+    /**
+     * Returns the zero based position of the node in the index order.
+     */
+    long rank(PersistentStore store, NodeSBT x) {
+
+        NodeSBT l    = x.getLeft(store);
+        long    rank = l == null ? 0
+                                 : l.getBalance(store);
+
+        while (true) {
+            NodeSBT p = x.getParent(store);
+
+            if (p == null) {
+                break;
+            }
+
+            if (p.isRight(store, x)) {
+                l    = p.getLeft(store);
+                rank += l == null ? 1
+                                  : l.getBalance(store) + 1;
+            }
+
+            x = p;
+        }
+
+        return rank;
+    }
+
+    /**
+     * Returns the node at the given zero based position in the index order,
+     * or null if the position is out of range.
+     */
+    NodeSBT select(PersistentStore store, long position) {
+
+        NodeSBT x = getAccessor(store);
+
+        while (x != null) {
+            NodeSBT l     = x.getLeft(store);
+            long    lSize = l == null ? 0
+                                      : l.getBalance(store);
+
+            if (position < lSize) {
+                x = l;
+            } else if (position == lSize) {
+                return x;
+            } else {
+                position -= lSize + 1;
+                x        = x.getRight(store);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the node after the given one
+     */
+    NodeSBT next(Session session, PersistentStore store, NodeSBT x,
+                 int distinctCount) {
 
         if (x == null) {
             return null;
         }
 
         if (distinctCount != 0) {
-            return findDistinctNode(session, store, x, distinctCount, true);
+            return findDistinctNode(session, store, x, distinctCount, false);
         }
 
         while (true) {
-            x = last(store, x);
+            x = next(store, x);
 
             if (x == null) {
                 return x;
@@ -1343,85 +1660,70 @@ public class IndexSBT implements Index {
         }
     }
 
-    NodeSBT next(PersistentStore store, NodeSBT x) {
+    NodeSBT last(Session session, PersistentStore store, NodeSBT x,
+                 int distinctCount) {
 
         if (x == null) {
             return null;
         }
 
-        RowSBT row = x.getRow(store);
-
-        x = row.getNode(position);
+        if (distinctCount != 0) {
+            return findDistinctNode(session, store, x, distinctCount, true);
+        }
 
-        NodeSBT temp = x.getRight(store);
+        while (true) {
+            x = last(store, x);
 
-        if (temp != null) {
-            x = temp;
-            temp = x.getLeft(store);
+            if (x == null) {
+                return x;
+            }
 
-            while (temp != null) {
-                x = temp;
-                temp = x.getLeft(store);
+            if (session == null) {
+                return x;
             }
 
-            return x;
+            Row row = x.getRow(store);
+
+            if (session.database.txManager.canRead(
+                    session, store, row, TransactionManager.ACTION_READ,
+                    null)) {
+                return x;
+            }
         }
+    }
 
-        temp = x;
-        x = x.getParent(store);
+    NodeSBT next(PersistentStore store, NodeSBT x) {
 
-        while (x != null && x.isRight(store, temp)) {
-            temp = x;
-            x = x.getParent(store);
+        if (x == null) {
+            return null;
         }
 
-        return x;
-    }
+        RowSBT row = x.getRow(store);
 
-    NodeSBT next(PersistentStore store, NodeSBT x, int depth, int maxDepth,
-                 int[] depths) {
+        x = row.getNode(position);
 
-        NodeSBT temp = depth == maxDepth ? null
-                : x.getRight(store);
+        NodeSBT temp = x.getRight(store);
 
         if (temp != null) {
-            depth++;
-
             x = temp;
-            temp = depth == maxDepth ? null
-                    : x.getLeft(store);
+            temp = x.getLeft(store);
 
             while (temp != null) {
-                depth++;
-
                 x = temp;
-
-                if (depth == maxDepth) {
-                    temp = null;
-                } else {
-                    temp = x.getLeft(store);
-                }
+                temp = x.getLeft(store);
             }
 
-            depths[0] = depth;
-
             return x;
         }
 
         temp = x;
         x = x.getParent(store);
 
-        depth--;
-
         while (x != null && x.isRight(store, temp)) {
             temp = x;
             x = x.getParent(store);
-
-            depth--;
         }
 
-        depths[0] = depth;
-
         return x;
     }
 
@@ -1460,6 +1762,129 @@ public class IndexSBT implements Index {
         return x;
     }
 
+    /**
+     * Reads into the cache the rows of up to count nodes that follow x in
+     * index order, or precede it when reversed. The subtrees that lie
+     * wholly in this range are found from the subtree sizes and read one
+     * level at a time, with the positions of each level sorted, so the
+     * rows are read in file order as far as possible. Returns the count of
+     * rows read from the file.
+     */
+    int readAhead(PersistentStore store, NodeSBT x, int count,
+                  boolean reversed) {
+
+        DataFileCache cache = store.getCache();
+        LongDeque     level = new LongDeque();
+        int           read  = 0;
+
+        store.readLock();
+
+        try {
+
+            // the row has been deleted or the scan has left it behind
+            if (!x.isInMemory() || x.getBalance(store) < 1) {
+                return 0;
+            }
+
+            int consumed = addReadAhead(store, x.child(store, reversed),
+                                        count, reversed, level);
+            NodeSBT c = x;
+            NodeSBT p = x.getParent(store);
+
+            while (p != null && consumed < count) {
+                boolean before = reversed ? p.isRight(store, c)
+                                          : p.isLeft(store, c);
+
+                if (before) {
+                    consumed++;
+                    consumed += addReadAhead(store, p.child(store, reversed),
+                                             count - consumed, reversed,
+                                             level);
+                }
+
+                c = p;
+                p = p.getParent(store);
+            }
+
+            long[] positions = new long[level.size()];
+
+            while (!level.isEmpty()) {
+                int size = level.size();
+
+                if (positions.length < size) {
+                    positions = new long[size];
+                }
+
+                for (int i = 0; i < size; i++) {
+                    positions[i] = level.removeFirst();
+                }
+
+                Arrays.sort(positions, 0, size);
+
+                for (int i = 0; i < size; i++) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return read;
+                    }
+
+                    long pos = positions[i];
+
+                    if (!cache.isCached(pos)) {
+                        read++;
+                    }
+
+                    RowSBT      row   = (RowSBT) store.get(pos, false);
+                    NodeSBTDisk node  = (NodeSBTDisk) row.getNode(position);
+                    long        left  = node.getChildPos(store, true);
+                    long        right = node.getChildPos(store, false);
+
+                    if (left >= 0) {
+                        level.add(left);
+                    }
+
+                    if (right >= 0) {
+                        level.add(right);
+                    }
+                }
+            }
+        } finally {
+            store.readUnlock();
+        }
+
+        return read;
+    }
+
+    /**
+     * Adds to the list the roots of the subtrees that hold the first count
+     * nodes of the subtree of n in scan order. Returns the count of nodes
+     * covered.
+     */
+    private int addReadAhead(PersistentStore store, NodeSBT n, int count,
+                             boolean reversed, LongDeque list) {
+
+        if (n == null || count == 0) {
+            return 0;
+        }
+
+        int size = n.getBalance(store);
+
+        if (size <= count) {
+            list.add(n.getPos());
+
+            return size;
+        }
+
+        int consumed = addReadAhead(store, n.child(store, !reversed), count,
+                                    reversed, list);
+
+        if (consumed < count) {
+            consumed++;
+            consumed += addReadAhead(store, n.child(store, reversed),
+                                     count - consumed, reversed, list);
+        }
+
+        return consumed;
+    }
+
     boolean isEqualReadable(Session session, PersistentStore store,
                             NodeSBT node) {
 
@@ -1551,6 +1976,21 @@ public class IndexSBT implements Index {
     NodeSBT findNode(Session session, PersistentStore store, Object[] rowdata,
                      int[] rowColMap, int fieldCount, int compareType,
                      int readMode, boolean reversed) {
+        return findNode(session, store, rowdata, rowColMap, fieldCount,
+                        compareType, readMode, reversed, null);
+    }
+
+    /**
+     * As above, but when the finger holds a node of this index that was
+     * found by an earlier search, the search starts from that node. It moves
+     * up only as far as the smallest subtree that must hold the match and
+     * then descends, so a key close to the previous key visits O(log d)
+     * nodes, where d is the distance between the two matches. The node of
+     * the match is kept in the finger for the next search.
+     */
+    NodeSBT findNode(Session session, PersistentStore store, Object[] rowdata,
+                     int[] rowColMap, int fieldCount, int compareType,
+                     int readMode, boolean reversed, Finger finger) {
 
     	store.readLock();
 
@@ -1559,6 +1999,7 @@ public class IndexSBT implements Index {
             NodeSBT n = null;
             NodeSBT result = null;
             Row currentRow = null;
+            boolean matchLeft;
 
             if (compareType != OpTypes.EQUAL
                     && compareType != OpTypes.IS_NULL) {
@@ -1571,99 +2012,69 @@ public class IndexSBT implements Index {
                 }
             }
 
-            while (x != null) {
-                currentRow = x.getRow(store);
+            // side of a matching node where an earlier match can be found
+            switch (compareType) {
 
-                int i = 0;
+                case OpTypes.MAX :
+                case OpTypes.IS_NULL :
+                case OpTypes.EQUAL :
+                    matchLeft = !reversed;
+                    break;
 
-                if (fieldCount > 0) {
-                    i = compareRowNonUnique(session, currentRow.getData(),
-                            rowdata, rowColMap, fieldCount);
-                }
+                case OpTypes.NOT :
+                case OpTypes.GREATER :
+                case OpTypes.GREATER_EQUAL_PRE :
+                case OpTypes.GREATER_EQUAL :
+                    matchLeft = true;
+                    break;
 
-                if (i == 0) {
-                    switch (compareType) {
+                case OpTypes.SMALLER :
+                case OpTypes.SMALLER_EQUAL :
+                    matchLeft = false;
+                    break;
 
-                    	case OpTypes.MAX :
-                        case OpTypes.IS_NULL:
-                        case OpTypes.EQUAL: {
-                            result = x;
+                default :
+                    throw Error.runtimeError(ErrorCode.U_S0500, "Index");
+            }
 
-                            if (reversed) {
-                                n = x.getRight(store);
-                            } else {
-                                n = x.getLeft(store);
-                            }
+            if (finger != null && x != null && finger.index == this
+                    && finger.store == store && finger.node != null) {
+                NodeSBT f = finger.node;
 
-                            break;
-                        }
-                        case OpTypes.NOT:
-                        case OpTypes.GREATER: {
-                            i = compareObject(session, currentRow.getData(),
-                                    rowdata, rowColMap, fieldCount,
-                                    compareType);
-
-                            if (i <= 0) {
-                                n = x.getRight(store);
-                            } else {
-                                result = x;
-                                n = x.getLeft(store);
-                            }
+                finger.node = null;
 
-                            break;
-                        }
-                        case OpTypes.GREATER_EQUAL_PRE:
-                        case OpTypes.GREATER_EQUAL: {
-                            i = compareObject(session, currentRow.getData(),
-                                    rowdata, rowColMap, fieldCount,
-                                    compareType);
-
-                            if (i < 0) {
-                                n = x.getRight(store);
-                            } else {
-                                result = x;
-                                n = x.getLeft(store);
-                            }
+                // the node must still be in the tree
+                if ((f.isMemory() || f.isInMemory())
+                        && f.getBalance(store) > 0) {
+                    x = findFingerStart(session, store, f, rowdata,
+                                        rowColMap, fieldCount, compareType,
+                                        matchLeft, finger);
+                    result = finger.match;
+                    finger.match = null;
 
-                            break;
-                        }
-                        case OpTypes.SMALLER: {
-                            i = compareObject(session, currentRow.getData(),
-                                    rowdata, rowColMap, fieldCount,
-                                    compareType);
-
-                            if (i < 0) {
-                                result = x;
-                                n = x.getRight(store);
-                            } else {
-                                n = x.getLeft(store);
-                            }
+                    if (x == null) {
+                        n = f;
+                    }
+                }
+            }
 
-                            break;
-                        }
-                        case OpTypes.SMALLER_EQUAL: {
-                            i = compareObject(session, currentRow.getData(),
-                                    rowdata, rowColMap, fieldCount,
-                                    compareType);
-
-                            if (i <= 0) {
-                                result = x;
-                                n = x.getRight(store);
-                            } else {
-                                n = x.getLeft(store);
-                            }
+            while (x != null) {
+                currentRow = x.getRow(store);
 
-                            break;
-                        }
-                        default:
-                        	throw Error.runtimeError(ErrorCode.U_S0500, "Index");
-                    }
-                } else if (i < 0) {
-                    n = x.getRight(store);
-                } else if (i > 0) {
-                    n = x.getLeft(store);
+                int i = compareNode(session, currentRow.getData(), rowdata,
+                                    rowColMap, fieldCount, compareType);
+                boolean isLeft;
+
+                if (i == 0) {
+                    result = x;
+                    isLeft = matchLeft;
+                } else {
+                    isLeft = i > 0;
                 }
 
+                n = isLeft ? x.getLeft(store)
+                           : x.getRight(store);
+
                 if (n == null) {
                     break;
                 }
@@ -1671,6 +2082,14 @@ public class IndexSBT implements Index {
                 x = n;
             }
 
+            if (finger != null) {
+                finger.index = this;
+                finger.store = store;
+                finger.node  = result != null ? result
+                                              : x != null ? x
+                                                          : n;
+            }
+
             // MVCC 190
             if (session == null) {
                 return result;
@@ -1710,6 +2129,151 @@ public class IndexSBT implements Index {
         }
     }
 
+    /**
+     * Compares the row data of a node with the search key of findNode.
+     * Returns 0 when the node is a match, otherwise -1 when the node is
+     * before all matching nodes and 1 when it is after them.
+     */
+    private int compareNode(Session session, Object[] data, Object[] rowdata,
+                            int[] rowColMap, int fieldCount,
+                            int compareType) {
+
+        int i = 0;
+
+        if (fieldCount > 0) {
+            i = compareRowNonUnique(session, data, rowdata, rowColMap,
+                                    fieldCount);
+        }
+
+        if (i != 0) {
+            return i < 0 ? -1
+                         : 1;
+        }
+
+        switch (compareType) {
+
+            case OpTypes.MAX :
+            case OpTypes.IS_NULL :
+            case OpTypes.EQUAL :
+                return 0;
+
+            case OpTypes.NOT :
+            case OpTypes.GREATER :
+                i = compareObject(session, data, rowdata, rowColMap,
+                                  fieldCount, compareType);
+
+                return i <= 0 ? -1
+                              : 0;
+
+            case OpTypes.GREATER_EQUAL_PRE :
+            case OpTypes.GREATER_EQUAL :
+                i = compareObject(session, data, rowdata, rowColMap,
+                                  fieldCount, compareType);
+
+                return i < 0 ? -1
+                             : 0;
+
+            case OpTypes.SMALLER :
+                i = compareObject(session, data, rowdata, rowColMap,
+                                  fieldCount, compareType);
+
+                return i < 0 ? 0
+                             : 1;
+
+            case OpTypes.SMALLER_EQUAL :
+                i = compareObject(session, data, rowdata, rowColMap,
+                                  fieldCount, compareType);
+
+                return i <= 0 ? 0
+                              : 1;
+
+            default :
+                throw Error.runtimeError(ErrorCode.U_S0500, "Index");
+        }
+    }
+
+    /**
+     * Returns the node where the search of findNode starts when the finger
+     * node f is in the tree, and sets finger.match to a match that is outside
+     * the subtree of that node. The search looks for the first node on the
+     * left side of the boundary between nodes that go right and nodes that
+     * go left, or the last one when matchLeft is false.
+     */
+    private NodeSBT findFingerStart(Session session, PersistentStore store,
+                                    NodeSBT f, Object[] rowdata,
+                                    int[] rowColMap, int fieldCount,
+                                    int compareType, boolean matchLeft,
+                                    Finger finger) {
+
+        int     i      = compareNode(session, f.getData(store), rowdata,
+                                     rowColMap, fieldCount, compareType);
+        boolean isLeft = i > 0 || (i == 0 && matchLeft);
+
+        if (isLeft == matchLeft) {
+
+            // the boundary is on the matchLeft side of f or next to it
+            NodeSBT adjacent = matchLeft ? last(store, f)
+                                         : next(store, f);
+
+            if (adjacent == null) {
+                finger.match = i == 0 ? f
+                                      : null;
+
+                return null;
+            }
+
+            int j = compareNode(session, adjacent.getData(store), rowdata,
+                                rowColMap, fieldCount, compareType);
+
+            if ((j > 0 || (j == 0 && matchLeft)) != isLeft) {
+                finger.match = i == 0 ? f
+                                      : null;
+
+                return null;
+            }
+
+            // the key is not after the previous key
+            return getAccessor(store);
+        }
+
+        NodeSBT x = f;
+
+        while (true) {
+            NodeSBT parent = x.getParent(store);
+
+            if (parent == null) {
+                return x;
+            }
+
+            // the parent bounds the subtree on the side of the boundary
+            if (x.isFromLeft(store) == matchLeft) {
+                i = compareNode(session, parent.getData(store), rowdata,
+                                rowColMap, fieldCount, compareType);
+
+                if ((i > 0 || (i == 0 && matchLeft)) == matchLeft) {
+                    finger.match = i == 0 ? parent
+                                          : null;
+
+                    return x;
+                }
+            }
+
+            x = parent;
+        }
+    }
+
+    /**
+     * Holds the node found by the last search of an iterator, so that the
+     * next search with a nearby key can start from it instead of the root.
+     */
+    public static final class Finger {
+
+        Index           index;
+        PersistentStore store;
+        NodeSBT         node;
+        NodeSBT         match;
+    }
+
     NodeSBT findDistinctNode(Session session, PersistentStore store,
                              NodeSBT node, int fieldCount, boolean reversed) {
 
@@ -1777,11 +2341,15 @@ public class IndexSBT implements Index {
         }
     }
 
-    void rotateLeft(PersistentStore store, NodeSBT x) {
+    /**
+     * Rotates the subtree at x to the left and returns the new root of the
+     * subtree, or x if it has no right child.
+     */
+    NodeSBT rotateLeft(PersistentStore store, NodeSBT x) {
         NodeSBT y = x.getRight(store);
 
         if (y == null) {
-            return;
+            return x;
         }
 
         x.setRight(store, y.getLeft(store));
@@ -1806,12 +2374,18 @@ public class IndexSBT implements Index {
         x.setBalance(store, lSize + rSize + 1);
         x.replace(store, this, y);
         x.setParent(store, y);
+
+        return y;
     }
 
-    void rotateRight(PersistentStore store, NodeSBT x) {
+    /**
+     * Rotates the subtree at x to the right and returns the new root of the
+     * subtree, or x if it has no left child.
+     */
+    NodeSBT rotateRight(PersistentStore store, NodeSBT x) {
         NodeSBT y = x.getLeft(store);
         if (y == null) {
-            return;
+            return x;
         }
 
         x.setLeft(store, y.getRight(store));
@@ -1836,8 +2410,16 @@ public class IndexSBT implements Index {
         x.setBalance(store, lSize + rSize + 1);
         x.replace(store, this, y);
         x.setParent(store, y);
+
+        return y;
     }
 
+    /**
+     * Restores the size balance of the subtree at t after its left (flag
+     * false) or right (flag true) subtree has grown, or the other subtree
+     * has shrunk. The checks are repeated on the new root of the subtree
+     * after a rotation.
+     */
     void maintain(PersistentStore store, NodeSBT t, boolean flag) {
         if (t == null) {
             return;
@@ -1849,13 +2431,14 @@ public class IndexSBT implements Index {
                 return;
             }
 
-            if (l.getLeft(store) != null && (t.getRight(store) == null ||
-                    l.getLeft(store).getBalance(store) > t.getRight(store).getBalance(store))) {
-                rotateRight(store, t);
-            } else if (l.getRight(store) != null && (t.getRight(store) == null ||
-                    l.getRight(store).getBalance(store) > t.getRight(store).getBalance(store))) {
+            int rSize = getSize(store, t.getRight(store));
+
+            if (getSize(store, l.getLeft(store)) > rSize) {
+                t = rotateRight(store, t);
+            } else if (getSize(store, l.getRight(store)) > rSize) {
                 rotateLeft(store, l);
-                rotateRight(store, t);
+
+                t = rotateRight(store, t);
             } else {
                 return;
             }
@@ -1865,13 +2448,14 @@ public class IndexSBT implements Index {
                 return;
             }
 
-            if (r.getRight(store) != null && (t.getLeft(store) == null ||
-                    r.getRight(store).getBalance(store) > t.getLeft(store).getBalance(store))) {
-                rotateLeft(store, t);
-            } else if (r.getLeft(store) != null && (t.getLeft(store) == null ||
-                    r.getLeft(store).getBalance(store) > t.getLeft(store).getBalance(store))) {
+            int lSize = getSize(store, t.getLeft(store));
+
+            if (getSize(store, r.getRight(store)) > lSize) {
+                t = rotateLeft(store, t);
+            } else if (getSize(store, r.getLeft(store)) > lSize) {
                 rotateRight(store, r);
-                rotateLeft(store, t);
+
+                t = rotateLeft(store, t);
             } else {
                 return;
             }
@@ -1883,68 +2467,6 @@ public class IndexSBT implements Index {
         maintain(store, t, true);
     }
 
-    /**
-     * Balances part of the tree after an alteration to the index.
-     */
-    void balance(PersistentStore store, NodeSBT x, boolean isleft) {
-
-        while (true) {
-            int sign = isleft ? 1
-                    : -1;
-
-
-            switch (x.getBalance(store) * sign) {
-
-                case 1:
-                    x = x.setBalance(store, 0);
-
-                    return;
-
-                case 0:
-                    x = x.setBalance(store, -sign);
-                    break;
-
-                case -1:
-                    NodeSBT l = x.child(store, isleft);
-
-                    if (l.getBalance(store) == -sign) {
-                        x.replace(store, this, l);
-
-                        x = x.set(store, isleft, l.child(store, !isleft));
-                        l = l.set(store, !isleft, x);
-                        x = x.setBalance(store, 0);
-                        l = l.setBalance(store, 0);
-                    } else {
-                        NodeSBT r = l.child(store, !isleft);
-
-                        x.replace(store, this, r);
-
-                        l = l.set(store, !isleft, r.child(store, isleft));
-                        r = r.set(store, isleft, l);
-                        x = x.set(store, isleft, r.child(store, !isleft));
-                        r = r.set(store, !isleft, x);
-
-                        int rb = r.getBalance(store);
-
-                        x = x.setBalance(store, (rb == -sign) ? sign
-                                : 0);
-                        l = l.setBalance(store, (rb == sign) ? -sign
-                                : 0);
-                        r = r.setBalance(store, 0);
-                    }
-
-                    return;
-            }
-
-            if (x.isRoot(store)) {
-                return;
-            }
-
-            isleft = x.isFromLeft(store);
-            x = x.getParent(store);
-        }
-    }
-
     NodeSBT getAccessor(PersistentStore store) {
 
         NodeSBT node = (NodeSBT) store.getAccessor(this);
@@ -1975,6 +2497,8 @@ public class IndexSBT implements Index {
         int distinctCount;
         boolean single;
         boolean reversed;
+        int readAheadRows;
+        int readAheadCountdown;
 
         /**
          * When session == null, rows from all sessions are returned
@@ -1996,6 +2520,12 @@ public class IndexSBT implements Index {
             }
 
             nextnode = node;
+
+            DataFileCache cache = store.getCache();
+
+            if (cache != null && !single && distinctCount == 0) {
+                readAheadRows = cache.getReadAheadRows();
+            }
         }
         
         public Object getField(int col) {
@@ -2068,6 +2598,14 @@ public class IndexSBT implements Index {
                 } finally {
                 	store.readUnlock();
                 }
+
+                if (readAheadRows > 0 && nextnode != null
+                        && --readAheadCountdown <= 0) {
+                    readAheadCountdown = (readAheadRows + 1) / 2;
+
+                    store.getCache().readAhead(new ReadAheadTask(store,
+                            index, nextnode, readAheadRows, reversed));
+                }
             }
 
             lastrow = lastnode.getRow(store);
@@ -2087,4 +2625,33 @@ public class IndexSBT implements Index {
         	return lastrow.getPos();
         }
     }
+
+    /**
+     * Reads ahead of an index scan on the read-ahead thread of the cache.
+     */
+    static final class ReadAheadTask implements Runnable {
+
+        final PersistentStore store;
+        final IndexSBT        index;
+        final NodeSBT         node;
+        final int             count;
+        final boolean         reversed;
+
+        ReadAheadTask(PersistentStore store, IndexSBT index, NodeSBT node,
+                      int count, boolean reversed) {
+
+            this.store    = store;
+            this.index    = index;
+            this.node     = node;
+            this.count    = count;
+            this.reversed = reversed;
+        }
+
+        public void run() {
+
+            int read = index.readAhead(store, node, count, reversed);
+
+            store.getCache().addReadAheadRowCount(read);
+        }
+    }
 }
@@ -71,6 +71,7 @@
 package org.hsqldb.index;
 
 import org.hsqldb.Constraint;
+import org.hsqldb.HsqlException;
 import org.hsqldb.HsqlNameManager;
 import org.hsqldb.HsqlNameManager.HsqlName;
 import org.hsqldb.Row;
@@ -124,6 +125,44 @@ public class IndexSBTMemory extends IndexSBT {
      * Insert a node into the index
      */
     public void insert(Session session, PersistentStore store, Row row) {
+        insert(session, store, row, null);
+    }
+
+    /**
+     * Inserts a block of new rows in index order. Each row is inserted
+     * starting from the node of the row before it, which avoids most of the
+     * comparisons near the root when the keys are close together.
+     */
+    public void insert(Session session, PersistentStore store, Row[] rows,
+                       int count) {
+
+        sortRows(session, rows, count);
+
+        NodeSBT last = null;
+        int     i    = 0;
+
+        try {
+            for (; i < count; i++) {
+                insert(session, store, rows[i], last);
+
+                last = ((RowSBT) rows[i]).getNode(position);
+            }
+        } catch (HsqlException e) {
+            while (i-- > 0) {
+                delete(session, store, rows[i]);
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Inserts the row. When a node is given, the row sorts after the row of
+     * the node and the search starts from the smallest subtree above the
+     * node that must hold the new row, otherwise from the root.
+     */
+    private void insert(Session session, PersistentStore store, Row row,
+                        NodeSBT from) {
 
         NodeSBT        n;
         NodeSBT        x;
@@ -137,11 +176,42 @@ public class IndexSBTMemory extends IndexSBT {
         x = n;
 
         if (n == null) {
-            store.setAccessor(this, ((RowSBT) row).getNode(position));
+            n          = ((RowSBT) row).getNode(position);
+            n.iBalance = 1;
+
+            store.setAccessor(this, n);
 
             return;
         }
 
+        // equal keys of a unique index are checked from the root with MVCC
+        if (from != null
+                && (compareRowId || session == null
+                    || !session.database.txManager.isMVRows())) {
+
+            // the row is after the rows in the subtree of a left child only
+            // if it is after the parent
+            for (n = from; n.nParent != null; n = n.nParent) {
+                if (n.nParent.nLeft != n) {
+                    continue;
+                }
+
+                compare = compareRowForInsertOrDelete(session, row,
+                                                      n.nParent.row,
+                                                      compareRowId, 0);
+
+                if (compare < 0) {
+                    break;
+                }
+
+                if (compare == 0) {
+                    n = x;
+
+                    break;
+                }
+            }
+        }
+
         while (true) {
             Row currentRow = n.row;
 
@@ -196,177 +266,31 @@ public class IndexSBTMemory extends IndexSBT {
             }
         }
 
-        x = x.set(store, isleft, ((RowSBT) row).getNode(position));
-
-        balance(store, x, isleft);
-    }
-
-    void delete(PersistentStore store, NodeSBT x) {
-
-        if (x == null) {
-            return;
-        }
-
-        NodeSBT n;
-
-        if (x.nLeft == null) {
-            n = x.nRight;
-        } else if (x.nRight == null) {
-            n = x.nLeft;
-        } else {
-        	NodeSBT d = x;
-
-            x = x.nLeft;
-
-            while (true) {
-            	NodeSBT temp = x.nRight;
-
-                if (temp == null) {
-                    break;
-                }
-
-                x = temp;
-            }
-
-            // x will be replaced with n later
-            n = x.nLeft;
-
-            // swap d and x
-            int b = x.iBalance;
-
-            x.iBalance = d.iBalance;
-            d.iBalance = b;
-
-            // set x.parent
-            NodeSBT xp = x.nParent;
-            NodeSBT dp = d.nParent;
-
-            if (d.isRoot(store)) {
-                store.setAccessor(this, x);
-            }
-
-            x.nParent = dp;
-
-            if (dp != null) {
-                if (dp.nRight == d) {
-                    dp.nRight = x;
-                } else {
-                    dp.nLeft = x;
-                }
-            }
-
-            // relink d.parent, x.left, x.right
-            if (d == xp) {
-                d.nParent = x;
-
-                if (d.nLeft == x) {
-                    x.nLeft = d;
-
-                    NodeSBT dr = d.nRight;
-
-                    x.nRight = dr;
-                } else {
-                    x.nRight = d;
-
-                    NodeSBT dl = d.nLeft;
-
-                    x.nLeft = dl;
-                }
-            } else {
-                d.nParent = xp;
-                xp.nRight = d;
-
-                NodeSBT dl = d.nLeft;
-                NodeSBT dr = d.nRight;
-
-                x.nLeft  = dl;
-                x.nRight = dr;
-            }
-
-            x.nRight.nParent = x;
-            x.nLeft.nParent  = x;
+        n          = ((RowSBT) row).getNode(position);
+        n.iBalance = 1;
+        x          = x.set(store, isleft, n);
 
-            // set d.left, d.right
-            d.nLeft = n;
-
-            if (n != null) {
-                n.nParent = d;
-            }
-
-            d.nRight = null;
-            x        = d;
+        for (n = x; n != null; n = n.nParent) {
+            n.iBalance++;
         }
 
-        boolean isleft = x.isFromLeft(store);
-
-        x.replace(store, this, n);
-
-        n = x.nParent;
-
-        x.delete();
-
-        while (n != null) {
-            x = n;
-
-            int sign = isleft ? 1
-                              : -1;
-
-            switch (x.iBalance * sign) {
-
-                case -1 :
-                    x.iBalance = 0;
-                    break;
-
-                case 0 :
-                    x.iBalance = sign;
-
-                    return;
-
-                case 1 :
-                	NodeSBT r = x.child(store, !isleft);
-                    int     b = r.iBalance;
-
-                    if (b * sign >= 0) {
-                        x.replace(store, this, r);
-
-                        NodeSBT child = r.child(store, isleft);
-
-                        x.set(store, !isleft, child);
-                        r.set(store, isleft, x);
-
-                        if (b == 0) {
-                            x.iBalance = sign;
-                            r.iBalance = -sign;
-
-                            return;
-                        }
-
-                        x.iBalance = 0;
-                        r.iBalance = 0;
-                        x          = r;
-                    } else {
-                    	NodeSBT l = r.child(store, isleft);
-
-                        x.replace(store, this, l);
+        maintainPath(store, x, isleft);
+    }
 
-                        b = l.iBalance;
+    /**
+     * Restores the size balance along the insert path, from the parent of
+     * the new node to the root.
+     */
+    void maintainPath(PersistentStore store, NodeSBT x, boolean isleft) {
 
-                        r.set(store, isleft, l.child(store, !isleft));
-                        l.set(store, !isleft, r);
-                        x.set(store, !isleft, l.child(store, isleft));
-                        l.set(store, isleft, x);
+        while (x != null) {
+            NodeSBT p        = x.nParent;
+            boolean fromLeft = p == null || p.nLeft == x;
 
-                        x.iBalance = (b == sign) ? -sign
-                                                 : 0;
-                        r.iBalance = (b == -sign) ? sign
-                                                  : 0;
-                        l.iBalance = 0;
-                        x          = l;
-                    }
-            }
+            maintain(store, x, !isleft);
 
-            isleft = x.isFromLeft(store);
-            n      = x.nParent;
+            isleft = fromLeft;
+            x      = p;
         }
     }
 
@@ -431,66 +355,4 @@ public class IndexSBTMemory extends IndexSBT {
 
         return x;
     }
-
-    /**
-     * Balances part of the tree after an alteration to the index.
-     */
-    void balance(PersistentStore store, NodeSBT x, boolean isleft) {
-
-        while (true) {
-            int sign = isleft ? 1
-                              : -1;
-
-            switch (x.iBalance * sign) {
-
-                case 1 :
-                    x.iBalance = 0;
-
-                    return;
-
-                case 0 :
-                    x.iBalance = -sign;
-                    break;
-
-                case -1 :
-                	NodeSBT l = isleft ? x.nLeft
-                                       : x.nRight;
-
-                    if (l.iBalance == -sign) {
-                        x.replace(store, this, l);
-                        x.set(store, isleft, l.child(store, !isleft));
-                        l.set(store, !isleft, x);
-
-                        x.iBalance = 0;
-                        l.iBalance = 0;
-                    } else {
-                    	NodeSBT r = !isleft ? l.nLeft
-                                            : l.nRight;
-
-                        x.replace(store, this, r);
-                        l.set(store, !isleft, r.child(store, isleft));
-                        r.set(store, isleft, l);
-                        x.set(store, isleft, r.child(store, !isleft));
-                        r.set(store, !isleft, x);
-
-                        int rb = r.iBalance;
-
-                        x.iBalance = (rb == -sign) ? sign
-                                                   : 0;
-                        l.iBalance = (rb == sign) ? -sign
-                                                  : 0;
-                        r.iBalance = 0;
-                    }
-
-                    return;
-            }
-
-            if (x.nParent == null) {
-                return;
-            }
-
-            isleft = x == x.nParent.nLeft;
-            x      = x.nParent;
-        }
-    }
 }
@@ -263,6 +263,17 @@ public class NodeSBTDisk extends NodeSBT {
         return findNode(store, node.iParent);
     }
 
+    /**
+     * Returns the file position of the left or right child, or NO_POS.
+     */
+    long getChildPos(PersistentStore store, boolean isLeft) {
+
+        NodeSBTDisk node = findNode(store);
+
+        return isLeft ? node.iLeft
+                      : node.iRight;
+    }
+
     public int getBalance(PersistentStore store) {
 
         NodeSBTDisk node = findNode(store);
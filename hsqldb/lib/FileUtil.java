@@ -492,7 +492,7 @@ public class FileUtil implements FileAccess {
             ".backup", ".properties", ".script", ".data", ".log", ".lobs"
         };
         String[]        extraSuffixes = new String[] {
-            ".lck", ".sql.log", ".app.log"
+            ".lck", ".sql.log", ".app.log", ".log.prev"
         };
         private String  dbName;
         private File    parent;
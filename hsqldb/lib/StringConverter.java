@@ -73,6 +73,7 @@ package org.hsqldb.lib;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
 
 import org.hsqldb.map.BitMap;
 
@@ -480,6 +481,35 @@ public class StringConverter {
         return readUTF(bytearr, offset, length, buf);
     }
 
+    /**
+     * Reads a string from the buffer with absolute gets, without changing
+     * the position of the buffer. ASCII strings are decoded in place, others
+     * are copied to a byte[] before decoding.
+     */
+    public static String readUTF(ByteBuffer buffer, int offset,
+                                 int length) throws IOException {
+
+        char[] buf = new char[length];
+
+        for (int count = 0; count < length; count++) {
+            int c = buffer.get(offset + count);
+
+            if (c <= 0) {
+                byte[] bytearr = new byte[length];
+
+                for (int i = 0; i < length; i++) {
+                    bytearr[i] = buffer.get(offset + i);
+                }
+
+                return readUTF(bytearr, 0, length, buf);
+            }
+
+            buf[count] = (char) c;
+        }
+
+        return new String(buf, 0, length);
+    }
+
     public static String readUTF(byte[] bytearr, int offset, int length,
                                  char[] buf) throws IOException {
 
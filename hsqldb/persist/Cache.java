@@ -31,6 +31,12 @@
 
 package org.hsqldb.persist;
 
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
 import org.hsqldb.lib.ArraySort;
@@ -39,6 +45,7 @@ import org.hsqldb.lib.Iterator;
 import org.hsqldb.lib.ObjectComparator;
 import org.hsqldb.lib.StopWatch;
 import org.hsqldb.map.BaseHashMap;
+import org.hsqldb.rowio.RowInputInterface;
 
 /**
  * New implementation of row caching for CACHED tables.<p>
@@ -48,75 +55,229 @@ import org.hsqldb.map.BaseHashMap;
  * Also provides services for selecting rows to be saved and passing them
  * to DataFileCache.<p>
  *
+ * The rows are held in segments selected by a hash of the file position.
+ * Each segment has its own lock, its own share of the row and byte limits
+ * and its own access counts, so a clearup affects only one segment. A row
+ * that is in the cache can be found with find() without any lock.<p>
+ *
+ * The rows removed from a full segment are chosen by the EvictionPolicy
+ * set with the hsqldb.cache_policy property.<p>
+ *
+ * When hsqldb.cache_flush_high is set, changed rows are written by the
+ * background flush of DataFileCache and a clearup removes only unchanged
+ * rows. A clearup writes changed rows itself only when the flush has fallen
+ * behind and too few unchanged rows can be removed.<p>
+ *
+ * When hsqldb.cache_off_heap_size is set, each segment has an OffHeapCache
+ * that keeps the images of the unchanged rows removed from the segment, so
+ * they can be read again without file access.<p>
+ *
  * @author Fred Toussi (fredt@users dot sourceforge.net)
  * @version 2.3.3
  * @since 1.8.0
  */
-public class Cache extends BaseHashMap {
-
-    private int                                reserveCount;
-    final DataFileCache                        dataFileCache;
-    private int                                capacity;         // number of Rows
-    private long                               bytesCapacity;    // number of bytes
-    private final CachedObjectComparator       rowComparator;
-    private final BaseHashMap.BaseHashIterator objectIterator;
-    private boolean                            updateAccess;
+public class Cache {
 
-    //
-    private CachedObject[] rowTable;
-    private long           cacheBytesLength;
+    final DataFileCache     dataFileCache;
+    private final Segment[] segments;
+    private final int       segmentShift;
 
     // for testing
     StopWatch saveAllTimer = new StopWatch(false);
     StopWatch shadowTimer  = new StopWatch(false);
     int       saveRowCount = 0;
 
+    // rows written by the background flush
+    volatile long flushRowCount;
+
+    // marks a removed entry in the lookup tables of the segments
+    static final CachedObject removedLookup = new IntArrayCachedObject(0);
+
     Cache(DataFileCache dfc) {
 
-        super(dfc.capacity(), BaseHashMap.objectKeyOrValue,
-              BaseHashMap.noKeyOrValue, true);
-
-        maxCapacity      = dfc.capacity();
-        dataFileCache    = dfc;
-        capacity         = dfc.capacity();
-        bytesCapacity    = dfc.bytesCapacity();
-        rowComparator    = new CachedObjectComparator();
-        rowTable         = new CachedObject[capacity];
-        cacheBytesLength = 0;
-        objectIterator   = new BaseHashIterator(true);
-        updateAccess     = true;
-        comparator       = rowComparator;
-        reserveCount = dfc instanceof TextCache
-                       || dfc instanceof DataFileCacheSession ? 0
-                                                              : 8;
+        int count = getSegmentCount(dfc);
+        int shift = 32;
+
+        for (int i = count; i > 1; i >>= 1) {
+            shift--;
+        }
+
+        dataFileCache = dfc;
+        segments      = new Segment[count];
+        segmentShift  = shift;
+
+        boolean isDataFile = !(dfc instanceof TextCache
+                               || dfc instanceof DataFileCacheSession);
+        int reserveCount = isDataFile ? 8
+                                      : 0;
+        int policyType = isDataFile ? dfc.database.logger.propCachePolicy
+                                    : EvictionPolicy.POLICY_ACCESS_COUNT;
+        int flushHigh = isDataFile && dfc.flushRunner != null
+                        ? dfc.database.logger.propCacheFlushHigh
+                        : 0;
+        int flushLow = dfc.database.logger.propCacheFlushLow;
+        long offHeapCapacity = isDataFile ? dfc.offHeapCapacity / count
+                                          : 0;
+
+        if (flushLow >= flushHigh) {
+            flushLow = flushHigh / 2;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int capacity = dfc.capacity() / count;
+
+            segments[i] = new Segment(capacity, dfc.bytesCapacity() / count,
+                                      reserveCount,
+                                      newEvictionPolicy(policyType,
+                                          capacity), capacity * flushHigh
+                                              / 100, capacity * flushLow
+                                                  / 100);
+            segments[i].offHeap = OffHeapCache.newOffHeapCache(dfc,
+                    offHeapCapacity);
+        }
     }
 
-    long getTotalCachedBlockSize() {
-        return cacheBytesLength;
+    static EvictionPolicy newEvictionPolicy(int type, int capacity) {
+
+        switch (type) {
+
+            case EvictionPolicy.POLICY_FREQUENCY :
+                return new EvictionPolicyFrequency(capacity);
+
+            default :
+                return new EvictionPolicyAccessCount();
+        }
     }
 
     /**
-     * Returns a row if in memory cache.
+     * Returns a power of two up to twice the processor count, limited so
+     * that each segment can hold at least 1024 rows. Text table and session
+     * caches use a single segment.
      */
-    public CachedObject get(long pos) {
+    static int getSegmentCount(DataFileCache dfc) {
 
-        if (accessCount > ACCESS_MAX) {
-            updateAccessCounts();
-            resetAccessCount();
-            updateObjectAccessCounts();
+        if (dfc instanceof TextCache || dfc instanceof DataFileCacheSession) {
+            return 1;
         }
 
-        int lookup = getObjectLookup(pos);
+        int limit = Math.min(64,
+                             Runtime.getRuntime().availableProcessors() * 2);
+        int count = 1;
 
-        if (lookup == -1) {
-            return null;
+        while (count < limit && dfc.capacity() / (count * 2) >= 1024) {
+            count *= 2;
+        }
+
+        return count;
+    }
+
+    private Segment getSegment(long pos) {
+
+        if (segmentShift == 32) {
+            return segments[0];
+        }
+
+        int hash = (int) (pos ^ (pos >>> 32)) * 0x9E3779B9;
+
+        return segments[hash >>> segmentShift];
+    }
+
+    /**
+     * Returns the lock of the segment for the position. The lock is held
+     * while a row is read from the file so that it is read only once.
+     */
+    Lock getLock(long pos) {
+        return getSegment(pos).lock;
+    }
+
+    long getTotalCachedBlockSize() {
+
+        long total = 0;
+
+        for (int i = 0; i < segments.length; i++) {
+            total += segments[i].cacheBytesLength;
+        }
+
+        return total;
+    }
+
+    long getOffHeapHitCount() {
+
+        long total = 0;
+
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].offHeap != null) {
+                total += segments[i].offHeap.hitCount;
+            }
+        }
+
+        return total;
+    }
+
+    long getOffHeapSize() {
+
+        long total = 0;
+
+        for (int i = 0; i < segments.length; i++) {
+            segments[i].lock.lock();
+
+            try {
+                if (segments[i].offHeap != null) {
+                    total += segments[i].offHeap.getAllocatedSize();
+                }
+            } finally {
+                segments[i].lock.unlock();
+            }
         }
 
-        accessTable[lookup] = ++accessCount;
+        return total;
+    }
+
+    /**
+     * Reads the image of the row at pos from the off-heap tier into the
+     * input. Returns false if there is no image. Used when the lock of the
+     * segment is held.
+     */
+    boolean readOffHeap(long pos, RowInputInterface in) {
+
+        Segment segment = getSegment(pos);
+
+        return segment.offHeap != null && segment.offHeap.read(pos, in);
+    }
+
+    public int size() {
 
-        CachedObject object = (CachedObject) objectKeyTable[lookup];
+        int total = 0;
 
-        return object;
+        for (int i = 0; i < segments.length; i++) {
+            total += segments[i].size();
+        }
+
+        return total;
+    }
+
+    /**
+     * Returns a row if in memory cache.
+     */
+    public CachedObject get(long pos) {
+
+        Segment segment = getSegment(pos);
+
+        segment.lock.lock();
+
+        try {
+            return segment.get(pos);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a row if in memory cache, without locking. May return null
+     * for a row that is being added to the cache by another thread.
+     */
+    CachedObject find(long pos) {
+        return getSegment(pos).find(pos);
     }
 
     /**
@@ -124,17 +285,14 @@ public class Cache extends BaseHashMap {
      */
     void put(CachedObject row) {
 
-        int storageSize = row.getStorageSize();
+        Segment segment = getSegment(row.getPos());
 
-        if (preparePut(storageSize)) {
-            putNoCheck(row);
-        } else {
-            long value = size() + reserveCount >= capacity ? capacity
-                                                           : bytesCapacity
-                                                             / 1024L;
+        segment.lock.lock();
 
-            throw Error.error(ErrorCode.DATA_CACHE_IS_FULL,
-                              String.valueOf(value));
+        try {
+            segment.put(row);
+        } finally {
+            segment.lock.unlock();
         }
     }
 
@@ -143,338 +301,948 @@ public class Cache extends BaseHashMap {
      */
     void putUsingReserve(CachedObject row) {
 
-        int storageSize = row.getStorageSize();
+        Segment segment = getSegment(row.getPos());
 
-        preparePut(storageSize);
+        segment.lock.lock();
 
-        if (size() >= capacity) {
-            throw Error.error(ErrorCode.DATA_CACHE_IS_FULL,
-                              String.valueOf(capacity));
+        try {
+            segment.putUsingReserve(row);
+        } finally {
+            segment.lock.unlock();
         }
+    }
+
+    /**
+     * Removes an object from memory cache. Does not release the file storage.
+     */
+    CachedObject release(long pos) {
 
-        putNoCheck(row);
+        Segment segment = getSegment(pos);
+
+        segment.lock.lock();
+
+        try {
+            return segment.release(pos);
+        } finally {
+            segment.lock.unlock();
+        }
     }
 
-    boolean preparePut(int storageSize) {
+    public void releaseRange(IntIndex list, int fileBlockItemCount) {
+
+        for (int i = 0; i < segments.length; i++) {
+            segments[i].lock.lock();
 
-        boolean exceedsCount = size() + reserveCount >= capacity;
-        boolean exceedsSize  = storageSize + cacheBytesLength > bytesCapacity;
+            try {
+                segments[i].releaseRange(list, fileBlockItemCount);
+            } finally {
+                segments[i].lock.unlock();
+            }
+        }
+    }
 
-        if (exceedsCount || exceedsSize) {
-            cleanUp(false);
+    public void releaseRange(long startPos, long limitPos) {
 
-            exceedsCount = size() + reserveCount >= capacity;
-            exceedsSize  = storageSize + cacheBytesLength > bytesCapacity;
+        for (int i = 0; i < segments.length; i++) {
+            segments[i].lock.lock();
 
-            if (exceedsCount || exceedsSize) {
-                clearUnchanged();
-            } else {
-                return true;
+            try {
+                segments[i].releaseRange(startPos, limitPos);
+            } finally {
+                segments[i].lock.unlock();
             }
+        }
+    }
 
-            exceedsCount = size() + reserveCount >= capacity;
-            exceedsSize  = storageSize + cacheBytesLength > bytesCapacity;
+    void clearUnchanged() {
 
-            if (exceedsCount || exceedsSize) {
-                cleanUp(true);
-            } else {
-                return true;
+        for (int i = 0; i < segments.length; i++) {
+            segments[i].lock.lock();
+
+            try {
+                segments[i].clearUnchanged();
+            } finally {
+                segments[i].lock.unlock();
             }
+        }
+    }
 
-            exceedsCount = size() + reserveCount >= capacity;
-            exceedsSize  = storageSize + cacheBytesLength > bytesCapacity;
+    /**
+     * Removes the unchanged rows from the segment for the position. Used
+     * when the lock of the segment is held.
+     */
+    void clearUnchanged(long pos) {
+
+        Segment segment = getSegment(pos);
+
+        segment.lock.lock();
+
+        try {
+            segment.clearUnchanged();
+        } finally {
+            segment.lock.unlock();
+        }
+    }
 
-            if (exceedsCount) {
-                dataFileCache.logInfoEvent(
-                    "dataFileCache CACHE ROWS limit reached");
+    /**
+     * Writes out all modified cached Rows.
+     */
+    void saveAll() {
+
+        for (int i = 0; i < segments.length; i++) {
+            segments[i].lock.lock();
+
+            try {
+                segments[i].saveAll();
+            } finally {
+                segments[i].lock.unlock();
             }
+        }
+    }
+
+    /**
+     * Writes changed rows of each segment that has more than its low
+     * watermark of changed rows. Returns the count of changed rows that were
+     * found, which is the backlog of the flush.
+     */
+    int flush() {
+
+        int backlog = 0;
+
+        for (int i = 0; i < segments.length; i++) {
+            Segment segment = segments[i];
+
+            dataFileCache.readLock.lock();
+            segment.lock.lock();
 
-            if (exceedsSize) {
-                dataFileCache.logInfoEvent(
-                    "dataFileCache CACHE SIZE limit reached");
+            try {
+                if (dataFileCache.dataFile == null) {
+                    break;
+                }
+
+                backlog += segment.flush();
+            } finally {
+                segment.lock.unlock();
+                dataFileCache.readLock.unlock();
             }
+        }
 
-            if (exceedsCount || exceedsSize) {
-                return false;
+        return backlog;
+    }
+
+    void logSaveRowsEvent(int saveCount, long storageSize, long startTime) {
+
+        long         time = saveAllTimer.elapsedTime();
+        StringBuffer sb   = new StringBuffer();
+
+        sb.append("cache save rows total [count,time] ");
+        sb.append(saveRowCount + saveCount);
+        sb.append(',').append(time).append(' ');
+        sb.append("operation [count,time,size]").append(saveCount).append(',');
+        sb.append(time - startTime).append(',');
+        sb.append(storageSize).append(' ');
+
+//
+        sb.append("tx-ts ");
+        sb.append(dataFileCache.database.txManager.getGlobalChangeTimestamp());
+
+//
+        dataFileCache.logDetailEvent(sb.toString());
+    }
+
+    /**
+     * clears out the memory cache
+     */
+    public void clear() {
+
+        for (int i = 0; i < segments.length; i++) {
+            segments[i].lock.lock();
+
+            try {
+                segments[i].clear();
+            } finally {
+                segments[i].lock.unlock();
             }
         }
+    }
 
-        return true;
+    /**
+     * Returns an iterator over all the rows. Used only when the cache is
+     * not modified by other threads.
+     */
+    public Iterator getIterator() {
+        return new SegmentIterator();
     }
 
-    private void putNoCheck(CachedObject row) {
+    private class SegmentIterator implements Iterator {
 
-        if (accessCount > ACCESS_MAX) {
-            updateAccessCounts();
-            resetAccessCount();
-            updateObjectAccessCounts();
+        int      index;
+        Iterator current = segments[0].getIterator();
+
+        public boolean hasNext() {
+
+            while (!current.hasNext()) {
+                if (index + 1 == segments.length) {
+                    return false;
+                }
+
+                current = segments[++index].getIterator();
+            }
+
+            return true;
         }
 
-        Object existing = addOrRemoveObject(row, row.getPos(), false);
+        public Object next() {
+
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
 
-        if (existing != null) {
-            dataFileCache.logSevereEvent("existing object in Cache.put() "
-                                         + row.getPos() + " "
-                                         + row.getStorageSize(), null);
+            return current.next();
         }
 
-        row.setInMemory(true);
+        public int nextInt() {
+            throw new NoSuchElementException();
+        }
+
+        public long nextLong() {
+            throw new NoSuchElementException();
+        }
 
-        cacheBytesLength += row.getStorageSize();
+        public void remove() {
+            current.remove();
+        }
+
+        public void setValue(Object value) {
+            throw new UnsupportedOperationException();
+        }
     }
 
     /**
-     * Removes an object from memory cache. Does not release the file storage.
+     * One segment of the cache. All methods except find() are called with
+     * the lock held.
      */
-    CachedObject release(long pos) {
+    final class Segment extends BaseHashMap {
+
+        final Lock                                 lock = new ReentrantLock();
+        private final int                          reserveCount;
+        private final int                          capacity;         // number of Rows
+        private final long                         bytesCapacity;    // number of bytes
+        private final CachedObjectComparator       rowComparator;
+        private final BaseHashMap.BaseHashIterator objectIterator;
+        private final boolean                      updateAccess;
+        private final EvictionPolicy               policy;
+        private final int                          flushHigh;
+        private final int                          flushLow;
+
+        //
+        private CachedObject[] rowTable;
+        private long[]         rankTable;
+        volatile long          cacheBytesLength;
+
+        // estimate of changed rows, for the background flush
+        private int changedCount;
+
+        // second tier for unchanged rows, or null
+        OffHeapCache offHeap;
+
+        // lock-free lookup by position, with open addressing
+        private volatile AtomicReferenceArray<CachedObject> lookupTable;
+        private int                                         lookupUsed;
+
+        Segment(int capacity, long bytesCapacity, int reserveCount,
+                EvictionPolicy policy, int flushHigh, int flushLow) {
+
+            super(capacity, BaseHashMap.objectKeyOrValue,
+                  BaseHashMap.noKeyOrValue, true);
+
+            maxCapacity        = capacity;
+            this.capacity      = capacity;
+            this.bytesCapacity = bytesCapacity;
+            this.reserveCount  = reserveCount;
+            rowComparator      = new CachedObjectComparator();
+            rowTable           = new CachedObject[capacity];
+            cacheBytesLength   = 0;
+            objectIterator     = new BaseHashIterator(true);
+            updateAccess       = true;
+            comparator         = rowComparator;
+            lookupTable        = newLookupTable(capacity);
+            this.policy        = policy;
+            this.flushHigh     = flushHigh;
+            this.flushLow      = flushLow;
+        }
+
+        CachedObject get(long pos) {
 
-        CachedObject r = (CachedObject) addOrRemoveObject(null, pos, true);
+            if (accessCount > ACCESS_MAX) {
+                updateAccessCounts();
+                resetAccessCount();
+                updateObjectAccessCounts();
+            }
+
+            int lookup = getObjectLookup(pos);
+
+            if (lookup == -1) {
+                return null;
+            }
+
+            accessTable[lookup] = ++accessCount;
+
+            CachedObject object = (CachedObject) objectKeyTable[lookup];
+
+            policy.recordAccess(pos);
+
+            return object;
+        }
+
+        /**
+         * Finds the row without locking. The access count of the row is
+         * set, to be merged into the access counts of the segment at the
+         * next clearup.
+         */
+        CachedObject find(long pos) {
+
+            AtomicReferenceArray<CachedObject> table = lookupTable;
+
+            int mask = table.length() - 1;
+            int i    = getLookupHash(pos) & mask;
+
+            for (int count = 0; count <= mask; count++) {
+                CachedObject object = table.get(i);
+
+                if (object == null) {
+                    return null;
+                }
+
+                if (object != removedLookup) {
+                    if (object.getPos() == pos) {
+                        object.updateAccessCount(accessCount);
+                        policy.recordAccess(pos);
+
+                        return object;
+                    }
+                }
+
+                i = (i + 1) & mask;
+            }
 
-        if (r == null) {
             return null;
         }
 
-        cacheBytesLength -= r.getStorageSize();
+        void put(CachedObject row) {
 
-        r.setInMemory(false);
+            int storageSize = row.getStorageSize();
 
-        return r;
-    }
+            if (preparePut(storageSize)) {
+                putNoCheck(row);
+            } else {
+                long value = size() + reserveCount >= capacity ? capacity
+                                                               : bytesCapacity
+                                                                 / 1024L;
 
-    public void releaseRange(IntIndex list, int fileBlockItemCount) {
+                throw Error.error(ErrorCode.DATA_CACHE_IS_FULL,
+                                  String.valueOf(value));
+            }
+        }
 
-        objectIterator.reset();
+        void putUsingReserve(CachedObject row) {
 
-        while (objectIterator.hasNext()) {
-            CachedObject o     = (CachedObject) objectIterator.next();
-            long         pos   = o.getPos();
-            int          block = (int) (pos / fileBlockItemCount);
-            int          index = list.findFirstEqualKeyIndex(block);
+            int storageSize = row.getStorageSize();
 
-            if (index >= 0) {
-                o.setInMemory(false);
-                objectIterator.remove();
+            preparePut(storageSize);
 
-                cacheBytesLength -= o.getStorageSize();
+            if (size() >= capacity) {
+                throw Error.error(ErrorCode.DATA_CACHE_IS_FULL,
+                                  String.valueOf(capacity));
             }
+
+            putNoCheck(row);
         }
-    }
 
-    public void releaseRange(long startPos, long limitPos) {
+        boolean preparePut(int storageSize) {
+
+            boolean exceedsCount = size() + reserveCount >= capacity;
+            boolean exceedsSize = storageSize + cacheBytesLength
+                                  > bytesCapacity;
+
+            if (exceedsCount || exceedsSize) {
+                if (flushHigh > 0) {
+                    int count = size();
+
+                    // the flush has fallen behind if few rows are unchanged
+                    if (cleanUp(false, true) < count / 4) {
+                        cleanUp(false, false);
+                    }
+                } else {
+                    cleanUp(false, false);
+                }
 
-        objectIterator.reset();
+                exceedsCount = size() + reserveCount >= capacity;
+                exceedsSize  = storageSize + cacheBytesLength > bytesCapacity;
 
-        while (objectIterator.hasNext()) {
-            CachedObject o   = (CachedObject) objectIterator.next();
-            long         pos = o.getPos();
+                if (exceedsCount || exceedsSize) {
+                    clearUnchanged();
+                } else {
+                    return true;
+                }
+
+                exceedsCount = size() + reserveCount >= capacity;
+                exceedsSize  = storageSize + cacheBytesLength > bytesCapacity;
+
+                if (exceedsCount || exceedsSize) {
+                    cleanUp(true, false);
+                } else {
+                    return true;
+                }
 
-            if (pos >= startPos && pos < limitPos) {
-                o.setInMemory(false);
-                objectIterator.remove();
+                exceedsCount = size() + reserveCount >= capacity;
+                exceedsSize  = storageSize + cacheBytesLength > bytesCapacity;
 
-                cacheBytesLength -= o.getStorageSize();
+                if (exceedsCount) {
+                    dataFileCache.logInfoEvent(
+                        "dataFileCache CACHE ROWS limit reached");
+                }
+
+                if (exceedsSize) {
+                    dataFileCache.logInfoEvent(
+                        "dataFileCache CACHE SIZE limit reached");
+                }
+
+                if (exceedsCount || exceedsSize) {
+                    return false;
+                }
             }
+
+            return true;
         }
-    }
 
-    private void updateAccessCounts() {
+        private void putNoCheck(CachedObject row) {
+
+            if (accessCount > ACCESS_MAX) {
+                updateAccessCounts();
+                resetAccessCount();
+                updateObjectAccessCounts();
+            }
+
+            Object existing = addOrRemoveObject(row, row.getPos(), false);
+
+            if (existing != null) {
+                dataFileCache.logSevereEvent("existing object in Cache.put() "
+                                             + row.getPos() + " "
+                                             + row.getStorageSize(), null);
+                removeLookup((CachedObject) existing);
+            }
+
+            if (offHeap != null) {
+                offHeap.remove(row.getPos());
+            }
+
+            row.setInMemory(true);
+            addLookup(row);
+            policy.recordAccess(row.getPos());
+
+            cacheBytesLength += row.getStorageSize();
+
+            if (flushHigh > 0 && row.hasChanged()) {
+                changedCount++;
+
+                if (changedCount >= flushHigh) {
+                    dataFileCache.flushRunner.start();
+                }
+            }
+        }
+
+        CachedObject release(long pos) {
+
+            if (offHeap != null) {
+                offHeap.remove(pos);
+            }
+
+            CachedObject r = (CachedObject) addOrRemoveObject(null, pos,
+                true);
+
+            if (r == null) {
+                return null;
+            }
+
+            cacheBytesLength -= r.getStorageSize();
+
+            r.setInMemory(false);
+            removeLookup(r);
+
+            return r;
+        }
+
+        void releaseRange(IntIndex list, int fileBlockItemCount) {
+
+            objectIterator.reset();
+
+            while (objectIterator.hasNext()) {
+                CachedObject o     = (CachedObject) objectIterator.next();
+                long         pos   = o.getPos();
+                int          block = (int) (pos / fileBlockItemCount);
+                int          index = list.findFirstEqualKeyIndex(block);
+
+                if (index >= 0) {
+                    o.setInMemory(false);
+                    objectIterator.remove();
+                    removeLookup(o);
+
+                    cacheBytesLength -= o.getStorageSize();
+                }
+            }
+        }
+
+        void releaseRange(long startPos, long limitPos) {
+
+            objectIterator.reset();
 
-        CachedObject r;
-        int          count;
+            while (objectIterator.hasNext()) {
+                CachedObject o   = (CachedObject) objectIterator.next();
+                long         pos = o.getPos();
 
-        if (updateAccess) {
-            for (int i = 0; i < objectKeyTable.length; i++) {
-                r = (CachedObject) objectKeyTable[i];
+                if (pos >= startPos && pos < limitPos) {
+                    o.setInMemory(false);
+                    objectIterator.remove();
+                    removeLookup(o);
+
+                    cacheBytesLength -= o.getStorageSize();
+                }
+            }
+        }
+
+        private void updateAccessCounts() {
+
+            CachedObject r;
+            int          count;
 
-                if (r != null) {
-                    count = r.getAccessCount();
+            if (updateAccess) {
+                for (int i = 0; i < objectKeyTable.length; i++) {
+                    r = (CachedObject) objectKeyTable[i];
 
-                    if (count > accessTable[i]) {
-                        accessTable[i] = count;
+                    if (r != null) {
+                        count = r.getAccessCount();
+
+                        if (count > accessTable[i]) {
+                            accessTable[i] = count;
+                        }
                     }
                 }
             }
         }
-    }
 
-    private void updateObjectAccessCounts() {
+        private void updateObjectAccessCounts() {
 
-        CachedObject r;
-        int          count;
+            CachedObject r;
+            int          count;
 
-        if (updateAccess) {
-            for (int i = 0; i < objectKeyTable.length; i++) {
-                r = (CachedObject) objectKeyTable[i];
+            if (updateAccess) {
+                for (int i = 0; i < objectKeyTable.length; i++) {
+                    r = (CachedObject) objectKeyTable[i];
 
-                if (r != null) {
-                    count = accessTable[i];
+                    if (r != null) {
+                        count = accessTable[i];
 
-                    r.updateAccessCount(count);
+                        r.updateAccessCount(count);
+                    }
                 }
             }
         }
-    }
 
-    /**
-     * Reduces the number of rows held in this Cache object. <p>
-     *
-     * Cleanup is done by checking the accessCount of the Rows and removing
-     * the rows with the lowest access count.
-     *
-     * Index operations require that some rows remain
-     * in the cache. This is ensured by prior calling keepInMemory().
-     *
-     */
-    private void cleanUp(boolean all) {
-
-        updateAccessCounts();
-
-        int savecount    = 0;
-        int removeCount  = size() / 2;
-        int accessTarget = all ? accessCount + 1
-                               : getAccessCountCeiling(removeCount,
-                                   removeCount / 8);
-        int accessMid = all ? accessCount + 1
-                            : (accessMin + accessTarget) / 2;
-
-        objectIterator.reset();
-
-        for (; objectIterator.hasNext(); ) {
-            CachedObject row = (CachedObject) objectIterator.next();
-            int          currentAccessCount = objectIterator.getAccessCount();
-            boolean oldRow = currentAccessCount < accessTarget
-                             && !row.isKeepInMemory();
-            boolean newRow = row.isNew()
-                             && row.getStorageSize()
-                                >= DataFileCache.initIOBufferSize;
-            boolean saveRow = row.hasChanged() && (oldRow || newRow);
-
-            objectIterator.setAccessCount(accessTarget);
-
-            synchronized (row) {
-                if (saveRow) {
-                    rowTable[savecount++] = row;
+        /**
+         * Reduces the number of rows held in this segment. <p>
+         *
+         * Cleanup is done by checking the accessCount of the Rows and
+         * removing the rows with the lowest access count.
+         *
+         * Index operations require that some rows remain
+         * in the cache. This is ensured by prior calling keepInMemory().
+         *
+         * With cleanOnly, changed rows are neither written nor removed and
+         * the background flush is started if there are any. Returns the
+         * count of removed rows.
+         */
+        private int cleanUp(boolean all, boolean cleanOnly) {
+
+            updateAccessCounts();
+
+            int savecount    = 0;
+            int removed      = 0;
+            int changed      = 0;
+            int removeCount  = size() / 2;
+            int accessTarget = all ? accessCount + 1
+                                   : getAccessCountCeiling(removeCount,
+                                       removeCount / 8);
+            int accessMid = all ? accessCount + 1
+                                : (accessMin + accessTarget) / 2;
+            boolean byRank = !all && policy.usesFrequency();
+            long    rankTarget = byRank ? getRankCeiling(removeCount)
+                                        : 0;
+
+            objectIterator.reset();
+
+            for (; objectIterator.hasNext(); ) {
+                CachedObject row = (CachedObject) objectIterator.next();
+                int currentAccessCount = objectIterator.getAccessCount();
+                boolean oldRow = byRank
+                                 ? getRank(row, currentAccessCount)
+                                   < rankTarget
+                                 : currentAccessCount < accessTarget;
+
+                oldRow = oldRow && !row.isKeepInMemory();
+                boolean newRow = row.isNew()
+                                 && row.getStorageSize()
+                                    >= DataFileCache.initIOBufferSize;
+                boolean saveRow = row.hasChanged() && (oldRow || newRow);
+
+                if (cleanOnly && row.hasChanged()) {
+                    oldRow  = false;
+                    saveRow = false;
                 }
 
-                if (oldRow) {
-                    row.setInMemory(false);
-                    objectIterator.remove();
+                if (row.hasChanged() && !saveRow) {
+                    changed++;
+                }
 
-                    cacheBytesLength -= row.getStorageSize();
+                objectIterator.setAccessCount(accessTarget);
+
+                // the row may be kept by a thread that found it with find()
+                synchronized (row) {
+                    oldRow = oldRow && !row.isKeepInMemory();
+
+                    if (saveRow) {
+                        rowTable[savecount++] = row;
+                    }
+
+                    if (oldRow) {
+                        row.setInMemory(false);
+                        objectIterator.remove();
+                        removeLookup(row);
+
+                        cacheBytesLength -= row.getStorageSize();
+
+                        removed++;
+
+                        if (offHeap != null && !row.hasChanged()) {
+                            offHeap.put(row);
+                        }
+                    }
+                }
+
+                if (savecount == rowTable.length) {
+                    saveRows(savecount);
+
+                    savecount = 0;
                 }
             }
 
-            if (savecount == rowTable.length) {
-                saveRows(savecount);
+            saveRows(savecount);
+            setAccessCountFloor(accessTarget);
+
+            accessCount++;
+
+            changedCount = changed;
 
-                savecount = 0;
+            if (cleanOnly && changed > 0) {
+                dataFileCache.flushRunner.start();
             }
+
+            return removed;
         }
 
-        saveRows(savecount);
-        setAccessCountFloor(accessTarget);
+        /**
+         * Writes the least recently used changed rows, in file position
+         * order, until no more than flushLow changed rows remain. Rows kept
+         * in memory are not written. Returns the count of changed rows found.
+         */
+        int flush() {
 
-        accessCount++;
-    }
+            if (rankTable == null || rankTable.length < capacity) {
+                rankTable = new long[capacity];
+            }
 
-    void clearUnchanged() {
+            int count = 0;
 
-        objectIterator.reset();
+            objectIterator.reset();
 
-        for (; objectIterator.hasNext(); ) {
-            CachedObject row = (CachedObject) objectIterator.next();
+            while (objectIterator.hasNext() && count < rowTable.length) {
+                CachedObject row = (CachedObject) objectIterator.next();
 
-            synchronized (row) {
-                if (!row.isKeepInMemory() && !row.hasChanged()) {
-                    row.setInMemory(false);
-                    objectIterator.remove();
+                if (row.hasChanged() && !row.isKeepInMemory()) {
+                    rowTable[count]  = row;
+                    rankTable[count] = objectIterator.getAccessCount();
+
+                    count++;
+                }
+            }
+
+            int writeCount = count - flushLow;
+
+            if (writeCount > 0 && writeCount < count) {
+                long[] accessCounts = new long[count];
+
+                System.arraycopy(rankTable, 0, accessCounts, 0, count);
+                Arrays.sort(accessCounts);
+
+                long accessTarget = accessCounts[writeCount - 1];
+                int  selected     = 0;
+
+                for (int i = 0; i < count && selected < writeCount; i++) {
+                    if (rankTable[i] <= accessTarget) {
+                        rowTable[selected++] = rowTable[i];
+                    }
+                }
+
+                writeCount = selected;
+            }
+
+            if (writeCount > 0) {
+                saveRows(writeCount);
+
+                flushRowCount += writeCount;
+            } else {
+                writeCount = 0;
+            }
+
+            for (int i = writeCount; i < count; i++) {
+                rowTable[i] = null;
+            }
+
+            changedCount = count - writeCount;
+
+            return count;
+        }
+
+        /**
+         * Returns the rank of the row, with the frequency before the access
+         * count. Among rows of equal frequency the most recently used rank
+         * lowest, so a row read by a scan must be used again before it
+         * displaces an older row.
+         */
+        private long getRank(CachedObject row, int rowAccessCount) {
+            return ((long) policy.getFrequency(row.getPos()) << 32)
+                   | (~rowAccessCount & 0xffffffffL);
+        }
+
+        /**
+         * Returns the lowest rank that is kept when up to count rows with
+         * lower ranks are removed.
+         */
+        private long getRankCeiling(int count) {
 
-                    cacheBytesLength -= row.getStorageSize();
+            int size = size();
+
+            if (rankTable == null || rankTable.length < size) {
+                rankTable = new long[Math.max(size, capacity)];
+            }
+
+            int n = 0;
+
+            objectIterator.reset();
+
+            while (objectIterator.hasNext() && n < size) {
+                CachedObject row = (CachedObject) objectIterator.next();
+
+                rankTable[n++] = getRank(row,
+                                         objectIterator.getAccessCount());
+            }
+
+            if (count >= n) {
+                return Long.MAX_VALUE;
+            }
+
+            Arrays.sort(rankTable, 0, n);
+
+            return rankTable[count];
+        }
+
+        void clearUnchanged() {
+
+            objectIterator.reset();
+
+            for (; objectIterator.hasNext(); ) {
+                CachedObject row = (CachedObject) objectIterator.next();
+
+                synchronized (row) {
+                    if (!row.isKeepInMemory() && !row.hasChanged()) {
+                        row.setInMemory(false);
+                        objectIterator.remove();
+                        removeLookup(row);
+
+                        cacheBytesLength -= row.getStorageSize();
+                    }
                 }
             }
         }
-    }
 
-    private synchronized void saveRows(int count) {
+        private void saveRows(int count) {
 
-        if (count == 0) {
-            return;
+            if (count == 0) {
+                return;
+            }
+
+            rowComparator.setType(CachedObjectComparator.COMPARE_POSITION);
+            ArraySort.sort(rowTable, 0, count, rowComparator);
+            dataFileCache.saveRows(rowTable, 0, count);
+
+            saveRowCount += count;
         }
 
-        rowComparator.setType(CachedObjectComparator.COMPARE_POSITION);
-        ArraySort.sort(rowTable, 0, count, rowComparator);
-        dataFileCache.saveRows(rowTable, 0, count);
+        void saveAll() {
 
-        saveRowCount += count;
-    }
+            int savecount = 0;
 
-    /**
-     * Writes out all modified cached Rows.
-     */
-    void saveAll() {
+            objectIterator.reset();
 
-        int savecount = 0;
+            for (; objectIterator.hasNext(); ) {
+                if (savecount == rowTable.length) {
+                    saveRows(savecount);
 
-        objectIterator.reset();
+                    savecount = 0;
+                }
+
+                CachedObject r = (CachedObject) objectIterator.next();
 
-        for (; objectIterator.hasNext(); ) {
-            if (savecount == rowTable.length) {
-                saveRows(savecount);
+                if (r.hasChanged()) {
+                    rowTable[savecount] = r;
 
-                savecount = 0;
+                    savecount++;
+                }
             }
 
-            CachedObject r = (CachedObject) objectIterator.next();
+            saveRows(savecount);
+
+            changedCount = 0;
+        }
+
+        public void clear() {
 
-            if (r.hasChanged()) {
-                rowTable[savecount] = r;
+            super.clear();
 
-                savecount++;
+            if (offHeap != null) {
+                offHeap.clear();
             }
+
+            cacheBytesLength = 0;
+            lookupTable      = newLookupTable(capacity);
+            lookupUsed       = 0;
         }
 
-        saveRows(savecount);
-    }
+        Iterator getIterator() {
 
-    void logSaveRowsEvent(int saveCount, long storageSize, long startTime) {
+            objectIterator.reset();
 
-        long         time = saveAllTimer.elapsedTime();
-        StringBuffer sb   = new StringBuffer();
+            return objectIterator;
+        }
 
-        sb.append("cache save rows total [count,time] ");
-        sb.append(saveRowCount + saveCount);
-        sb.append(',').append(time).append(' ');
-        sb.append("operation [count,time,size]").append(saveCount).append(',');
-        sb.append(time - startTime).append(',');
-        sb.append(storageSize).append(' ');
+        private AtomicReferenceArray<CachedObject> newLookupTable(int rows) {
 
-//
-        sb.append("tx-ts ");
-        sb.append(dataFileCache.database.txManager.getGlobalChangeTimestamp());
+            int length = 16;
 
-//
-        dataFileCache.logDetailEvent(sb.toString());
-    }
+            while (length < rows * 2) {
+                length *= 2;
+            }
 
-    /**
-     * clears out the memory cache
-     */
-    public void clear() {
+            return new AtomicReferenceArray<CachedObject>(length);
+        }
 
-        super.clear();
+        private int getLookupHash(long pos) {
 
-        cacheBytesLength = 0;
-    }
+            int hash = (int) (pos ^ (pos >>> 32));
 
-    public Iterator getIterator() {
+            return hash ^ (hash >>> 16);
+        }
 
-        objectIterator.reset();
+        /**
+         * Adds the row to the lookup table. Removed rows leave the
+         * removedLookup marker, so that searches continue past them.
+         * The table is rebuilt when live rows and markers fill three
+         * quarters of it.
+         */
+        private void addLookup(CachedObject row) {
 
-        return objectIterator;
-    }
+            if ((lookupUsed + 1) * 4 > lookupTable.length() * 3) {
+                rebuildLookup();
+            }
+
+            AtomicReferenceArray<CachedObject> table = lookupTable;
+
+            int mask = table.length() - 1;
+            int i    = getLookupHash(row.getPos()) & mask;
 
-    protected int incrementAccessCount() {
-        return super.incrementAccessCount();
+            while (true) {
+                CachedObject o = table.get(i);
+
+                if (o == null) {
+                    lookupUsed++;
+
+                    break;
+                }
+
+                if (o == removedLookup) {
+                    break;
+                }
+
+                i = (i + 1) & mask;
+            }
+
+            table.set(i, row);
+        }
+
+        private void removeLookup(CachedObject row) {
+
+            AtomicReferenceArray<CachedObject> table = lookupTable;
+
+            int mask = table.length() - 1;
+            int i    = getLookupHash(row.getPos()) & mask;
+
+            for (int count = 0; count <= mask; count++) {
+                CachedObject o = table.get(i);
+
+                if (o == null) {
+                    return;
+                }
+
+                if (o == row) {
+                    table.set(i, removedLookup);
+
+                    return;
+                }
+
+                i = (i + 1) & mask;
+            }
+        }
+
+        /**
+         * Publishes a new table with the rows in the segment. Searches that
+         * still use the old table can miss rows added after this, and then
+         * find them in the segment under the lock.
+         */
+        private void rebuildLookup() {
+
+            int rows = Math.max(capacity, size() + 1);
+            AtomicReferenceArray<CachedObject> table = newLookupTable(rows);
+            int                                mask  = table.length() - 1;
+
+            for (int j = 0; j < objectKeyTable.length; j++) {
+                CachedObject row = (CachedObject) objectKeyTable[j];
+
+                if (row == null) {
+                    continue;
+                }
+
+                int i = getLookupHash(row.getPos()) & mask;
+
+                while (table.get(i) != null) {
+                    i = (i + 1) & mask;
+                }
+
+                table.set(i, row);
+            }
+
+            lookupUsed  = size();
+            lookupTable = table;
+        }
     }
 
     static final class CachedObjectComparator implements ObjectComparator {
@@ -98,11 +98,11 @@ public abstract class CachedObjectBase implements CachedObject {
         hasChanged = flag;
     }
 
-    public boolean isKeepInMemory() {
+    public synchronized boolean isKeepInMemory() {
         return keepCount > 0;
     }
 
-    public boolean keepInMemory(boolean keep) {
+    public synchronized boolean keepInMemory(boolean keep) {
 
         if (!isInMemory) {
             return false;
@@ -122,11 +122,11 @@ public abstract class CachedObjectBase implements CachedObject {
         return true;
     }
 
-    public boolean isInMemory() {
+    public synchronized boolean isInMemory() {
         return isInMemory;
     }
 
-    public void setInMemory(boolean in) {
+    public synchronized void setInMemory(boolean in) {
         isInMemory = in;
     }
 
@@ -32,8 +32,16 @@
 package org.hsqldb.persist;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.hsqldb.Database;
@@ -48,6 +56,7 @@ import org.hsqldb.lib.Iterator;
 import org.hsqldb.map.BitMap;
 import org.hsqldb.rowio.RowInputBinary180;
 import org.hsqldb.rowio.RowInputBinaryDecode;
+import org.hsqldb.rowio.RowInputBinaryMapped;
 import org.hsqldb.rowio.RowInputInterface;
 import org.hsqldb.rowio.RowOutputBinary180;
 import org.hsqldb.rowio.RowOutputBinaryEncode;
@@ -121,6 +130,9 @@ public class DataFileCache {
     protected RowInputInterface rowIn;
     public RowOutputInterface   rowOut;
 
+    // decodes rows from the mapped file when hsqldb.nio_mapped_read is set
+    RowInputBinaryMapped rowInMapped;
+
     //
     public long maxDataFileSize;
 
@@ -142,11 +154,38 @@ public class DataFileCache {
     Lock          readLock  = lock.readLock();
     Lock          writeLock = lock.writeLock();
 
+    // held with readLock for file reads and writes and the row buffers
+    final Lock fileLock = new ReentrantLock();
+
+    // count of rows read from the file into the cache
+    long cacheMissCount;
+
+    // background writer of changed rows, when hsqldb.cache_flush_high is set
+    CacheFlushRunner     flushRunner;
+    private volatile int flushBacklog;
+
+    // background reader for index scans, when hsqldb.cache_read_ahead is set
+    int                     readAheadRows;
+    private ExecutorService readAheadExecutor;
+    private final AtomicInteger readAheadPending = new AtomicInteger();
+    private volatile long   readAheadRowCount;
+    private volatile boolean readAheadStopped;
+
+    // bytes for row images outside the heap, when hsqldb.cache_off_heap_size
+    // is set
+    long offHeapCapacity;
+
     public DataFileCache(Database db, String baseFileName) {
 
         initParams(db, baseFileName, false);
 
-        cache = new Cache(this);
+        if (database.logger.propCacheFlushHigh > 0 && !cacheReadonly) {
+            flushRunner = new CacheFlushRunner();
+        }
+
+        readAheadRows   = database.logger.propCacheReadAhead;
+        offHeapCapacity = database.logger.propCacheOffHeapSize * 1024L;
+        cache           = new Cache(this);
     }
 
     /**
@@ -231,6 +270,11 @@ public class DataFileCache {
         }
 
         fileFreePosition = initialFreePos;
+        readAheadStopped = false;
+
+        if (flushRunner != null) {
+            flushRunner.open();
+        }
 
         logInfoEvent("dataFileCache open start");
 
@@ -440,6 +484,11 @@ public class DataFileCache {
     void openStoredFileAccess(boolean readonly) {
 
         fileFreePosition = initialFreePos;
+        readAheadStopped = false;
+
+        if (flushRunner != null) {
+            flushRunner.open();
+        }
 
         logInfoEvent("dataFileCache open start");
 
@@ -649,6 +698,7 @@ public class DataFileCache {
      */
     public void release() {
 
+        stopBackground();
         writeLock.lock();
 
         try {
@@ -679,6 +729,7 @@ public class DataFileCache {
      */
     public void close() {
 
+        stopBackground();
         writeLock.lock();
 
         try {
@@ -839,10 +890,16 @@ public class DataFileCache {
                                                  new byte[initIOBufferSize]);
             }
         }
+
+        if (rowInMapped == null && database.logger.propNioMappedRead
+                && database.logger.getCrypto() == null && !is180) {
+            rowInMapped = new RowInputBinaryMapped();
+        }
     }
 
     DataFileDefrag defrag(Session session) {
 
+        stopBackground();
         writeLock.lock();
 
         try {
@@ -903,7 +960,7 @@ public class DataFileCache {
 
     public void add(CachedObject object, boolean keep) {
 
-        writeLock.lock();
+        readLock.lock();
 
         try {
             cacheModified = true;
@@ -915,46 +972,38 @@ public class DataFileCache {
             }
 
             if (object.getStorageSize() > initIOBufferSize) {
-                rowOut.reset(object.getStorageSize());
+                fileLock.lock();
+
+                try {
+                    rowOut.reset(object.getStorageSize());
+                } finally {
+                    fileLock.unlock();
+                }
             }
         } finally {
-            writeLock.unlock();
+            readLock.unlock();
         }
     }
 
     public CachedObject get(CachedObject object, PersistentStore store,
                             boolean keep) {
 
-        readLock.lock();
-
-        long pos;
-
-        try {
-            if (object.isInMemory()) {
-                if (keep) {
-                    object.keepInMemory(true);
-                }
-
+        if (object.isInMemory()) {
+            if (!keep || object.keepInMemory(true)) {
                 return object;
             }
+        }
 
-            pos = object.getPos();
-
-            if (pos < 0) {
-                return null;
-            }
+        long pos = object.getPos();
 
-            object = cache.get(pos);
+        if (pos < 0) {
+            return null;
+        }
 
-            if (object != null) {
-                if (keep) {
-                    object.keepInMemory(true);
-                }
+        object = getCached(pos, keep);
 
-                return object;
-            }
-        } finally {
-            readLock.unlock();
+        if (object != null) {
+            return object;
         }
 
         return getFromFile(pos, store, keep);
@@ -963,26 +1012,14 @@ public class DataFileCache {
     public CachedObject get(long pos, int size, PersistentStore store,
                             boolean keep) {
 
-        CachedObject object;
-
         if (pos < 0) {
             return null;
         }
 
-        readLock.lock();
-
-        try {
-            object = cache.get(pos);
+        CachedObject object = getCached(pos, keep);
 
-            if (object != null) {
-                if (keep) {
-                    object.keepInMemory(true);
-                }
-
-                return object;
-            }
-        } finally {
-            readLock.unlock();
+        if (object != null) {
+            return object;
         }
 
         return getFromFile(pos, size, store, keep);
@@ -990,37 +1027,49 @@ public class DataFileCache {
 
     public CachedObject get(long pos, PersistentStore store, boolean keep) {
 
-        CachedObject object;
-
         if (pos < 0) {
             return null;
         }
 
-        readLock.lock();
+        CachedObject object = getCached(pos, keep);
 
-        try {
-            object = cache.get(pos);
+        if (object != null) {
+            return object;
+        }
 
-            if (object != null) {
-                if (keep) {
-                    object.keepInMemory(true);
-                }
+        return getFromFile(pos, store, keep);
+    }
 
-                return object;
-            }
-        } finally {
-            readLock.unlock();
+    /**
+     * Returns the object if it is in the cache, without locking. When keep
+     * is true, the object is returned only if it is kept in memory before
+     * it can be removed from the cache.
+     */
+    private CachedObject getCached(long pos, boolean keep) {
+
+        CachedObject object = cache.find(pos);
+
+        if (object == null) {
+            return null;
         }
 
-        return getFromFile(pos, store, keep);
+        if (keep) {
+            return object.keepInMemory(true) ? object
+                                             : null;
+        }
+
+        return object.isInMemory() ? object
+                                   : null;
     }
 
     private CachedObject getFromFile(long pos, PersistentStore store,
                                      boolean keep) {
 
-        CachedObject object = null;
+        CachedObject object      = null;
+        Lock         segmentLock = cache.getLock(pos);
 
-        writeLock.lock();
+        readLock.lock();
+        segmentLock.lock();
 
         try {
             object = cache.get(pos);
@@ -1034,20 +1083,32 @@ public class DataFileCache {
             }
 
             for (int j = 0; j < 2; j++) {
+                fileLock.lock();
+
                 try {
-                    readObject(pos);
+                    RowInputInterface rowInput;
 
-                    object = store.get(rowIn);
+                    if (cache.readOffHeap(pos, rowIn)) {
+                        rowInput = rowIn;
+                    } else {
+                        rowInput = readRow(pos);
+
+                        cacheMissCount++;
+                    }
+
+                    object = store.get(rowInput);
 
                     if (object == null) {
                         throw Error.error(ErrorCode.GENERAL_IO_ERROR,
                                           "position " + pos);
                     }
 
+                    store.set(object);
+
                     break;
                 } catch (Throwable t) {
                     if (t instanceof OutOfMemoryError) {
-                        cache.clearUnchanged();
+                        cache.clearUnchanged(pos);
                         System.gc();
 
                         if (j > 0) {
@@ -1073,6 +1134,8 @@ public class DataFileCache {
 
                         throw ex;
                     }
+                } finally {
+                    fileLock.unlock();
                 }
             }
 
@@ -1084,24 +1147,25 @@ public class DataFileCache {
                 object.keepInMemory(true);
             }
 
-            store.set(object);
-
             return object;
         } catch (HsqlException e) {
             logSevereEvent(dataFileName + " getFromFile failed " + pos, e);
 
             throw e;
         } finally {
-            writeLock.unlock();
+            segmentLock.unlock();
+            readLock.unlock();
         }
     }
 
     private CachedObject getFromFile(long pos, int size,
                                      PersistentStore store, boolean keep) {
 
-        CachedObject object = null;
+        CachedObject object      = null;
+        Lock         segmentLock = cache.getLock(pos);
 
-        writeLock.lock();
+        readLock.lock();
+        segmentLock.lock();
 
         try {
             object = cache.get(pos);
@@ -1115,14 +1179,20 @@ public class DataFileCache {
             }
 
             for (int j = 0; j < 2; j++) {
+                fileLock.lock();
+
                 try {
                     readObject(pos, size);
 
                     object = store.get(rowIn);
 
+                    cacheMissCount++;
+
+                    store.set(object);
+
                     break;
                 } catch (OutOfMemoryError err) {
-                    cache.clearUnchanged();
+                    cache.clearUnchanged(pos);
                     System.gc();
 
                     if (j > 0) {
@@ -1132,6 +1202,8 @@ public class DataFileCache {
 
                         throw err;
                     }
+                } finally {
+                    fileLock.unlock();
                 }
             }
 
@@ -1141,15 +1213,14 @@ public class DataFileCache {
                 object.keepInMemory(true);
             }
 
-            store.set(object);
-
             return object;
         } catch (HsqlException e) {
             logSevereEvent(dataFileName + " getFromFile failed " + pos, e);
 
             throw e;
         } finally {
-            writeLock.unlock();
+            segmentLock.unlock();
+            readLock.unlock();
         }
     }
 
@@ -1166,6 +1237,39 @@ public class DataFileCache {
         }
     }
 
+    /**
+     * Returns the input for decoding the row at pos. When mapped reads are
+     * enabled and the row lies within one mapped segment of the file, the
+     * row is decoded from the mapped buffer without a copy. Otherwise the
+     * row is read into the buffer of rowIn.
+     */
+    private RowInputInterface readRow(long pos) {
+
+        if (rowInMapped != null && dataFile instanceof RAFileHybrid) {
+            long position = pos * dataFileScale;
+            ByteBuffer buffer =
+                ((RAFileHybrid) dataFile).getMappedBuffer(position);
+
+            if (buffer != null) {
+                int offset = RAFileNIO.getMappedOffset(position);
+
+                if (offset + 4 <= buffer.limit()) {
+                    int size = buffer.getInt(offset);
+
+                    if (size > 4 && offset + size <= buffer.limit()) {
+                        rowInMapped.resetRow(pos, size, buffer, offset);
+
+                        return rowInMapped;
+                    }
+                }
+            }
+        }
+
+        readObject(pos);
+
+        return rowIn;
+    }
+
     private void readObject(long pos) {
 
         try {
@@ -1235,14 +1339,14 @@ public class DataFileCache {
 
     public CachedObject release(long pos) {
 
-        writeLock.lock();
+        readLock.lock();
 
         try {
             cacheModified = true;
 
             return cache.release(pos);
         } finally {
-            writeLock.unlock();
+            readLock.unlock();
         }
     }
 
@@ -1252,27 +1356,33 @@ public class DataFileCache {
             return;
         }
 
-        int  pageCount   = copyShadow(rows, offset, count);
-        long startTime   = cache.saveAllTimer.elapsedTime();
-        long storageSize = 0;
+        fileLock.lock();
+
+        try {
+            int  pageCount   = copyShadow(rows, offset, count);
+            long startTime   = cache.saveAllTimer.elapsedTime();
+            long storageSize = 0;
 
-        cache.saveAllTimer.start();
+            cache.saveAllTimer.start();
 
-        if (pageCount > 0) {
-            setFileModified();
-        }
+            if (pageCount > 0) {
+                setFileModified();
+            }
 
-        for (int i = offset; i < offset + count; i++) {
-            CachedObject r = rows[i];
+            for (int i = offset; i < offset + count; i++) {
+                CachedObject r = rows[i];
 
-            saveRowNoLock(r);
+                saveRowNoLock(r);
 
-            rows[i]     = null;
-            storageSize += r.getStorageSize();
-        }
+                rows[i]     = null;
+                storageSize += r.getStorageSize();
+            }
 
-        cache.saveAllTimer.stop();
-        cache.logSaveRowsEvent(count, storageSize, startTime);
+            cache.saveAllTimer.stop();
+            cache.logSaveRowsEvent(count, storageSize, startTime);
+        } finally {
+            fileLock.unlock();
+        }
     }
 
     /**
@@ -1571,6 +1681,149 @@ public class DataFileCache {
         return cache.size();
     }
 
+    public long getCacheMissCount() {
+        return cacheMissCount;
+    }
+
+    /**
+     * Returns the count of changed rows found by the last background flush.
+     */
+    public int getFlushBacklog() {
+        return flushBacklog;
+    }
+
+    /**
+     * Returns the count of rows written by the background flush.
+     */
+    public long getFlushRowCount() {
+        return cache.flushRowCount;
+    }
+
+    /**
+     * Returns the count of rows read from the off-heap tier of the cache.
+     */
+    public long getOffHeapHitCount() {
+        return cache.getOffHeapHitCount();
+    }
+
+    /**
+     * Returns the bytes allocated outside the heap for the off-heap tier.
+     */
+    public long getOffHeapSize() {
+        return cache.getOffHeapSize();
+    }
+
+    /**
+     * Returns the number of rows an index scan reads ahead, or 0.
+     */
+    public int getReadAheadRows() {
+        return readAheadRows;
+    }
+
+    /**
+     * Returns the count of rows read into the cache by read-ahead.
+     */
+    public long getReadAheadRowCount() {
+        return readAheadRowCount;
+    }
+
+    /**
+     * Returns true if the row at the position is in the cache.
+     */
+    public boolean isCached(long pos) {
+        return getCached(pos, false) != null;
+    }
+
+    /**
+     * Runs a read-ahead task on the background thread. The task is dropped
+     * if the thread still has earlier tasks waiting, as the scan that
+     * submitted the task is then reading the rows itself.
+     */
+    public void readAhead(Runnable task) {
+
+        if (readAheadPending.get() > 1) {
+            return;
+        }
+
+        synchronized (readAheadPending) {
+            if (dataFile == null || readAheadStopped) {
+                return;
+            }
+
+            if (readAheadExecutor == null) {
+                readAheadExecutor =
+                    Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                    public Thread newThread(Runnable r) {
+
+                        Thread t = new Thread(r, "HSQLDB Read Ahead "
+                                              + dataFileName);
+
+                        t.setDaemon(true);
+
+                        return t;
+                    }
+                });
+            }
+
+            readAheadPending.incrementAndGet();
+
+            try {
+                readAheadExecutor.execute(new ReadAheadRunner(task));
+            } catch (RejectedExecutionException e) {
+                readAheadPending.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Called by read-ahead tasks with the count of rows read from the file.
+     */
+    public void addReadAheadRowCount(int count) {
+        readAheadRowCount += count;
+    }
+
+    /**
+     * Stops the read-ahead and flush threads before the file is closed or
+     * defragmented.
+     */
+    private void stopBackground() {
+
+        stopReadAhead();
+
+        if (flushRunner != null) {
+            flushRunner.stop();
+        }
+    }
+
+    /**
+     * Stops the read-ahead thread and waits for a running task to end. A task
+     * reads rows from positions found in the indexes and must not read the
+     * file after it is closed or defragmented. Called before the cache lock
+     * is taken, as the task may be waiting for it. No tasks are started until
+     * the file is opened again.
+     */
+    private void stopReadAhead() {
+
+        ExecutorService executor;
+
+        synchronized (readAheadPending) {
+            readAheadStopped  = true;
+            executor          = readAheadExecutor;
+            readAheadExecutor = null;
+        }
+
+        if (executor == null) {
+            return;
+        }
+
+        executor.shutdownNow();
+
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {}
+    }
+
     public String getFileName() {
         return dataFileName;
     }
@@ -1674,4 +1927,131 @@ public class DataFileCache {
             database.logger.logDetailEvent(message);
         }
     }
+
+    /**
+     * Runs a read-ahead task and removes it from the pending count.
+     */
+    class ReadAheadRunner implements Runnable {
+
+        private final Runnable task;
+
+        ReadAheadRunner(Runnable task) {
+            this.task = task;
+        }
+
+        public void run() {
+
+            try {
+                if (dataFile != null && !readAheadStopped) {
+                    task.run();
+                }
+            } catch (Throwable t) {
+
+                // the rows are read again by the scan
+                logDetailEvent("DataFileCache read ahead " + t);
+            } finally {
+                readAheadPending.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Writes changed rows in the background, so that a session that fills
+     * a segment of the cache can remove unchanged rows without waiting for
+     * writes. Started when the changed rows of a segment reach the high
+     * watermark, or when a clearup finds changed rows. The flush runs on a
+     * thread of its own and writes rows until the low watermark is reached.
+     * A checkpoint waits for a running flush on the cache lock.
+     */
+    class CacheFlushRunner implements Runnable {
+
+        private volatile boolean waiting;
+        private boolean          running;
+        private boolean          stopped;
+        private Thread           thread;
+
+        public void run() {
+
+            while (true) {
+                synchronized (this) {
+                    while (!waiting && !stopped
+                            && thread == Thread.currentThread()) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {}
+                    }
+
+                    if (stopped || thread != Thread.currentThread()) {
+                        return;
+                    }
+
+                    running = true;
+                }
+
+                try {
+                    flushBacklog = cache.flush();
+                } catch (Throwable t) {
+                    logSevereEvent("DataFileCache background flush", t);
+                } finally {
+                    synchronized (this) {
+                        running = false;
+                        waiting = false;
+
+                        notifyAll();
+                    }
+                }
+            }
+        }
+
+        public void start() {
+
+            if (waiting) {
+                return;
+            }
+
+            synchronized (this) {
+                if (waiting || stopped) {
+                    return;
+                }
+
+                waiting = true;
+
+                if (thread == null) {
+                    thread = new Thread(this,
+                                        "HSQLDB Cache Flush " + dataFileName);
+
+                    thread.setDaemon(true);
+                    thread.start();
+                } else {
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Ends the thread and waits for a running flush to end. Called before
+         * the cache lock is taken, as the flush waits for the read lock. No
+         * flush is started until the file is opened again.
+         */
+        public void stop() {
+
+            synchronized (this) {
+                stopped = true;
+                waiting = false;
+                thread  = null;
+
+                notifyAll();
+
+                while (running) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {}
+                }
+            }
+        }
+
+        synchronized void open() {
+            stopped = false;
+        }
+    }
 }
@@ -50,7 +50,8 @@ public class DataFileCacheSession extends DataFileCache {
 
         super(db, baseFileName);
 
-        logEvents = false;
+        logEvents     = false;
+        readAheadRows = 0;
     }
 
     /**
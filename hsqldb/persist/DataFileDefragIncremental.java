@@ -0,0 +1,263 @@
+/* Copyright (c) 2001-2017, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.persist;
+
+import org.hsqldb.Database;
+import org.hsqldb.Row;
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.TableBase;
+import org.hsqldb.index.Index;
+import org.hsqldb.lib.DoubleIntIndex;
+import org.hsqldb.lib.HsqlArrayList;
+import org.hsqldb.lib.OrderedIntHashSet;
+import org.hsqldb.navigator.RowIterator;
+
+/**
+ *  Routine to defrag the *.data file online, in steps of limited time.<p>
+ *
+ *  The file blocks of the table spaces that are at least half empty are
+ *  found from the space directory. Each step iterates over the primary index
+ *  of the CACHED tables, continuing from the point where the previous step
+ *  stopped, and moves the rows that are in these blocks to other blocks of
+ *  the same table space. The file space of the moved rows is released with
+ *  the space directory after each batch of rows, and the blocks that become
+ *  empty are available for reuse by all table spaces.<p>
+ *
+ *  A step runs after a checkpoint while the other sessions are blocked.
+ *  Rows with uncommitted changes are not moved. The moved rows are saved to
+ *  file by the cache, and the new index roots by the next checkpoint.
+ *
+ * @author Fred Toussi (fredt@users dot sourceforge.net)
+ * @version 2.4.0
+ * @since 2.4.0
+ */
+final class DataFileDefragIncremental {
+
+    static final int scanBatchSize = 256;
+
+    //
+    final Database database;
+
+    // the point where the next step starts
+    int  tableIndex;
+    long rowIndex;
+
+    //
+    DataSpaceManagerBlocks spaceManager;
+    int                    scale;
+    int                    fileBlockItemCount;
+    DoubleIntIndex         sparseBlocks;
+    DoubleIntIndex         releasedSpace;
+    long                   movedCount;
+
+    DataFileDefragIncremental(Database database) {
+        this.database = database;
+    }
+
+    void process(Session session, DataFileCache cache, int millis) {
+
+        long limitTime     = System.currentTimeMillis() + millis;
+        int  releasedCount = 0;
+        int  sparseCount   = 0;
+
+        spaceManager       = (DataSpaceManagerBlocks) cache.spaceManager;
+        scale              = cache.getDataFileScale();
+        fileBlockItemCount = spaceManager.getFileBlockItemCount();
+        releasedSpace      = new DoubleIntIndex(scanBatchSize, false);
+        movedCount         = 0;
+
+        // free lists and the unused part of the current file blocks are
+        // written to the space directory, which then shows all free space
+        spaceManager.reset();
+
+        try {
+            releasedCount = spaceManager.released;
+            sparseBlocks  = spaceManager.getSparseBlocks();
+            sparseCount   = sparseBlocks.size();
+
+            spaceManager.initialiseSpaces();
+
+            if (sparseCount == 0) {
+                tableIndex = 0;
+                rowIndex   = 0;
+            } else {
+                moveRows(session, limitTime);
+            }
+        } finally {
+            releasedCount = spaceManager.released - releasedCount;
+            sparseBlocks  = null;
+        }
+
+        database.logger.logInfoEvent("defrag step end - sparse blocks: "
+                                     + sparseCount
+                                     + ", rows moved: " + movedCount
+                                     + ", blocks released: "
+                                     + releasedCount);
+    }
+
+    private void moveRows(Session session, long limitTime) {
+
+        OrderedIntHashSet spaceIds = new OrderedIntHashSet();
+
+        for (int i = 0; i < sparseBlocks.size(); i++) {
+            spaceIds.add(sparseBlocks.getValue(i));
+        }
+
+        HsqlArrayList allTables = database.schemaManager.getAllTables(true);
+        int           tableCount = allTables.size();
+
+        if (tableIndex >= tableCount) {
+            tableIndex = 0;
+            rowIndex   = 0;
+        }
+
+        for (int i = 0; i < tableCount; i++) {
+            Table   table     = (Table) allTables.get(tableIndex);
+            boolean completed = true;
+
+            if (table.getTableType() == TableBase.CACHED_TABLE) {
+                RowStoreSBTDisk store =
+                    (RowStoreSBTDisk) database.persistentStoreCollection
+                        .getStore(table);
+
+                if (spaceIds.contains(store.tableSpace.getSpaceID())) {
+                    completed = moveTableRows(session, store, limitTime);
+                }
+            }
+
+            if (!completed) {
+                break;
+            }
+
+            tableIndex = (tableIndex + 1) % tableCount;
+            rowIndex   = 0;
+
+            if (System.currentTimeMillis() >= limitTime) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns false if the time ran out before the last row of the table.
+     */
+    private boolean moveTableRows(Session session, RowStoreSBTDisk store,
+                                  long limitTime) {
+
+        Index  index     = store.getTable().getPrimaryIndex();
+        long[] positions = new long[scanBatchSize];
+
+        for (;;) {
+            if (System.currentTimeMillis() >= limitTime) {
+                return false;
+            }
+
+            RowIterator it      = index.selectRow(null, store, rowIndex,
+                false);
+            int         scanned = 0;
+            int         count   = 0;
+
+            while (scanned < scanBatchSize && it.next()) {
+                long pos = it.getCurrentRow().getPos();
+
+                scanned++;
+
+                if (isInSparseBlock(pos)) {
+                    positions[count++] = pos;
+                }
+            }
+
+            it.release();
+
+            int moved = moveRows(session, store, positions, count);
+
+            // the position of a row in the index can change when it is
+            // moved, as the rows with equal keys are in file position order,
+            // so the rows after the moved rows are scanned again
+            rowIndex += scanned - moved;
+
+            if (scanned < scanBatchSize) {
+                return true;
+            }
+        }
+    }
+
+    private int moveRows(Session session, RowStoreSBTDisk store,
+                         long[] positions, int count) {
+
+        int spaceId = store.tableSpace.getSpaceID();
+        int moved   = 0;
+
+        for (int i = 0; i < count; i++) {
+            Row row = (Row) store.get(positions[i], false);
+
+            // rows with uncommitted changes are recorded with their position
+            if (row.rowAction != null || row.isKeepInMemory()) {
+                continue;
+            }
+
+            int  size   = row.getStorageSize();
+            long newPos = store.tableSpace.getFilePosition(size, false);
+
+            // a sparse block that receives moved rows is no longer emptied
+            removeSparseBlock(newPos);
+            store.moveRow(session, row, newPos);
+            releasedSpace.addUnsorted(positions[i], size / scale);
+
+            moved++;
+        }
+
+        movedCount += moved;
+
+        spaceManager.freeTableSpace(spaceId, releasedSpace, 0, 0, true);
+
+        return moved;
+    }
+
+    private boolean isInSparseBlock(long pos) {
+
+        int blockIndex = (int) (pos / fileBlockItemCount);
+
+        return sparseBlocks.findFirstEqualKeyIndex(blockIndex) >= 0;
+    }
+
+    private void removeSparseBlock(long pos) {
+
+        int blockIndex = (int) (pos / fileBlockItemCount);
+        int index      = sparseBlocks.findFirstEqualKeyIndex(blockIndex);
+
+        if (index >= 0) {
+            sparseBlocks.remove(index);
+        }
+    }
+}
@@ -755,6 +755,57 @@ public class DataSpaceManagerBlocks implements DataSpaceManager {
         return fragment;
     }
 
+    /**
+     * Returns the file blocks of table spaces that are at least half free,
+     * not counting the free space at the end of the block, which is filled
+     * by new rows.
+     *
+     * return keys are file block indexes, values are space ids
+     */
+    DoubleIntIndex getSparseBlocks() {
+
+        DoubleIntIndex list = new DoubleIntIndex(16, false);
+
+        list.setKeysSearchTarget();
+        cache.writeLock.lock();
+
+        try {
+            ba.initialise(false);
+
+            try {
+                for (;;) {
+                    boolean result = ba.nextBlock();
+
+                    if (!result) {
+                        break;
+                    }
+
+                    int currentId = ba.getTableId();
+
+                    if (currentId < tableIdDefault) {
+                        continue;
+                    }
+
+                    int freeItems    = ba.getFreeSpaceValue();
+                    int freeItemsEnd = ba.getFreeBlockValue();
+
+                    if (freeItems > freeItemsEnd
+                            && freeItems * 2 >= fileBlockItemCount) {
+                        list.addUnsorted(ba.currentBlockIndex, currentId);
+                    }
+                }
+            } finally {
+                ba.reset();
+            }
+        } finally {
+            cache.writeLock.unlock();
+        }
+
+        list.sort();
+
+        return list;
+    }
+
     public int getFileBlockSize() {
         return fileBlockSize;
     }
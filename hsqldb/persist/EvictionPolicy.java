@@ -0,0 +1,64 @@
+/* Copyright (c) 2001-2016, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.persist;
+
+/**
+ * Chooses the rows that are removed when a segment of the Cache is full.
+ * One instance is used for each segment.<p>
+ *
+ * Rows with a lower frequency are removed first. Rows with the same
+ * frequency are removed in order of the access counts kept by the
+ * segment. When usesFrequency() returns false, only the access counts
+ * are used.
+ *
+ * @author Fred Toussi (fredt@users dot sourceforge.net)
+ * @version 2.4.0
+ * @since 2.4.0
+ */
+public interface EvictionPolicy {
+
+    int POLICY_ACCESS_COUNT = 0;
+    int POLICY_FREQUENCY    = 1;
+
+    /**
+     * Records an access to the row at the position. Called on each lookup
+     * and addition of a row, without a lock.
+     */
+    void recordAccess(long pos);
+
+    /**
+     * Returns the estimated count of recent accesses to the row.
+     */
+    int getFrequency(long pos);
+
+    boolean usesFrequency();
+}
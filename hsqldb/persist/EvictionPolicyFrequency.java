@@ -0,0 +1,176 @@
+/* Copyright (c) 2001-2016, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.persist;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Eviction policy that removes the least frequently used rows first, so that
+ * rows read once by a large scan are removed before the rows of the working
+ * set.<p>
+ *
+ * The frequencies are estimated with a count-min sketch of 4-bit counters,
+ * four for each position, packed sixteen to a long. All counters are halved
+ * when the count of increments reaches ten times the size of the sketch, so
+ * the estimates follow recent use. Accesses are recorded without a lock,
+ * from the threads that read the cache. Each counter is updated with a
+ * compare-and-set that stops at 15, so a counter never overflows into its
+ * neighbour. An increment that races with a halving may be applied before
+ * or after it.
+ *
+ * @author Fred Toussi (fredt@users dot sourceforge.net)
+ * @version 2.4.0
+ * @since 2.4.0
+ */
+public class EvictionPolicyFrequency implements EvictionPolicy {
+
+    static final long[] seeds = new long[] {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+        0xcbf29ce484222325L
+    };
+    static final long resetMask  = 0x7777777777777777L;
+    private final AtomicLongArray table;
+    private final int             tableMask;
+    private final int             sampleSize;
+    private final AtomicInteger   sampleCount = new AtomicInteger();
+
+    public EvictionPolicyFrequency(int capacity) {
+
+        int length = 16;
+
+        while (length < capacity) {
+            length *= 2;
+        }
+
+        table      = new AtomicLongArray(length);
+        tableMask  = length - 1;
+        sampleSize = length * 10;
+    }
+
+    public boolean usesFrequency() {
+        return true;
+    }
+
+    public void recordAccess(long pos) {
+
+        int     hash  = spread(pos);
+        int     start = (hash & 3) << 2;
+        boolean added = false;
+
+        for (int i = 0; i < 4; i++) {
+            int index = getIndex(pos, i);
+
+            added |= increment(index, start + i);
+        }
+
+        // only the thread that reaches the sample size halves the counters
+        if (added && sampleCount.incrementAndGet() == sampleSize) {
+            reset();
+        }
+    }
+
+    public int getFrequency(long pos) {
+
+        int hash      = spread(pos);
+        int start     = (hash & 3) << 2;
+        int frequency = 15;
+
+        for (int i = 0; i < 4; i++) {
+            int index  = getIndex(pos, i);
+            int offset = (start + i) << 2;
+            int count  = (int) ((table.get(index) >>> offset) & 0xfL);
+
+            if (count < frequency) {
+                frequency = count;
+            }
+        }
+
+        return frequency;
+    }
+
+    /**
+     * Increments the counter at position j of the long at index i, unless
+     * the counter is at its maximum.
+     */
+    private boolean increment(int i, int j) {
+
+        int  offset = j << 2;
+        long mask   = 0xfL << offset;
+
+        while (true) {
+            long value = table.get(i);
+
+            if ((value & mask) == mask) {
+                return false;
+            }
+
+            if (table.compareAndSet(i, value, value + (1L << offset))) {
+                return true;
+            }
+        }
+    }
+
+    private void reset() {
+
+        for (int i = 0; i < table.length(); i++) {
+            while (true) {
+                long value = table.get(i);
+
+                if (table.compareAndSet(i, value,
+                                        (value >>> 1) & resetMask)) {
+                    break;
+                }
+            }
+        }
+
+        sampleCount.addAndGet(-sampleSize / 2);
+    }
+
+    private int getIndex(long pos, int i) {
+
+        long hash = (pos + seeds[i]) * seeds[i];
+
+        hash += hash >>> 32;
+
+        return (int) hash & tableMask;
+    }
+
+    private static int spread(long pos) {
+
+        int hash = (int) (pos ^ (pos >>> 32));
+
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+
+        return (hash >>> 16) ^ hash;
+    }
+}
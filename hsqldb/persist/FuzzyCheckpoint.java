@@ -0,0 +1,140 @@
+/* Copyright (c) 2001-2017, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+
+package org.hsqldb.persist;
+
+import org.hsqldb.Database;
+import org.hsqldb.Session;
+import org.hsqldb.scriptio.ScriptWriterBase;
+
+/**
+ *  Writes the rows of the MEMORY tables to the .script.new file of a fuzzy
+ *  checkpoint, while the other sessions continue.<p>
+ *
+ *  The checkpoint starts while the other sessions are blocked. The DDL is
+ *  written to the new script, a REPEATABLE READ transaction is started for
+ *  the session that reads the rows, and the .log file is renamed to
+ *  .log.prev before a new .log is opened. This thread then writes the rows
+ *  that were committed at the start of the transaction. In MVCC mode the
+ *  rows that are deleted or updated later are kept in the indexes until
+ *  the transaction ends.<p>
+ *
+ *  At the end, the new script replaces the .script file and the .log.prev
+ *  file is deleted. Until then, the database is recovered from the .script,
+ *  .log.prev and .log files.
+ *
+ * @author Fred Toussi (fredt@users dot sourceforge.net)
+ * @version 2.4.0
+ * @since 2.4.0
+ */
+final class FuzzyCheckpoint implements Runnable {
+
+    final Database         database;
+    final Log              log;
+    final Session          session;
+    final ScriptWriterBase scriptWriter;
+    final long             rowTotal;
+    final long             startTime;
+    volatile boolean       isActive = true;
+    volatile boolean       isCancelled;
+
+    FuzzyCheckpoint(Database database, Log log, Session session,
+                    ScriptWriterBase scriptWriter, long rowTotal,
+                    long startTime) {
+
+        this.database     = database;
+        this.log          = log;
+        this.session      = session;
+        this.scriptWriter = scriptWriter;
+        this.rowTotal     = rowTotal;
+        this.startTime    = startTime;
+    }
+
+    void start() {
+
+        Thread thread = new Thread(this,
+                                   "HSQLDB Checkpoint "
+                                   + database.getNameString());
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void run() {
+
+        boolean complete = false;
+
+        try {
+            scriptWriter.writeExistingData();
+            scriptWriter.close();
+
+            complete = log.checkpointFuzzyEnd(this);
+        } catch (Throwable t) {
+            if (!isCancelled) {
+                database.logger.logSevereEvent("fuzzy checkpoint failed", t);
+            }
+        } finally {
+            if (!complete) {
+                try {
+                    scriptWriter.close();
+                } catch (Throwable t) {}
+
+                log.deleteNewScript();
+                database.logger.logInfoEvent("fuzzy checkpoint abandoned");
+            }
+
+            // ends the snapshot transaction
+            session.close();
+
+            synchronized (database.logger) {
+                isActive = false;
+
+                database.logger.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Called with the lock on the Logger.
+     */
+    void cancel() {
+
+        isCancelled = true;
+
+        scriptWriter.cancel();
+    }
+
+    long getRowCount() {
+        return scriptWriter.getRowCount();
+    }
+}
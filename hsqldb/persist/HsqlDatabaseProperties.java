@@ -133,14 +133,16 @@ public class HsqlDatabaseProperties extends HsqlProperties {
     public static final int SQL_PROPERTY    = 2;
 
     // db files modified
-    public static final int     FILES_NOT_MODIFIED = 0;
-    public static final int     FILES_MODIFIED     = 1;
-    public static final int     FILES_MODIFIED_NEW = 2;
-    public static final int     FILES_NEW          = 3;
-    private static final String MODIFIED_NO        = "no";
-    private static final String MODIFIED_YES       = "yes";
-    private static final String MODIFIED_YES_NEW   = "yes-new-files";
-    private static final String MODIFIED_NO_NEW    = "no-new-files";
+    public static final int     FILES_NOT_MODIFIED        = 0;
+    public static final int     FILES_MODIFIED            = 1;
+    public static final int     FILES_MODIFIED_NEW        = 2;
+    public static final int     FILES_NEW                 = 3;
+    public static final int     FILES_MODIFIED_NEW_SCRIPT = 4;
+    private static final String MODIFIED_NO               = "no";
+    private static final String MODIFIED_YES              = "yes";
+    private static final String MODIFIED_YES_NEW          = "yes-new-files";
+    private static final String MODIFIED_NO_NEW           = "no-new-files";
+    private static final String MODIFIED_YES_NEW_SCRIPT   = "yes-new-script";
 
     // allowed property metadata
     private static final HashMap dbMeta   = new HashMap(67);
@@ -232,18 +234,40 @@ public class HsqlDatabaseProperties extends HsqlProperties {
         "hsqldb.cache_file_scale";
     public static final String hsqldb_cache_free_count =
         "hsqldb.cache_free_count";
+    public static final String hsqldb_cache_flush_high =
+        "hsqldb.cache_flush_high";
+    public static final String hsqldb_cache_flush_low =
+        "hsqldb.cache_flush_low";
+    public static final String hsqldb_cache_off_heap_size =
+        "hsqldb.cache_off_heap_size";
+    public static final String hsqldb_cache_policy = "hsqldb.cache_policy";
+    public static final String hsqldb_cache_read_ahead =
+        "hsqldb.cache_read_ahead";
     public static final String hsqldb_cache_rows = "hsqldb.cache_rows";
     public static final String hsqldb_cache_size = "hsqldb.cache_size";
+    public static final String hsqldb_checkpoint_fuzzy =
+        "hsqldb.checkpoint_fuzzy";
     public static final String hsqldb_default_table_type =
         "hsqldb.default_table_type";
     public static final String hsqldb_defrag_limit   = "hsqldb.defrag_limit";
+    public static final String hsqldb_defrag_step_millis =
+        "hsqldb.defrag_step_millis";
     public static final String hsqldb_files_readonly = "files_readonly";
+    public static final String hsqldb_index_build_parallelism =
+        "hsqldb.index_build_parallelism";
     public static final String hsqldb_lock_file      = "hsqldb.lock_file";
+    public static final String hsqldb_log_binary     = "hsqldb.log_binary";
     public static final String hsqldb_log_data       = "hsqldb.log_data";
     public static final String hsqldb_log_size       = "hsqldb.log_size";
     public static final String hsqldb_nio_data_file  = "hsqldb.nio_data_file";
     public static final String hsqldb_nio_max_size   = "hsqldb.nio_max_size";
+    public static final String hsqldb_nio_mapped_read =
+        "hsqldb.nio_mapped_read";
+    public static final String hsqldb_recovery_parallelism =
+        "hsqldb.recovery_parallelism";
     public static final String hsqldb_script_format  = "hsqldb.script_format";
+    public static final String hsqldb_script_load_parallelism =
+        "hsqldb.script_load_parallelism";
     public static final String hsqldb_temp_directory = "hsqldb.temp_directory";
     public static final String hsqldb_result_max_memory_rows =
         "hsqldb.result_max_memory_rows";
@@ -402,12 +426,21 @@ public class HsqlDatabaseProperties extends HsqlProperties {
         dbMeta.put(hsqldb_lock_file,
                    HsqlProperties.getMeta(hsqldb_lock_file, SQL_PROPERTY,
                                           true));
+        dbMeta.put(hsqldb_checkpoint_fuzzy,
+                   HsqlProperties.getMeta(hsqldb_checkpoint_fuzzy,
+                                          SQL_PROPERTY, false));
+        dbMeta.put(hsqldb_log_binary,
+                   HsqlProperties.getMeta(hsqldb_log_binary, SQL_PROPERTY,
+                                          false));
         dbMeta.put(hsqldb_log_data,
                    HsqlProperties.getMeta(hsqldb_log_data, SQL_PROPERTY,
                                           true));
         dbMeta.put(hsqldb_nio_data_file,
                    HsqlProperties.getMeta(hsqldb_nio_data_file, SQL_PROPERTY,
                                           true));
+        dbMeta.put(hsqldb_nio_mapped_read,
+                   HsqlProperties.getMeta(hsqldb_nio_mapped_read,
+                                          SQL_PROPERTY, false));
         dbMeta.put(hsqldb_full_log_replay,
                    HsqlProperties.getMeta(hsqldb_full_log_replay,
                                           SQL_PROPERTY, false));
@@ -541,12 +574,40 @@ public class HsqlDatabaseProperties extends HsqlProperties {
         dbMeta.put(hsqldb_defrag_limit,
                    HsqlProperties.getMeta(hsqldb_defrag_limit, SQL_PROPERTY,
                                           0, 0, 100));
+        dbMeta.put(hsqldb_defrag_step_millis,
+                   HsqlProperties.getMeta(hsqldb_defrag_step_millis,
+                                          SQL_PROPERTY, 0, 0, 60 * 1000));
+        dbMeta.put(hsqldb_index_build_parallelism,
+                   HsqlProperties.getMeta(hsqldb_index_build_parallelism,
+                                          SQL_PROPERTY, 0, 0, 1024));
+        dbMeta.put(hsqldb_recovery_parallelism,
+                   HsqlProperties.getMeta(hsqldb_recovery_parallelism,
+                                          SQL_PROPERTY, 1, 0, 1024));
+        dbMeta.put(hsqldb_script_load_parallelism,
+                   HsqlProperties.getMeta(hsqldb_script_load_parallelism,
+                                          SQL_PROPERTY, 1, 0, 1024));
         dbMeta.put(runtime_gc_interval,
                    HsqlProperties.getMeta(runtime_gc_interval, SQL_PROPERTY,
                                           0, 0, 1000000));
         dbMeta.put(hsqldb_cache_size,
                    HsqlProperties.getMeta(hsqldb_cache_size, SQL_PROPERTY,
                                           10000, 100, 4 * 1024 * 1024));
+        dbMeta.put(hsqldb_cache_flush_high,
+                   HsqlProperties.getMeta(hsqldb_cache_flush_high,
+                                          SQL_PROPERTY, 0, 0, 100));
+        dbMeta.put(hsqldb_cache_flush_low,
+                   HsqlProperties.getMeta(hsqldb_cache_flush_low,
+                                          SQL_PROPERTY, 10, 0, 100));
+        dbMeta.put(hsqldb_cache_off_heap_size,
+                   HsqlProperties.getMeta(hsqldb_cache_off_heap_size,
+                                          SQL_PROPERTY, 0, 0,
+                                          Integer.MAX_VALUE));
+        dbMeta.put(hsqldb_cache_policy,
+                   HsqlProperties.getMeta(hsqldb_cache_policy, SQL_PROPERTY,
+                                          0, 0, 1));
+        dbMeta.put(hsqldb_cache_read_ahead,
+                   HsqlProperties.getMeta(hsqldb_cache_read_ahead,
+                                          SQL_PROPERTY, 0, 0, 4096));
         dbMeta.put(hsqldb_cache_rows,
                    HsqlProperties.getMeta(hsqldb_cache_rows, SQL_PROPERTY,
                                           50000, 100, 4 * 1024 * 1024));
@@ -877,6 +938,10 @@ public class HsqlDatabaseProperties extends HsqlProperties {
                 value = MODIFIED_YES_NEW;
                 break;
 
+            case FILES_MODIFIED_NEW_SCRIPT :
+                value = MODIFIED_YES_NEW_SCRIPT;
+                break;
+
             default :
                 throw Error.runtimeError(ErrorCode.U_S0500,
                                          "HsqlDatabaseProperties");
@@ -896,6 +961,8 @@ public class HsqlDatabaseProperties extends HsqlProperties {
             return FILES_MODIFIED_NEW;
         } else if (MODIFIED_NO_NEW.equals(value)) {
             return FILES_NEW;
+        } else if (MODIFIED_YES_NEW_SCRIPT.equals(value)) {
+            return FILES_MODIFIED_NEW_SCRIPT;
         }
 
         return FILES_NOT_MODIFIED;
@@ -40,15 +40,20 @@ import org.hsqldb.HsqlNameManager.HsqlName;
 import org.hsqldb.NumberSequence;
 import org.hsqldb.Row;
 import org.hsqldb.Session;
+import org.hsqldb.SessionInterface;
 import org.hsqldb.SqlInvariants;
 import org.hsqldb.Table;
+import org.hsqldb.TableBase;
+import org.hsqldb.TransactionManager;
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
 import org.hsqldb.lib.FileAccess;
+import org.hsqldb.lib.HsqlArrayList;
 import org.hsqldb.scriptio.ScriptReaderBase;
 import org.hsqldb.scriptio.ScriptReaderDecode;
 import org.hsqldb.scriptio.ScriptReaderText;
 import org.hsqldb.scriptio.ScriptWriterBase;
+import org.hsqldb.scriptio.ScriptWriterBinary;
 import org.hsqldb.scriptio.ScriptWriterEncode;
 import org.hsqldb.scriptio.ScriptWriterText;
 
@@ -75,18 +80,27 @@ import org.hsqldb.scriptio.ScriptWriterText;
  */
 public class Log {
 
-    private HsqlDatabaseProperties properties;
-    private String                 baseFileName;
-    private Database               database;
-    private FileAccess             fa;
-    ScriptWriterBase               dbLogWriter;
-    private String                 scriptFileName;
-    private String                 logFileName;
-    private boolean                filesReadOnly;
-    private long                   maxLogSize;
-    private int                    writeDelay;
-    private DataFileCache          cache;
-    private boolean                isModified;
+    private HsqlDatabaseProperties    properties;
+    private String                    baseFileName;
+    private Database                  database;
+    private FileAccess                fa;
+    ScriptWriterBase                  dbLogWriter;
+    private String                    scriptFileName;
+    private String                    logFileName;
+    private String                    previousLogFileName;
+    private boolean                   filesReadOnly;
+    private long                      maxLogSize;
+    private int                       writeDelay;
+    private DataFileCache             cache;
+    private boolean                   isModified;
+    private DataFileDefragIncremental incrementalDefrag;
+    private FuzzyCheckpoint           fuzzyCheckpoint;
+
+    // group commit
+    private final Object syncLock = new Object();
+    private long         commitCount;
+    private long         syncedCommitCount;
+    private boolean      isSyncing;
 
     Log(Database db) {
 
@@ -98,11 +112,12 @@ public class Log {
 
     void initParams() {
 
-        maxLogSize     = database.logger.getLogSize() * 1024L * 1024;
-        writeDelay     = database.logger.getWriteDelay();
-        filesReadOnly  = database.isFilesReadOnly();
-        scriptFileName = baseFileName + Logger.scriptFileExtension;
-        logFileName    = baseFileName + Logger.logFileExtension;
+        maxLogSize          = database.logger.getLogSize() * 1024L * 1024;
+        writeDelay          = database.logger.getWriteDelay();
+        filesReadOnly       = database.isFilesReadOnly();
+        scriptFileName      = baseFileName + Logger.scriptFileExtension;
+        logFileName         = baseFileName + Logger.logFileExtension;
+        previousLogFileName = logFileName + Logger.previousFileExtension;
     }
 
     /**
@@ -122,6 +137,16 @@ public class Log {
             case HsqlDatabaseProperties.FILES_NEW :
                 break;
 
+            case HsqlDatabaseProperties.FILES_MODIFIED_NEW_SCRIPT :
+                database.logger.logInfoEvent("open start - state new script");
+                renameNewScript();
+                deletePreviousLog();
+                properties.setDBModified(
+                    HsqlDatabaseProperties.FILES_MODIFIED);
+
+            // continue as modified files
+            // the .log file contains the changes after the new script
+            // fall through
             case HsqlDatabaseProperties.FILES_MODIFIED :
                 database.logger.logInfoEvent("open start - state modified");
                 deleteNewAndOldFiles();
@@ -334,6 +359,11 @@ public class Log {
 
     void deleteLog() {
         fa.removeElement(logFileName);
+        deletePreviousLog();
+    }
+
+    void deletePreviousLog() {
+        fa.removeElement(previousLogFileName);
     }
 
     /**
@@ -369,22 +399,31 @@ public class Log {
      * Performs checkpoint including pre and post operations. Returns to the
      * same state as before the checkpoint.
      */
-    void checkpoint(Session session, boolean defrag) {
+    void checkpoint(Session session, boolean defrag, int defragMillis) {
 
         if (filesReadOnly) {
             return;
         }
 
+        stopCheckpointFuzzy();
+
         if (cache == null) {
-            defrag = false;
-        } else if (forceDefrag()) {
+            defrag       = false;
+            defragMillis = 0;
+        } else if (defragMillis == 0 && forceDefrag()) {
             defrag = true;
         }
 
-        if (defrag) {
+        if (defrag && defragMillis == 0) {
             defrag(session);
+        } else if (cache == null && canCheckpointFuzzy()) {
+            checkpointFuzzy();
         } else {
             checkpoint();
+
+            if (defragMillis > 0) {
+                defragIncremental(session, defragMillis);
+            }
         }
     }
 
@@ -468,6 +507,195 @@ public class Log {
         return true;
     }
 
+    /**
+     * A fuzzy checkpoint is used with the MVCC transaction model when there
+     * is no .data file. The .data file of CACHED tables must match the
+     * index roots in the .script file, which is not possible while the other
+     * sessions continue.
+     */
+    boolean canCheckpointFuzzy() {
+
+        return database.logger.propCheckpointFuzzy && dbLogWriter != null
+               && database.txManager.getTransactionControl()
+                  == TransactionManager.MVCC;
+    }
+
+    /**
+     * Starts a fuzzy checkpoint. The DDL is written and the .log file is
+     * switched while the other sessions are blocked. The rows are written
+     * by a FuzzyCheckpoint thread after the return.
+     */
+    private void checkpointFuzzy() {
+
+        // a .log.prev file remains if the last fuzzy checkpoint failed
+        if (fa.isStreamElement(previousLogFileName)) {
+            checkpoint();
+
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+
+        database.logger.logInfoEvent("checkpointFuzzy start");
+        synchLog();
+        database.lobManager.synch();
+
+        Session          session  = database.sessionManager.newSysSession();
+        ScriptWriterBase scw      = null;
+        long             rowTotal = 0;
+        boolean          closed   = false;
+        boolean          switched = false;
+
+        try {
+            session.setIsolation(SessionInterface.TX_REPEATABLE_READ);
+            session.startTransaction();
+            deleteNewScript();
+
+            scw = newScriptWriter(false);
+
+            scw.setReadSession(session);
+            scw.writeDDL();
+
+            rowTotal = getMemoryRowCount(session);
+
+            closeLog();
+
+            closed = true;
+
+            fa.renameElement(logFileName, previousLogFileName);
+
+            if (fa.isStreamElement(logFileName)) {
+                throw Error.error(ErrorCode.FILE_IO_ERROR, logFileName);
+            }
+
+            switched = true;
+        } catch (Throwable t) {
+            if (scw != null) {
+                scw.close();
+            }
+
+            deleteNewScript();
+            database.logger.logSevereEvent("checkpoint failed - recovered",
+                                           t);
+        }
+
+        // opens the .log file again if the switch failed
+        if (closed) {
+            openLog();
+        }
+
+        if (!switched) {
+            session.close();
+
+            return;
+        }
+
+        fuzzyCheckpoint = new FuzzyCheckpoint(database, this, session, scw,
+                                              rowTotal, startTime);
+
+        fuzzyCheckpoint.start();
+        database.logger.logInfoEvent("checkpointFuzzy log switched");
+    }
+
+    /**
+     * Replaces the .script file with the new script of a fuzzy checkpoint
+     * and deletes the .log.prev file. Returns false if the checkpoint has
+     * been cancelled or the database is closing.
+     */
+    boolean checkpointFuzzyEnd(FuzzyCheckpoint checkpoint) {
+
+        // Session.close() ends the transaction before it is marked closed
+        synchronized (checkpoint.session) {
+            synchronized (database.logger) {
+                if (checkpoint.isCancelled || checkpoint.session.isClosed()) {
+                    return false;
+                }
+
+                properties.setDBModified(
+                    HsqlDatabaseProperties.FILES_MODIFIED_NEW_SCRIPT);
+                renameNewScript();
+                deletePreviousLog();
+                properties.setDBModified(
+                    isModified ? HsqlDatabaseProperties.FILES_MODIFIED
+                               : HsqlDatabaseProperties.FILES_NOT_MODIFIED);
+
+                database.logger.checkpointMillis =
+                    System.currentTimeMillis() - checkpoint.startTime;
+
+                database.logger.checkpointCount++;
+
+                database.logger.logInfoEvent("checkpointFuzzy end - rows: "
+                                             + checkpoint.getRowCount());
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Cancels the fuzzy checkpoint in progress and waits for its thread to
+     * clean up.
+     */
+    void stopCheckpointFuzzy() {
+
+        FuzzyCheckpoint checkpoint = fuzzyCheckpoint;
+
+        if (checkpoint == null) {
+            return;
+        }
+
+        synchronized (database.logger) {
+            if (checkpoint.isActive) {
+                checkpoint.cancel();
+            }
+
+            while (checkpoint.isActive) {
+                try {
+                    database.logger.wait();
+                } catch (InterruptedException e) {}
+            }
+        }
+    }
+
+    boolean isCheckpointFuzzy() {
+
+        FuzzyCheckpoint checkpoint = fuzzyCheckpoint;
+
+        return checkpoint != null && checkpoint.isActive;
+    }
+
+    long getCheckpointRowCount() {
+
+        FuzzyCheckpoint checkpoint = fuzzyCheckpoint;
+
+        return checkpoint == null ? 0
+                                  : checkpoint.getRowCount();
+    }
+
+    long getCheckpointRowTotal() {
+
+        FuzzyCheckpoint checkpoint = fuzzyCheckpoint;
+
+        return checkpoint == null ? 0
+                                  : checkpoint.rowTotal;
+    }
+
+    private long getMemoryRowCount(Session session) {
+
+        HsqlArrayList tables = database.schemaManager.getAllTables(true);
+        long          count  = 0;
+
+        for (int i = 0; i < tables.size(); i++) {
+            Table table = (Table) tables.get(i);
+
+            if (table.getTableType() == TableBase.MEMORY_TABLE) {
+                count += table.getRowStore(session).elementCount();
+            }
+        }
+
+        return count;
+    }
+
     /**
      *  Writes out all the rows to a new file without fragmentation.
      */
@@ -509,6 +737,35 @@ public class Log {
         database.logger.logInfoEvent("defrag end");
     }
 
+    /**
+     *  Relocates rows from sparse file blocks for up to the given time. The
+     *  rows are relocated after the checkpoint and are saved by the next one.
+     */
+    void defragIncremental(Session session, int millis) {
+
+        if (!cache.spaceManager.isMultiSpace()) {
+            return;
+        }
+
+        if (incrementalDefrag == null) {
+            incrementalDefrag = new DataFileDefragIncremental(database);
+        }
+
+        if (session == null) {
+            session = database.sessionManager.getSysSession();
+        }
+
+        try {
+            incrementalDefrag.process(session, cache, millis);
+        } catch (HsqlException e) {
+            throw e;
+        } catch (Throwable e) {
+            database.logger.logSevereEvent("defrag step failure", e);
+
+            throw Error.error(ErrorCode.DATA_FILE_ERROR, e);
+        }
+    }
+
     /**
      * Returns true if lost space is above the threshold percentage.
      */
@@ -639,6 +896,10 @@ public class Log {
             throw Error.error(ErrorCode.FILE_IO_ERROR, getLogFileName());
         }
 
+        if (writeDelay == 0) {
+            session.logCommitNumber = ++commitCount;
+        }
+
         if (maxLogSize > 0 && dbLogWriter.size() > maxLogSize) {
             database.logger.setCheckpointRequired();
         }
@@ -663,6 +924,65 @@ public class Log {
         }
     }
 
+    /**
+     * Group commit. Returns when the log has been synced to file up to the
+     * given commit record. The first waiting session flushes the log and
+     * syncs the file for all the commit records written so far, while the
+     * other sessions wait. The commit records written during the sync are
+     * synced together by the next session.<p>
+     *
+     * Called after the commit, without a lock on the Logger.
+     */
+    void syncCommit(long commitNumber) {
+
+        for (;;) {
+            synchronized (syncLock) {
+                if (syncedCommitCount >= commitNumber) {
+                    return;
+                }
+
+                if (!isSyncing) {
+                    isSyncing = true;
+
+                    break;
+                }
+
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {}
+            }
+        }
+
+        long             syncCount = 0;
+        ScriptWriterBase writer;
+
+        try {
+            synchronized (database.logger) {
+                syncCount = commitCount;
+                writer    = dbLogWriter;
+
+                if (writer != null) {
+                    writer.flush();
+                }
+            }
+
+            // the writer is synced on close if it is closed meanwhile
+            if (writer != null) {
+                writer.syncFile();
+            }
+        } finally {
+            synchronized (syncLock) {
+                if (syncCount > syncedCommitCount) {
+                    syncedCommitCount = syncCount;
+                }
+
+                isSyncing = false;
+
+                syncLock.notifyAll();
+            }
+        }
+    }
+
     /**
      * Wrappers for opening-starting / stopping-closing the log file and
      * writer.
@@ -677,8 +997,13 @@ public class Log {
 
         try {
             if (crypto == null) {
-                dbLogWriter = new ScriptWriterText(database, logFileName,
-                                                   false, false, false);
+                if (database.logger.propLogBinary) {
+                    dbLogWriter = new ScriptWriterBinary(database,
+                                                         logFileName);
+                } else {
+                    dbLogWriter = new ScriptWriterText(database, logFileName,
+                                                       false, false, false);
+                }
             } else {
                 dbLogWriter = new ScriptWriterEncode(database, logFileName,
                                                      crypto);
@@ -709,27 +1034,31 @@ public class Log {
 
         deleteNewScript();
 
-        ScriptWriterBase scw;
-        Crypto           crypto = database.logger.getCrypto();
+        ScriptWriterBase scw = newScriptWriter(full);
+
+        scw.writeAll();
+        scw.close();
+
+        scw = null;
+    }
+
+    private ScriptWriterBase newScriptWriter(boolean full) {
+
+        Crypto crypto = database.logger.getCrypto();
 
         if (crypto == null) {
             boolean compressed = database.logger.propScriptFormat == 3;
 
-            scw = new ScriptWriterText(database,
-                                       scriptFileName
-                                       + Logger.newFileExtension, full,
-                                           compressed);
+            return new ScriptWriterText(database,
+                                        scriptFileName
+                                        + Logger.newFileExtension, full,
+                                            compressed);
         } else {
-            scw = new ScriptWriterEncode(database,
-                                         scriptFileName
-                                         + Logger.newFileExtension, full,
-                                             crypto);
+            return new ScriptWriterEncode(database,
+                                          scriptFileName
+                                          + Logger.newFileExtension, full,
+                                              crypto);
         }
-
-        scw.writeAll();
-        scw.close();
-
-        scw = null;
     }
 
     /**
@@ -787,11 +1116,18 @@ public class Log {
      */
     private void processLog() {
 
-        if (fa.isStreamElement(logFileName)) {
+        // the .log.prev file of an incomplete fuzzy checkpoint comes first
+        processLog(previousLogFileName);
+        processLog(logFileName);
+    }
+
+    private void processLog(String fileName) {
+
+        if (fa.isStreamElement(fileName)) {
             boolean fullReplay = database.getURLProperties().isPropertyTrue(
                 HsqlDatabaseProperties.hsqldb_full_log_replay);
 
-            ScriptRunner.runScript(database, logFileName, fullReplay);
+            ScriptRunner.runScript(database, fileName, fullReplay);
         }
     }
 
@@ -116,12 +116,24 @@ public class Logger implements EventLogInterface {
     private int     propCacheMaxRows;
     private long    propCacheMaxSize;
     int             propCacheDefragLimit;
+    int             propDefragStepMillis;
+    int             propIndexBuildParallelism;
+    int             propRecoveryParallelism;
+    int             propScriptLoadParallelism;
+    int             propCachePolicy;
+    int             propCacheFlushHigh;
+    int             propCacheFlushLow;
+    int             propCacheReadAhead;
+    int             propCacheOffHeapSize;
+    boolean         propNioMappedRead;
     private int     propDataFileScale;
     String          propTextSourceDefault = "";
     boolean         propTextAllowFullPath;
     private int     propWriteDelay;
     private int     propLogSize;
     private boolean propLogData = true;
+    boolean         propLogBinary;
+    boolean         propCheckpointFuzzy;
     private int     propEventLogLevel;
     int             propSqlLogLevel;
     int             propGC;
@@ -158,6 +170,11 @@ public class Logger implements EventLogInterface {
     AtomicInteger backupState     = new AtomicInteger();
     AtomicInteger checkpointState = new AtomicInteger();
 
+    // checkpoint metrics
+    volatile long checkpointCount;
+    volatile long checkpointMillis;
+    volatile long checkpointBlockingMillis;
+
     //
     static final int largeDataFactor = 128;
 
@@ -183,6 +200,7 @@ public class Logger implements EventLogInterface {
     public static final String backupFileExtension     = ".backup";
     public static final String lobsFileExtension       = ".lobs";
     public static final String lockFileExtension       = ".lck";
+    public static final String previousFileExtension   = ".prev";
 
     public Logger(Database database) {
         this.database = database;
@@ -465,6 +483,43 @@ public class Logger implements EventLogInterface {
         propMaxFreeBlocks = database.databaseProperties.getIntegerProperty(
             HsqlDatabaseProperties.hsqldb_cache_free_count);
         propMaxFreeBlocks = ArrayUtil.getTwoPowerFloor(propMaxFreeBlocks);
+        propIndexBuildParallelism =
+            database.urlProperties.getIntegerProperty(
+                HsqlDatabaseProperties.hsqldb_index_build_parallelism,
+                database.databaseProperties.getIntegerProperty(
+                    HsqlDatabaseProperties.hsqldb_index_build_parallelism));
+        propRecoveryParallelism = database.urlProperties.getIntegerProperty(
+            HsqlDatabaseProperties.hsqldb_recovery_parallelism,
+            database.databaseProperties.getIntegerProperty(
+                HsqlDatabaseProperties.hsqldb_recovery_parallelism));
+        propScriptLoadParallelism = database.urlProperties.getIntegerProperty(
+            HsqlDatabaseProperties.hsqldb_script_load_parallelism,
+            database.databaseProperties.getIntegerProperty(
+                HsqlDatabaseProperties.hsqldb_script_load_parallelism));
+        propCachePolicy = database.urlProperties.getIntegerProperty(
+            HsqlDatabaseProperties.hsqldb_cache_policy,
+            database.databaseProperties.getIntegerProperty(
+                HsqlDatabaseProperties.hsqldb_cache_policy));
+        propCacheFlushHigh = database.urlProperties.getIntegerProperty(
+            HsqlDatabaseProperties.hsqldb_cache_flush_high,
+            database.databaseProperties.getIntegerProperty(
+                HsqlDatabaseProperties.hsqldb_cache_flush_high));
+        propCacheFlushLow = database.urlProperties.getIntegerProperty(
+            HsqlDatabaseProperties.hsqldb_cache_flush_low,
+            database.databaseProperties.getIntegerProperty(
+                HsqlDatabaseProperties.hsqldb_cache_flush_low));
+        propCacheReadAhead = database.urlProperties.getIntegerProperty(
+            HsqlDatabaseProperties.hsqldb_cache_read_ahead,
+            database.databaseProperties.getIntegerProperty(
+                HsqlDatabaseProperties.hsqldb_cache_read_ahead));
+        propCacheOffHeapSize = database.urlProperties.getIntegerProperty(
+            HsqlDatabaseProperties.hsqldb_cache_off_heap_size,
+            database.databaseProperties.getIntegerProperty(
+                HsqlDatabaseProperties.hsqldb_cache_off_heap_size));
+        propNioMappedRead = database.urlProperties.isPropertyTrue(
+            HsqlDatabaseProperties.hsqldb_nio_mapped_read,
+            database.databaseProperties.isPropertyTrue(
+                HsqlDatabaseProperties.hsqldb_nio_mapped_read));
 
         if (database.urlProperties.isPropertyTrue(
                 HsqlDatabaseProperties.hsqldb_large_data, false)) {
@@ -653,6 +708,10 @@ public class Logger implements EventLogInterface {
 
         propCacheDefragLimit = database.databaseProperties.getIntegerProperty(
             HsqlDatabaseProperties.hsqldb_defrag_limit);
+        propDefragStepMillis = database.urlProperties.getIntegerProperty(
+            HsqlDatabaseProperties.hsqldb_defrag_step_millis,
+            database.databaseProperties.getIntegerProperty(
+                HsqlDatabaseProperties.hsqldb_defrag_step_millis));
         propWriteDelay = database.databaseProperties.getIntegerProperty(
             HsqlDatabaseProperties.hsqldb_write_delay_millis);
 
@@ -665,6 +724,14 @@ public class Logger implements EventLogInterface {
             HsqlDatabaseProperties.hsqldb_log_size);
         propLogData = database.databaseProperties.isPropertyTrue(
             HsqlDatabaseProperties.hsqldb_log_data);
+        propLogBinary = database.urlProperties.isPropertyTrue(
+            HsqlDatabaseProperties.hsqldb_log_binary,
+            database.databaseProperties.isPropertyTrue(
+                HsqlDatabaseProperties.hsqldb_log_binary));
+        propCheckpointFuzzy = database.urlProperties.isPropertyTrue(
+            HsqlDatabaseProperties.hsqldb_checkpoint_fuzzy,
+            database.databaseProperties.isPropertyTrue(
+                HsqlDatabaseProperties.hsqldb_checkpoint_fuzzy));
         propGC = database.databaseProperties.getIntegerProperty(
             HsqlDatabaseProperties.runtime_gc_interval);
         propRefIntegrity = database.databaseProperties.isPropertyTrue(
@@ -708,6 +775,7 @@ public class Logger implements EventLogInterface {
             return true;
         }
 
+        log.stopCheckpointFuzzy();
         log.synchLog();
         database.lobManager.synch();
 
@@ -967,6 +1035,66 @@ public class Logger implements EventLogInterface {
         }
     }
 
+    /**
+     * Returns the count of checkpoints completed since the database was
+     * opened.
+     */
+    public long getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    /**
+     * Returns the duration of the last completed checkpoint.
+     */
+    public long getCheckpointMillis() {
+        return checkpointMillis;
+    }
+
+    /**
+     * Returns the time the last checkpoint blocked the other sessions.
+     */
+    public long getCheckpointBlockingMillis() {
+        return checkpointBlockingMillis;
+    }
+
+    /**
+     * Returns true if a fuzzy checkpoint is writing the .script file.
+     */
+    public boolean isCheckpointFuzzy() {
+
+        if (log == null) {
+            return false;
+        } else {
+            return log.isCheckpointFuzzy();
+        }
+    }
+
+    /**
+     * Returns the count of rows written by the current or last fuzzy
+     * checkpoint.
+     */
+    public long getCheckpointRowCount() {
+
+        if (log == null) {
+            return 0;
+        } else {
+            return log.getCheckpointRowCount();
+        }
+    }
+
+    /**
+     * Returns the count of rows of the MEMORY tables at the start of the
+     * current or last fuzzy checkpoint.
+     */
+    public long getCheckpointRowTotal() {
+
+        if (log == null) {
+            return 0;
+        } else {
+            return log.getCheckpointRowTotal();
+        }
+    }
+
     /**
      * Records a Log entry for the specified SQL statement, on behalf of
      * the specified Session object.
@@ -1022,6 +1150,25 @@ public class Logger implements EventLogInterface {
         }
     }
 
+    /**
+     * Used after commit when write delay is 0. Returns when the commit
+     * record of the session has been synced to file.
+     */
+    public void syncCommit(Session session) {
+
+        long commitNumber = session.logCommitNumber;
+
+        if (commitNumber == 0) {
+            return;
+        }
+
+        session.logCommitNumber = 0;
+
+        if (loggingEnabled) {
+            log.syncCommit(commitNumber);
+        }
+    }
+
     public synchronized void synchLog() {
 
         if (loggingEnabled) {
@@ -1044,6 +1191,18 @@ public class Logger implements EventLogInterface {
      *      database
      */
     public void checkpoint(Session session, boolean defrag, boolean lobs) {
+        checkpoint(session, defrag, defrag ? 0
+                                           : propDefragStepMillis, lobs);
+    }
+
+    /**
+     *  Checkpoints the database. When defragMillis is not zero, the
+     *  checkpoint is followed by a step of online defrag that relocates rows
+     *  from sparse file blocks for up to the given time, instead of a full
+     *  defrag.
+     */
+    public void checkpoint(Session session, boolean defrag, int defragMillis,
+                           boolean lobs) {
 
         if (!backupState.compareAndSet(stateNormal, stateCheckpoint)) {
             throw Error.error(ErrorCode.ACCESS_IS_DENIED);
@@ -1053,11 +1212,23 @@ public class Logger implements EventLogInterface {
 
         try {
             synchronized (this) {
-                checkpointInternal(session, defrag);
+                long startTime = System.currentTimeMillis();
+
+                checkpointInternal(session, defrag, defragMillis);
 
                 if (lobs) {
                     database.lobManager.deleteUnusedLobs();
                 }
+
+                checkpointBlockingMillis = System.currentTimeMillis()
+                                           - startTime;
+
+                // a fuzzy checkpoint is counted when the script is complete
+                if (log != null && !log.isCheckpointFuzzy()) {
+                    checkpointMillis = checkpointBlockingMillis;
+
+                    checkpointCount++;
+                }
             }
         } finally {
             backupState.set(stateNormal);
@@ -1066,11 +1237,12 @@ public class Logger implements EventLogInterface {
         }
     }
 
-    private void checkpointInternal(Session session, boolean defrag) {
+    private void checkpointInternal(Session session, boolean defrag,
+                                    int defragMillis) {
 
         if (logsStatements) {
             logInfoEvent("Checkpoint start");
-            log.checkpoint(session, defrag);
+            log.checkpoint(session, defrag, defragMillis);
             logInfoEvent("Checkpoint end - txts: "
                          + database.txManager.getGlobalChangeTimestamp());
         }
@@ -1342,6 +1514,47 @@ public class Logger implements EventLogInterface {
         return propCacheDefragLimit;
     }
 
+    /**
+     * Returns the number of threads used to build the indexes of a table
+     * together; 0 in the property means the number of processors.
+     */
+    public int getIndexBuildParallelism() {
+
+        if (propIndexBuildParallelism <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+
+        return propIndexBuildParallelism;
+    }
+
+    /**
+     * Returns the number of threads used to replay the rows of the log when
+     * the database is opened; 0 in the property means the number of
+     * processors.
+     */
+    public int getRecoveryParallelism() {
+
+        if (propRecoveryParallelism <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+
+        return propRecoveryParallelism;
+    }
+
+    /**
+     * Returns the number of threads used to decode the rows of the MEMORY
+     * tables when the *.script is read; 0 in the property means the number
+     * of processors.
+     */
+    public int getScriptLoadParallelism() {
+
+        if (propScriptLoadParallelism <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+
+        return propScriptLoadParallelism;
+    }
+
     public void setDefaultTextTableProperties(String source,
             HsqlProperties props) {
 
@@ -1403,6 +1616,12 @@ public class Logger implements EventLogInterface {
     }
 
     public boolean needsCheckpointReset() {
+
+        // the checkpoint is due after the fuzzy checkpoint in progress
+        if (log != null && log.isCheckpointFuzzy()) {
+            return false;
+        }
+
         return checkpointState.compareAndSet(stateCheckpointRequired,
                                              stateCheckpointDue);
     }
@@ -1590,6 +1809,14 @@ public class Logger implements EventLogInterface {
             return String.valueOf(propCacheDefragLimit);
         }
 
+        if (HsqlDatabaseProperties.hsqldb_checkpoint_fuzzy.equals(name)) {
+            return String.valueOf(propCheckpointFuzzy);
+        }
+
+        if (HsqlDatabaseProperties.hsqldb_defrag_step_millis.equals(name)) {
+            return String.valueOf(propDefragStepMillis);
+        }
+
         if (HsqlDatabaseProperties.hsqldb_files_space.equals(name)) {
             return String.valueOf(propFileSpaceValue);
         }
@@ -1599,6 +1826,40 @@ public class Logger implements EventLogInterface {
                 HsqlDatabaseProperties.hsqldb_files_readonly);
         }
 
+        if (HsqlDatabaseProperties.hsqldb_index_build_parallelism.equals(
+                name)) {
+            return String.valueOf(propIndexBuildParallelism);
+        }
+
+        if (HsqlDatabaseProperties.hsqldb_recovery_parallelism.equals(name)) {
+            return String.valueOf(propRecoveryParallelism);
+        }
+
+        if (HsqlDatabaseProperties.hsqldb_script_load_parallelism.equals(
+                name)) {
+            return String.valueOf(propScriptLoadParallelism);
+        }
+
+        if (HsqlDatabaseProperties.hsqldb_cache_policy.equals(name)) {
+            return String.valueOf(propCachePolicy);
+        }
+
+        if (HsqlDatabaseProperties.hsqldb_cache_flush_high.equals(name)) {
+            return String.valueOf(propCacheFlushHigh);
+        }
+
+        if (HsqlDatabaseProperties.hsqldb_cache_flush_low.equals(name)) {
+            return String.valueOf(propCacheFlushLow);
+        }
+
+        if (HsqlDatabaseProperties.hsqldb_cache_read_ahead.equals(name)) {
+            return String.valueOf(propCacheReadAhead);
+        }
+
+        if (HsqlDatabaseProperties.hsqldb_cache_off_heap_size.equals(name)) {
+            return String.valueOf(propCacheOffHeapSize);
+        }
+
         if (HsqlDatabaseProperties.hsqldb_inc_backup.equals(name)) {
             return String.valueOf(propIncrementBackup);
         }
@@ -1616,6 +1877,10 @@ public class Logger implements EventLogInterface {
                 HsqlDatabaseProperties.hsqldb_lock_file);
         }
 
+        if (HsqlDatabaseProperties.hsqldb_log_binary.equals(name)) {
+            return String.valueOf(propLogBinary);
+        }
+
         if (HsqlDatabaseProperties.hsqldb_log_data.equals(name)) {
             return String.valueOf(propLogData);
         }
@@ -1632,6 +1897,10 @@ public class Logger implements EventLogInterface {
             return String.valueOf(propNioMaxSize / (1024 * 1024));
         }
 
+        if (HsqlDatabaseProperties.hsqldb_nio_mapped_read.equals(name)) {
+            return String.valueOf(propNioMappedRead);
+        }
+
         if (HsqlDatabaseProperties.hsqldb_script_format.equals(name)) {
             return ScriptWriterBase.LIST_SCRIPT_FORMATS[propScriptFormat]
                 .toLowerCase();
@@ -2253,6 +2522,14 @@ public class Logger implements EventLogInterface {
             throw Error.error(ErrorCode.BACKUP_ERROR, "backup in progress");
         }
 
+        // the .script and .log files are not consistent until the end
+        if (log != null && log.isCheckpointFuzzy()) {
+            backupState.set(stateNormal);
+
+            throw Error.error(ErrorCode.BACKUP_ERROR,
+                              "checkpoint in progress");
+        }
+
         if (blocking) {
             database.lobManager.lock();
 
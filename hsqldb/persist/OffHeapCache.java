@@ -0,0 +1,467 @@
+/* Copyright (c) 2001-2017, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.hsqldb.persist;
+
+import java.nio.ByteBuffer;
+
+import org.hsqldb.RowSBTDisk;
+import org.hsqldb.rowio.RowInputInterface;
+import org.hsqldb.rowio.RowOutputInterface;
+
+/**
+ * Second tier of the row cache of a .data file. Holds the images of rows,
+ * exactly as they are stored in the file, in direct buffers outside the
+ * Java heap.<p>
+ *
+ * Each segment of the Cache has its own instance, used only while the lock
+ * of the segment is held. Unchanged rows removed from the segment are
+ * written here, and a row that is read into the segment again is decoded
+ * from its image without file access. An image is removed when its row is
+ * put in the segment, so a row is never in both tiers and an image is
+ * never older than the row in the file.<p>
+ *
+ * The images are appended to a circular list of fixed size buffers. When
+ * the list is full, the oldest images are overwritten. The index from file
+ * position to image is an open addressing hash table that is also outside
+ * the heap. Buffers are allocated when they are first used.<p>
+ *
+ * @author Fred Toussi (fredt@users dot sourceforge.net)
+ * @version 2.4.0
+ * @since 2.4.0
+ */
+final class OffHeapCache {
+
+    // image header: file position and length
+    static final int HEADER_SIZE    = 12;
+    static final int SLOT_SIZE      = 16;
+    static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+    static final int MAX_SLOTS      = 1 << 26;
+
+    // one index slot for each 128 bytes of capacity
+    static final int BYTES_PER_SLOT = 128;
+
+    //
+    private final DataFileCache dataFileCache;
+    private final int           slotCount;
+    private final int           slotShift;
+    private final int           maxEntries;
+    private final int           chunkSize;
+    private final ByteBuffer[]  chunks;
+    private final int[]         chunkLimits;
+    private int                 usableChunks;
+    private ByteBuffer          index;
+    private int                 entryCount;
+    private RowOutputInterface  rowOut;
+    private boolean             isDisabled;
+
+    // position of the next image and of the oldest image not yet removed
+    private int writeChunk;
+    private int writeOffset;
+    private int evictOffset;
+    private int evictLimit;
+
+    //
+    long hitCount;
+
+    /**
+     * Returns a new instance, or null if the capacity is too small to be
+     * useful.
+     */
+    static OffHeapCache newOffHeapCache(DataFileCache dataFileCache,
+                                        long capacity) {
+
+        if (capacity < 2 * BYTES_PER_SLOT * 1024) {
+            return null;
+        }
+
+        return new OffHeapCache(dataFileCache, capacity);
+    }
+
+    private OffHeapCache(DataFileCache dataFileCache, long capacity) {
+
+        this.dataFileCache = dataFileCache;
+
+        int  bits  = 10;
+        long slots = capacity / BYTES_PER_SLOT;
+
+        while ((1L << (bits + 1)) <= slots && (1 << (bits + 1)) <= MAX_SLOTS) {
+            bits++;
+        }
+
+        slotCount  = 1 << bits;
+        slotShift  = 64 - bits;
+        maxEntries = slotCount / 4 * 3;
+
+        long dataCapacity = capacity - (long) slotCount * SLOT_SIZE;
+
+        chunkSize    = (int) Math.min(dataCapacity, MAX_CHUNK_SIZE);
+        usableChunks = (int) (dataCapacity / chunkSize);
+        chunks       = new ByteBuffer[usableChunks];
+        chunkLimits  = new int[usableChunks];
+    }
+
+    /**
+     * Returns the bytes allocated outside the heap.
+     */
+    long getAllocatedSize() {
+
+        long size = index == null ? 0
+                                  : (long) slotCount * SLOT_SIZE;
+
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] != null) {
+                size += chunkSize;
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Writes the image of an unchanged row that is removed from the cache.
+     */
+    void put(CachedObject row) {
+
+        if (isDisabled || !(row instanceof RowSBTDisk)) {
+            return;
+        }
+
+        if (index == null && !allocateIndex()) {
+            return;
+        }
+
+        if (rowOut == null) {
+            rowOut = dataFileCache.rowOut.duplicate();
+
+            // images must be in the format of the file
+            if (rowOut.getClass() != dataFileCache.rowOut.getClass()) {
+                isDisabled = true;
+
+                return;
+            }
+        }
+
+        rowOut.reset();
+        row.write(rowOut, null);
+        put(row.getPos(), rowOut.getBuffer(), rowOut.size());
+    }
+
+    /**
+     * Reads the image of the row at the position into the input. Returns
+     * false if there is no image.
+     */
+    boolean read(long pos, RowInputInterface in) {
+
+        if (entryCount == 0) {
+            return false;
+        }
+
+        int slot = findSlot(pos);
+
+        if (slot < 0) {
+            return false;
+        }
+
+        long       location = index.getLong(slot * SLOT_SIZE + 8);
+        ByteBuffer chunk    = chunks[(int) (location >>> 32)];
+        int        offset   = (int) location;
+        int        length   = chunk.getInt(offset + 8);
+
+        in.resetRow(pos, length);
+        chunk.position(offset + HEADER_SIZE);
+        chunk.get(in.getBuffer(), 0, length);
+
+        hitCount++;
+
+        return true;
+    }
+
+    /**
+     * Removes the image of the row at the position, if any.
+     */
+    void remove(long pos) {
+
+        if (entryCount == 0) {
+            return;
+        }
+
+        int slot = findSlot(pos);
+
+        if (slot >= 0) {
+            removeSlot(slot);
+        }
+    }
+
+    /**
+     * Removes all the images and releases the buffers.
+     */
+    void clear() {
+
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i]      = null;
+            chunkLimits[i] = 0;
+        }
+
+        index        = null;
+        rowOut       = null;
+        entryCount   = 0;
+        writeChunk   = 0;
+        writeOffset  = 0;
+        evictOffset  = 0;
+        evictLimit   = 0;
+        usableChunks = chunks.length;
+        isDisabled   = false;
+    }
+
+    private void put(long pos, byte[] buffer, int length) {
+
+        int size = HEADER_SIZE + length;
+
+        if (size > chunkSize) {
+            remove(pos);
+
+            return;
+        }
+
+        if (chunks[writeChunk] == null && !allocateChunk()) {
+            return;
+        }
+
+        if (writeOffset + size > chunkSize) {
+            nextChunk();
+
+            if (isDisabled) {
+                return;
+            }
+        }
+
+        evict(writeOffset + size);
+
+        long location = ((long) writeChunk << 32) | writeOffset;
+
+        if (!putSlot(pos, location)) {
+            return;
+        }
+
+        ByteBuffer chunk = chunks[writeChunk];
+
+        chunk.putLong(writeOffset, pos);
+        chunk.putInt(writeOffset + 8, length);
+        chunk.position(writeOffset + HEADER_SIZE);
+        chunk.put(buffer, 0, length);
+
+        writeOffset += size;
+    }
+
+    /**
+     * Moves to the next chunk after removing the remaining old images from
+     * the current one.
+     */
+    private void nextChunk() {
+
+        evict(evictLimit);
+
+        chunkLimits[writeChunk] = writeOffset;
+        writeChunk              = (writeChunk + 1) % usableChunks;
+        writeOffset             = 0;
+        evictOffset             = 0;
+        evictLimit              = chunkLimits[writeChunk];
+
+        if (chunks[writeChunk] == null && !allocateChunk()) {
+            writeChunk  = 0;
+            evictLimit  = chunkLimits[0];
+        }
+    }
+
+    /**
+     * Removes the old images in the current chunk that start before the
+     * offset.
+     */
+    private void evict(int offset) {
+
+        ByteBuffer chunk = chunks[writeChunk];
+
+        while (evictOffset < offset && evictOffset < evictLimit) {
+            long pos      = chunk.getLong(evictOffset);
+            int  length   = chunk.getInt(evictOffset + 8);
+            long location = ((long) writeChunk << 32) | evictOffset;
+            int  slot     = findSlot(pos);
+
+            if (slot >= 0 && index.getLong(slot * SLOT_SIZE + 8) == location) {
+                removeSlot(slot);
+            }
+
+            evictOffset += HEADER_SIZE + length;
+        }
+    }
+
+    private boolean allocateIndex() {
+
+        try {
+            index = ByteBuffer.allocateDirect(slotCount * SLOT_SIZE);
+
+            return true;
+        } catch (OutOfMemoryError e) {
+            disable(e);
+
+            return false;
+        }
+    }
+
+    /**
+     * Allocates the current chunk. If there is no memory, the chunks that
+     * are already allocated are used in turn.
+     */
+    private boolean allocateChunk() {
+
+        try {
+            chunks[writeChunk] = ByteBuffer.allocateDirect(chunkSize);
+
+            return true;
+        } catch (OutOfMemoryError e) {
+            if (writeChunk == 0) {
+                disable(e);
+            } else {
+                usableChunks = writeChunk;
+
+                dataFileCache.logInfoEvent(
+                    "dataFileCache off-heap cache limited to "
+                    + (long) usableChunks * chunkSize + " bytes");
+            }
+
+            return false;
+        }
+    }
+
+    private void disable(OutOfMemoryError e) {
+
+        isDisabled = true;
+
+        dataFileCache.logInfoEvent("dataFileCache off-heap cache disabled "
+                                   + e.getMessage());
+    }
+
+    private int getHomeSlot(long pos) {
+        return (int) ((pos * 0x9E3779B97F4A7C15L) >>> slotShift);
+    }
+
+    private int findSlot(long pos) {
+
+        int mask = slotCount - 1;
+        int slot = getHomeSlot(pos);
+
+        while (true) {
+            long key = index.getLong(slot * SLOT_SIZE);
+
+            if (key == 0) {
+                return -1;
+            }
+
+            if (key == pos + 1) {
+                return slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Sets the location of the image for the position. Returns false if
+     * the index is full and the position is not in it.
+     */
+    private boolean putSlot(long pos, long location) {
+
+        int mask = slotCount - 1;
+        int slot = getHomeSlot(pos);
+
+        while (true) {
+            long key = index.getLong(slot * SLOT_SIZE);
+
+            if (key == 0) {
+                if (entryCount >= maxEntries) {
+                    return false;
+                }
+
+                index.putLong(slot * SLOT_SIZE, pos + 1);
+
+                entryCount++;
+
+                break;
+            }
+
+            if (key == pos + 1) {
+                break;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        index.putLong(slot * SLOT_SIZE + 8, location);
+
+        return true;
+    }
+
+    /**
+     * Removes the entry in the slot and moves back the entries that follow
+     * it, so that no search stops at an empty slot before its entry.
+     */
+    private void removeSlot(int slot) {
+
+        int mask = slotCount - 1;
+        int next = slot;
+
+        entryCount--;
+
+        while (true) {
+            next = (next + 1) & mask;
+
+            long key = index.getLong(next * SLOT_SIZE);
+
+            if (key == 0) {
+                break;
+            }
+
+            int home = getHomeSlot(key - 1);
+            boolean move = next > slot ? home <= slot || home > next
+                                       : home <= slot && home > next;
+
+            if (move) {
+                index.putLong(slot * SLOT_SIZE, key);
+                index.putLong(slot * SLOT_SIZE + 8,
+                              index.getLong(next * SLOT_SIZE + 8));
+
+                slot = next;
+            }
+        }
+
+        index.putLong(slot * SLOT_SIZE, 0);
+        index.putLong(slot * SLOT_SIZE + 8, 0);
+    }
+}
@@ -109,12 +109,32 @@ public interface PersistentStore {
 
     void indexRow(Session session, Row row);
 
+    /**
+     * Indexes a block of new rows together. Returns false without indexing
+     * any row if the store does not support this. If an exception is thrown,
+     * none of the rows is indexed.
+     */
+    boolean indexRows(Session session, Row[] rows, int count);
+
     void commitRow(Session session, Row row, int changeAction, int txModel);
 
     void rollbackRow(Session session, Row row, int changeAction, int txModel);
 
     void postCommitAction(Session session, RowAction rowAction);
 
+    /**
+     * Adds to the count of the row actions on this store that are in the
+     * transactions of sessions, or in committed transactions that are not
+     * yet merged. A negative count removes actions.
+     */
+    void addRowActionCount(int count);
+
+    /**
+     * Returns true if the count of row actions is not zero, therefore some
+     * rows may not be visible to all sessions.
+     */
+    boolean hasRowActions();
+
     //
     void indexRows(Session session);
 
@@ -32,6 +32,7 @@
 package org.hsqldb.persist;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.hsqldb.Database;
 
@@ -150,6 +151,19 @@ public final class RAFileHybrid implements RandomAccessInterface {
         return null;
     }
 
+    /**
+     * Returns the mapped segment that contains the position, or null if the
+     * file is not currently mapped.
+     */
+    ByteBuffer getMappedBuffer(long position) {
+
+        if (isNio) {
+            return ((RAFileNIO) store).getMappedBuffer(position);
+        }
+
+        return null;
+    }
+
     public void synch() {
         store.synch();
     }
@@ -36,6 +36,7 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
@@ -53,6 +54,9 @@ import org.hsqldb.lib.java.JavaSystem;
  * Once the maximum data file size allowed for NIO is reached, an ordinary
  * ScaledRAFile is used for data access.
  *
+ * The file is mapped in segments of largeBufferSize, including when it is
+ * read only, so files larger than 2GB can be mapped.
+ *
  * @author Fred Toussi (fredt@users dot sourceforge.net)
  * @version  2.3.3
  * @since 1.8.0.5
@@ -373,10 +377,10 @@ final class RAFileNIO implements RandomAccessInterface {
     private boolean enlargeFile(long newFileLength) {
 
         try {
-            long newBufferLength = newFileLength;
+            long newBufferLength = largeBufferSize;
 
-            if (!readOnly) {
-                newBufferLength = largeBufferSize;
+            if (readOnly && newFileLength - fileLength < largeBufferSize) {
+                newBufferLength = newFileLength - fileLength;
             }
 
             MapMode mapMode = readOnly ? FileChannel.MapMode.READ_ONLY
@@ -499,10 +503,6 @@ final class RAFileNIO implements RandomAccessInterface {
 
     private void setCurrentBuffer(long offset) {
 
-        if(readOnly) {
-            return;
-        }
-
         int bufferIndex = (int) (offset >> largeBufferScale);
 
         // when moving to last position in file
@@ -510,12 +510,14 @@ final class RAFileNIO implements RandomAccessInterface {
             bufferIndex    = buffers.length - 1;
             bufferPosition = (long) bufferIndex * largeBufferSize;
             buffer         = buffers[bufferIndex];
+            bufferLength   = buffer.limit();
 
             return;
         }
 
         buffer         = buffers[bufferIndex];
         bufferPosition = offset & largeBufferMask;
+        bufferLength   = buffer.limit();
     }
 
     /**
@@ -525,19 +527,41 @@ final class RAFileNIO implements RandomAccessInterface {
      */
     private void checkBuffer() {
 
-        if(readOnly) {
-            return;
-        }
         int bufferIndex = (int) (currentPosition >> largeBufferScale);
 
         if (currentPosition != bufferPosition + buffer.position()) {
             buffer         = buffers[bufferIndex];
             bufferPosition = currentPosition & largeBufferMask;
+            bufferLength   = buffer.limit();
 
             buffer.position((int) (currentPosition - bufferPosition));
         } else if (buffer != buffers[bufferIndex]) {
-            buffer = buffers[bufferIndex];
+            buffer       = buffers[bufferIndex];
+            bufferLength = buffer.limit();
+        }
+    }
+
+    /**
+     * Returns the mapped segment that contains the position, or null if the
+     * position is beyond the mapped length. Segments remain mapped when the
+     * file is enlarged and are unmapped only when the file is closed.
+     */
+    ByteBuffer getMappedBuffer(long position) {
+
+        int bufferIndex = (int) (position >> largeBufferScale);
+
+        if (bufferIndex >= buffers.length) {
+            return null;
         }
+
+        return buffers[bufferIndex];
+    }
+
+    /**
+     * Returns the offset of the position in its mapped segment.
+     */
+    static int getMappedOffset(long position) {
+        return (int) (position & ~largeBufferMask);
     }
 
     /**
@@ -31,6 +31,11 @@
 
 package org.hsqldb.persist;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -51,6 +56,8 @@ import org.hsqldb.index.Index;
 import org.hsqldb.index.IndexSBT;
 import org.hsqldb.index.NodeSBT;
 import org.hsqldb.lib.ArrayUtil;
+import org.hsqldb.lib.HsqlArrayList;
+import org.hsqldb.lib.StopWatch;
 import org.hsqldb.navigator.RowIterator;
 import org.hsqldb.rowio.RowInputInterface;
 import org.hsqldb.types.LobData;
@@ -67,11 +74,12 @@ public abstract class RowStoreSBT implements PersistentStore {
 
     Database          database;
     TableSpaceManager tableSpace;
-    Index[]           indexList    = Index.emptyArray;
-    CachedObject[]    accessorList = CachedObject.emptyArray;
+    Index[]           indexList      = Index.emptyArray;
+    CachedObject[]    accessorList   = CachedObject.emptyArray;
     TableBase         table;
     long              baseElementCount;
-    AtomicLong        elementCount = new AtomicLong();
+    AtomicLong        elementCount   = new AtomicLong();
+    AtomicInteger     rowActionCount = new AtomicInteger();
     long              storageSize;
     boolean[]         nullsList;
     double[][]        searchCost;
@@ -297,6 +305,10 @@ public abstract class RowStoreSBT implements PersistentStore {
         }
     }
 
+    public boolean indexRows(Session session, Row[] rows, int count) {
+        return false;
+    }
+
     //
     public final void indexRows(Session session) {
 
@@ -382,15 +394,19 @@ public abstract class RowStoreSBT implements PersistentStore {
                 }
             }
 
-            Index[] tempKeys = (Index[]) ArrayUtil.toAdjustedArray(indexList,
-                null, position, 1);
+            // new indexes after all the existing ones are built together
+            if (position < limit) {
+                Index[] tempKeys =
+                    (Index[]) ArrayUtil.toAdjustedArray(indexList, null,
+                        position, 1);
 
-            tempKeys[position] = keys[position];
+                tempKeys[position] = keys[position];
 
-            resetAccessorKeys(session, tempKeys);
-            resetAccessorKeys(session, keys);
+                resetAccessorKeys(session, tempKeys);
+                resetAccessorKeys(session, keys);
 
-            return;
+                return;
+            }
         }
 
         for (; position < limit; position++) {
@@ -405,7 +421,10 @@ public abstract class RowStoreSBT implements PersistentStore {
 
         try {
             if (diff > 0) {
-                insertIndexNodes(session, indexList[0], indexList[position]);
+                Index[] newIndexes = new Index[diff];
+
+                System.arraycopy(indexList, position, newIndexes, 0, diff);
+                insertIndexNodes(session, indexList[0], newIndexes);
             } else {
                 dropIndexFromRows(indexList[0], oldIndexList[position]);
             }
@@ -450,6 +469,14 @@ public abstract class RowStoreSBT implements PersistentStore {
         return searchCost[index.getPosition()][count - 1];
     }
 
+    public void addRowActionCount(int count) {
+        rowActionCount.addAndGet(count);
+    }
+
+    public boolean hasRowActions() {
+        return rowActionCount.get() != 0;
+    }
+
     public long elementCount() {
 
         Index index = this.indexList[0];
@@ -651,29 +678,47 @@ public abstract class RowStoreSBT implements PersistentStore {
 
     boolean insertIndexNodes(Session session, Index primaryIndex,
                              Index newIndex) {
+        return insertIndexNodes(session, primaryIndex, new Index[]{ newIndex });
+    }
+
+    /**
+     * Adds the nodes for the new indexes to all rows, then builds the new
+     * indexes. The new indexes must be at consecutive positions after the
+     * existing ones.
+     */
+    boolean insertIndexNodes(Session session, Index primaryIndex,
+                             Index[] newIndexes) {
 
         writeLock();
 
         try {
-            int           position = newIndex.getPosition();
+            int           position = newIndexes[0].getPosition();
             RowIterator   it       = primaryIndex.firstRow(this);
             int           rowCount = 0;
+            HsqlArrayList rows     = new HsqlArrayList();
             HsqlException error    = null;
 
             try {
                 while (it.next()) {
                     Row row = it.getCurrentRow();
 
-                    ((RowSBT) row).insertNode(position);
-
-                    // count before inserting
+                    // count before inserting the nodes
                     rowCount++;
 
-                    newIndex.insert(session, this, row);
+                    for (int i = 0; i < newIndexes.length; i++) {
+                        ((RowSBT) row).insertNode(position + i);
+                    }
+
+                    rows.add(row);
                 }
 
                 it.release();
 
+                Row[] rowArray = new Row[rows.size()];
+
+                rows.toArray(rowArray);
+                buildIndexes(session, newIndexes, rowArray);
+
                 return true;
             } catch (OutOfMemoryError e) {
                 error = Error.error(ErrorCode.OUT_OF_MEMORY);
@@ -685,7 +730,7 @@ public abstract class RowStoreSBT implements PersistentStore {
             // rowCount rows have been modified
             it = primaryIndex.firstRow(this);
 
-            while (it.next()) {
+            while (rowCount-- > 0 && it.next()) {
                 Row     row      = it.getCurrentRow();
                 NodeSBT backnode = ((RowSBT) row).getNode(0);
                 int     j        = position;
@@ -694,7 +739,14 @@ public abstract class RowStoreSBT implements PersistentStore {
                     backnode = backnode.nNext;
                 }
 
-                backnode.nNext = backnode.nNext.nNext;
+                NodeSBT nextnode = backnode.nNext;
+
+                for (int i = 0; i < newIndexes.length && nextnode != null;
+                        i++) {
+                    nextnode = nextnode.nNext;
+                }
+
+                backnode.nNext = nextnode;
             }
 
             it.release();
@@ -705,6 +757,90 @@ public abstract class RowStoreSBT implements PersistentStore {
         }
     }
 
+    /**
+     * Builds the indexes from the rows, using a pool of threads when there
+     * is more than one index and the index build parallelism property
+     * allows it. Each thread sorts its own copy of the rows.
+     */
+    void buildIndexes(final Session session, Index[] indexes,
+                      final Row[] rows) {
+
+        int threads = session.database.logger.getIndexBuildParallelism();
+
+        if (threads > indexes.length) {
+            threads = indexes.length;
+        }
+
+        if (threads <= 1) {
+            for (int i = 0; i < indexes.length; i++) {
+                buildIndex(session, indexes[i], i == 0 ? rows
+                                                       : rows.clone());
+            }
+
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Future<?>[]     futures  = new Future<?>[indexes.length];
+
+        try {
+            for (int i = 0; i < indexes.length; i++) {
+                final Index index    = indexes[i];
+                final Row[] rowArray = i == 0 ? rows
+                                              : rows.clone();
+
+                futures[i] = executor.submit(new Runnable() {
+
+                    public void run() {
+                        buildIndex(session, index, rowArray);
+                    }
+                });
+            }
+
+            RuntimeException error = null;
+
+            for (int i = 0; i < futures.length; i++) {
+                try {
+                    futures[i].get();
+                } catch (ExecutionException e) {
+                    Throwable t = e.getCause();
+
+                    if (error != null) {
+                        continue;
+                    }
+
+                    if (t instanceof HsqlException) {
+                        error = (HsqlException) t;
+                    } else if (t instanceof OutOfMemoryError) {
+                        error = Error.error(ErrorCode.OUT_OF_MEMORY);
+                    } else {
+                        error = Error.error(ErrorCode.GENERAL_ERROR, t);
+                    }
+                } catch (InterruptedException e) {
+                    if (error == null) {
+                        error = Error.error(ErrorCode.GENERAL_ERROR, e);
+                    }
+                }
+            }
+
+            if (error != null) {
+                throw error;
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void buildIndex(Session session, Index index, Row[] rows) {
+
+        StopWatch sw = new StopWatch();
+
+        index.build(session, this, rows);
+        session.database.logger.logDetailEvent("index built "
+                + index.getName().name + " " + rows.length + " rows "
+                + sw.elapsedTime() + " ms");
+    }
+
     /**
      * Used with memory indexes
      */
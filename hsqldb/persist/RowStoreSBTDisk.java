@@ -51,6 +51,7 @@ import org.hsqldb.index.NodeSBTDisk;
 import org.hsqldb.lib.ArrayUtil;
 import org.hsqldb.lib.DoubleIntIndex;
 import org.hsqldb.navigator.RowIterator;
+import org.hsqldb.rowio.RowCompressor;
 import org.hsqldb.rowio.RowInputInterface;
 import org.hsqldb.rowio.RowOutputInterface;
 
@@ -445,12 +446,23 @@ public class RowStoreSBTDisk extends RowStoreSBT implements PersistentStore {
 
         pointerLookup.setKeysSearchTarget();
 
+        // when written to a new file, the rows of a table that has a
+        // dictionary are written with the current compression setting
+        boolean       recompress = targetCache != cache
+                                   && table.getRowCompressor() != null;
+        RowCompressor compressor = table.isCompressed()
+                                   ? table.getRowCompressor()
+                                   : null;
         RowIterator it = indexList[0].firstRow(this);
 
         while (it.next()) {
-            CachedObject row = it.getCurrentRow();
+            CachedObject row  = it.getCurrentRow();
+            int          size = recompress
+                                ? getStorageSize(targetCache,
+                                                 (RowSBTDisk) row, compressor)
+                                : row.getStorageSize();
 
-            pointerLookup.addUnsorted(row.getPos(), row.getStorageSize());
+            pointerLookup.addUnsorted(row.getPos(), size);
         }
 
         pointerLookup.sort();
@@ -469,12 +481,69 @@ public class RowStoreSBTDisk extends RowStoreSBT implements PersistentStore {
             long         newPos = pointerLookup.lookup(row.getPos());
 
             // write
-            targetCache.rowOut.reset();
-            row.write(targetCache.rowOut, pointerLookup);
+            if (recompress) {
+                int size = getStorageSize(targetCache, (RowSBTDisk) row,
+                                          compressor);
+
+                targetCache.rowOut.reset();
+                ((RowSBTDisk) row).write(targetCache.rowOut, pointerLookup,
+                                         size, compressor);
+            } else {
+                targetCache.rowOut.reset();
+                row.write(targetCache.rowOut, pointerLookup);
+            }
+
             targetCache.saveRowOutput(newPos);
         }
     }
 
+    /**
+     * Moves a row to a new position in the same file. Used by online defrag.
+     * The position orders the rows with equal keys in an index, therefore
+     * the row is removed from the indexes and inserted again with new nodes.
+     * The old nodes are cleared for any scan that still holds them and the
+     * row is kept in memory while it has no valid position. The file space
+     * of the old position is released by the caller.
+     */
+    public void moveRow(Session session, Row row, long newPos) {
+
+        writeLock();
+
+        try {
+            row = (Row) get(row, true);
+
+            delete(session, row);
+
+            NodeSBT node = ((RowSBT) row).getNode(0);
+
+            while (node != null) {
+                node.delete();
+
+                node = node.nNext;
+            }
+
+            cache.release(row.getPos());
+            row.setPos(newPos);
+            ((RowSBT) row).setNewNodes(this);
+            row.setChanged(true);
+            cache.add(row, false);
+            indexRow(session, row);
+        } finally {
+            row.keepInMemory(false);
+            writeUnlock();
+        }
+    }
+
+    private int getStorageSize(DataFileCache targetCache, RowSBTDisk row,
+                               RowCompressor compressor) {
+
+        int size = row.getRealSize(targetCache.rowOut, compressor);
+
+        size += indexList.length * NodeSBTDisk.SIZE_IN_BYTE;
+
+        return targetCache.rowOut.getStorageSize(size);
+    }
+
     long getStorageSizeEstimate() {
 
         if (elementCount.get() == 0) {
@@ -37,6 +37,7 @@ import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.hsqldb.Database;
+import org.hsqldb.HsqlException;
 import org.hsqldb.Row;
 import org.hsqldb.RowSBT;
 import org.hsqldb.RowAction;
@@ -115,6 +116,71 @@ public class RowStoreSBTMemory extends RowStoreSBT implements PersistentStore {
         return row;
     }
 
+    public boolean indexRows(Session session, Row[] rows, int count) {
+
+        if (subStores.length > 0) {
+            return false;
+        }
+
+        Row[] sortedRows = new Row[count];
+        int   i          = 0;
+
+        writeLock();
+
+        try {
+            try {
+                for (; i < indexList.length; i++) {
+                    System.arraycopy(rows, 0, sortedRows, 0, count);
+                    indexList[i].insert(session, this, sortedRows, count);
+                }
+            } catch (HsqlException e) {
+
+                // unique index violation - rollback inserts
+                while (i-- > 0) {
+                    for (int j = 0; j < count; j++) {
+                        indexList[i].delete(session, this, rows[j]);
+                    }
+                }
+
+                throw e;
+            }
+
+            long size = elementCount.addAndGet(count);
+
+            if (size > 16 * 1024 && size > baseElementCount * 2) {
+                baseElementCount = size;
+                searchCost       = null;
+            }
+
+            return true;
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Used when the *.script is read. Builds all the indexes of the empty
+     * store from the new rows, which are not in any index.
+     */
+    public void buildIndexes(Session session, Row[] rows) {
+
+        if (elementCount.get() != 0 || subStores.length > 0) {
+            throw Error.runtimeError(ErrorCode.U_S0500, "RowStoreSBTMemory");
+        }
+
+        writeLock();
+
+        try {
+            buildIndexes(session, indexList, rows);
+            elementCount.set(rows.length);
+
+            baseElementCount = rows.length;
+            searchCost       = null;
+        } finally {
+            writeUnlock();
+        }
+    }
+
     public void removeAll() {
 
         destroy();
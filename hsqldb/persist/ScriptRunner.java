@@ -50,6 +50,7 @@ import org.hsqldb.lib.IntKeyHashMap;
 import org.hsqldb.map.ValuePool;
 import org.hsqldb.result.Result;
 import org.hsqldb.scriptio.ScriptReaderBase;
+import org.hsqldb.scriptio.ScriptReaderBinary;
 import org.hsqldb.scriptio.ScriptReaderDecode;
 import org.hsqldb.scriptio.ScriptReaderText;
 import org.hsqldb.types.Type;
@@ -78,7 +79,11 @@ public class ScriptRunner {
 
         try {
             if (crypto == null) {
-                scr = new ScriptReaderText(database, logFilename, false);
+                if (ScriptReaderBinary.isBinaryLog(database, logFilename)) {
+                    scr = new ScriptReaderBinary(database, logFilename);
+                } else {
+                    scr = new ScriptReaderText(database, logFilename, false);
+                }
             } else {
                 scr = new ScriptReaderDecode(database, logFilename, crypto,
                                              true);
@@ -115,10 +120,19 @@ public class ScriptRunner {
         String databaseFile = database.getCanonicalPath();
         String action       = fullReplay ? "open aborted"
                                          : "open continued";
+        int                  threads  =
+            database.logger.getRecoveryParallelism();
+        ScriptRunnerParallel parallel = null;
 
         dummy.setCompileTimestamp(Long.MAX_VALUE);
         database.setReferentialIntegrity(false);
 
+        if (threads > 1) {
+            parallel = new ScriptRunnerParallel(database, dummy,
+                                                scr.getFileNamePath(),
+                                                threads);
+        }
+
         try {
             while (scr.readLoggedStatement(current)) {
                 int sessionId = scr.getSessionNumber();
@@ -148,6 +162,10 @@ public class ScriptRunner {
                     case ScriptReaderBase.SET_FILES_CHECK_STATEMENT :
                         result = null;
                     case ScriptReaderBase.ANY_STATEMENT :
+                        if (parallel != null) {
+                            parallel.setSequential(current, currentId);
+                        }
+
                         statement = scr.getLoggedStatement();
 
                         Statement cs;
@@ -192,40 +210,28 @@ public class ScriptRunner {
                         break;
 
                     case ScriptReaderBase.COMMIT_STATEMENT :
-                        current.commit(false);
-                        break;
-
-                    case ScriptReaderBase.INSERT_STATEMENT : {
-                        current.sessionContext.currentStatement = dummy;
-
-                        current.beginAction(dummy);
-
-                        Object[] data = scr.getData();
-
-                        scr.getCurrentTable().insertNoCheckFromLog(current,
-                                data);
-                        current.endAction(Result.updateOneResult);
+                        if (parallel != null
+                                && parallel.commit(current, currentId)) {
+                            break;
+                        }
 
+                        current.commit(false);
                         break;
-                    }
-                    case ScriptReaderBase.DELETE_STATEMENT : {
-                        current.sessionContext.currentStatement = dummy;
-
-                        current.beginAction(dummy);
 
-                        Table           table = scr.getCurrentTable();
-                        PersistentStore store = table.getRowStore(current);
-                        Object[]        data  = scr.getData();
-                        Row row = table.getDeleteRowFromLog(current, data);
-
-                        if (row != null) {
-                            current.addDeleteAction(table, store, row, null);
+                    case ScriptReaderBase.INSERT_STATEMENT :
+                    case ScriptReaderBase.DELETE_STATEMENT :
+                        if (parallel != null
+                                && parallel.addOperation(
+                                    current, currentId, statementType,
+                                    scr.getCurrentTable(), scr.getData(),
+                                    scr.getLineNumber())) {
+                            break;
                         }
 
-                        current.endAction(Result.updateOneResult);
-
+                        replayRow(current, dummy, statementType,
+                                  scr.getCurrentTable(), scr.getData());
                         break;
-                    }
+
                     case ScriptReaderBase.SET_SCHEMA_STATEMENT : {
                         HsqlName name =
                             database.schemaManager.findSchemaHsqlName(
@@ -248,6 +254,10 @@ public class ScriptRunner {
                     sessionMap.remove(currentId);
                 }
             }
+
+            if (parallel != null) {
+                parallel.finish();
+            }
         } catch (HsqlException e) {
             if (e.getErrorCode() == -ErrorCode.ERROR_IN_LOG_FILE) {
                 throw e;
@@ -290,6 +300,10 @@ public class ScriptRunner {
                 throw e;
             }
         } finally {
+            if (parallel != null) {
+                parallel.close();
+            }
+
             if (scr != null) {
                 scr.close();
             }
@@ -298,4 +312,29 @@ public class ScriptRunner {
             database.setReferentialIntegrity(true);
         }
     }
+
+    /**
+     * Replays an INSERT or DELETE in the session, as part of the transaction
+     * of the session.
+     */
+    static void replayRow(Session session, Statement dummy, int type,
+                          Table table, Object[] data) {
+
+        session.sessionContext.currentStatement = dummy;
+
+        session.beginAction(dummy);
+
+        if (type == ScriptReaderBase.INSERT_STATEMENT) {
+            table.insertNoCheckFromLog(session, data);
+        } else {
+            PersistentStore store = table.getRowStore(session);
+            Row             row   = table.getDeleteRowFromLog(session, data);
+
+            if (row != null) {
+                session.addDeleteAction(table, store, row, null);
+            }
+        }
+
+        session.endAction(Result.updateOneResult);
+    }
 }
@@ -0,0 +1,394 @@
+/* Copyright (c) 2001-2017, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.persist;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.hsqldb.Database;
+import org.hsqldb.HsqlException;
+import org.hsqldb.Row;
+import org.hsqldb.Session;
+import org.hsqldb.SqlInvariants;
+import org.hsqldb.Statement;
+import org.hsqldb.Table;
+import org.hsqldb.TableBase;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+import org.hsqldb.lib.HsqlArrayList;
+import org.hsqldb.lib.IntKeyHashMap;
+import org.hsqldb.lib.IntValueHashMap;
+import org.hsqldb.lib.OrderedIntHashSet;
+import org.hsqldb.scriptio.ScriptReaderBase;
+
+/**
+ * Replays the INSERT and DELETE statements of the *.log with a pool of
+ * threads, used by ScriptRunner when hsqldb.recovery_parallelism is
+ * greater than 1.<p>
+ *
+ * The rows of a transaction are written to the log when it commits, so the
+ * operations of each session are held until its COMMIT is read, then
+ * dispatched to the lanes. Each table is assigned to one lane, which is
+ * a single thread, so the operations on a table are applied in log order.
+ * The operations of committed transactions are applied to the row stores
+ * directly, without transaction info. Those of a transaction without a
+ * COMMIT at the end of the log are discarded.<p>
+ *
+ * As an operation applied by a lane cannot be undone, an error in a lane
+ * stops the open of the database, even when the open would otherwise
+ * continue after an error in the log. The error reports the line of the
+ * operation in the log.<p>
+ *
+ * Other statements, and the operations on tables that are not MEMORY or
+ * CACHED, have LOB columns, or are in the LOBS schema, are replayed by
+ * ScriptRunner in the session after all the lanes have finished. The rest
+ * of the transaction of the session is then replayed in the same way.
+ *
+ * @author Fred Toussi (fredt@users dot sourceforge.net)
+ * @version 2.4.0
+ * @since 2.4.0
+ */
+final class ScriptRunnerParallel {
+
+    final Database          database;
+    final Statement         dummy;
+    final String            fileNamePath;
+    final ExecutorService[] lanes;
+    final Session[]         laneSessions;
+    final Future<?>[]       laneFutures;
+    final IntValueHashMap   tableLanes = new IntValueHashMap();
+
+    // session id to operations of the current transaction
+    final IntKeyHashMap pendingOperations = new IntKeyHashMap();
+
+    // sessions with a transaction replayed by ScriptRunner
+    final OrderedIntHashSet sequentialSessions = new OrderedIntHashSet();
+
+    //
+    volatile Throwable error;
+    long               operationCount;
+
+    ScriptRunnerParallel(Database database, Statement dummy,
+                         String fileNamePath, int threads) {
+
+        this.database     = database;
+        this.dummy        = dummy;
+        this.fileNamePath = fileNamePath;
+        lanes             = new ExecutorService[threads];
+        laneSessions      = new Session[threads];
+        laneFutures       = new Future<?>[threads];
+
+        for (int i = 0; i < threads; i++) {
+            lanes[i] = Executors.newSingleThreadExecutor();
+            laneSessions[i] =
+                database.getSessionManager().newSessionForLog(database);
+        }
+    }
+
+    /**
+     * Returns false if the operation is to be replayed by ScriptRunner.
+     */
+    boolean addOperation(Session session, int sessionId, int type,
+                         Table table, Object[] data, long lineNumber) {
+
+        if (sequentialSessions.contains(sessionId)) {
+            waitForLanes();
+
+            return false;
+        }
+
+        if (!isParallelTable(table)) {
+            setSequential(session, sessionId);
+
+            return false;
+        }
+
+        HsqlArrayList list = (HsqlArrayList) pendingOperations.get(sessionId);
+
+        if (list == null) {
+            list = new HsqlArrayList();
+
+            pendingOperations.put(sessionId, list);
+        }
+
+        list.add(new RowOperation(type, table, data, lineNumber));
+
+        return true;
+    }
+
+    /**
+     * Returns false if the commit is to be replayed by ScriptRunner.
+     */
+    boolean commit(Session session, int sessionId) {
+
+        if (sequentialSessions.contains(sessionId)) {
+            waitForLanes();
+            sequentialSessions.remove(sessionId);
+
+            return false;
+        }
+
+        HsqlArrayList list =
+            (HsqlArrayList) pendingOperations.remove(sessionId);
+
+        if (list != null) {
+            dispatch(list);
+        }
+
+        return true;
+    }
+
+    /**
+     * Used before a statement or an operation is replayed by ScriptRunner.
+     * Waits for the lanes, then replays the held operations of the session
+     * in the session.
+     */
+    void setSequential(Session session, int sessionId) {
+
+        waitForLanes();
+
+        HsqlArrayList list =
+            (HsqlArrayList) pendingOperations.remove(sessionId);
+
+        if (list != null) {
+            for (int i = 0; i < list.size(); i++) {
+                RowOperation op = (RowOperation) list.get(i);
+
+                ScriptRunner.replayRow(session, dummy, op.type, op.table,
+                                       op.data);
+            }
+        }
+
+        sequentialSessions.add(sessionId);
+    }
+
+    /**
+     * Called at the end of the log. The operations of transactions without
+     * a COMMIT are discarded.
+     */
+    void finish() {
+
+        pendingOperations.clear();
+        waitForLanes();
+        database.logger.logDetailEvent("log replayed in parallel - rows: "
+                                       + operationCount);
+    }
+
+    void close() {
+
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i].shutdown();
+        }
+
+        try {
+            for (int i = 0; i < lanes.length; i++) {
+                lanes[i].awaitTermination(Long.MAX_VALUE,
+                                          TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {}
+    }
+
+    private boolean isParallelTable(Table table) {
+
+        switch (table.getTableType()) {
+
+            case TableBase.MEMORY_TABLE :
+            case TableBase.CACHED_TABLE :
+                break;
+
+            default :
+                return false;
+        }
+
+        return !table.hasLobColumn()
+               && table.getSchemaName()
+                  != SqlInvariants.LOBS_SCHEMA_HSQLNAME;
+    }
+
+    private void dispatch(HsqlArrayList list) {
+
+        checkError();
+
+        HsqlArrayList[] laneLists = new HsqlArrayList[lanes.length];
+
+        for (int i = 0; i < list.size(); i++) {
+            RowOperation op   = (RowOperation) list.get(i);
+            int          lane = tableLanes.get(op.table, -1);
+
+            if (lane < 0) {
+                lane = tableLanes.size() % lanes.length;
+
+                tableLanes.put(op.table, lane);
+            }
+
+            if (laneLists[lane] == null) {
+                laneLists[lane] = new HsqlArrayList();
+            }
+
+            laneLists[lane].add(op);
+        }
+
+        for (int i = 0; i < lanes.length; i++) {
+            if (laneLists[i] != null) {
+                laneFutures[i] = lanes[i].submit(new LaneTask(laneSessions[i],
+                        laneLists[i]));
+            }
+        }
+
+        operationCount += list.size();
+    }
+
+    private void waitForLanes() {
+
+        for (int i = 0; i < lanes.length; i++) {
+            if (laneFutures[i] == null) {
+                continue;
+            }
+
+            try {
+                laneFutures[i].get();
+            } catch (Exception e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+
+            laneFutures[i] = null;
+        }
+
+        checkError();
+    }
+
+    /**
+     * Records the first error in a lane as an error in the log file, which
+     * stops the open of the database.
+     */
+    private synchronized void setError(Throwable t, long lineNumber) {
+
+        if (error != null) {
+            return;
+        }
+
+        String message = "statement error processing log - open aborted "
+                         + fileNamePath + " line: " + lineNumber;
+        HsqlException e = Error.error(t, ErrorCode.ERROR_IN_LOG_FILE,
+                                      message);
+
+        database.logger.logSevereEvent(message, t);
+
+        error = e;
+    }
+
+    private void checkError() {
+
+        Throwable t = error;
+
+        if (t == null) {
+            return;
+        }
+
+        if (t instanceof HsqlException) {
+            throw (HsqlException) t;
+        }
+
+        if (t instanceof OutOfMemoryError) {
+            throw Error.error(ErrorCode.OUT_OF_MEMORY);
+        }
+
+        throw Error.error(ErrorCode.GENERAL_ERROR, t);
+    }
+
+    /**
+     * Applies the operations of committed transactions on the tables of a
+     * lane, in log order.
+     */
+    private class LaneTask implements Runnable {
+
+        final Session       session;
+        final HsqlArrayList list;
+
+        LaneTask(Session session, HsqlArrayList list) {
+            this.session = session;
+            this.list    = list;
+        }
+
+        public void run() {
+
+            if (error != null) {
+                return;
+            }
+
+            RowOperation op = null;
+
+            try {
+                for (int i = 0; i < list.size(); i++) {
+                    op = (RowOperation) list.get(i);
+
+                    Table           table = op.table;
+                    PersistentStore store = table.getRowStore(session);
+
+                    if (op.type == ScriptReaderBase.INSERT_STATEMENT) {
+                        table.systemUpdateIdentityValue(op.data);
+                        table.insertData(session, store, op.data);
+                    } else {
+                        Row row = table.getDeleteRowFromLog(session,
+                                                            op.data);
+
+                        if (row != null) {
+                            store.delete(session, row);
+                            store.remove(row);
+                        }
+                    }
+                }
+            } catch (Throwable t) {
+                setError(t, op.lineNumber);
+            }
+        }
+    }
+
+    private static class RowOperation {
+
+        final int      type;
+        final Table    table;
+        final Object[] data;
+        final long     lineNumber;
+
+        RowOperation(int type, Table table, Object[] data, long lineNumber) {
+            this.type       = type;
+            this.table      = table;
+            this.data       = data;
+            this.lineNumber = lineNumber;
+        }
+    }
+}
@@ -170,6 +170,10 @@ public abstract class SimpleStore implements PersistentStore {
 
     public void indexRow(Session session, Row row) {}
 
+    public boolean indexRows(Session session, Row[] rows, int count) {
+        return false;
+    }
+
     public void indexRows(Session session) {}
 
     public RowIterator rowIterator() {
@@ -212,4 +216,10 @@ public abstract class SimpleStore implements PersistentStore {
                             int txModel) {}
 
     public void postCommitAction(Session session, RowAction rowAction) {}
+
+    public void addRowActionCount(int count) {}
+
+    public boolean hasRowActions() {
+        return false;
+    }
 }
@@ -96,6 +96,7 @@ public class TextCache extends DataFileCache {
 
         this.table       = table;
         uncommittedCache = new LongKeyHashMap();
+        readAheadRows    = 0;
     }
 
     protected void initParams(Database database, String fileSettingsString,
@@ -0,0 +1,464 @@
+/* Copyright (c) 2001-2016, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.hsqldb.rowio;
+
+import java.util.Comparator;
+
+import org.hsqldb.Row;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+import org.hsqldb.lib.ArraySort;
+import org.hsqldb.lib.HsqlArrayList;
+import org.hsqldb.lib.IntValueHashMap;
+import org.hsqldb.lib.Iterator;
+import org.hsqldb.types.Type;
+import org.hsqldb.types.Types;
+
+/**
+ * Compresses the data of rows of a CACHED table with a simple LZ77 block
+ * format similar to LZ4. Matches can refer back into a preset dictionary
+ * that is created from the most frequent character values of a sample of
+ * the rows, so values repeated across rows compress well even in short
+ * rows.<p>
+ *
+ * The compressed data of a row starts with a marker byte that cannot be
+ * the first byte of uncompressed data, followed by the uncompressed length
+ * and the sequences. Each sequence has a token byte with the count of
+ * literal bytes and the length of the match, the literal bytes, and the
+ * match offset. The last sequence has only literals. The output depends
+ * only on the input and the dictionary, therefore the size of a row that
+ * is written again is the same as the size allocated for it.<p>
+ *
+ * A dictionary cannot be changed once rows have been compressed with it.
+ *
+ * @author Fred Toussi (fredt@users dot sourceforge.net)
+ * @version 2.4.0
+ * @since 2.4.0
+ */
+public class RowCompressor {
+
+    /** marker for data compressed with the dictionary of the table */
+    public static final int COMPRESSED = 2;
+
+    /** marker for data compressed without a dictionary */
+    public static final int COMPRESSED_NO_DICTIONARY = 3;
+
+    /** compressor without dictionary, used for the marker above */
+    public static final RowCompressor noDictionary =
+        new RowCompressor(new byte[0]);
+
+    //
+    public static final int DICTIONARY_MAX_SIZE = 16 * 1024;
+    static final int        HEADER_SIZE         = 1 + 4;
+    static final int        MIN_MATCH           = 4;
+    static final int        MAX_OFFSET          = 0xffff;
+    static final int        HASH_BITS           = 12;
+
+    //
+    private final byte[] dictionary;
+    private final int[]  dictionaryHash;
+
+    // work space, used in synchronized methods
+    private byte[]          window;
+    private byte[]          output;
+    private final int[]     hash;
+    private RowOutputBinary rowOut;
+
+    public RowCompressor(byte[] dictionary) {
+
+        this.dictionary = dictionary;
+        hash            = new int[1 << HASH_BITS];
+        dictionaryHash  = new int[1 << HASH_BITS];
+        window          = new byte[dictionary.length + 256];
+
+        System.arraycopy(dictionary, 0, window, 0, dictionary.length);
+
+        for (int i = 0; i + MIN_MATCH <= dictionary.length; i++) {
+            dictionaryHash[hash(read4(window, i))] = i + 1;
+        }
+    }
+
+    public byte[] getDictionary() {
+        return dictionary;
+    }
+
+    public boolean hasDictionary() {
+        return dictionary.length > 0;
+    }
+
+    /**
+     * Returns the size of the data of the row as written by writeData with
+     * the given types and then compressed.
+     */
+    public synchronized int getDataSize(Row row, Type[] types) {
+
+        if (rowOut == null) {
+            rowOut = new RowOutputBinary(256, 1);
+        }
+
+        rowOut.reset();
+        rowOut.writeData(row, types);
+
+        return compress(rowOut.getBuffer(), 0, rowOut.size());
+    }
+
+    /**
+     * Compresses length bytes of the buffer at offset in place, if the
+     * compressed form with its header is shorter. Returns the new length.
+     */
+    public synchronized int compress(byte[] buffer, int offset, int length) {
+
+        int base  = dictionary.length;
+        int end   = base + length;
+        int limit = length - HEADER_SIZE;
+
+        if (limit <= 0) {
+            return length;
+        }
+
+        if (window.length < end) {
+            byte[] newWindow = new byte[end + end / 4];
+
+            System.arraycopy(dictionary, 0, newWindow, 0, base);
+
+            window = newWindow;
+        }
+
+        if (output == null || output.length < length) {
+            output = new byte[length + length / 4];
+        }
+
+        System.arraycopy(buffer, offset, window, base, length);
+        System.arraycopy(dictionaryHash, 0, hash, 0, hash.length);
+
+        int anchor = base;
+        int p      = base;
+        int op     = 0;
+
+        while (p + MIN_MATCH <= end) {
+            int value = read4(window, p);
+            int h     = hash(value);
+            int ref   = hash[h] - 1;
+
+            hash[h] = p + 1;
+
+            if (ref < 0 || p - ref > MAX_OFFSET
+                    || read4(window, ref) != value) {
+                p++;
+
+                continue;
+            }
+
+            int matchLength = MIN_MATCH;
+
+            while (p + matchLength < end
+                    && window[ref + matchLength] == window[p + matchLength]) {
+                matchLength++;
+            }
+
+            op = writeSequence(anchor, p - anchor, p - ref, matchLength, op,
+                               limit);
+
+            if (op < 0) {
+                return length;
+            }
+
+            p      += matchLength;
+            anchor = p;
+        }
+
+        op = writeSequence(anchor, end - anchor, 0, 0, op, limit);
+
+        if (op < 0) {
+            return length;
+        }
+
+        int marker = dictionary.length > 0 ? COMPRESSED
+                                           : COMPRESSED_NO_DICTIONARY;
+
+        buffer[offset]     = (byte) marker;
+        buffer[offset + 1] = (byte) (length >>> 24);
+        buffer[offset + 2] = (byte) (length >>> 16);
+        buffer[offset + 3] = (byte) (length >>> 8);
+        buffer[offset + 4] = (byte) length;
+
+        System.arraycopy(output, 0, buffer, offset + HEADER_SIZE, op);
+
+        return HEADER_SIZE + op;
+    }
+
+    /**
+     * Writes a sequence to the output at op. Returns the new output
+     * position, or -1 if the limit is reached.
+     */
+    private int writeSequence(int literalStart, int literalLength,
+                              int offset, int matchLength, int op,
+                              int limit) {
+
+        int required = 1 + literalLength + literalLength / 255 + 1
+                       + (matchLength == 0 ? 0
+                                           : 2 + matchLength / 255 + 1);
+
+        if (op + required > limit) {
+            return -1;
+        }
+
+        int tokenPos     = op++;
+        int literalToken = literalLength < 15 ? literalLength
+                                              : 15;
+        int matchToken   = 0;
+
+        if (literalLength >= 15) {
+            op = writeLength(literalLength - 15, op);
+        }
+
+        System.arraycopy(window, literalStart, output, op, literalLength);
+
+        op += literalLength;
+
+        if (matchLength > 0) {
+            int length = matchLength - MIN_MATCH;
+
+            matchToken    = length < 15 ? length
+                                        : 15;
+            output[op++] = (byte) (offset >>> 8);
+            output[op++] = (byte) offset;
+
+            if (length >= 15) {
+                op = writeLength(length - 15, op);
+            }
+        }
+
+        output[tokenPos] = (byte) ((literalToken << 4) | matchToken);
+
+        return op;
+    }
+
+    private int writeLength(int length, int op) {
+
+        while (length >= 255) {
+            output[op++] = (byte) 255;
+            length       -= 255;
+        }
+
+        output[op++] = (byte) length;
+
+        return op;
+    }
+
+    /**
+     * Decompresses the sequences in length bytes of source at offset into
+     * rawLength bytes of the target at targetOffset.
+     */
+    public void decompress(byte[] source, int offset, int length,
+                           byte[] target, int targetOffset, int rawLength) {
+
+        int ip    = offset;
+        int ipEnd = offset + length;
+        int op    = targetOffset;
+        int end   = targetOffset + rawLength;
+
+        try {
+            while (op < end) {
+                int token         = source[ip++] & 0xff;
+                int literalLength = token >>> 4;
+
+                if (literalLength == 15) {
+                    int b;
+
+                    do {
+                        b             = source[ip++] & 0xff;
+                        literalLength += b;
+                    } while (b == 255);
+                }
+
+                if (ip + literalLength > ipEnd || op + literalLength > end) {
+                    throw Error.error(ErrorCode.DATA_FILE_ERROR);
+                }
+
+                System.arraycopy(source, ip, target, op, literalLength);
+
+                ip += literalLength;
+                op += literalLength;
+
+                if (op >= end) {
+                    break;
+                }
+
+                int matchOffset = ((source[ip] & 0xff) << 8)
+                                  | (source[ip + 1] & 0xff);
+                int matchLength = token & 0xf;
+
+                ip += 2;
+
+                if (matchLength == 15) {
+                    int b;
+
+                    do {
+                        b           = source[ip++] & 0xff;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+
+                matchLength += MIN_MATCH;
+
+                int ref = op - matchOffset;
+
+                if (matchOffset == 0 || op + matchLength > end
+                        || ref < targetOffset - dictionary.length) {
+                    throw Error.error(ErrorCode.DATA_FILE_ERROR);
+                }
+
+                int dictionaryOffset = dictionary.length - targetOffset;
+
+                for (int i = 0; i < matchLength; i++, ref++) {
+                    target[op++] = ref >= targetOffset
+                                   ? target[ref]
+                                   : dictionary[dictionaryOffset + ref];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw Error.error(ErrorCode.DATA_FILE_ERROR);
+        }
+    }
+
+    private static int read4(byte[] b, int i) {
+        return (b[i] << 24) | ((b[i + 1] & 0xff) << 16)
+               | ((b[i + 2] & 0xff) << 8) | (b[i + 3] & 0xff);
+    }
+
+    private static int hash(int value) {
+        return (value * -1640531535) >>> (32 - HASH_BITS);
+    }
+
+    /**
+     * Creates a dictionary from the character values of the sample rows.
+     * The values are written in the row format. Values that occur more than
+     * once are ordered by the total number of bytes they would save, with
+     * the most useful at the end of the dictionary. Any space left is filled
+     * with other values, which are useful when values differ only in parts,
+     * as they do in log messages.
+     */
+    public static byte[] createDictionary(HsqlArrayList rows, Type[] types) {
+
+        IntValueHashMap counts = new IntValueHashMap();
+        IntValueHashMap columns = new IntValueHashMap();
+
+        for (int i = 0; i < rows.size(); i++) {
+            Object[] data = (Object[]) rows.get(i);
+
+            for (int j = 0; j < types.length; j++) {
+                if (data[j] == null) {
+                    continue;
+                }
+
+                switch (types[j].typeCode) {
+
+                    case Types.SQL_CHAR :
+                    case Types.SQL_VARCHAR :
+                        break;
+
+                    default :
+                        continue;
+                }
+
+                counts.put(data[j], counts.get(data[j], 0) + 1);
+
+                if (!columns.containsKey(data[j])) {
+                    columns.put(data[j], j);
+                }
+            }
+        }
+
+        RowOutputBinary out    = new RowOutputBinary(256, 1);
+        HsqlArrayList   values = new HsqlArrayList();
+        Iterator        it     = counts.keySet().iterator();
+
+        while (it.hasNext()) {
+            Object value = it.next();
+            int    count = counts.get(value);
+
+            out.reset();
+            out.writeData(value, types[columns.get(value)]);
+
+            if (out.size() < MIN_MATCH) {
+                continue;
+            }
+
+            byte[] bytes = new byte[out.size()];
+
+            System.arraycopy(out.getBuffer(), 0, bytes, 0, bytes.length);
+            values.add(new Object[] {
+                Long.valueOf(count < 2 ? 0
+                                       : (long) count * bytes.length), bytes
+            });
+        }
+
+        Object[] array = values.toArray();
+
+        ArraySort.sort(array, 0, array.length, new Comparator<Object[]>() {
+
+            public int compare(Object[] a, Object[] b) {
+
+                long sa = ((Long) a[0]).longValue();
+                long sb = ((Long) b[0]).longValue();
+
+                return sa > sb ? -1
+                               : sa < sb ? 1
+                                         : 0;
+            }
+        });
+
+        int size  = 0;
+        int count = 0;
+
+        for (; count < array.length; count++) {
+            byte[] bytes = (byte[]) ((Object[]) array[count])[1];
+
+            if (size + bytes.length > DICTIONARY_MAX_SIZE) {
+                break;
+            }
+
+            size += bytes.length;
+        }
+
+        byte[] dictionary = new byte[size];
+
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = (byte[]) ((Object[]) array[i])[1];
+
+            size -= bytes.length;
+
+            System.arraycopy(bytes, 0, dictionary, size, bytes.length);
+        }
+
+        return dictionary;
+    }
+}
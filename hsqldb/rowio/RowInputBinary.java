@@ -69,6 +69,14 @@ public class RowInputBinary extends RowInputBase implements RowInputInterface {
     public boolean          ignoreDataErrors;
     private RowOutputBinary out;
 
+    // the compressor with the dictionary of the table, set while reading
+    private RowCompressor compressor;
+
+    // the compressor of the last row data read, or null
+    private RowCompressor  dataCompressor;
+    private byte[]         compressedData;
+    private RowInputBinary decompressedIn;
+
     public RowInputBinary() {
         this(64);
     }
@@ -342,9 +350,78 @@ public class RowInputBinary extends RowInputBase implements RowInputInterface {
             return new Object[colTypes.length];
         }
 
+        dataCompressor = null;
+
+        if (pos < count) {
+            int marker = read();
+
+            pos--;
+
+            if (marker == RowCompressor.COMPRESSED
+                    || marker == RowCompressor.COMPRESSED_NO_DICTIONARY) {
+                return readCompressedData(colTypes);
+            }
+        }
+
         return super.readData(colTypes);
     }
 
+    /**
+     * Reads row data that may have been written compressed with the
+     * compressor of the table or without a dictionary.
+     */
+    public Object[] readData(Type[] colTypes, RowCompressor compressor) {
+
+        this.compressor = compressor;
+
+        try {
+            return readData(colTypes);
+        } finally {
+            this.compressor = null;
+        }
+    }
+
+    /**
+     * Returns the compressor of the data read by the last call to
+     * readData, or null if the data was not compressed.
+     */
+    public RowCompressor getDataCompressor() {
+        return dataCompressor;
+    }
+
+    private Object[] readCompressedData(Type[] colTypes) {
+
+        int marker    = read();
+        int rawLength = readInt();
+        int length    = count - pos;
+        RowCompressor decompressor = marker == RowCompressor.COMPRESSED
+                                     ? compressor
+                                     : RowCompressor.noDictionary;
+
+        if (decompressor == null || rawLength < 0) {
+            throw Error.error(ErrorCode.DATA_FILE_ERROR,
+                              "RowInputBinary" + ' ' + getFilePosition());
+        }
+
+        if (compressedData == null || compressedData.length < length) {
+            compressedData = new byte[length];
+        }
+
+        read(compressedData, 0, length);
+
+        if (decompressedIn == null) {
+            decompressedIn = new RowInputBinary(rawLength);
+        }
+
+        decompressedIn.resetBlock(filePos, rawLength);
+        decompressor.decompress(compressedData, 0, length,
+                                decompressedIn.getBuffer(), 0, rawLength);
+
+        dataCompressor = decompressor;
+
+        return decompressedIn.readData(colTypes);
+    }
+
     // helper methods
     public byte[] readByteArray() {
 
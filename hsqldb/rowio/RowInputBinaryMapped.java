@@ -0,0 +1,215 @@
+/* Copyright (c) 2001-2016, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.rowio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+import org.hsqldb.lib.StringConverter;
+import org.hsqldb.map.ValuePool;
+
+/**
+ * Reads a row directly from a mapped buffer of the .data file, without
+ * copying the row to a byte[]. The read position is relative to the start
+ * of the row, as with the other row inputs.<p>
+ *
+ * The buffer is read through a duplicate, so the position of the mapped
+ * buffer that is used by the file for its own reads and writes is not
+ * changed. The buffer must not be unmapped while a row is decoded.
+ *
+ * @author Fred Toussi (fredt@users dot sourceforge.net)
+ * @version 2.4.0
+ * @since 2.4.0
+ */
+public class RowInputBinaryMapped extends RowInputBinary {
+
+    private ByteBuffer source;
+    private ByteBuffer view;
+    private int        base;
+
+    public RowInputBinaryMapped() {
+        super(4);
+    }
+
+    /**
+     * Sets the row to the rowsize bytes of the buffer at offset.
+     */
+    public void resetRow(long filepos, int rowsize, ByteBuffer buffer,
+                         int offset) {
+
+        if (source != buffer) {
+            source = buffer;
+            view   = buffer.duplicate();
+        }
+
+        base    = offset;
+        filePos = filepos;
+        size    = count = rowsize;
+        pos     = 4;
+        mark    = 0;
+    }
+
+    public int read() {
+        return (pos < count) ? (view.get(base + pos++) & 0xff)
+                             : -1;
+    }
+
+    public int read(byte[] b, int off, int len) {
+
+        if (pos >= count) {
+            return -1;
+        }
+
+        if (pos + len > count) {
+            len = count - pos;
+        }
+
+        if (len <= 0) {
+            return 0;
+        }
+
+        view.position(base + pos);
+        view.get(b, off, len);
+
+        pos += len;
+
+        return len;
+    }
+
+    public short readShort() {
+
+        checkAvailable(2);
+
+        short value = view.getShort(base + pos);
+
+        pos += 2;
+
+        return value;
+    }
+
+    public int readInt() {
+
+        checkAvailable(4);
+
+        int value = view.getInt(base + pos);
+
+        pos += 4;
+
+        return value;
+    }
+
+    public long readLong() {
+
+        checkAvailable(8);
+
+        long value = view.getLong(base + pos);
+
+        pos += 8;
+
+        return value;
+    }
+
+    public String readString() {
+
+        try {
+            int length = readInt();
+
+            if (length < 0) {
+                throw Error.error(ErrorCode.GENERAL_IO_ERROR,
+                                  "RowInputBinary - negative length");
+            }
+
+            checkAvailable(length);
+
+            String s = StringConverter.readUTF(view, base + pos, length);
+
+            s   = ValuePool.getString(s);
+            pos += length;
+
+            return s;
+        } catch (IOException e) {
+            throw Error.error(e, ErrorCode.GENERAL_IO_ERROR,
+                              "RowInputBinary" + ' ' + getFilePosition());
+        }
+    }
+
+    public String readUTF() throws IOException {
+
+        int bytecount = readUnsignedShort();
+
+        if (pos + bytecount >= count) {
+            throw new EOFException();
+        }
+
+        String result = StringConverter.readUTF(view, base + pos, bytecount);
+
+        pos += bytecount;
+
+        return result;
+    }
+
+    public char[] readCharArray() throws IOException {
+
+        int    length = readInt();
+        char[] c      = new char[length];
+
+        if (count - pos < c.length * 2) {
+            pos = count;
+
+            throw new EOFException();
+        }
+
+        for (int i = 0; i < c.length; i++) {
+            c[i] = view.getChar(base + pos);
+            pos  += 2;
+        }
+
+        return c;
+    }
+
+    public byte[] getBuffer() {
+        throw Error.runtimeError(ErrorCode.U_S0500, "RowInputBinaryMapped");
+    }
+
+    private void checkAvailable(int length) {
+
+        if (count - pos < length) {
+            pos = count;
+
+            throw Error.error(new EOFException(), ErrorCode.GENERAL_IO_ERROR,
+                              "RowInputBinary" + ' ' + getFilePosition());
+        }
+    }
+}
@@ -67,6 +67,9 @@ public class RowOutputBinary extends RowOutputBase {
     final int               scale;    // 2 to power n where n >= 0
     final int               mask;
 
+    // set while the data of a compressed row is written or sized
+    RowCompressor compressor;
+
     public RowOutputBinary() {
         this(new byte[64]);
     }
@@ -109,7 +112,33 @@ public class RowOutputBinary extends RowOutputBase {
     }
 
     public void writeData(Row row, Type[] types) {
+
+        if (compressor == null) {
+            super.writeData(row, types);
+
+            return;
+        }
+
+        int start = count;
+
         super.writeData(row, types);
+
+        count = start + compressor.compress(buffer, start, count - start);
+    }
+
+    /**
+     * Writes the row data compressed with the compressor, if the compressed
+     * form is shorter.
+     */
+    public void writeData(Row row, Type[] types, RowCompressor compressor) {
+
+        this.compressor = compressor;
+
+        try {
+            writeData(row, types);
+        } finally {
+            this.compressor = null;
+        }
     }
 
     public long scalePosition(long position) {
@@ -173,9 +202,28 @@ public class RowOutputBinary extends RowOutputBase {
         Type[]   types = row.getTable().getColumnTypes();
         int      cols  = row.getTable().getDataColumnCount();
 
+        if (compressor != null) {
+            return INT_STORE_SIZE + compressor.getDataSize(row, types);
+        }
+
         return INT_STORE_SIZE + getSize(data, cols, types);
     }
 
+    /**
+     * Returns the size of the row when the data is written with the
+     * compressor.
+     */
+    public int getSize(Row row, RowCompressor compressor) {
+
+        this.compressor = compressor;
+
+        try {
+            return getSize(row);
+        } finally {
+            this.compressor = null;
+        }
+    }
+
     public int getStorageSize(int size) {
         return (size + scale - 1) & mask;
     }
@@ -0,0 +1,383 @@
+/* Copyright (c) 2001-2017, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+
+package org.hsqldb.scriptio;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.hsqldb.Database;
+import org.hsqldb.HsqlException;
+import org.hsqldb.Row;
+import org.hsqldb.Session;
+import org.hsqldb.SqlInvariants;
+import org.hsqldb.Table;
+import org.hsqldb.TableBase;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+import org.hsqldb.lib.HashSet;
+import org.hsqldb.lib.HsqlArrayList;
+import org.hsqldb.persist.PersistentStore;
+import org.hsqldb.persist.RowStoreSBTMemory;
+import org.hsqldb.rowio.RowInputTextLog;
+import org.hsqldb.types.Type;
+
+/**
+ * Loads the rows of MEMORY tables from the *.script with a pool of threads,
+ * used by ScriptReaderText when hsqldb.script_load_parallelism is greater
+ * than 1.<p>
+ *
+ * The reading thread splits the INSERT statements of each table into
+ * chunks of lines and dispatches the chunks to the decoder threads in turn.
+ * When all the lines of a table have been read, the builder thread creates
+ * the rows in file order from the decoded chunks and builds all the indexes
+ * of the table from the rows, while the reading thread continues with the
+ * next tables.<p>
+ *
+ * Only empty MEMORY tables without LOB columns and outside the LOBS schema
+ * are loaded this way. The rows of other tables are inserted by
+ * ScriptReaderText one by one.
+ *
+ * @author Fred Toussi (fredt@users dot sourceforge.net)
+ * @version 2.4.0
+ * @since 2.4.0
+ */
+final class ScriptLoaderParallel {
+
+    static final int chunkSize = 4096;
+
+    //
+    final Database          database;
+    final ExecutorService[] decoders;
+    final Session[]         decoderSessions;
+    final ExecutorService   builder;
+    final Session           builderSession;
+    final HsqlArrayList     builderFutures = new HsqlArrayList();
+    final HashSet           loadedTables   = new HashSet();
+
+    // the table being read
+    Table             currentTable;
+    RowStoreSBTMemory currentStore;
+    HsqlArrayList     currentChunks;
+    String[]          lines;
+    int               lineCount;
+    long              firstLineNumber;
+    int               decoderIndex;
+
+    //
+    volatile Throwable error;
+    long               rowCount;
+
+    ScriptLoaderParallel(Database database, int threads) {
+
+        this.database   = database;
+        decoders        = new ExecutorService[threads];
+        decoderSessions = new Session[threads];
+
+        for (int i = 0; i < threads; i++) {
+            decoders[i] = Executors.newSingleThreadExecutor();
+            decoderSessions[i] =
+                database.sessionManager.getSysSessionForScript(database);
+        }
+
+        builder = Executors.newSingleThreadExecutor();
+        builderSession =
+            database.sessionManager.getSysSessionForScript(database);
+    }
+
+    /**
+     * Returns false if the rows of the table are to be inserted by
+     * ScriptReaderText.
+     */
+    boolean isParallelTable(Table table, PersistentStore store) {
+
+        if (loadedTables.contains(table)) {
+
+            // rows of the table are in two places in the file
+            waitForBuilder();
+
+            return false;
+        }
+
+        return table.getTableType() == TableBase.MEMORY_TABLE
+               && store instanceof RowStoreSBTMemory
+               && store.elementCount() == 0 && !table.hasLobColumn()
+               && table.getSchemaName()
+                  != SqlInvariants.LOBS_SCHEMA_HSQLNAME;
+    }
+
+    void startTable(Table table, PersistentStore store) {
+
+        endTable();
+
+        currentTable  = table;
+        currentStore  = (RowStoreSBTMemory) store;
+        currentChunks = new HsqlArrayList();
+        lines         = new String[chunkSize];
+        lineCount     = 0;
+
+        loadedTables.add(table);
+    }
+
+    void addRow(String statement, long lineNumber) {
+
+        if (lineCount == 0) {
+            firstLineNumber = lineNumber;
+        }
+
+        lines[lineCount++] = statement;
+
+        if (lineCount == chunkSize) {
+            submitChunk();
+        }
+    }
+
+    /**
+     * Called when the rows of the current table have all been read.
+     */
+    void endTable() {
+
+        if (currentTable == null) {
+            return;
+        }
+
+        submitChunk();
+        builderFutures.add(builder.submit(new BuildTask(currentTable,
+                currentStore, currentChunks)));
+
+        currentTable  = null;
+        currentStore  = null;
+        currentChunks = null;
+        lines         = null;
+    }
+
+    /**
+     * Called at the end of the INSERT section of the file.
+     */
+    void finish() {
+
+        endTable();
+        waitForBuilder();
+        database.logger.logDetailEvent("script loaded in parallel - rows: "
+                                       + rowCount);
+    }
+
+    void close() {
+
+        for (int i = 0; i < decoders.length; i++) {
+            decoders[i].shutdown();
+        }
+
+        builder.shutdown();
+
+        try {
+            for (int i = 0; i < decoders.length; i++) {
+                decoders[i].awaitTermination(Long.MAX_VALUE,
+                                             TimeUnit.MILLISECONDS);
+            }
+
+            builder.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {}
+    }
+
+    private void submitChunk() {
+
+        if (lineCount == 0) {
+            return;
+        }
+
+        checkError();
+
+        int lane = decoderIndex++ % decoders.length;
+        DecodeTask task = new DecodeTask(decoderSessions[lane],
+                                         currentTable.getColumnTypes(),
+                                         lines, lineCount, firstLineNumber);
+
+        currentChunks.add(decoders[lane].submit(task));
+
+        lines     = new String[chunkSize];
+        lineCount = 0;
+    }
+
+    private void waitForBuilder() {
+
+        for (int i = 0; i < builderFutures.size(); i++) {
+            try {
+                ((Future<?>) builderFutures.get(i)).get();
+            } catch (Exception e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+
+        builderFutures.clear();
+        checkError();
+    }
+
+    private void checkError() {
+
+        Throwable t = error;
+
+        if (t == null) {
+            return;
+        }
+
+        if (t instanceof HsqlException) {
+            throw (HsqlException) t;
+        }
+
+        if (t instanceof OutOfMemoryError) {
+            throw Error.error(ErrorCode.OUT_OF_MEMORY);
+        }
+
+        throw Error.error(ErrorCode.GENERAL_ERROR, t);
+    }
+
+    /**
+     * Decodes the values of a chunk of INSERT statements of one table.
+     * Returns null after an error.
+     */
+    private class DecodeTask implements Callable<Object[][]> {
+
+        final Session  session;
+        final Type[]   colTypes;
+        final String[] lines;
+        final int      count;
+        final long     firstLineNumber;
+
+        DecodeTask(Session session, Type[] colTypes, String[] lines,
+                   int count, long firstLineNumber) {
+
+            this.session         = session;
+            this.colTypes        = colTypes;
+            this.lines           = lines;
+            this.count           = count;
+            this.firstLineNumber = firstLineNumber;
+        }
+
+        public Object[][] call() {
+
+            if (error != null) {
+                return null;
+            }
+
+            RowInputTextLog rowIn = new RowInputTextLog();
+            Object[][]      data  = new Object[count][];
+            int             i     = 0;
+
+            try {
+                for (; i < count; i++) {
+                    rowIn.setSource(session, lines[i]);
+
+                    data[i] = rowIn.readData(colTypes);
+                }
+            } catch (Throwable t) {
+                if (error == null) {
+                    error = Error.error(
+                        t, ErrorCode.ERROR_IN_SCRIPT_FILE,
+                        ErrorCode.M_DatabaseScriptReader_read, new Object[] {
+                        Long.valueOf(firstLineNumber + i), t.toString()
+                    });
+                }
+
+                return null;
+            }
+
+            return data;
+        }
+    }
+
+    /**
+     * Creates the rows of a table from the decoded chunks, in file order,
+     * and builds the indexes.
+     */
+    private class BuildTask implements Runnable {
+
+        final Table             table;
+        final RowStoreSBTMemory store;
+        final HsqlArrayList     chunks;
+
+        BuildTask(Table table, RowStoreSBTMemory store, HsqlArrayList chunks) {
+            this.table  = table;
+            this.store  = store;
+            this.chunks = chunks;
+        }
+
+        public void run() {
+
+            try {
+                Object[][][] decoded = new Object[chunks.size()][][];
+                int          count   = 0;
+
+                for (int i = 0; i < decoded.length; i++) {
+                    decoded[i] = (Object[][]) ((Future<?>) chunks.get(i)).get();
+
+                    if (decoded[i] == null || error != null) {
+                        return;
+                    }
+
+                    count += decoded[i].length;
+                }
+
+                Row[] rows     = new Row[count];
+                int   position = 0;
+
+                for (int i = 0; i < decoded.length; i++) {
+                    Object[][] data = decoded[i];
+
+                    decoded[i] = null;
+
+                    for (int j = 0; j < data.length; j++) {
+                        table.systemUpdateIdentityValue(data[j]);
+
+                        rows[position++] =
+                            (Row) store.getNewCachedObject(builderSession,
+                                                           data[j], false);
+                    }
+                }
+
+                store.buildIndexes(builderSession, rows);
+
+                rowCount += count;
+            } catch (Throwable t) {
+                if (error == null) {
+                    error = t;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/* Copyright (c) 2001-2017, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.scriptio;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.hsqldb.Database;
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+import org.hsqldb.lib.IntKeyHashMap;
+import org.hsqldb.rowio.RowInputBinary;
+import org.hsqldb.types.Type;
+
+/**
+ * Reads back a *.log file written by ScriptWriterBinary. The rows of
+ * INSERT and DELETE records are read with RowInputBinary for the table
+ * defined for the table number of the record. An incomplete record at the
+ * end of the file is treated as the end of the file.
+ *
+ * @author Fred Toussi (fredt@users dot sourceforge.net)
+ * @version 2.4.0
+ * @since 2.4.0
+ */
+public class ScriptReaderBinary extends ScriptReaderBase {
+
+    InputStream     inputStream;
+    DataInputStream dataStreamIn;
+    RowInputBinary  rowIn;
+    IntKeyHashMap   tables = new IntKeyHashMap();
+
+    public ScriptReaderBinary(Database db,
+                              String fileName) throws IOException {
+
+        super(db, fileName);
+
+        inputStream =
+            database.logger.getFileAccess().openInputStreamElement(fileName);
+        dataStreamIn = new DataInputStream(
+            new BufferedInputStream(inputStream, 1 << 16));
+        rowIn = new RowInputBinary(256);
+    }
+
+    /**
+     * Returns true if the file starts with the header of a binary log.
+     */
+    public static boolean isBinaryLog(Database database, String fileName) {
+
+        InputStream in = null;
+
+        try {
+            in = database.logger.getFileAccess().openInputStreamElement(
+                fileName);
+
+            DataInputStream dataIn = new DataInputStream(in);
+
+            dataIn.readInt();
+
+            int type  = dataIn.read();
+            int magic = dataIn.readInt();
+
+            return type == ScriptWriterBinary.LOG_HEADER
+                   && magic == ScriptWriterBinary.LOG_MAGIC;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            try {
+                if (in != null) {
+                    in.close();
+                }
+            } catch (IOException e) {}
+        }
+    }
+
+    protected void readDDL(Session session) {
+        throw Error.runtimeError(ErrorCode.U_S0500, "ScriptReaderBinary");
+    }
+
+    protected void readExistingData(Session session) {
+        throw Error.runtimeError(ErrorCode.U_S0500, "ScriptReaderBinary");
+    }
+
+    public boolean readLoggedStatement(Session session) {
+
+        for (;;) {
+            if (!readRecord()) {
+                return false;
+            }
+
+            lineCount++;
+
+            statementType = rowIn.readByte();
+            rowData       = null;
+            currentTable  = null;
+            statement     = null;
+
+            switch (statementType) {
+
+                case ScriptWriterBinary.LOG_HEADER :
+                    if (rowIn.readInt() != ScriptWriterBinary.LOG_MAGIC) {
+                        throw Error.error(ErrorCode.ERROR_IN_SCRIPT_FILE,
+                                          fileNamePath);
+                    }
+
+                    continue;
+                case ScriptWriterBinary.TABLE_ID : {
+                    int    id     = rowIn.readInt();
+                    String schema = rowIn.readString();
+                    String name   = rowIn.readString();
+
+                    tables.put(id,
+                               database.schemaManager.getUserTable(name,
+                                   schema));
+
+                    continue;
+                }
+                case SESSION_ID :
+                    sessionNumber = (int) rowIn.readLong();
+
+                    return true;
+
+                case SET_SCHEMA_STATEMENT :
+                    currentSchema = rowIn.readString();
+
+                    return true;
+
+                case ANY_STATEMENT :
+                    statement = rowIn.readString();
+
+                    return true;
+
+                case COMMIT_STATEMENT :
+                    return true;
+
+                case INSERT_STATEMENT :
+                case DELETE_STATEMENT : {
+                    currentTable = (Table) tables.get(rowIn.readInt());
+
+                    if (currentTable == null) {
+                        throw Error.error(ErrorCode.ERROR_IN_SCRIPT_FILE,
+                                          fileNamePath);
+                    }
+
+                    currentStore =
+                        database.persistentStoreCollection.getStore(
+                            currentTable);
+
+                    Type[] colTypes;
+
+                    if (statementType == INSERT_STATEMENT) {
+                        colTypes = currentTable.getColumnTypes();
+                    } else if (currentTable.hasPrimaryKey()) {
+                        colTypes = currentTable.getPrimaryKeyTypes();
+                    } else {
+                        colTypes = currentTable.getColumnTypes();
+                    }
+
+                    rowData = rowIn.readData(colTypes);
+
+                    return true;
+                }
+                default :
+                    throw Error.error(ErrorCode.ERROR_IN_SCRIPT_FILE,
+                                      fileNamePath);
+            }
+        }
+    }
+
+    /**
+     * Reads the next record into rowIn. Returns false at the end of the
+     * file, or if the last record is incomplete.
+     */
+    private boolean readRecord() {
+
+        try {
+            int length = dataStreamIn.readInt();
+
+            if (length <= 0) {
+                return false;
+            }
+
+            rowIn.resetBlock(0, length);
+            dataStreamIn.readFully(rowIn.getBuffer(), 0, length);
+
+            return true;
+        } catch (EOFException e) {
+            return false;
+        } catch (IOException e) {
+            throw Error.error(e, ErrorCode.FILE_IO_ERROR, null);
+        }
+    }
+
+    public void close() {
+
+        try {
+            if (dataStreamIn != null) {
+                dataStreamIn.close();
+            }
+        } catch (Exception e) {}
+
+        try {
+            if (inputStream != null) {
+                inputStream.close();
+            }
+        } catch (Exception e) {}
+    }
+}
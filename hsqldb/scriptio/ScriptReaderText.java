@@ -42,11 +42,15 @@ import org.hsqldb.HsqlException;
 import org.hsqldb.Session;
 import org.hsqldb.Statement;
 import org.hsqldb.StatementTypes;
+import org.hsqldb.Table;
+import org.hsqldb.TableBase;
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
+import org.hsqldb.index.Index;
 import org.hsqldb.lib.LineReader;
 import org.hsqldb.lib.StringConverter;
 import org.hsqldb.map.ValuePool;
+import org.hsqldb.persist.PersistentStore;
 import org.hsqldb.result.Result;
 import org.hsqldb.rowio.RowInputTextLog;
 import org.hsqldb.types.Type;
@@ -57,7 +61,7 @@ import org.hsqldb.types.Type;
  * corresponds to ScriptWriterText.
  *
  * @author Fred Toussi (fredt@users dot sourceforge.net)
- *  @version 2.3.4
+ *  @version 2.4.0
  *  @since 1.7.2
  */
 public class ScriptReaderText extends ScriptReaderBase {
@@ -69,6 +73,9 @@ public class ScriptReaderText extends ScriptReaderBase {
     GZIPInputStream gzipStream;
     RowInputTextLog rowIn;
     boolean         isInsert;
+    boolean         isDataDeferred;
+    Table           deferredTable;
+    PersistentStore deferredStore;
 
     ScriptReaderText(Database db, String fileName) {
         super(db, fileName);
@@ -158,8 +165,18 @@ public class ScriptReaderText extends ScriptReaderBase {
 
     protected void readExistingData(Session session) {
 
+        ScriptLoaderParallel loader = null;
+        int threads = database.logger.getScriptLoadParallelism();
+
+        if (threads > 1 && database.recoveryMode == 0
+                && !database.databaseProperties.isVersion18()) {
+            loader         = new ScriptLoaderParallel(database, threads);
+            isDataDeferred = true;
+        }
+
         try {
-            String tablename = null;
+            String  tablename       = null;
+            boolean isParallelTable = false;
 
             // fredt - needed for forward referencing FK constraints
             database.setReferentialIntegrity(false);
@@ -174,6 +191,8 @@ public class ScriptReaderText extends ScriptReaderBase {
                     continue;
                 } else if (statementType == INSERT_STATEMENT) {
                     if (!rowIn.getTableName().equals(tablename)) {
+                        buildDeferredIndexes(session);
+
                         tablename = rowIn.getTableName();
 
                         String schema = session.getSchemaName(currentSchema);
@@ -184,6 +203,27 @@ public class ScriptReaderText extends ScriptReaderBase {
                         currentStore =
                             database.persistentStoreCollection.getStore(
                                 currentTable);
+
+                        isParallelTable = loader != null
+                                          && loader.isParallelTable(
+                                              currentTable, currentStore);
+
+                        if (isParallelTable) {
+                            loader.startTable(currentTable, currentStore);
+                        } else {
+                            deferIndexes(session);
+                        }
+                    }
+
+                    if (isParallelTable) {
+                        loader.addRow(statement, lineCount);
+
+                        continue;
+                    }
+
+                    if (rowData == null) {
+                        rowData =
+                            rowIn.readData(currentTable.getColumnTypes());
                     }
 
                     try {
@@ -197,6 +237,12 @@ public class ScriptReaderText extends ScriptReaderBase {
                                       statement);
                 }
             }
+
+            buildDeferredIndexes(session);
+
+            if (loader != null) {
+                loader.finish();
+            }
         } catch (Throwable t) {
             database.logger.logSevereEvent("readExistingData failed "
                                            + lineCount, t);
@@ -207,6 +253,12 @@ public class ScriptReaderText extends ScriptReaderBase {
                 Long.valueOf(lineCount), t.toString()
             });
         } finally {
+            if (loader != null) {
+                loader.close();
+            }
+
+            isDataDeferred = false;
+
             database.setReferentialIntegrity(true);
         }
     }
@@ -271,6 +323,12 @@ public class ScriptReaderText extends ScriptReaderBase {
             currentTable  = null;
             currentSchema = rowIn.getSchemaName();
 
+            return;
+        } else if (statementType == INSERT_STATEMENT && isDataDeferred) {
+
+            // values are decoded later, or by ScriptLoaderParallel
+            rowData = null;
+
             return;
         }
 
@@ -323,6 +381,40 @@ public class ScriptReaderText extends ScriptReaderBase {
         } catch (Exception e) {}
     }
 
+    /**
+     * The rows of an empty MEMORY table are inserted into the primary index
+     * only and the other indexes are built once all the rows of the table
+     * have been read. Not used in recovery mode, where each rejected row
+     * must be logged.
+     */
+    private void deferIndexes(Session session) {
+
+        Index[] indexes = currentTable.getIndexList();
+
+        if (database.recoveryMode != 0 || indexes.length < 2
+                || currentTable.getTableType() != TableBase.MEMORY_TABLE
+                || currentStore.elementCount() != 0) {
+            return;
+        }
+
+        currentStore.resetAccessorKeys(session, new Index[]{ indexes[0] });
+
+        deferredTable = currentTable;
+        deferredStore = currentStore;
+    }
+
+    private void buildDeferredIndexes(Session session) {
+
+        if (deferredTable == null) {
+            return;
+        }
+
+        deferredStore.resetAccessorKeys(session, deferredTable.getIndexList());
+
+        deferredTable = null;
+        deferredStore = null;
+    }
+
     private void handleException(HsqlException e) {
 
         if (database.recoveryMode == 0) {
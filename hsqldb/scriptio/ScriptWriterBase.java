@@ -113,6 +113,8 @@ public abstract class ScriptWriterBase implements Runnable {
     long             byteCount;
     long             lineCount;
     volatile boolean needsSync;
+    volatile long    rowCount;
+    volatile boolean isCancelled;
     private int      syncCount;
     static final int INSERT             = 0;
     static final int INSERT_WITH_SCHEMA = 1;
@@ -184,6 +186,32 @@ public abstract class ScriptWriterBase implements Runnable {
         this.includeTableInit = include;
     }
 
+    /**
+     * Sets the session used for writing and for reading the rows. In MVCC
+     * mode, a REPEATABLE READ session with a transaction in progress reads
+     * the rows that were committed when its transaction started.
+     */
+    public void setReadSession(Session session) {
+
+        currentSession = session;
+        schemaToLog = currentSession.loggedSchema =
+            currentSession.currentSchema;
+    }
+
+    /**
+     * Stops writeExistingData() called from a different thread.
+     */
+    public void cancel() {
+        isCancelled = true;
+    }
+
+    /**
+     * Returns the count of rows written by writeExistingData().
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
     protected abstract void initBuffers();
 
     /**
@@ -226,6 +254,51 @@ public abstract class ScriptWriterBase implements Runnable {
         }
     }
 
+    /**
+     * Used for group commit with syncFile(). The stream is flushed while
+     * the log is locked, then the file is synced without the lock, while
+     * other sessions write to the log.
+     */
+    public void flush() {
+
+        if (isClosed) {
+            return;
+        }
+
+        needsSync = false;
+
+        synchronized (fileStreamOut) {
+            try {
+                fileStreamOut.flush();
+            } catch (IOException e) {
+                database.logger.logWarningEvent("ScriptWriter flush error: ",
+                                                e);
+            }
+        }
+    }
+
+    public void syncFile() {
+
+        FileAccess.FileSync descriptor = outDescriptor;
+
+        if (isClosed || descriptor == null) {
+            return;
+        }
+
+        try {
+            descriptor.sync();
+
+            syncCount++;
+        } catch (IOException e) {
+
+            // the file is synced on close
+            if (!isClosed) {
+                database.logger.logWarningEvent("ScriptWriter synch error: ",
+                                                e);
+            }
+        }
+    }
+
     public void close() {
 
         stop();
@@ -346,6 +419,13 @@ public abstract class ScriptWriterBase implements Runnable {
                             Row row = it.getCurrentRow();
 
                             writeRow(currentSession, row, t);
+
+                            rowCount++;
+
+                            if (isCancelled) {
+                                throw Error.error(ErrorCode.GENERAL_ERROR,
+                                                  "script writer cancelled");
+                            }
                         }
 
                         writeTableTerm(t);
@@ -0,0 +1,251 @@
+/* Copyright (c) 2001-2017, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.scriptio;
+
+import java.io.IOException;
+
+import org.hsqldb.Database;
+import org.hsqldb.NumberSequence;
+import org.hsqldb.Row;
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+import org.hsqldb.lib.IntValueHashMap;
+import org.hsqldb.rowio.RowOutputBinary;
+
+/**
+ * Writes the *.log file in a binary format, used when the
+ * hsqldb.log_binary property is true.<p>
+ *
+ * Each record consists of its length, a record type and the data. Rows of
+ * INSERT and DELETE records are written with RowOutputBinary and refer to
+ * the table with a number that is defined once in the file for each table.
+ * Other statements are written as SQL text. The file is read back by
+ * ScriptReaderBinary, which inserts and deletes the rows without parsing.
+ *
+ * @author Fred Toussi (fredt@users dot sourceforge.net)
+ * @version 2.4.0
+ * @since 2.4.0
+ */
+public class ScriptWriterBinary extends ScriptWriterBase {
+
+    // record types other than the statement types of ScriptReaderBase
+    static final int LOG_HEADER = 0;
+    static final int TABLE_ID   = 8;
+    static final int LOG_MAGIC  = 0x48534C47;
+
+    //
+    RowOutputBinary rowOut;
+    IntValueHashMap tableIds = new IntValueHashMap();
+
+    public ScriptWriterBinary(Database db, String file) {
+
+        super(db, file, false, false, false);
+
+        try {
+            startRecord(LOG_HEADER);
+            rowOut.writeInt(LOG_MAGIC);
+            writeRecord();
+        } catch (IOException e) {
+            throw Error.error(e, ErrorCode.FILE_IO_ERROR,
+                              ErrorCode.M_Message_Pair, new Object[] {
+                e.toString(), outFile
+            });
+        }
+    }
+
+    protected void initBuffers() {
+        rowOut = new RowOutputBinary(256, 1);
+    }
+
+    protected void writeDataTerm() throws IOException {}
+
+    protected void writeSessionIdAndSchema(Session session)
+    throws IOException {
+
+        if (session == null) {
+            return;
+        }
+
+        writeSessionId(session);
+
+        if (schemaToLog != session.loggedSchema) {
+            startRecord(ScriptReaderBase.SET_SCHEMA_STATEMENT);
+            rowOut.writeString(schemaToLog.name);
+            writeRecord();
+
+            session.loggedSchema = schemaToLog;
+        }
+    }
+
+    private void writeSessionId(Session session) throws IOException {
+
+        if (session != currentSession) {
+            startRecord(ScriptReaderBase.SESSION_ID);
+            rowOut.writeLong(session.getId());
+            writeRecord();
+
+            currentSession = session;
+        }
+    }
+
+    /**
+     * Returns the number of the table in the file. The number is defined
+     * with the schema and table names the first time the table is used.
+     * A table that is altered is a new Table object and gets a new number.
+     */
+    private int writeTableId(Table table) throws IOException {
+
+        int id = tableIds.get(table, -1);
+
+        if (id < 0) {
+            id = tableIds.size();
+
+            tableIds.put(table, id);
+            startRecord(TABLE_ID);
+            rowOut.writeInt(id);
+            rowOut.writeString(table.getName().schema.name);
+            rowOut.writeString(table.getName().name);
+            writeRecord();
+        }
+
+        return id;
+    }
+
+    public void writeLogStatement(Session session,
+                                  String s) throws IOException {
+
+        if (session != null) {
+            schemaToLog = session.currentSchema;
+
+            writeSessionIdAndSchema(session);
+        }
+
+        startRecord(ScriptReaderBase.ANY_STATEMENT);
+        rowOut.writeString(s);
+        writeRecord();
+
+        needsSync = true;
+    }
+
+    public void writeRow(Session session, Row row,
+                         Table table) throws IOException {
+
+        writeSessionId(session);
+
+        int id = writeTableId(table);
+
+        startRecord(ScriptReaderBase.INSERT_STATEMENT);
+        rowOut.writeInt(id);
+        rowOut.writeData(row, table.getColumnTypes());
+        writeRecord();
+    }
+
+    public void writeOtherStatement(Session session,
+                                    String s) throws IOException {
+
+        writeLogStatement(session, s);
+
+        if (writeDelay == 0) {
+            sync();
+        }
+    }
+
+    public void writeInsertStatement(Session session, Row row,
+                                     Table table) throws IOException {
+        writeRow(session, row, table);
+    }
+
+    public void writeDeleteStatement(Session session, Table table,
+                                     Object[] data) throws IOException {
+
+        writeSessionId(session);
+
+        int id = writeTableId(table);
+
+        startRecord(ScriptReaderBase.DELETE_STATEMENT);
+        rowOut.writeInt(id);
+        rowOut.writeData(table.getColumnCount(), table.getColumnTypes(),
+                         data, null, table.getPrimaryKey());
+        writeRecord();
+    }
+
+    public void writeSequenceStatement(Session session,
+                                       NumberSequence seq) throws IOException {
+
+        writeSessionId(session);
+        startRecord(ScriptReaderBase.ANY_STATEMENT);
+        rowOut.writeString("ALTER SEQUENCE "
+                           + seq.getSchemaName().statementName + '.'
+                           + seq.getName().statementName + " RESTART WITH "
+                           + seq.peek());
+        writeRecord();
+
+        needsSync = true;
+    }
+
+    public void writeCommitStatement(Session session) throws IOException {
+
+        writeSessionId(session);
+        startRecord(ScriptReaderBase.COMMIT_STATEMENT);
+        writeRecord();
+
+        // with write delay 0 the log is synced by the committing session
+        needsSync = true;
+    }
+
+    private void startRecord(int type) {
+
+        rowOut.reset();
+        rowOut.writeInt(0);
+        rowOut.writeByte(type);
+    }
+
+    private void writeRecord() throws IOException {
+
+        rowOut.writeIntData(rowOut.size() - RowOutputBinary.INT_STORE_SIZE,
+                            0);
+
+        if (fileStreamOut == null) {
+            return;
+        }
+
+        synchronized (fileStreamOut) {
+            fileStreamOut.write(rowOut.getBuffer(), 0, rowOut.size());
+
+            byteCount += rowOut.size();
+
+            lineCount++;
+        }
+    }
+}
@@ -297,11 +297,8 @@ public class ScriptWriterText extends ScriptWriterBase {
         rowOut.write(BYTES_LINE_SEP);
         writeRowOutToFile();
 
+        // with write delay 0 the log is synced by the committing session
         needsSync = true;
-
-        if (writeDelay == 0) {
-            sync();
-        }
     }
 
     protected void finishStream() throws IOException {
@@ -65,6 +65,19 @@ public class AllTests extends TestCase {
         suite.addTestSuite(org.hsqldb.test.TestUpdatableResults.class);
         suite.addTestSuite(org.hsqldb.test.TestUpdatableResultSets.class);
         suite.addTestSuite(org.hsqldb.test.TestTriggers.class);
+        suite.addTestSuite(org.hsqldb.test.TestIndexOrderStatistics.class);
+        suite.addTestSuite(org.hsqldb.test.TestBinaryLog.class);
+        suite.addTestSuite(org.hsqldb.test.TestCacheConcurrency.class);
+        suite.addTestSuite(org.hsqldb.test.TestCacheFlush.class);
+        suite.addTestSuite(org.hsqldb.test.TestCacheOffHeap.class);
+        suite.addTestSuite(org.hsqldb.test.TestCacheReadAhead.class);
+        suite.addTestSuite(org.hsqldb.test.TestDefragIncremental.class);
+        suite.addTestSuite(org.hsqldb.test.TestFuzzyCheckpoint.class);
+        suite.addTestSuite(org.hsqldb.test.TestGroupCommit.class);
+        suite.addTestSuite(org.hsqldb.test.TestNioMappedRead.class);
+        suite.addTestSuite(org.hsqldb.test.TestParallelRecovery.class);
+        suite.addTestSuite(org.hsqldb.test.TestRowCompression.class);
+        suite.addTestSuite(org.hsqldb.test.TestScriptLoadParallel.class);
 
         // Suites that extend TestCase
         suite.addTestSuite(org.hsqldb.test.TestJDBCSavepoints.class);
@@ -73,6 +86,7 @@ public class AllTests extends TestCase {
         suite.addTestSuite(org.hsqldb.test.TestSubselect.class);
         suite.addTestSuite(org.hsqldb.test.TestCascade.class);
         suite.addTestSuite(org.hsqldb.test.TestGroupByHaving.class);
+        suite.addTestSuite(org.hsqldb.test.TestCachePolicy.class);
         suite.addTestSuite(org.hsqldb.test.TestSqlPersistent.class);     // Sometimes hangs on Connection.close after SHUTDOWN problem
 
         return suite;
@@ -0,0 +1,160 @@
+/* Copyright (c) 2001-2017, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+public class TestBinaryLog extends TestBase {
+
+    static final String filepath = "/hsql/tests/testbinarylog";
+
+    Connection conn;
+    Statement  stmt;
+
+    public TestBinaryLog(String name) {
+        super(name, "jdbc:hsqldb:file:" + filepath + ";hsqldb.log_binary=true",
+              false, false);
+    }
+
+    protected void setUp() throws Exception {
+
+        TestUtil.deleteDatabase(filepath);
+        super.setUp();
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+    }
+
+    protected void tearDown() {
+
+        try {
+            stmt.execute("SHUTDOWN");
+        } catch (Exception e) {}
+
+        TestUtil.deleteDatabase(filepath);
+        super.tearDown();
+    }
+
+    public void testReplay() throws Exception {
+
+        stmt.execute("CREATE SCHEMA S");
+        stmt.execute("CREATE SEQUENCE S.SEQ");
+        stmt.execute("CREATE CACHED TABLE S.T (ID INT PRIMARY KEY, "
+                     + "V VARCHAR(100), D DECIMAL(10,2), TS TIMESTAMP, "
+                     + "B BOOLEAN)");
+        stmt.execute("CREATE MEMORY TABLE M (A INT, C VARCHAR(20))");
+
+        PreparedStatement ps = conn.prepareStatement(
+            "INSERT INTO S.T VALUES (NEXT VALUE FOR S.SEQ, ?, ?, "
+            + "TIMESTAMP'2017-01-01 10:00:00', ?)");
+
+        for (int i = 0; i < 100; i++) {
+            ps.setString(1, i % 10 == 0 ? null
+                                        : "value \u00e9 " + i);
+            ps.setBigDecimal(2, new java.math.BigDecimal(i + ".25"));
+            ps.setBoolean(3, i % 2 == 0);
+            ps.execute();
+        }
+
+        ps.close();
+        stmt.execute("INSERT INTO M VALUES (1, 'a'), (2, 'b'), (2, 'b')");
+        stmt.execute("DELETE FROM S.T WHERE ID < 10");
+        stmt.execute("UPDATE S.T SET V = 'updated' WHERE ID = 50");
+        stmt.execute("DELETE FROM M WHERE A = 2");
+        stmt.execute("SET SCHEMA S");
+        stmt.execute("ALTER TABLE T ADD COLUMN E INT DEFAULT 7");
+        stmt.execute("INSERT INTO T (ID, V) VALUES (1000, 'after alter')");
+
+        // rolled back and uncommitted changes
+        conn.setAutoCommit(false);
+        stmt.execute("INSERT INTO T (ID, V) VALUES (1001, 'rolled back')");
+        conn.rollback();
+
+        Connection other = newConnection();
+
+        other.setAutoCommit(false);
+        other.createStatement().execute(
+            "INSERT INTO S.T (ID, V) VALUES (1002, 'uncommitted')");
+        conn.setAutoCommit(true);
+
+        stmt.execute("SHUTDOWN IMMEDIATELY");
+
+        DataInputStream in =
+            new DataInputStream(new FileInputStream(filepath + ".log"));
+
+        assertEquals(0, in.read());
+        in.close();
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+
+        ResultSet rs = stmt.executeQuery(
+            "SELECT COUNT(*), SUM(D), COUNT(V), SUM(E) FROM S.T");
+
+        rs.next();
+        assertEquals(91, rs.getInt(1));
+        assertEquals(new java.math.BigDecimal("4927.50"), rs.getBigDecimal(2));
+        assertEquals(83, rs.getInt(3));
+        assertEquals(7 * 91, rs.getInt(4));
+        rs.close();
+
+        rs = stmt.executeQuery("SELECT V, B FROM S.T WHERE ID = 50");
+
+        rs.next();
+        assertEquals("updated", rs.getString(1));
+        assertTrue(rs.getBoolean(2));
+        rs.close();
+
+        rs = stmt.executeQuery("SELECT V FROM S.T WHERE ID = 51");
+
+        rs.next();
+        assertEquals("value \u00e9 51", rs.getString(1));
+        rs.close();
+
+        rs = stmt.executeQuery("SELECT COUNT(*) FROM M");
+
+        rs.next();
+        assertEquals(1, rs.getInt(1));
+        rs.close();
+
+        rs = stmt.executeQuery("SELECT NEXT VALUE FOR S.SEQ FROM M");
+
+        rs.next();
+        assertEquals(100, rs.getInt(1));
+        rs.close();
+    }
+}
@@ -0,0 +1,263 @@
+/* Copyright (c) 2001-2017, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Tests concurrent reads, inserts and deletes on a CACHED table with a small
+ * cache, so that the sessions find, add and remove rows in the cache while
+ * rows are evicted.
+ */
+public class TestCacheConcurrency extends TestBase {
+
+    static final String filepath = "/hsql/tests/testcacheconcurrency";
+    static final int    rows     = 20000;
+    static final int    threads  = 4;
+
+    Connection conn;
+    Statement  stmt;
+
+    public TestCacheConcurrency(String name) {
+        super(name, "jdbc:hsqldb:file:" + filepath + ";hsqldb.cache_rows=500",
+              false, false);
+    }
+
+    protected void setUp() throws Exception {
+
+        TestUtil.deleteDatabase(filepath);
+        super.setUp();
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+    }
+
+    protected void tearDown() {
+
+        try {
+            stmt.execute("SHUTDOWN");
+        } catch (Exception e) {}
+
+        TestUtil.deleteDatabase(filepath);
+        super.tearDown();
+    }
+
+    public void testReadInsertDelete() throws Exception {
+
+        stmt.execute("SET DATABASE TRANSACTION CONTROL MVCC");
+        stmt.execute("CREATE CACHED TABLE T (ID INT PRIMARY KEY, V INT, "
+                     + "S VARCHAR(100))");
+        stmt.execute("CREATE INDEX IDX_V ON T (V)");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?, ?)");
+
+        for (int i = 0; i < rows; i++) {
+            ps.setInt(1, i);
+            ps.setInt(2, i);
+            ps.setString(3, "row " + i);
+            ps.execute();
+        }
+
+        ps.close();
+
+        Worker[] workers = new Worker[threads];
+        long     seed    = System.nanoTime();
+
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(newConnection(), i, seed + i);
+        }
+
+        for (int i = 0; i < threads; i++) {
+            workers[i].start();
+        }
+
+        long count = rows;
+        long sum   = (long) rows * (rows - 1) / 2;
+
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+
+            if (workers[i].error != null) {
+                throw new Exception("seed " + seed, workers[i].error);
+            }
+
+            count += workers[i].count;
+            sum   += workers[i].sum;
+        }
+
+        checkRows("seed " + seed, count, sum);
+        stmt.execute("SHUTDOWN");
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+
+        checkRows("seed " + seed, count, sum);
+    }
+
+    void checkRows(String message, long count,
+                   long sum) throws SQLException {
+
+        ResultSet rs = stmt.executeQuery(
+            "SELECT COUNT(*), SUM(CAST(V AS BIGINT)) FROM T");
+
+        rs.next();
+        assertEquals(message, count, rs.getLong(1));
+        assertEquals(message, sum, rs.getLong(2));
+        rs.close();
+
+        // counted on the index of V
+        rs = stmt.executeQuery(
+            "SELECT COUNT(*) FROM T WHERE V >= 0 AND V < 1000000000");
+
+        rs.next();
+        assertEquals(message, count, rs.getLong(1));
+        rs.close();
+
+        rs = stmt.executeQuery("PERFORM CHECK TABLE T INDEX");
+
+        int indexes = 0;
+
+        while (rs.next()) {
+            String info = rs.getString(2);
+
+            assertTrue(message + " " + info, info.endsWith(" errors 0"));
+
+            indexes++;
+        }
+
+        rs.close();
+        assertEquals(message, 2, indexes);
+    }
+
+    /**
+     * Reads rows of the whole table, inserts rows with its own keys and
+     * deletes some of them, and deletes the initial rows of its own share.
+     * Keeps the change in the count and the sum of V.
+     */
+    static class Worker extends Thread {
+
+        final Connection connection;
+        final int        id;
+        final Random     random;
+        long             count;
+        long             sum;
+        Throwable        error;
+
+        Worker(Connection connection, int id, long seed) {
+            this.connection = connection;
+            this.id         = id;
+            this.random     = new Random(seed);
+        }
+
+        public void run() {
+
+            try {
+                PreparedStatement select = connection.prepareStatement(
+                    "SELECT S FROM T WHERE ID = ?");
+                PreparedStatement range = connection.prepareStatement(
+                    "SELECT COUNT(*), MAX(S) FROM T WHERE V BETWEEN ? AND ?");
+                PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO T VALUES (?, ?, ?)");
+                PreparedStatement delete = connection.prepareStatement(
+                    "DELETE FROM T WHERE ID = ?");
+                ArrayList inserted = new ArrayList();
+                int       share    = rows / threads;
+                int       next     = (id + 1) * 10000000;
+
+                for (int i = 0; i < 5000; i++) {
+                    int op = random.nextInt(10);
+
+                    if (op < 4) {
+                        select.setInt(1, random.nextInt(rows));
+
+                        ResultSet rs = select.executeQuery();
+
+                        while (rs.next()) {
+                            rs.getString(1);
+                        }
+
+                        rs.close();
+                    } else if (op < 6) {
+                        int low = random.nextInt(rows);
+
+                        range.setInt(1, low);
+                        range.setInt(2, low + 200);
+
+                        ResultSet rs = range.executeQuery();
+
+                        rs.next();
+                        rs.close();
+                    } else if (op < 8) {
+                        int key = next++;
+
+                        insert.setInt(1, key);
+                        insert.setInt(2, key);
+                        insert.setString(3, "inserted " + key);
+                        insert.execute();
+                        inserted.add(Integer.valueOf(key));
+
+                        count++;
+                        sum += key;
+                    } else {
+                        int key;
+
+                        if (op == 8 && !inserted.isEmpty()) {
+                            int j = random.nextInt(inserted.size());
+
+                            key = ((Integer) inserted.remove(j)).intValue();
+                        } else {
+                            key = id * share + random.nextInt(share);
+                        }
+
+                        delete.setInt(1, key);
+
+                        if (delete.executeUpdate() == 1) {
+                            count--;
+                            sum -= key;
+                        }
+                    }
+                }
+
+                connection.close();
+            } catch (Throwable t) {
+                error = t;
+            }
+        }
+    }
+}
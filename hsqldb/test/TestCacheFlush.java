@@ -0,0 +1,154 @@
+/* Copyright (c) 2001-2014, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Tests the background flush of changed rows set with
+ * hsqldb.cache_flush_high.
+ */
+public class TestCacheFlush extends TestBase {
+
+    static final String filepath = "/hsql/tests/testcacheflush";
+
+    Connection conn;
+    Statement  stmt;
+
+    public TestCacheFlush(String name) {
+        super(name, "jdbc:hsqldb:file:" + filepath
+                    + ";hsqldb.cache_rows=1000;hsqldb.cache_flush_high=50"
+                    + ";hsqldb.cache_flush_low=10", false, false);
+    }
+
+    protected void setUp() throws Exception {
+
+        TestUtil.deleteDatabase(filepath);
+        super.setUp();
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+    }
+
+    protected void tearDown() {
+
+        try {
+            stmt.execute("SHUTDOWN");
+        } catch (Exception e) {}
+
+        TestUtil.deleteDatabase(filepath);
+        super.tearDown();
+    }
+
+    public void testInsertUpdate() throws Exception {
+
+        int rows = 20000;
+
+        stmt.execute("CREATE CACHED TABLE T (ID INT PRIMARY KEY, V INT, "
+                     + "S VARCHAR(100))");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?, ?)");
+
+        for (int i = 0; i < rows; i++) {
+            ps.setInt(1, i);
+            ps.setInt(2, i);
+            ps.setString(3, "row " + i);
+            ps.execute();
+        }
+
+        stmt.execute("UPDATE T SET V = V + 1 WHERE MOD(ID, 2) = 0");
+
+        // the flush runs on a thread of the cache
+        long flushed = 0;
+
+        for (int i = 0; i < 50 && flushed == 0; i++) {
+            ResultSet rs = stmt.executeQuery(
+                "SELECT FLUSH_ROW_COUNT FROM "
+                + "INFORMATION_SCHEMA.SYSTEM_CACHEINFO");
+
+            rs.next();
+
+            flushed = rs.getLong(1);
+
+            rs.close();
+            Thread.sleep(100);
+        }
+
+        assertTrue(flushed > 0);
+        assertTrue(hasFlushThread());
+        checkRows(rows);
+        stmt.execute("SHUTDOWN");
+
+        // the thread ends when the cache is closed
+        for (int i = 0; i < 50 && hasFlushThread(); i++) {
+            Thread.sleep(100);
+        }
+
+        assertFalse(hasFlushThread());
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+
+        checkRows(rows);
+    }
+
+    static boolean hasFlushThread() {
+
+        Thread[] threads = new Thread[Thread.activeCount() + 10];
+        int      count   = Thread.enumerate(threads);
+
+        for (int i = 0; i < count; i++) {
+            if (threads[i].getName().startsWith("HSQLDB Cache Flush ")
+                    && threads[i].getName().endsWith("testcacheflush.data")) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    void checkRows(int rows) throws SQLException {
+
+        ResultSet rs = stmt.executeQuery(
+            "SELECT COUNT(*), SUM(CAST(V AS BIGINT)) FROM T");
+
+        rs.next();
+        assertEquals(rows, rs.getInt(1));
+        assertEquals((long) rows * (rows - 1) / 2 + rows / 2, rs.getLong(2));
+        rs.close();
+    }
+}
@@ -0,0 +1,188 @@
+/* Copyright (c) 2001-2014, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Tests a CACHED table with hsqldb.cache_off_heap_size set. The off-heap
+ * tier of the second database is much smaller than the table, so its
+ * oldest images are overwritten.
+ */
+public class TestCacheOffHeap extends TestBase {
+
+    static final String filepath = "/hsql/tests/testcacheoffheap";
+
+    Connection conn;
+    Statement  stmt;
+
+    public TestCacheOffHeap(String name) {
+        super(name, "jdbc:hsqldb:file:" + filepath
+                    + ";hsqldb.cache_rows=1000;hsqldb.cache_off_heap_size="
+                    + ("testSmallTier".equals(name) ? "512"
+                                                    : "16384"), false,
+                                                    false);
+    }
+
+    protected void setUp() throws Exception {
+
+        TestUtil.deleteDatabase(filepath);
+        super.setUp();
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+    }
+
+    protected void tearDown() {
+
+        try {
+            stmt.execute("SHUTDOWN");
+        } catch (Exception e) {}
+
+        TestUtil.deleteDatabase(filepath);
+        super.tearDown();
+    }
+
+    public void testTier() throws Exception {
+
+        int rows = 20000;
+
+        createTable(rows);
+        checkRows(rows, 0, false);
+        checkRows(rows, 0, false);
+        assertTrue(getOffHeapHitCount() > 0);
+
+        // changed rows are read again after they leave the cache
+        stmt.execute("UPDATE T SET V = V + 1 WHERE MOD(ID, 5) = 0");
+        stmt.execute("DELETE FROM T WHERE MOD(ID, 7) = 0");
+        insertRows(rows, rows + 1000);
+
+        int remaining = rows + 1000 - (rows + 6) / 7;
+
+        checkRows(remaining, 1, true);
+        checkRows(remaining, 1, true);
+        stmt.execute("CHECKPOINT DEFRAG");
+        checkRows(remaining, 1, true);
+        stmt.execute("SHUTDOWN");
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+
+        checkRows(remaining, 1, true);
+    }
+
+    public void testSmallTier() throws Exception {
+
+        int rows = 20000;
+
+        createTable(rows);
+
+        for (int i = 0; i < 3; i++) {
+            checkRows(rows, i, false);
+            stmt.execute("UPDATE T SET V = V + 1 WHERE MOD(ID, 5) = 0");
+        }
+
+        checkRows(rows, 3, false);
+        assertTrue(getOffHeapHitCount() > 0);
+    }
+
+    void createTable(int rows) throws Exception {
+
+        stmt.execute("CREATE CACHED TABLE T (ID INT PRIMARY KEY, V INT, "
+                     + "S VARCHAR(100))");
+        insertRows(0, rows);
+        stmt.execute("CHECKPOINT");
+    }
+
+    void insertRows(int from, int to) throws Exception {
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?, ?)");
+
+        for (int i = from; i < to; i++) {
+            ps.setInt(1, i);
+            ps.setInt(2, i);
+            ps.setString(3, "row " + i);
+            ps.execute();
+        }
+
+        ps.close();
+    }
+
+    /**
+     * Checks the rows, with V incremented by the count of updates for
+     * every fifth ID below 20000. With deleted, rows with IDs below 20000 that divide
+     * by seven are missing.
+     */
+    void checkRows(int rows, int updates,
+                   boolean deleted) throws Exception {
+
+        ResultSet rs    = stmt.executeQuery("SELECT * FROM T ORDER BY ID");
+        int       i     = 0;
+        int       count = 0;
+
+        while (rs.next()) {
+            while (deleted && i % 7 == 0 && i < 20000) {
+                i++;
+            }
+
+            int v = i % 5 == 0 && i < 20000 ? i + updates
+                               : i;
+
+            assertEquals(i, rs.getInt(1));
+            assertEquals(v, rs.getInt(2));
+            assertEquals("row " + i, rs.getString(3));
+
+            i++;
+
+            count++;
+        }
+
+        rs.close();
+        assertEquals(rows, count);
+    }
+
+    long getOffHeapHitCount() throws Exception {
+
+        ResultSet rs = stmt.executeQuery(
+            "SELECT OFF_HEAP_HIT_COUNT FROM INFORMATION_SCHEMA.SYSTEM_CACHEINFO");
+
+        rs.next();
+
+        long count = rs.getLong(1);
+
+        rs.close();
+
+        return count;
+    }
+}
@@ -0,0 +1,262 @@
+/* Copyright (c) 2001-2016, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.jdbc.JDBCConnection;
+import org.hsqldb.lib.StopWatch;
+import org.hsqldb.navigator.RowIterator;
+import org.hsqldb.persist.DataFileCache;
+import org.hsqldb.persist.EvictionPolicyFrequency;
+import org.hsqldb.persist.PersistentStore;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the hit ratio of the row cache with each hsqldb.cache_policy
+ * setting. A CACHED table several times larger than the cache is accessed
+ * with a trace of point lookups on a small hot set of rows, interleaved with
+ * full scans of the table. The scans read each row once, so a policy that
+ * keeps the hot set in memory across the scans has the higher hit ratio.
+ * The comparison is run with main(). The test methods check the ranking of
+ * rows by EvictionPolicyFrequency.
+ *
+ * @author Fred Toussi (fredt@users dot sourceforge.net)
+ * @version 2.4.0
+ * @since 2.4.0
+ */
+public class TestCachePolicy extends TestCase {
+
+    String filepath  = "/hsql/testcachepolicy/test";
+    int    cacheRows = 2000;
+    int    tableRows = 20000;
+    int    hotRows   = 500;
+    int    rounds    = 20;
+    int    lookups   = 10000;
+
+    public TestCachePolicy(String name) {
+        super(name);
+    }
+
+    /**
+     * Rows read several times rank above rows read once and rows not read.
+     */
+    public void testFrequencyRanking() {
+
+        EvictionPolicyFrequency policy = new EvictionPolicyFrequency(1000);
+
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 10; j++) {
+                policy.recordAccess(getPosition(i));
+            }
+        }
+
+        for (int i = 100; i < 600; i++) {
+            policy.recordAccess(getPosition(i));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            int hot = policy.getFrequency(getPosition(i));
+
+            assertTrue(hot >= 10);
+
+            for (int j = 100; j < 600; j += 50) {
+                assertTrue(hot > policy.getFrequency(getPosition(j)));
+            }
+
+            assertTrue(hot > policy.getFrequency(getPosition(i + 1000)));
+        }
+    }
+
+    /**
+     * Rows read once by scans between reads of the working set rank below
+     * the rows of the working set, also after the counters are halved.
+     */
+    public void testScanResistance() {
+
+        EvictionPolicyFrequency policy = new EvictionPolicyFrequency(1000);
+        int                     scan   = 1000;
+
+        for (int round = 0; round < 10; round++) {
+            for (int j = 0; j < 3; j++) {
+                for (int i = 0; i < 100; i++) {
+                    policy.recordAccess(getPosition(i));
+                }
+            }
+
+            for (int i = 0; i < 1500; i++) {
+                policy.recordAccess(getPosition(scan++));
+            }
+        }
+
+        int minHot  = 15;
+        int maxScan = 0;
+
+        for (int i = 0; i < 100; i++) {
+            minHot = Math.min(minHot, policy.getFrequency(getPosition(i)));
+        }
+
+        for (int i = scan - 1500; i < scan; i++) {
+            maxScan = Math.max(maxScan, policy.getFrequency(getPosition(i)));
+        }
+
+        assertTrue(minHot + " " + maxScan, minHot > maxScan);
+    }
+
+    /**
+     * The counters stop at 15 and are halved when the count of accesses
+     * reaches ten times the size of the sketch.
+     */
+    public void testSaturationAndAging() {
+
+        EvictionPolicyFrequency policy = new EvictionPolicyFrequency(1000);
+        long                    pos    = getPosition(1);
+
+        for (int i = 0; i < 100; i++) {
+            policy.recordAccess(pos);
+        }
+
+        assertEquals(15, policy.getFrequency(pos));
+
+        // the sketch has 1024 longs, so 10240 accesses halve the counters
+        for (int i = 0; i < 10240; i++) {
+            policy.recordAccess(getPosition(i + 1000));
+        }
+
+        int frequency = policy.getFrequency(pos);
+
+        assertTrue(String.valueOf(frequency), frequency < 15);
+    }
+
+    static long getPosition(int i) {
+        return 64L + i * 16L;
+    }
+
+    public static void main(String[] argv) throws Exception {
+
+        TestCachePolicy test = new TestCachePolicy("main");
+
+        test.run(0);
+        test.run(1);
+    }
+
+    void run(int policy) throws Exception {
+
+        deleteDatabase();
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        String url = "jdbc:hsqldb:file:" + filepath
+                     + ";hsqldb.cache_rows=" + cacheRows
+                     + ";hsqldb.cache_policy=" + policy;
+        Connection conn = DriverManager.getConnection(url, "SA", "");
+        Statement  st   = conn.createStatement();
+
+        st.execute("CREATE CACHED TABLE T (ID INT PRIMARY KEY, V VARCHAR(200))");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?)");
+        String filler = "ABCDEFGHIJKLMNOPQRSTUVWXYZABCDEFGHIJKLMNOPQRSTUVWXYZ"
+                        + "ABCDEFGHIJKLMNOPQRSTUVWXYZABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+        for (int i = 0; i < tableRows; i++) {
+            ps.setInt(1, i);
+            ps.setString(2, filler);
+            ps.execute();
+        }
+
+        st.execute("CHECKPOINT");
+
+        Session session = (Session) ((JDBCConnection) conn).getSession();
+        Table table = session.database.schemaManager.findUserTable("T",
+            "PUBLIC");
+        PersistentStore store = table.getRowStore(session);
+        DataFileCache   cache = session.database.logger.getCache();
+        long[]          positions = new long[tableRows];
+        RowIterator     it        = store.rowIterator();
+        int             count     = 0;
+
+        while (it.next()) {
+            positions[count++] = it.getCurrentRow().getPos();
+        }
+
+        Random    random     = new Random(0);
+        StopWatch sw         = new StopWatch();
+        long      hotGets    = 0;
+        long      hotMisses  = 0;
+        long      totalGets  = 0;
+        long      startMiss  = cache.getCacheMissCount();
+
+        for (int round = 0; round < rounds; round++) {
+            long missCount = cache.getCacheMissCount();
+
+            for (int i = 0; i < lookups; i++) {
+                int index = random.nextInt(hotRows);
+
+                cache.get(positions[index], store, false);
+            }
+
+            hotGets   += lookups;
+            hotMisses += cache.getCacheMissCount() - missCount;
+
+            for (int i = 0; i < count; i++) {
+                cache.get(positions[i], store, false);
+            }
+
+            totalGets += lookups + count;
+        }
+
+        long totalMisses = cache.getCacheMissCount() - startMiss;
+
+        System.out.println("cache_policy " + policy + " hot set hit ratio "
+                           + hitRatio(hotGets, hotMisses)
+                           + " overall hit ratio "
+                           + hitRatio(totalGets, totalMisses) + " "
+                           + sw.elapsedTime() + " ms");
+        st.execute("SHUTDOWN");
+        conn.close();
+    }
+
+    static String hitRatio(long gets, long misses) {
+        return String.valueOf((gets - misses) * 1000 / gets / 10.0) + "%";
+    }
+
+    void deleteDatabase() {
+        TestUtil.deleteDatabase(filepath);
+    }
+}
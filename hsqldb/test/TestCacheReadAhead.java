@@ -0,0 +1,164 @@
+/* Copyright (c) 2001-2014, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Tests index scans on a CACHED table with hsqldb.cache_read_ahead set.
+ */
+public class TestCacheReadAhead extends TestBase {
+
+    static final String filepath = "/hsql/tests/testcachereadahead";
+
+    Connection conn;
+    Statement  stmt;
+
+    public TestCacheReadAhead(String name) {
+        super(name, "jdbc:hsqldb:file:" + filepath
+                    + ";hsqldb.cache_rows=1000;hsqldb.cache_read_ahead=200",
+              false, false);
+    }
+
+    protected void setUp() throws Exception {
+
+        TestUtil.deleteDatabase(filepath);
+        super.setUp();
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+    }
+
+    protected void tearDown() {
+
+        try {
+            stmt.execute("SHUTDOWN");
+        } catch (Exception e) {}
+
+        TestUtil.deleteDatabase(filepath);
+        super.tearDown();
+    }
+
+    public void testScan() throws Exception {
+
+        int rows = 20000;
+
+        stmt.execute("CREATE CACHED TABLE T (ID INT PRIMARY KEY, V INT, "
+                     + "S VARCHAR(100))");
+        stmt.execute("CREATE INDEX IDX_V ON T (V)");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?, ?)");
+
+        for (int i = 0; i < rows; i++) {
+            ps.setInt(1, i);
+            ps.setInt(2, (i * 7919) % rows);
+            ps.setString(3, "row " + i);
+            ps.execute();
+        }
+
+        stmt.execute("SHUTDOWN");
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+
+        checkRange("ID", 1000, 15000, false);
+        checkRange("V", 0, rows - 1, false);
+        checkRange("V", 5000, 6000, true);
+        assertTrue(getReadAheadCount() > 0);
+
+        // scans while other rows are deleted
+        Connection c2 = newConnection();
+        Statement  s2 = c2.createStatement();
+
+        for (int i = 0; i < 10; i++) {
+            s2.execute("DELETE FROM T WHERE ID >= " + (i * 100) + " AND ID < "
+                       + (i * 100 + 50));
+            checkRange("ID", 1000, 15000, i % 2 == 0);
+        }
+
+        c2.close();
+
+        ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM T");
+
+        rs.next();
+        assertEquals(rows - 500, rs.getInt(1));
+        rs.close();
+    }
+
+    void checkRange(String column, int lo, int hi,
+                    boolean descending) throws SQLException {
+
+        ResultSet rs = stmt.executeQuery("SELECT " + column + " FROM T WHERE "
+                                         + column + " BETWEEN " + lo
+                                         + " AND " + hi + " ORDER BY "
+                                         + column + (descending ? " DESC"
+                                                                : ""));
+        int count = 0;
+        int last  = descending ? Integer.MAX_VALUE
+                               : -1;
+
+        while (rs.next()) {
+            int value = rs.getInt(1);
+
+            if (descending) {
+                assertTrue(value < last);
+            } else {
+                assertTrue(value > last);
+            }
+
+            last = value;
+
+            count++;
+        }
+
+        rs.close();
+        assertEquals(hi - lo + 1, count);
+    }
+
+    long getReadAheadCount() throws SQLException {
+
+        ResultSet rs = stmt.executeQuery(
+            "SELECT READ_AHEAD_ROW_COUNT FROM "
+            + "INFORMATION_SCHEMA.SYSTEM_CACHEINFO");
+
+        rs.next();
+
+        long count = rs.getLong(1);
+
+        rs.close();
+
+        return count;
+    }
+}
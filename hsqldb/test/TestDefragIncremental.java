@@ -0,0 +1,225 @@
+/* Copyright (c) 2001-2017, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.jdbc.JDBCConnection;
+import org.hsqldb.lib.OrderedLongHashSet;
+import org.hsqldb.navigator.RowIterator;
+import org.hsqldb.persist.DataFileCache;
+import org.hsqldb.persist.PersistentStore;
+
+public class TestDefragIncremental extends TestBase {
+
+    static final String filepath = "/hsql/tests/testdefragincremental";
+
+    Connection conn;
+    Statement  stmt;
+
+    public TestDefragIncremental(String name) {
+        super(name, "jdbc:hsqldb:file:" + filepath + ";hsqldb.cache_rows=2000",
+              false, false);
+    }
+
+    protected void setUp() throws Exception {
+
+        TestUtil.deleteDatabase(filepath);
+        super.setUp();
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+    }
+
+    protected void tearDown() {
+
+        try {
+            stmt.execute("SHUTDOWN");
+        } catch (Exception e) {}
+
+        TestUtil.deleteDatabase(filepath);
+        super.tearDown();
+    }
+
+    public void testTableSpace() throws Exception {
+
+        int rows = 40000;
+
+        stmt.execute("SET FILES SPACE TRUE");
+        stmt.execute("CREATE CACHED TABLE T (ID INT PRIMARY KEY, V INT, "
+                     + "S VARCHAR(200))");
+        stmt.execute("CREATE INDEX IDX_V ON T (V)");
+        stmt.execute("SET TABLE T NEW SPACE");
+        insertRows(0, rows, 1);
+        stmt.execute("DELETE FROM T WHERE MOD(ID, 4) <> 0");
+        stmt.execute("CHECKPOINT");
+
+        int blocks = getBlockCount();
+
+        stmt.execute("CHECKPOINT DEFRAG 60000 MILLIS");
+        checkRows(rows, 4);
+        assertTrue(getBlockCount() * 2 < blocks);
+
+        // the released blocks are used for new rows
+        long freePos = getFileFreePos();
+
+        insertRows(1, rows, 4);
+        insertRows(2, rows, 4);
+        assertEquals(freePos, getFileFreePos());
+        stmt.execute("DELETE FROM T WHERE MOD(ID, 4) <> 0");
+        stmt.execute("SHUTDOWN");
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+
+        checkRows(rows, 4);
+    }
+
+    public void testSteps() throws Exception {
+
+        int rows = 80000;
+
+        stmt.execute("SET FILES SPACE TRUE");
+        stmt.execute("CREATE CACHED TABLE T (ID INT, V INT, S VARCHAR(200))");
+        stmt.execute("CREATE INDEX IDX_V ON T (V)");
+        insertRows(0, rows, 1);
+        stmt.execute("DELETE FROM T WHERE MOD(ID, 4) <> 0");
+        stmt.execute("CHECKPOINT");
+
+        int blocks = getBlockCount();
+
+        for (int i = 0; i < 200; i++) {
+            stmt.execute("CHECKPOINT DEFRAG 5 MILLIS");
+
+            if (getBlockCount() * 2 < blocks) {
+                break;
+            }
+        }
+
+        checkRows(rows, 4);
+        assertTrue(getBlockCount() * 2 < blocks);
+        stmt.execute("SHUTDOWN");
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+
+        checkRows(rows, 4);
+    }
+
+    void insertRows(int start, int rows, int step) throws Exception {
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?, ?)");
+
+        for (int i = start; i < rows; i += step) {
+            ps.setInt(1, i);
+            ps.setInt(2, (i * 7919) % rows);
+            ps.setString(3, "row " + i + " of the table to fill the block "
+                         + i);
+            ps.execute();
+        }
+
+        ps.close();
+    }
+
+    void checkRows(int rows, int step) throws Exception {
+
+        int  count = 0;
+        int  last  = 0;
+        long sumV  = 0;
+        long sumID = 0;
+
+        for (int i = 0; i < rows; i += step) {
+            count++;
+
+            last  = i;
+            sumV  += (i * 7919) % rows;
+            sumID += i;
+        }
+
+        ResultSet rs = stmt.executeQuery(
+            "SELECT COUNT(*), SUM(CAST(V AS BIGINT)) FROM T WHERE V >= 0");
+
+        rs.next();
+        assertEquals(count, rs.getInt(1));
+        assertEquals(sumV, rs.getLong(2));
+        rs.close();
+
+        rs = stmt.executeQuery(
+            "SELECT COUNT(*), SUM(CAST(ID AS BIGINT)) FROM T");
+
+        rs.next();
+        assertEquals(count, rs.getInt(1));
+        assertEquals(sumID, rs.getLong(2));
+        rs.close();
+
+        rs = stmt.executeQuery("SELECT S FROM T WHERE ID = " + last);
+
+        assertTrue(rs.next());
+        assertTrue(rs.getString(1).startsWith("row " + last + " "));
+        rs.close();
+    }
+
+    /**
+     * Returns the count of file blocks that contain rows of the table.
+     */
+    int getBlockCount() {
+
+        Session session = (Session) ((JDBCConnection) conn).getSession();
+        Table table = session.database.schemaManager.findUserTable("T",
+            "PUBLIC");
+        DataFileCache cache = session.database.logger.getCache();
+        long blockSize = cache.spaceManager.getFileBlockSize()
+                         / cache.getDataFileScale();
+        PersistentStore    store  = table.getRowStore(session);
+        RowIterator        it     = table.getPrimaryIndex().firstRow(store);
+        OrderedLongHashSet blocks = new OrderedLongHashSet();
+
+        while (it.next()) {
+            blocks.add(it.getCurrentRow().getPos() / blockSize);
+        }
+
+        return blocks.size();
+    }
+
+    long getFileFreePos() {
+
+        Session session = (Session) ((JDBCConnection) conn).getSession();
+
+        return session.database.logger.getCache().getFileFreePos();
+    }
+}
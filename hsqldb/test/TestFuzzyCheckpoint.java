@@ -0,0 +1,230 @@
+/* Copyright (c) 2001-2017, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+
+package org.hsqldb.test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.hsqldb.Database;
+import org.hsqldb.Session;
+import org.hsqldb.jdbc.JDBCConnection;
+
+public class TestFuzzyCheckpoint extends TestBase {
+
+    static final String filepath = "/hsql/tests/testfuzzycheckpoint";
+    static final int    rows     = 100000;
+
+    Connection conn;
+    Statement  stmt;
+
+    public TestFuzzyCheckpoint(String name) {
+        super(name, "jdbc:hsqldb:file:" + filepath
+                    + ";hsqldb.tx=mvcc;hsqldb.checkpoint_fuzzy=true", false,
+                        false);
+    }
+
+    protected void setUp() throws Exception {
+
+        TestUtil.deleteDatabase(filepath);
+        super.setUp();
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+    }
+
+    protected void tearDown() {
+
+        try {
+            stmt.execute("SHUTDOWN");
+        } catch (Exception e) {}
+
+        TestUtil.deleteDatabase(filepath);
+        super.tearDown();
+    }
+
+    public void testChangesDuringCheckpoint() throws Exception {
+
+        createRows();
+
+        long count = getCheckpointCount();
+
+        stmt.execute("CHECKPOINT");
+
+        // the other sessions are not blocked while the rows are written
+        changeRows();
+        waitForCheckpoint();
+        assertEquals(count + 1, getCheckpointCount());
+
+        // the rows of the table and of the system tables
+        ResultSet rs = stmt.executeQuery(
+            "SELECT ROW_COUNT, ROW_TOTAL "
+            + "FROM INFORMATION_SCHEMA.SYSTEM_CHECKPOINTINFO");
+
+        rs.next();
+        assertTrue(rs.getLong(1) >= rows);
+        assertEquals(rs.getLong(2), rs.getLong(1));
+        rs.close();
+        assertFalse(new File(filepath + ".log.prev").exists());
+
+        // the new .script file and the changes in the .log file
+        stmt.execute("SHUTDOWN IMMEDIATELY");
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+
+        checkRows();
+    }
+
+    public void testRecoveryFromPreviousLog() throws Exception {
+
+        createRows();
+        stmt.execute("CHECKPOINT");
+        changeRows();
+
+        ResultSet rs = stmt.executeQuery(
+            "SELECT IN_PROGRESS FROM "
+            + "INFORMATION_SCHEMA.SYSTEM_CHECKPOINTINFO");
+
+        rs.next();
+
+        boolean inProgress = "YES".equals(rs.getString(1));
+
+        rs.close();
+
+        // closing the database stops the checkpoint before the end
+        Session  session  = (Session) ((JDBCConnection) conn).getSession();
+        Database database = session.getDatabase();
+
+        database.close(Database.CLOSEMODE_IMMEDIATELY);
+
+        if (inProgress) {
+            assertTrue(new File(filepath + ".log.prev").exists());
+        }
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+
+        checkRows();
+        assertFalse(new File(filepath + ".log.prev").exists());
+    }
+
+    void createRows() throws Exception {
+
+        stmt.execute("SET FILES LOG SIZE 0");
+        stmt.execute("CREATE MEMORY TABLE T (ID INT PRIMARY KEY, V INT, "
+                     + "S VARCHAR(200))");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?, ?)");
+
+        for (int i = 0; i < rows; i++) {
+            ps.setInt(1, i);
+            ps.setInt(2, i);
+            ps.setString(3, "row " + i + " of the table for the checkpoint");
+            ps.execute();
+        }
+
+        ps.close();
+    }
+
+    void changeRows() throws Exception {
+
+        Connection c = newConnection();
+        Statement  s = c.createStatement();
+
+        s.execute("DELETE FROM T WHERE ID < 1000");
+        s.execute("UPDATE T SET V = -1 WHERE ID >= " + (rows - 1000));
+        s.execute("INSERT INTO T VALUES (" + rows + ", 0, 'new row')");
+        c.close();
+    }
+
+    void checkRows() throws Exception {
+
+        ResultSet rs = stmt.executeQuery(
+            "SELECT COUNT(*), MIN(ID), MAX(ID) FROM T");
+
+        rs.next();
+        assertEquals(rows - 1000 + 1, rs.getInt(1));
+        assertEquals(1000, rs.getInt(2));
+        assertEquals(rows, rs.getInt(3));
+        rs.close();
+
+        rs = stmt.executeQuery("SELECT COUNT(*) FROM T WHERE V = -1");
+
+        rs.next();
+        assertEquals(1000, rs.getInt(1));
+        rs.close();
+    }
+
+    long getCheckpointCount() throws Exception {
+
+        ResultSet rs = stmt.executeQuery(
+            "SELECT CHECKPOINT_COUNT FROM "
+            + "INFORMATION_SCHEMA.SYSTEM_CHECKPOINTINFO");
+
+        rs.next();
+
+        long count = rs.getLong(1);
+
+        rs.close();
+
+        return count;
+    }
+
+    void waitForCheckpoint() throws Exception {
+
+        for (int i = 0; i < 600; i++) {
+            ResultSet rs = stmt.executeQuery(
+                "SELECT IN_PROGRESS FROM "
+                + "INFORMATION_SCHEMA.SYSTEM_CHECKPOINTINFO");
+
+            rs.next();
+
+            boolean inProgress = "YES".equals(rs.getString(1));
+
+            rs.close();
+
+            if (!inProgress) {
+                return;
+            }
+
+            Thread.sleep(100);
+        }
+
+        fail("checkpoint not complete");
+    }
+}
@@ -0,0 +1,131 @@
+/* Copyright (c) 2001-2017, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+public class TestGroupCommit extends TestBase {
+
+    static final String filepath = "/hsql/tests/testgroupcommit";
+
+    Connection conn;
+    Statement  stmt;
+
+    public TestGroupCommit(String name) {
+        super(name, "jdbc:hsqldb:file:" + filepath, false, false);
+    }
+
+    protected void setUp() throws Exception {
+
+        TestUtil.deleteDatabase(filepath);
+        super.setUp();
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+    }
+
+    protected void tearDown() {
+
+        try {
+            stmt.execute("SHUTDOWN");
+        } catch (Exception e) {}
+
+        TestUtil.deleteDatabase(filepath);
+        super.tearDown();
+    }
+
+    public void testConcurrentCommits() throws Exception {
+
+        final int threadCount = 8;
+        final int rows        = 500;
+
+        stmt.execute("SET FILES WRITE DELAY 0");
+        stmt.execute("SET FILES LOG SIZE 0");
+        stmt.execute("CREATE CACHED TABLE T (ID INT PRIMARY KEY, V INT)");
+
+        final Exception[] errors  = new Exception[threadCount];
+        Thread[]          threads = new Thread[threadCount];
+
+        for (int i = 0; i < threadCount; i++) {
+            final int thread = i;
+
+            threads[i] = new Thread() {
+
+                public void run() {
+
+                    try {
+                        Connection c = newConnection();
+                        PreparedStatement ps =
+                            c.prepareStatement("INSERT INTO T VALUES (?, ?)");
+
+                        for (int j = 0; j < rows; j++) {
+                            ps.setInt(1, thread * rows + j);
+                            ps.setInt(2, thread);
+                            ps.execute();
+                        }
+
+                        c.close();
+                    } catch (Exception e) {
+                        errors[thread] = e;
+                    }
+                }
+            };
+
+            threads[i].start();
+        }
+
+        for (int i = 0; i < threadCount; i++) {
+            threads[i].join();
+
+            if (errors[i] != null) {
+                throw errors[i];
+            }
+        }
+
+        // all committed rows are in the log
+        stmt.execute("SHUTDOWN IMMEDIATELY");
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+
+        ResultSet rs = stmt.executeQuery("SELECT COUNT(*), SUM(V) FROM T");
+
+        rs.next();
+        assertEquals(threadCount * rows, rs.getInt(1));
+        assertEquals(rows * (threadCount * (threadCount - 1) / 2),
+                     rs.getInt(2));
+        rs.close();
+    }
+}
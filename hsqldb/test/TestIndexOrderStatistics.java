@@ -0,0 +1,741 @@
+/* Copyright (c) 2001-2014, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Tests for queries that use the subtree sizes of the SBT index nodes.
+ */
+public class TestIndexOrderStatistics extends TestBase {
+
+    Connection conn;
+    Statement  stmt;
+
+    public TestIndexOrderStatistics(String name) {
+        super(name, "jdbc:hsqldb:mem:orderstat", false, false);
+    }
+
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+    }
+
+    protected void tearDown() {
+
+        try {
+            stmt.execute("SHUTDOWN");
+        } catch (Exception e) {}
+
+        super.tearDown();
+    }
+
+    /**
+     * Fills the table with rows in random order and deletes some rows,
+     * returning the set of remaining ID values.
+     */
+    TreeSet fillTable(String tableName) throws SQLException {
+
+        TreeSet           ids    = new TreeSet();
+        Random            random = new Random(1000);
+        PreparedStatement ps     = conn.prepareStatement("INSERT INTO "
+            + tableName + " VALUES (?, ?)");
+
+        for (int i = 0; i < 3000; i++) {
+            Integer id = Integer.valueOf(random.nextInt(100000));
+
+            if (!ids.add(id)) {
+                continue;
+            }
+
+            ps.setInt(1, id.intValue());
+            ps.setInt(2, id.intValue() % 100);
+            ps.execute();
+        }
+
+        ps = conn.prepareStatement("DELETE FROM " + tableName
+                                   + " WHERE ID = ?");
+
+        ArrayList list = new ArrayList(ids);
+
+        for (int i = 0; i < list.size(); i += 3) {
+            Integer id = (Integer) list.get(i);
+
+            ids.remove(id);
+            ps.setInt(1, id.intValue());
+            ps.execute();
+        }
+
+        ps.close();
+
+        return ids;
+    }
+
+    void checkOffsets(String tableName, TreeSet ids) throws SQLException {
+
+        ArrayList ascending  = new ArrayList(ids);
+        ArrayList descending = new ArrayList(ids.descendingSet());
+        int[]     offsets    = new int[] {
+            0, 1, 7, 500, ids.size() - 1, ids.size(), ids.size() + 10
+        };
+
+        for (int i = 0; i < offsets.length; i++) {
+            checkOffset("SELECT ID FROM " + tableName + " ORDER BY ID",
+                        ascending, offsets[i]);
+            checkOffset("SELECT ID FROM " + tableName + " ORDER BY ID DESC",
+                        descending, offsets[i]);
+        }
+    }
+
+    void checkOffset(String sql, ArrayList expected,
+                     int offset) throws SQLException {
+
+        ResultSet rs = stmt.executeQuery(sql + " OFFSET " + offset
+                                         + " ROWS FETCH 3 ROWS ONLY");
+
+        for (int i = offset; i < offset + 3 && i < expected.size(); i++) {
+            assertTrue(rs.next());
+            assertEquals(expected.get(i), Integer.valueOf(rs.getInt(1)));
+        }
+
+        assertFalse(rs.next());
+        rs.close();
+    }
+
+    void checkCount(String sql, int expected) throws SQLException {
+
+        ResultSet rs = stmt.executeQuery(sql);
+
+        assertTrue(rs.next());
+        assertEquals(sql, expected, rs.getInt(1));
+        rs.close();
+    }
+
+    void checkCounts(String tableName, TreeSet ids) throws SQLException {
+
+        int[] bounds = new int[] {
+            -1, 0, 17, 5000, 50000, 99999, 100000
+        };
+
+        for (int i = 0; i < bounds.length; i++) {
+            for (int j = i; j < bounds.length; j++) {
+                int lo = bounds[i];
+                int hi = bounds[j];
+
+                checkCount("SELECT COUNT(*) FROM " + tableName
+                           + " WHERE ID BETWEEN " + lo + " AND " + hi, ids
+                               .subSet(Integer.valueOf(lo), true,
+                                       Integer.valueOf(hi), true).size());
+                checkCount("SELECT COUNT(*) FROM " + tableName
+                           + " WHERE ID > " + lo + " AND ID < " + hi, ids
+                               .subSet(Integer.valueOf(lo), false,
+                                       Integer.valueOf(hi), false).size());
+            }
+
+            checkCount("SELECT COUNT(*) FROM " + tableName + " WHERE ID >= "
+                       + bounds[i], ids.tailSet(Integer.valueOf(bounds[i]),
+                           true).size());
+            checkCount("SELECT COUNT(*) FROM " + tableName + " WHERE ID < "
+                       + bounds[i], ids.headSet(Integer.valueOf(bounds[i]),
+                           false).size());
+        }
+    }
+
+    public void testCountRange() throws SQLException {
+
+        stmt.execute("CREATE MEMORY TABLE T (ID INT PRIMARY KEY, V INT)");
+
+        TreeSet ids = fillTable("T");
+
+        checkCounts("T", ids);
+        stmt.execute("CREATE INDEX IDX_V ON T (V, ID)");
+
+        int count = 0;
+
+        for (Iterator it = ids.iterator(); it.hasNext(); ) {
+            int id = ((Integer) it.next()).intValue();
+
+            if (id % 100 == 7 && id > 20000) {
+                count++;
+            }
+        }
+
+        checkCount("SELECT COUNT(*) FROM T WHERE V = 7 AND ID > 20000",
+                   count);
+    }
+
+    public void testCountRangeUncommittedMVCC() throws SQLException {
+
+        stmt.execute("SET DATABASE TRANSACTION CONTROL MVCC");
+        stmt.execute("CREATE MEMORY TABLE T (ID INT PRIMARY KEY, V INT)");
+
+        TreeSet ids = fillTable("T");
+
+        Connection other = newConnection();
+
+        other.setAutoCommit(false);
+        other.createStatement().execute("DELETE FROM T WHERE ID < 50000");
+
+        // rows deleted by the other session are still counted
+        checkCounts("T", ids);
+        other.rollback();
+        other.close();
+    }
+
+    String getString(String sql) throws SQLException {
+
+        ResultSet rs = stmt.executeQuery(sql);
+
+        assertTrue(rs.next());
+
+        String value = rs.getString(1);
+
+        rs.close();
+
+        return value;
+    }
+
+    void checkPercentiles(String tableName) throws SQLException {
+
+        String[] functions = new String[] {
+            "PERCENTILE_DISC(0) WITHIN GROUP (ORDER BY V)",
+            "PERCENTILE_DISC(0.5) WITHIN GROUP (ORDER BY V)",
+            "PERCENTILE_DISC(0.95) WITHIN GROUP (ORDER BY V DESC)",
+            "PERCENTILE_DISC(1) WITHIN GROUP (ORDER BY V)",
+            "PERCENTILE_CONT(0.5) WITHIN GROUP (ORDER BY V)",
+            "PERCENTILE_CONT(0.37) WITHIN GROUP (ORDER BY V)",
+            "PERCENTILE_CONT(0.99) WITHIN GROUP (ORDER BY V DESC)",
+            "MEDIAN(V)"
+        };
+
+        for (int i = 0; i < functions.length; i++) {
+
+            // V + 0 cannot use the index and the values are sorted
+            String expected = getString("SELECT "
+                                        + functions[i].replaceAll("V",
+                                            "V + 0") + " FROM " + tableName);
+            String actual = getString("SELECT " + functions[i] + " FROM "
+                                      + tableName);
+
+            assertEquals(functions[i], expected, actual);
+        }
+    }
+
+    public void testPercentile() throws SQLException {
+
+        stmt.execute("CREATE MEMORY TABLE T (ID INT PRIMARY KEY, V INT)");
+        fillTable("T");
+        stmt.execute("CREATE INDEX IDX_V ON T (V)");
+        stmt.execute("UPDATE T SET V = NULL WHERE MOD(ID, 7) = 0");
+        checkPercentiles("T");
+        assertNull(getString("SELECT PERCENTILE_DISC(0.5) WITHIN GROUP "
+                             + "(ORDER BY V) FROM T WHERE V IS NULL"));
+        stmt.execute("DELETE FROM T");
+        assertNull(getString("SELECT PERCENTILE_CONT(0.5) WITHIN GROUP "
+                             + "(ORDER BY V) FROM T"));
+    }
+
+    /**
+     * The percentiles and counts are aggregated from the rows while another
+     * session has uncommitted deletes, and read from the index again once
+     * the deletes are committed.
+     */
+    public void testPercentileUncommittedMVCC() throws SQLException {
+
+        stmt.execute("SET DATABASE TRANSACTION CONTROL MVCC");
+        stmt.execute("CREATE MEMORY TABLE T (ID INT PRIMARY KEY, V INT)");
+
+        TreeSet ids = fillTable("T");
+
+        stmt.execute("CREATE INDEX IDX_V ON T (V)");
+
+        Connection other = newConnection();
+
+        other.setAutoCommit(false);
+        other.createStatement().execute("DELETE FROM T WHERE ID < 50000");
+        checkPercentiles("T");
+        checkCounts("T", ids);
+        other.commit();
+        other.close();
+        ids.headSet(Integer.valueOf(50000)).clear();
+        checkPercentiles("T");
+        checkCounts("T", ids);
+    }
+
+    public void testPercentileFractionNotConstant() throws SQLException {
+
+        stmt.execute("CREATE MEMORY TABLE T (ID INT PRIMARY KEY, V INT)");
+
+        try {
+            stmt.executeQuery("SELECT PERCENTILE_CONT(ID / 10.0) WITHIN "
+                              + "GROUP (ORDER BY V) FROM T");
+            fail("column reference in fraction");
+        } catch (SQLException e) {}
+
+        try {
+            stmt.executeQuery("SELECT PERCENTILE_DISC(MAX(ID) / 10.0) WITHIN "
+                              + "GROUP (ORDER BY V) FROM T");
+            fail("aggregate in fraction");
+        } catch (SQLException e) {}
+    }
+
+    public void testCountNullableIndexedColumn() throws SQLException {
+
+        stmt.execute("CREATE MEMORY TABLE T (ID INT PRIMARY KEY, V INT)");
+        fillTable("T");
+        stmt.execute("CREATE INDEX IDX_V ON T (V)");
+        stmt.execute("UPDATE T SET V = NULL WHERE MOD(ID, 7) = 0");
+
+        int expected = Integer.parseInt(
+            getString("SELECT COUNT(*) FROM T WHERE V IS NOT NULL"));
+
+        checkCount("SELECT COUNT(V) FROM T", expected);
+    }
+
+    String getPlanIndex(String sql) throws SQLException {
+
+        ResultSet    rs   = stmt.executeQuery("EXPLAIN PLAN FOR " + sql);
+        StringBuffer plan = new StringBuffer();
+
+        while (rs.next()) {
+            plan.append(rs.getString(1)).append('\n');
+        }
+
+        rs.close();
+
+        int start = plan.indexOf("index=");
+
+        return plan.substring(start + "index=".length(),
+                              plan.indexOf("\n", start));
+    }
+
+    public void testIndexChoiceSkewed() throws SQLException {
+
+        stmt.execute("CREATE MEMORY TABLE T (ID INT PRIMARY KEY, A INT, B INT)");
+        stmt.execute("INSERT INTO T SELECT ROWNUM(), "
+                     + "CASE WHEN ROWNUM() < 100 THEN ROWNUM() ELSE 0 END, "
+                     + "CASE WHEN ROWNUM() > 9900 THEN 1 ELSE MOD(ROWNUM(), 50) "
+                     + "END FROM UNNEST(SEQUENCE_ARRAY(1, 10000, 1))");
+        stmt.execute("CREATE INDEX IDX_A ON T (A)");
+        stmt.execute("CREATE INDEX IDX_B ON T (B)");
+
+        // most rows have A = 0 but only one row has A = 5
+        assertEquals("IDX_B",
+                     getPlanIndex("SELECT * FROM T WHERE A = 0 AND B = 1"));
+        assertEquals("IDX_A",
+                     getPlanIndex("SELECT * FROM T WHERE A = 5 AND B = 1"));
+    }
+
+    public void testCreateIndexOnFilledTable() throws SQLException {
+
+        stmt.execute("CREATE MEMORY TABLE T (ID INT, V INT)");
+
+        TreeSet ids = fillTable("T");
+
+        stmt.execute("CREATE UNIQUE INDEX IDX_ID ON T (ID)");
+        checkOffsets("T", ids);
+        checkCounts("T", ids);
+        stmt.execute("INSERT INTO T VALUES (NULL, 7)");
+        stmt.execute("INSERT INTO T VALUES (NULL, 7)");
+
+        // rows with a null column are not duplicates
+        stmt.execute("CREATE UNIQUE INDEX IDX_ID_V ON T (ID, V)");
+
+        try {
+            stmt.execute("CREATE UNIQUE INDEX IDX_V ON T (V)");
+            fail("duplicate rows were accepted");
+        } catch (SQLException e) {}
+
+        stmt.execute("DELETE FROM T WHERE ID IS NULL");
+        checkOffsets("T", ids);
+        checkCounts("T", ids);
+    }
+
+    public void testInsertSelect() throws SQLException {
+
+        stmt.execute("CREATE MEMORY TABLE S (ID INT, V INT)");
+
+        TreeSet ids = fillTable("S");
+
+        stmt.execute("CREATE MEMORY TABLE T (ID INT PRIMARY KEY, V INT)");
+        stmt.execute("CREATE INDEX IDX_V ON T (V)");
+        stmt.execute("INSERT INTO T SELECT * FROM S");
+        checkOffsets("T", ids);
+        checkCounts("T", ids);
+
+        // one of the new rows has the key of an existing row
+        try {
+            stmt.execute("INSERT INTO T SELECT ID + 100000, V FROM S "
+                         + "UNION ALL SELECT MAX(ID), 0 FROM S");
+            fail("duplicate rows were accepted");
+        } catch (SQLException e) {}
+
+        checkOffsets("T", ids);
+        checkCounts("T", ids);
+
+        int count = 0;
+
+        for (Iterator it = ids.iterator(); it.hasNext(); ) {
+            if (((Integer) it.next()).intValue() % 100 == 7) {
+                count++;
+            }
+        }
+
+        checkCount("SELECT COUNT(*) FROM T WHERE V = 7", count);
+    }
+
+    public void testInsertBalance() throws SQLException {
+
+        long   seed   = System.nanoTime();
+        Random random = new Random(seed);
+
+        stmt.execute("CREATE MEMORY TABLE T (ID INT PRIMARY KEY, V INT)");
+        stmt.execute("CREATE INDEX IDX_V ON T (V)");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?)");
+        TreeSet ids = new TreeSet();
+
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 999; i++) {
+                Integer id = Integer.valueOf(random.nextInt(1000000));
+
+                if (!ids.add(id)) {
+                    continue;
+                }
+
+                ps.setInt(1, id.intValue());
+                ps.setInt(2, random.nextInt(50));
+                ps.execute();
+            }
+
+            checkIndexes("seed " + seed);
+        }
+
+        ps.close();
+        checkOffsets("T", ids);
+    }
+
+    public void testInsertDeleteBalance() throws SQLException {
+
+        long   seed   = System.nanoTime();
+        Random random = new Random(seed);
+
+        stmt.execute("CREATE MEMORY TABLE T (ID INT PRIMARY KEY, V INT)");
+        stmt.execute("CREATE INDEX IDX_V ON T (V)");
+
+        PreparedStatement insert =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?)");
+        PreparedStatement delete =
+            conn.prepareStatement("DELETE FROM T WHERE ID = ?");
+        ArrayList list = new ArrayList();
+        TreeSet   ids  = new TreeSet();
+
+        for (int round = 0; round < 10; round++) {
+
+            // rounds alternate between growing and shrinking the table
+            int inserts = round % 2 == 0 ? 1500
+                                         : 800;
+
+            for (int i = 0; i < 2000; i++) {
+                if (i < inserts || list.isEmpty()) {
+                    Integer id = Integer.valueOf(random.nextInt(100000));
+
+                    if (!ids.add(id)) {
+                        continue;
+                    }
+
+                    list.add(id);
+                    insert.setInt(1, id.intValue());
+                    insert.setInt(2, random.nextInt(50));
+                    insert.execute();
+                } else {
+                    Integer id =
+                        (Integer) list.remove(random.nextInt(list.size()));
+
+                    ids.remove(id);
+                    delete.setInt(1, id.intValue());
+                    delete.execute();
+                }
+            }
+
+            checkIndexes("seed " + seed);
+        }
+
+        insert.close();
+        delete.close();
+        checkOffsets("T", ids);
+        checkCounts("T", ids);
+    }
+
+    public void testDeleteRangeBalance() throws SQLException {
+
+        long   seed   = System.nanoTime();
+        Random random = new Random(seed);
+
+        stmt.execute("CREATE MEMORY TABLE T (ID INT PRIMARY KEY, V INT)");
+        stmt.execute("CREATE INDEX IDX_V ON T (V)");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?)");
+        TreeSet ids = new TreeSet();
+
+        for (int i = 0; i < 5000; i++) {
+            Integer id = Integer.valueOf(random.nextInt(100000));
+
+            if (!ids.add(id)) {
+                continue;
+            }
+
+            ps.setInt(1, id.intValue());
+            ps.setInt(2, random.nextInt(50));
+            ps.execute();
+        }
+
+        ps.close();
+
+        // delete random ranges from both ends and the middle
+        while (ids.size() > 1000) {
+            int lo = random.nextInt(100000);
+            int hi = lo + random.nextInt(5000);
+
+            ids.subSet(Integer.valueOf(lo), true, Integer.valueOf(hi),
+                       true).clear();
+            stmt.execute("DELETE FROM T WHERE ID BETWEEN " + lo + " AND "
+                         + hi);
+
+            if (random.nextInt(4) == 0
+                    && ids.headSet(Integer.valueOf(lo)).size()
+                       < ids.size() / 2) {
+                ids.headSet(Integer.valueOf(lo)).clear();
+                stmt.execute("DELETE FROM T WHERE ID < " + lo);
+            }
+
+            checkIndexes("seed " + seed);
+        }
+
+        checkOffsets("T", ids);
+        checkCounts("T", ids);
+        stmt.execute("DELETE FROM T");
+        checkIndexes("seed " + seed);
+    }
+
+    /**
+     * Checks that PERFORM CHECK finds no errors and that the depth of each
+     * index is within the bound for a size balanced tree.
+     */
+    void checkIndexes(String message) throws SQLException {
+
+        ResultSet rs    = stmt.executeQuery("PERFORM CHECK TABLE T INDEX");
+        int       count = 0;
+
+        while (rs.next()) {
+            String info = rs.getString(2);
+
+            assertTrue(message + " " + info, info.endsWith(" errors 0"));
+
+            count++;
+        }
+
+        rs.close();
+        assertEquals(2, count);
+    }
+
+    public void testJoinSortedKeys() throws SQLException {
+
+        stmt.execute("CREATE MEMORY TABLE T (ID INT PRIMARY KEY, V INT)");
+
+        TreeSet ids = fillTable("T");
+
+        stmt.execute("CREATE MEMORY TABLE S (ID INT PRIMARY KEY)");
+
+        PreparedStatement ps = conn.prepareStatement("INSERT INTO S VALUES ?");
+
+        for (int i = -10; i < 100100; i += 37) {
+            ps.setInt(1, i);
+            ps.execute();
+        }
+
+        ps.close();
+
+        long equal   = 0;
+        long range   = 0;
+        long smaller = 0;
+
+        for (int i = -10; i < 100100; i += 37) {
+            Integer key = Integer.valueOf(i);
+
+            if (ids.contains(key)) {
+                equal += i;
+            }
+
+            range += ids.subSet(key, false, Integer.valueOf(i + 50),
+                                false).size();
+
+            Object last = ids.floor(key);
+
+            if (last != null) {
+                smaller += ((Integer) last).intValue();
+            }
+        }
+
+        // the rows of S are joined in ascending and descending order
+        checkSum("SELECT SUM(T.ID) FROM S JOIN T ON T.ID = S.ID", equal);
+        checkSum("SELECT SUM(T.ID) FROM (SELECT ID FROM S ORDER BY ID DESC "
+                 + "LIMIT 100000) X JOIN T ON T.ID = X.ID", equal);
+        checkSum("SELECT COUNT(*) FROM S JOIN T ON T.ID > S.ID "
+                 + "AND T.ID < S.ID + 50", range);
+        checkSum("SELECT COUNT(*) FROM (SELECT ID FROM S ORDER BY ID DESC "
+                 + "LIMIT 100000) X JOIN T ON T.ID > X.ID "
+                 + "AND T.ID < X.ID + 50", range);
+        checkSum("SELECT SUM((SELECT MAX(T.ID) FROM T WHERE T.ID <= S.ID)) "
+                 + "FROM S", smaller);
+    }
+
+    void checkSum(String sql, long expected) throws SQLException {
+
+        ResultSet rs = stmt.executeQuery(sql);
+
+        assertTrue(rs.next());
+        assertEquals(sql, expected, rs.getLong(1));
+        rs.close();
+    }
+
+    public void testOffsetMemoryTable() throws SQLException {
+
+        stmt.execute("CREATE MEMORY TABLE T (ID INT PRIMARY KEY, V INT)");
+
+        TreeSet ids = fillTable("T");
+
+        checkOffsets("T", ids);
+    }
+
+    public void testOffsetTempTable() throws SQLException {
+
+        stmt.execute("CREATE GLOBAL TEMPORARY TABLE TT "
+                     + "(ID INT PRIMARY KEY, V INT) ON COMMIT PRESERVE ROWS");
+
+        TreeSet ids = fillTable("TT");
+
+        checkOffsets("TT", ids);
+    }
+
+    public void testOffsetUncommittedMVCC() throws SQLException {
+
+        stmt.execute("SET DATABASE TRANSACTION CONTROL MVCC");
+        stmt.execute("CREATE MEMORY TABLE T (ID INT PRIMARY KEY, V INT)");
+
+        TreeSet ids = fillTable("T");
+
+        Connection other = newConnection();
+
+        other.setAutoCommit(false);
+        other.createStatement().execute("DELETE FROM T WHERE ID < 50000");
+
+        // rows deleted by the other session are still visible
+        checkOffsets("T", ids);
+        other.rollback();
+        other.close();
+    }
+
+    /**
+     * Another session inserts rows and rolls back while the offsets and
+     * counts are checked. The uncommitted rows must never be counted.
+     */
+    public void testConcurrentUncommittedMVCC() throws Exception {
+
+        stmt.execute("SET DATABASE TRANSACTION CONTROL MVCC");
+        stmt.execute("CREATE MEMORY TABLE T (ID INT PRIMARY KEY, V INT)");
+
+        final TreeSet   ids    = fillTable("T");
+        final Throwable[] error = new Throwable[1];
+        final boolean[] stop   = new boolean[1];
+        Thread          writer = new Thread() {
+
+            public void run() {
+
+                try {
+                    Connection other = newConnection();
+
+                    other.setAutoCommit(false);
+
+                    PreparedStatement ps = other.prepareStatement(
+                        "INSERT INTO T VALUES (?, ?)");
+
+                    for (int i = 0; !stop[0]; i++) {
+
+                        // values outside the range of fillTable
+                        ps.setInt(1, -1 - (i % 1000));
+                        ps.setInt(2, 0);
+                        ps.execute();
+
+                        if (i % 1000 == 999) {
+                            other.rollback();
+                        }
+                    }
+
+                    other.rollback();
+                    other.close();
+                } catch (Throwable t) {
+                    error[0] = t;
+                }
+            }
+        };
+
+        writer.start();
+
+        try {
+            for (int i = 0; i < 20; i++) {
+                checkOffsets("T", ids);
+                checkCount("SELECT COUNT(*) FROM T WHERE ID < 50000",
+                           ids.headSet(Integer.valueOf(50000)).size());
+            }
+        } finally {
+            stop[0] = true;
+
+            writer.join();
+        }
+
+        assertNull(error[0]);
+    }
+}
@@ -0,0 +1,158 @@
+/* Copyright (c) 2001-2014, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+/**
+ * Tests reading rows of CACHED tables directly from the mapped .data file
+ * with hsqldb.nio_mapped_read.
+ */
+public class TestNioMappedRead extends TestBase {
+
+    static final String filepath = "/hsql/tests/testniomappedread";
+
+    Connection conn;
+    Statement  stmt;
+
+    public TestNioMappedRead(String name) {
+        super(name, "jdbc:hsqldb:file:" + filepath
+                    + ";hsqldb.nio_mapped_read=true", false, false);
+    }
+
+    protected void setUp() throws Exception {
+
+        TestUtil.deleteDatabase(filepath);
+        super.setUp();
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+    }
+
+    protected void tearDown() {
+
+        try {
+            stmt.execute("SHUTDOWN");
+        } catch (Exception e) {}
+
+        TestUtil.deleteDatabase(filepath);
+        super.tearDown();
+    }
+
+    /**
+     * The table is larger than the initial non-mapped part of the file and
+     * the cache, so most rows are read back from the mapped file.
+     */
+    public void testReadBack() throws SQLException {
+
+        int rows = 40000;
+
+        stmt.execute("SET FILES CACHE ROWS 1000");
+        stmt.execute("CREATE CACHED TABLE T (ID INT PRIMARY KEY, "
+                     + "S VARCHAR(400), D DECIMAL(20,4), B VARBINARY(16), "
+                     + "TS TIMESTAMP)");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?, ?, ?, ?)");
+
+        for (int i = 0; i < rows; i++) {
+            ps.setInt(1, i);
+            ps.setString(2, getString(i));
+            ps.setBigDecimal(3, new BigDecimal(i).movePointLeft(2));
+            ps.setBytes(4, getBytes(i));
+            ps.setTimestamp(5, new Timestamp(i * 1000L));
+            ps.execute();
+        }
+
+        stmt.execute("SHUTDOWN");
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+
+        for (int round = 0; round < 2; round++) {
+            ResultSet rs    = stmt.executeQuery("SELECT * FROM T ORDER BY ID");
+            int       count = 0;
+
+            while (rs.next()) {
+                int i = rs.getInt(1);
+
+                assertEquals(count, i);
+                assertEquals(getString(i), rs.getString(2));
+                assertEquals(new BigDecimal(i).movePointLeft(2)
+                    .setScale(4), rs.getBigDecimal(3));
+                assertTrue(Arrays.equals(getBytes(i),
+                                                   rs.getBytes(4)));
+                assertEquals(i * 1000L, rs.getTimestamp(5).getTime());
+
+                count++;
+            }
+
+            rs.close();
+            assertEquals(rows, count);
+        }
+    }
+
+    static String getString(int i) {
+
+        StringBuffer sb = new StringBuffer();
+
+        sb.append("row ").append(i);
+
+        if (i % 3 == 0) {
+            sb.append(" \u00e9t\u00e9 \u4e2d\u6587");
+        }
+
+        while (sb.length() < 200 + i % 100) {
+            sb.append(" abcdefghij");
+        }
+
+        return sb.toString();
+    }
+
+    static byte[] getBytes(int i) {
+
+        byte[] b = new byte[i % 16 + 1];
+
+        for (int j = 0; j < b.length; j++) {
+            b[j] = (byte) (i + j);
+        }
+
+        return b;
+    }
+}
@@ -0,0 +1,232 @@
+/* Copyright (c) 2001-2017, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class TestParallelRecovery extends TestBase {
+
+    static final String filepath = "/hsql/tests/testparallelrecovery";
+    static final String[] queries = {
+        "SELECT COUNT(*), SUM(CAST(ID AS BIGINT)), SUM(LENGTH(V)) FROM A",
+        "SELECT COUNT(*), SUM(CAST(ID AS BIGINT)), SUM(LENGTH(V)) FROM B",
+        "SELECT COUNT(*), SUM(CAST(K AS BIGINT)), MAX(K) FROM C",
+        "SELECT COUNT(*), SUM(LENGTH(L)) FROM D",
+        "SELECT COUNT(*), SUM(CAST(ID AS BIGINT)), SUM(W) FROM A "
+        + "WHERE V LIKE 'u%'",
+    };
+
+    Connection conn;
+    Statement  stmt;
+
+    public TestParallelRecovery(String name) {
+        super(name, "jdbc:hsqldb:file:" + filepath
+                    + ";hsqldb.recovery_parallelism=4", false, false);
+    }
+
+    protected void setUp() throws Exception {
+
+        TestUtil.deleteDatabase(filepath);
+        super.setUp();
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+    }
+
+    protected void tearDown() {
+
+        try {
+            stmt.execute("SHUTDOWN");
+        } catch (Exception e) {}
+
+        TestUtil.deleteDatabase(filepath);
+        super.tearDown();
+    }
+
+    public void testRecovery() throws Exception {
+
+        stmt.execute("CREATE MEMORY TABLE A (ID INT PRIMARY KEY, "
+                     + "V VARCHAR(100))");
+        stmt.execute("CREATE CACHED TABLE B (ID INT PRIMARY KEY, "
+                     + "V VARCHAR(100))");
+        stmt.execute("CREATE CACHED TABLE C (K INT, V VARCHAR(10))");
+        stmt.execute("CREATE CACHED TABLE D (ID INT PRIMARY KEY, L CLOB)");
+
+        Connection other = newConnection();
+
+        other.setAutoCommit(false);
+        conn.setAutoCommit(false);
+
+        PreparedStatement psA = conn.prepareStatement(
+            "INSERT INTO A VALUES (?, ?)");
+        PreparedStatement psB = other.prepareStatement(
+            "INSERT INTO B VALUES (?, ?)");
+        PreparedStatement psC = other.prepareStatement(
+            "INSERT INTO C VALUES (?, ?)");
+        PreparedStatement psD = conn.prepareStatement(
+            "INSERT INTO D VALUES (?, ?)");
+
+        for (int i = 0; i < 2000; i++) {
+            psA.setInt(1, i);
+            psA.setString(2, "a" + i);
+            psA.execute();
+            psB.setInt(1, i);
+            psB.setString(2, "b" + i);
+            psB.execute();
+            psC.setInt(1, i % 100);
+            psC.setString(2, "c");
+            psC.execute();
+
+            if (i % 100 == 0) {
+                psD.setInt(1, i);
+                psD.setString(2, "clob value " + i);
+                psD.execute();
+            }
+
+            if (i % 50 == 0) {
+                conn.commit();
+                other.commit();
+            }
+        }
+
+        conn.commit();
+        other.commit();
+        conn.createStatement().execute("DELETE FROM A WHERE MOD(ID, 3) = 0");
+        other.createStatement().execute("DELETE FROM C WHERE K < 10");
+        conn.createStatement().execute(
+            "UPDATE B SET V = 'u' || V WHERE MOD(ID, 7) = 0");
+        conn.commit();
+        other.commit();
+
+        // DDL in the middle of the log
+        conn.createStatement().execute(
+            "ALTER TABLE A ADD COLUMN W INT DEFAULT 2");
+        conn.createStatement().execute(
+            "UPDATE A SET V = 'u' || V, W = 3 WHERE MOD(ID, 5) = 0");
+        conn.createStatement().execute("DELETE FROM D WHERE ID = 100");
+        conn.commit();
+        other.createStatement().execute("DELETE FROM B WHERE ID > 1900");
+        other.commit();
+
+        conn.setAutoCommit(true);
+
+        String[] results = getResults();
+
+        // not committed
+        other.createStatement().execute("DELETE FROM B");
+
+        stmt.execute("SHUTDOWN IMMEDIATELY");
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+
+        String[] recovered = getResults();
+
+        for (int i = 0; i < queries.length; i++) {
+            assertEquals(queries[i], results[i], recovered[i]);
+        }
+
+        ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM B");
+
+        rs.next();
+        assertEquals(1901, rs.getInt(1));
+        rs.close();
+    }
+
+    public void testLaneError() throws Exception {
+
+        stmt.execute("CREATE CACHED TABLE A (ID INT PRIMARY KEY)");
+        stmt.execute("CREATE CACHED TABLE B (ID INT PRIMARY KEY)");
+        stmt.execute("INSERT INTO A VALUES 1");
+        stmt.execute("INSERT INTO B VALUES 1");
+        stmt.execute("SHUTDOWN IMMEDIATELY");
+
+        // the second insert into A fails in its lane after the insert into
+        // B has been applied in the other lane
+        BufferedReader reader =
+            new BufferedReader(new FileReader(filepath + ".log"));
+        int lines = 0;
+
+        while (reader.readLine() != null) {
+            lines++;
+        }
+
+        reader.close();
+
+        Writer writer = new FileWriter(filepath + ".log", true);
+
+        writer.write("/*C9*/SET SCHEMA PUBLIC\n");
+        writer.write("INSERT INTO B VALUES(2)\n");
+        writer.write("INSERT INTO A VALUES(1)\n");
+        writer.write("COMMIT\n");
+        writer.close();
+
+        try {
+            conn = newConnection();
+
+            fail("open continued after an error in a lane");
+        } catch (SQLException e) {
+            assertTrue(e.getMessage(),
+                       e.getMessage().indexOf("line: " + (lines + 3)) >= 0);
+        }
+    }
+
+    String[] getResults() throws Exception {
+
+        String[] results = new String[queries.length];
+
+        for (int i = 0; i < queries.length; i++) {
+            ResultSet    rs = stmt.executeQuery(queries[i]);
+            StringBuffer sb = new StringBuffer();
+
+            rs.next();
+
+            for (int j = 1; j <= rs.getMetaData().getColumnCount(); j++) {
+                sb.append(rs.getString(j)).append(',');
+            }
+
+            rs.close();
+
+            results[i] = sb.toString();
+        }
+
+        return results;
+    }
+}
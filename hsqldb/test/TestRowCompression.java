@@ -0,0 +1,219 @@
+/* Copyright (c) 2001-2014, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.hsqldb.RowSBTDisk;
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.jdbc.JDBCConnection;
+import org.hsqldb.navigator.RowIterator;
+import org.hsqldb.persist.PersistentStore;
+
+/**
+ * Tests CACHED tables with compressed rows.
+ */
+public class TestRowCompression extends TestBase {
+
+    static final String filepath = "/hsql/tests/testrowcompression";
+    static final String[] levels = {
+        "INFO", "WARNING", "ERROR", "DEBUG"
+    };
+    static final String[] messages = {
+        "connection accepted from client on port 9001",
+        "transaction committed after statement execution",
+        "request completed in the expected time for the service",
+        "session closed by the client after the timeout"
+    };
+
+    Connection conn;
+    Statement  stmt;
+
+    public TestRowCompression(String name) {
+        super(name, "jdbc:hsqldb:file:" + filepath, false, false);
+    }
+
+    protected void setUp() throws Exception {
+
+        TestUtil.deleteDatabase(filepath);
+        super.setUp();
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+    }
+
+    protected void tearDown() {
+
+        try {
+            stmt.execute("SHUTDOWN");
+        } catch (Exception e) {}
+
+        TestUtil.deleteDatabase(filepath);
+        super.tearDown();
+    }
+
+    public void testCompressedTable() throws Exception {
+
+        int rows = 4000;
+
+        stmt.execute("CREATE CACHED TABLE T (ID INT PRIMARY KEY, "
+                     + "LVL VARCHAR(20), MSG VARCHAR(200), N INT)");
+        stmt.execute("CREATE CACHED TABLE U (ID INT PRIMARY KEY, "
+                     + "LVL VARCHAR(20), MSG VARCHAR(200), N INT)");
+        insertRows("T", 0, 500);
+        stmt.execute("SET TABLE T COMPRESSED TRUE");
+        insertRows("T", 500, rows);
+        insertRows("U", 0, rows);
+        checkRows("T", rows);
+
+        long compressed   = getStorageSize("T");
+        long uncompressed = getStorageSize("U");
+
+        assertTrue(compressed < uncompressed * 2 / 3);
+        stmt.execute("SHUTDOWN");
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+
+        checkRows("T", rows);
+        stmt.execute("UPDATE T SET N = N + 1 WHERE MOD(ID, 10) = 0");
+        stmt.execute("UPDATE T SET N = N - 1 WHERE MOD(ID, 10) = 0");
+        stmt.execute("CHECKPOINT DEFRAG");
+        checkRows("T", rows);
+
+        // the rows inserted before compression was turned on are compressed
+        assertTrue(getStorageSize("T") < compressed);
+
+        // existing rows stay readable when compression is turned off
+        stmt.execute("SET TABLE T COMPRESSED FALSE");
+        insertRows("T", rows, rows + 100);
+        checkRows("T", rows + 100);
+        stmt.execute("SHUTDOWN");
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+
+        checkRows("T", rows + 100);
+        stmt.execute("CHECKPOINT DEFRAG");
+        checkRows("T", rows + 100);
+        insertRows("U", rows, rows + 100);
+        assertEquals(getStorageSize("U"), getStorageSize("T"));
+    }
+
+    public void testCompressedTableLog() throws Exception {
+
+        int rows = 1000;
+
+        stmt.execute("CREATE CACHED TABLE T (ID INT PRIMARY KEY, "
+                     + "LVL VARCHAR(20), MSG VARCHAR(200), N INT)");
+        insertRows("T", 0, 100);
+        stmt.execute("CHECKPOINT");
+        stmt.execute("SET TABLE T COMPRESSED TRUE");
+        insertRows("T", 100, rows);
+        stmt.execute("SHUTDOWN IMMEDIATELY");
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+
+        checkRows("T", rows);
+
+        ResultSet rs = stmt.executeQuery("SCRIPT");
+        boolean   found = false;
+
+        while (rs.next()) {
+            String line = rs.getString(1);
+
+            if (line.startsWith("SET TABLE PUBLIC.T COMPRESSED TRUE")) {
+                found = line.indexOf("DICTIONARY X'") > 0;
+            }
+        }
+
+        rs.close();
+        assertTrue(found);
+    }
+
+    void insertRows(String table, int from, int to) throws Exception {
+
+        PreparedStatement ps = conn.prepareStatement("INSERT INTO " + table
+            + " VALUES (?, ?, ?, ?)");
+
+        for (int i = from; i < to; i++) {
+            ps.setInt(1, i);
+            ps.setString(2, levels[i % levels.length]);
+            ps.setString(3, messages[(i / 3) % messages.length] + " #" + i);
+            ps.setInt(4, i * 31);
+            ps.execute();
+        }
+
+        ps.close();
+    }
+
+    void checkRows(String table, int rows) throws Exception {
+
+        ResultSet rs = stmt.executeQuery("SELECT * FROM " + table
+                                         + " ORDER BY ID");
+        int count = 0;
+
+        while (rs.next()) {
+            int i = rs.getInt(1);
+
+            assertEquals(count, i);
+            assertEquals(levels[i % levels.length], rs.getString(2));
+            assertEquals(messages[(i / 3) % messages.length] + " #" + i,
+                         rs.getString(3));
+            assertEquals(i * 31, rs.getInt(4));
+
+            count++;
+        }
+
+        rs.close();
+        assertEquals(rows, count);
+    }
+
+    long getStorageSize(String name) {
+
+        Session session = (Session) ((JDBCConnection) conn).getSession();
+        Table table = session.database.schemaManager.findUserTable(name,
+            "PUBLIC");
+        PersistentStore store = table.getRowStore(session);
+        RowIterator     it    = table.getPrimaryIndex().firstRow(store);
+        long            size  = 0;
+
+        while (it.next()) {
+            size += ((RowSBTDisk) it.getCurrentRow()).getStorageSize();
+        }
+
+        return size;
+    }
+}
@@ -0,0 +1,191 @@
+/* Copyright (c) 2001-2017, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+public class TestScriptLoadParallel extends TestBase {
+
+    static final String filepath = "/hsql/tests/testscriptloadparallel";
+    static final String[] queries = {
+        "SELECT COUNT(*), SUM(CAST(ID AS BIGINT)), SUM(LENGTH(V)) FROM A",
+        "SELECT COUNT(*), SUM(CAST(ID AS BIGINT)), SUM(N), MAX(D) FROM A "
+        + "WHERE V >= 'v5'",
+        "SELECT COUNT(*), SUM(CAST(K AS BIGINT)), MAX(V) FROM S.B",
+        "SELECT COUNT(*), SUM(CAST(K AS BIGINT)) FROM S.B WHERE K = 7",
+        "SELECT COUNT(*), SUM(CAST(ID AS BIGINT)), SUM(LENGTH(L)) FROM C",
+        "SELECT COUNT(*), SUM(CAST(ID AS BIGINT)) FROM E",
+        "SELECT V, N, D FROM A WHERE ID = 12345",
+    };
+
+    Connection conn;
+    Statement  stmt;
+
+    public TestScriptLoadParallel(String name) {
+        super(name, "jdbc:hsqldb:file:" + filepath
+                    + ";hsqldb.script_load_parallelism=4", false, false);
+    }
+
+    protected void setUp() throws Exception {
+
+        TestUtil.deleteDatabase(filepath);
+        super.setUp();
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+    }
+
+    protected void tearDown() {
+
+        try {
+            stmt.execute("SHUTDOWN");
+        } catch (Exception e) {}
+
+        TestUtil.deleteDatabase(filepath);
+        super.tearDown();
+    }
+
+    public void testLoad() throws Exception {
+
+        int rows = 30000;
+
+        stmt.execute("CREATE MEMORY TABLE A (ID INT GENERATED BY DEFAULT "
+                     + "AS IDENTITY PRIMARY KEY, V VARCHAR(100) UNIQUE, "
+                     + "N DECIMAL(10,2), D DATE)");
+        stmt.execute("CREATE INDEX IDX_A_N ON A (N)");
+        stmt.execute("CREATE SCHEMA S");
+        stmt.execute("CREATE MEMORY TABLE S.B (K INT, V VARCHAR(20))");
+        stmt.execute("CREATE INDEX IDX_B_K ON S.B (K)");
+        stmt.execute("CREATE MEMORY TABLE C (ID INT PRIMARY KEY, L CLOB)");
+        stmt.execute("CREATE MEMORY TABLE E (ID INT PRIMARY KEY, "
+                     + "AID INT REFERENCES A(ID))");
+
+        PreparedStatement psA = conn.prepareStatement(
+            "INSERT INTO A (V, N, D) VALUES (?, ?, ?)");
+        PreparedStatement psB =
+            conn.prepareStatement("INSERT INTO S.B VALUES (?, ?)");
+        PreparedStatement psE =
+            conn.prepareStatement("INSERT INTO E VALUES (?, ?)");
+
+        for (int i = 0; i < rows; i++) {
+            psA.setString(1, "v" + i + " \u00e9'\\" + i);
+
+            if (i % 10 == 0) {
+                psA.setNull(2, java.sql.Types.DECIMAL);
+            } else {
+                psA.setBigDecimal(2, new java.math.BigDecimal(i + ".25"));
+            }
+
+            psA.setDate(3, java.sql.Date.valueOf("2017-0" + (1 + i % 9)
+                                                 + "-1" + (i % 10)));
+            psA.execute();
+            psB.setInt(1, i % 100);
+            psB.setString(2, "b" + (i % 1000));
+            psB.execute();
+
+            if (i % 3 == 0) {
+                psE.setInt(1, i);
+                psE.setInt(2, i);
+                psE.execute();
+            }
+        }
+
+        stmt.execute("INSERT INTO C VALUES (1, 'clob value one')");
+        stmt.execute("INSERT INTO C VALUES (2, 'clob value two')");
+
+        String[] results = getResults();
+
+        stmt.execute("SHUTDOWN");
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+
+        String[] loaded = getResults();
+
+        for (int i = 0; i < queries.length; i++) {
+            assertEquals(queries[i], results[i], loaded[i]);
+        }
+
+        // identity and unique index are restored
+        stmt.execute("INSERT INTO A (V) VALUES ('new row')");
+
+        ResultSet rs = stmt.executeQuery("SELECT ID FROM A WHERE V = "
+                                         + "'new row'");
+
+        rs.next();
+        assertEquals(rows, rs.getInt(1));
+        rs.close();
+
+        try {
+            stmt.execute("INSERT INTO A (V) VALUES ('v7 \u00e9''\\7')");
+            fail("unique index not built");
+        } catch (java.sql.SQLException e) {}
+
+        stmt.execute("DELETE FROM A WHERE ID < 1000 AND MOD(ID, 3) <> 0");
+        stmt.execute("SHUTDOWN");
+
+        conn = newConnection();
+        stmt = conn.createStatement();
+        rs   = stmt.executeQuery("SELECT COUNT(*) FROM A");
+
+        rs.next();
+        assertEquals(rows + 1 - 666, rs.getInt(1));
+        rs.close();
+    }
+
+    String[] getResults() throws Exception {
+
+        String[] results = new String[queries.length];
+
+        for (int i = 0; i < queries.length; i++) {
+            ResultSet    rs = stmt.executeQuery(queries[i]);
+            StringBuffer sb = new StringBuffer();
+
+            rs.next();
+
+            for (int j = 1; j <= rs.getMetaData().getColumnCount(); j++) {
+                sb.append(rs.getString(j)).append(',');
+            }
+
+            rs.close();
+
+            results[i] = sb.toString();
+        }
+
+        return results;
+    }
+}